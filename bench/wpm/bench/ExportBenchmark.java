@@ -0,0 +1,160 @@
+package wpm.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import wpm.data.HTMLTagPrototype;
+import wpm.file.ExportCache;
+import wpm.file.HTMLExporter;
+
+/**
+ * This class measures generating the HTML page, both from scratch, as
+ * is done for the first export of a page, sequentially and in parallel,
+ * and after a single element has changed, as is done after every edit.
+ * It also measures checking the page against the export cache, both when
+ * it has changed and when it hasn't.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExportBenchmark {
+    // WHERE THE CACHED BENCHMARKS PRETEND TO WRITE THE PAGE
+    static final String PAGE_PATH = "./temp/index.html";
+
+    // THE EXPORTER KEEPS ITS LAST PAGE BETWEEN OPERATIONS
+    HTMLExporter exporter;
+
+    // AND THIS ONE SPLITS FULL EXPORTS UP
+    HTMLExporter parallelExporter;
+
+    // WHAT THE PAGE'S FILE HAS, AS FAR AS THE CACHED BENCHMARKS KNOW
+    ExportCache exportCache;
+
+    // THE NODES WITH ATTRIBUTES TO EDIT, AND WHICH ONE THE NEXT EDIT CHANGES
+    int[] editNodes;
+    int nextEdit;
+
+    /**
+     * This method makes the exporter and exports the page once, so that
+     * the incremental benchmark starts with a page to copy from.
+     *
+     * @param page The page to export.
+     */
+    @Setup(Level.Trial)
+    public void setUp(PageState page) {
+	exporter = new HTMLExporter();
+	exporter.setParallel(false);
+	exporter.export(page.pageTree);
+	parallelExporter = new HTMLExporter();
+	parallelExporter.setParallel(true);
+	exportCache = new ExportCache();
+	editNodes = new int[page.nodes.length];
+	int editCount = 0;
+	for (int node : page.nodes) {
+	    if (page.pageTree.getTag(node).getAttributeCount() > 0) {
+		editNodes[editCount++] = node;
+	    }
+	}
+	editNodes = Arrays.copyOf(editNodes, editCount);
+    }
+
+    /**
+     * This method exports the whole page without copying any of it.
+     *
+     * @param page The page to export.
+     *
+     * @return The page text.
+     */
+    @Benchmark
+    public String fullExport(PageState page) {
+	exporter.invalidate();
+	return exporter.export(page.pageTree);
+    }
+
+    /**
+     * This method exports the whole page without copying any of it,
+     * splitting it up over the common fork/join pool if it's big enough.
+     *
+     * @param page The page to export.
+     *
+     * @return The page text.
+     */
+    @Benchmark
+    public String parallelFullExport(PageState page) {
+	parallelExporter.invalidate();
+	return parallelExporter.export(page.pageTree);
+    }
+
+    /**
+     * This method sets an attribute of one element and exports the page
+     * again, going through the elements with attributes in order so that
+     * edits land all over the page. The attribute keeps its value so the
+     * page stays the same from one operation to the next.
+     *
+     * @param page The page to export.
+     *
+     * @return The page text.
+     */
+    @Benchmark
+    public String incrementalExport(PageState page) {
+	int node = editNodes[nextEdit];
+	nextEdit = (nextEdit + 1) % editNodes.length;
+	HTMLTagPrototype tag = page.pageTree.getTag(node);
+	page.pageTree.setAttribute(node, tag.getAttributeName(0), tag.getAttributeValue(0));
+	return exporter.export(page.pageTree);
+    }
+
+    /**
+     * This method exports the page after an edit that changes it and
+     * checks it against the export cache. The edits add an underscore to
+     * an attribute, turn it into a dash and take that away again, so the
+     * page is never the same as the one before, and one in three edits
+     * leaves it as long as before, which the cache has to compare
+     * character by character to tell apart.
+     *
+     * @param page The page to export.
+     *
+     * @return true, since the page always has to be written.
+     */
+    @Benchmark
+    public boolean cachedChangedExport(PageState page) {
+	int node = editNodes[nextEdit];
+	nextEdit = (nextEdit + 1) % editNodes.length;
+	HTMLTagPrototype tag = page.pageTree.getTag(node);
+	String value = tag.getAttributeValue(0);
+	String editedValue;
+	if (value.endsWith("_")) {
+	    editedValue = value.substring(0, value.length() - 1) + "-";
+	} else if (value.endsWith("-")) {
+	    editedValue = value.substring(0, value.length() - 1);
+	} else {
+	    editedValue = value + "_";
+	}
+	page.pageTree.setAttribute(node, tag.getAttributeName(0), editedValue);
+	return exportCache.record(PAGE_PATH, exporter.export(page.pageTree));
+    }
+
+    /**
+     * This method exports the page when nothing has changed and checks it
+     * against the export cache, as happens when the workspace is reloaded
+     * without an edit.
+     *
+     * @param page The page to export.
+     *
+     * @return false, since the page never has to be written.
+     */
+    @Benchmark
+    public boolean cachedUnchangedExport(PageState page) {
+	return exportCache.record(PAGE_PATH, exporter.export(page.pageTree));
+    }
+}
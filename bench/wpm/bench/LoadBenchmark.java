@@ -0,0 +1,101 @@
+package wpm.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import wpm.data.DataManager;
+import wpm.data.PageTree;
+import wpm.file.BinaryPageFormat;
+
+/**
+ * This class measures loading a saved page, in both formats, as well
+ * as loading the tags file, which is done every time the application
+ * starts.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoadBenchmark {
+    // THE PAGE SAVED IN BOTH FORMATS
+    Path jsonFile;
+    Path binaryFile;
+
+    // THE PAGES ARE LOADED INTO THIS, SO THE GENERATED PAGE ISN'T TOUCHED
+    DataManager loadManager;
+
+    /**
+     * This method saves the page to load.
+     *
+     * @param page The page to save.
+     */
+    @Setup(Level.Trial)
+    public void setUp(PageState page) throws Exception {
+	jsonFile = Files.createTempFile("wpm_bench", ".json");
+	binaryFile = Files.createTempFile("wpm_bench", BinaryPageFormat.BINARY_PAGE_EXTENSION);
+	page.fileManager.writeData(page.dataManager, jsonFile.toString());
+	page.fileManager.writeData(page.dataManager, binaryFile.toString());
+	loadManager = new DataManager(page.fileManager);
+    }
+
+    /**
+     * This method removes the saved files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+	Files.deleteIfExists(jsonFile);
+	Files.deleteIfExists(binaryFile);
+    }
+
+    /**
+     * This method loads the page saved as JSON.
+     *
+     * @param page The page that was saved.
+     *
+     * @return The loaded page.
+     */
+    @Benchmark
+    public PageTree loadJSON(PageState page) throws IOException {
+	page.fileManager.loadData(loadManager, jsonFile.toString());
+	return loadManager.getPageTree();
+    }
+
+    /**
+     * This method loads the page saved in the binary page format, which
+     * is memory-mapped for large pages.
+     *
+     * @param page The page that was saved.
+     *
+     * @return The loaded page.
+     */
+    @Benchmark
+    public PageTree loadBinary(PageState page) throws IOException {
+	page.fileManager.loadData(loadManager, binaryFile.toString());
+	return loadManager.getPageTree();
+    }
+
+    /**
+     * This method loads the tags file and works out which tags may go
+     * where, just like the application does when it starts.
+     *
+     * @param page The page, whose file manager does the loading.
+     *
+     * @return The loaded data manager.
+     */
+    @Benchmark
+    public DataManager loadHTMLTags(PageState page) throws Exception {
+	return new DataManager(page.fileManager);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+package wpm.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import wpm.data.DataManager;
+import wpm.data.HTMLTagPrototype;
+import wpm.data.PageTree;
+import static wpm.data.HTMLTagPrototype.TAG_BODY;
+import static wpm.data.HTMLTagPrototype.TAG_TEXT;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class makes up pages for the benchmarks to work on. The pages
+ * are built from the tags in the tags file, placing each element only
+ * where the tags file says it may go, so they look like pages a user
+ * could have built. The same seed always gives the same page.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PageGenerator {
+    // THE WORDS TEXT AND ATTRIBUTE VALUES ARE MADE OF
+    static final String[] WORDS = {
+	"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+	"elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore"
+    };
+
+    // THE TAGS ARE CLONED FROM THE DATA MANAGER'S
+    DataManager dataManager;
+
+    // FOR EACH TAG THAT CAN HAVE CHILDREN, THE TAGS THAT MAY GO IN IT
+    HashMap<String, ArrayList<HTMLTagPrototype>> legalChildren;
+
+    /**
+     * Constructor for a generator that uses the tags of the data manager
+     * argument.
+     *
+     * @param initDataManager The data manager with the tags to use.
+     */
+    public PageGenerator(DataManager initDataManager) {
+	dataManager = initDataManager;
+	legalChildren = new HashMap();
+	for (HTMLTagPrototype parent : dataManager.getTags()) {
+	    addLegalChildren(parent);
+	}
+	addLegalChildren(new HTMLTagPrototype(TAG_BODY, true));
+    }
+
+    // HELPER METHOD FOR WORKING OUT WHICH TAGS MAY GO IN THE PARENT ARGUMENT
+    private void addLegalChildren(HTMLTagPrototype parent) {
+	ArrayList<HTMLTagPrototype> children = new ArrayList();
+	for (HTMLTagPrototype child : dataManager.getTags()) {
+	    if (dataManager.isLegalParent(child, parent)) {
+		children.add(child);
+	    }
+	}
+	legalChildren.put(parent.getTagName(), children);
+    }
+
+    /**
+     * This method makes a new page and makes it the data manager's page.
+     * Elements are added under randomly chosen open elements until the
+     * page has as many as asked for, or until no more elements may be
+     * added, which happens when the depth and fan out are too small.
+     *
+     * @param nodeCount The number of elements to add to the body.
+     *
+     * @param maxDepth How deep under the body elements may go.
+     *
+     * @param fanOut The most children any element may have.
+     *
+     * @param seed The seed for the random choices.
+     *
+     * @return The root of the new page.
+     */
+    public int generate(int nodeCount, int maxDepth, int fanOut, long seed) {
+	Random random = new Random(seed);
+	dataManager.reset();
+	PageTree pageTree = dataManager.getPageTree();
+	int root = pageTree.getRoot();
+	int body = NO_NODE;
+	for (int child = pageTree.getFirstChild(root); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+	    if (pageTree.getTag(child).getTagName().equals(TAG_BODY)) {
+		body = child;
+	    }
+	}
+
+	// THESE ARE THE ELEMENTS THAT MAY STILL GET CHILDREN, ALONG
+	// WITH HOW DEEP THEY ARE
+	ArrayList<Integer> openNodes = new ArrayList();
+	ArrayList<Integer> openDepths = new ArrayList();
+	openNodes.add(body);
+	openDepths.add(0);
+	int added = 0;
+	while ((added < nodeCount) && !openNodes.isEmpty()) {
+	    int openIndex = random.nextInt(openNodes.size());
+	    int parent = openNodes.get(openIndex);
+	    int depth = openDepths.get(openIndex);
+	    HTMLTagPrototype parentTag = pageTree.getTag(parent);
+	    ArrayList<HTMLTagPrototype> choices = legalChildren.get(parentTag.getTagName());
+	    if ((choices == null) || choices.isEmpty() || (pageTree.getChildCount(parent) >= fanOut)) {
+		// SWAP THE LAST ONE INTO ITS PLACE
+		int last = openNodes.size() - 1;
+		openNodes.set(openIndex, openNodes.get(last));
+		openDepths.set(openIndex, openDepths.get(last));
+		openNodes.remove(last);
+		openDepths.remove(last);
+		continue;
+	    }
+	    HTMLTagPrototype childTag = makeTag(choices.get(random.nextInt(choices.size())), added, random);
+	    int child = pageTree.appendChild(parent, childTag);
+	    added++;
+	    if (childTag.hasClosingTag() && (depth + 1 < maxDepth)) {
+		openNodes.add(child);
+		openDepths.add(depth + 1);
+	    }
+	}
+	dataManager.setCSSText(makeCSS(random));
+	return root;
+    }
+
+    // HELPER METHOD FOR CLONING A TAG AND FILLING IN ITS ATTRIBUTES
+    private HTMLTagPrototype makeTag(HTMLTagPrototype prototype, int number, Random random) {
+	HTMLTagPrototype tag = prototype.clone();
+	for (int i = 0; i < tag.getAttributeCount(); i++) {
+	    String name = tag.getAttributeName(i);
+	    if (tag.getTagName().equals(TAG_TEXT)) {
+		tag.addAttribute(name, makeWords(random, 3 + random.nextInt(20)));
+	    } else if (name.equals("id")) {
+		tag.addAttribute(name, "n" + number);
+	    } else {
+		tag.addAttribute(name, makeWords(random, 1 + random.nextInt(2)));
+	    }
+	}
+	return tag;
+    }
+
+    // HELPER METHOD FOR MAKING A CSS FILE WITH A RULE FOR EACH WORD
+    private String makeCSS(Random random) {
+	StringBuilder css = new StringBuilder();
+	for (String word : WORDS) {
+	    css.append('.').append(word).append(" {\n");
+	    css.append("    margin: ").append(random.nextInt(20)).append("px;\n");
+	    css.append("}\n");
+	}
+	return css.toString();
+    }
+
+    // HELPER METHOD FOR MAKING A RANDOM STRING OF WORDS
+    private String makeWords(Random random, int count) {
+	StringBuilder words = new StringBuilder();
+	for (int i = 0; i < count; i++) {
+	    if (i > 0) {
+		words.append(' ');
+	    }
+	    words.append(WORDS[random.nextInt(WORDS.length)]);
+	}
+	return words.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package wpm.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import wpm.data.DataManager;
+import wpm.data.PageTree;
+import wpm.file.FileManager;
+
+/**
+ * This class holds the generated page the benchmarks work on, along with
+ * the components they need. The size and shape of the page are set by
+ * the parameters, which can be changed from the command line with -p,
+ * like -p nodeCount=1000000.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+public class PageState {
+    // THE NUMBER OF ELEMENTS IN THE BODY
+    @Param({"1000", "100000"})
+    public int nodeCount;
+
+    // HOW DEEP THE ELEMENTS MAY GO UNDER THE BODY
+    @Param({"16"})
+    public int maxDepth;
+
+    // THE MOST CHILDREN AN ELEMENT MAY HAVE
+    @Param({"8"})
+    public int fanOut;
+
+    // THE SAME SEED GIVES THE SAME PAGE IN EVERY FORK
+    @Param({"1"})
+    public long seed;
+
+    // WHAT THE BENCHMARKS USE, JUST LIKE THE APPLICATION WOULD
+    public FileManager fileManager;
+    public DataManager dataManager;
+    public PageTree pageTree;
+    public int root;
+
+    // EVERY NODE OF THE PAGE IN PRE-ORDER
+    public int[] nodes;
+
+    /**
+     * This method makes the page, which is done only once per fork since
+     * the benchmarks either don't change it or only change attributes.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+	fileManager = new FileManager();
+	dataManager = new DataManager(fileManager);
+	root = new PageGenerator(dataManager).generate(nodeCount, maxDepth, fanOut, seed);
+	pageTree = dataManager.getPageTree();
+	nodes = new int[pageTree.size()];
+	addNodes(root, 0);
+    }
+
+    // HELPER METHOD FOR LISTING THE NODES OF A SUBTREE, STARTING AT
+    // index, RETURNING WHERE THE NEXT SUBTREE'S NODES GO
+    private int addNodes(int node, int index) {
+	nodes[index++] = node;
+	for (int child = pageTree.getFirstChild(node); child != PageTree.NO_NODE; child = pageTree.getNextSibling(child)) {
+	    index = addNodes(child, index);
+	}
+	return index;
+    }
+}
\ No newline at end of file
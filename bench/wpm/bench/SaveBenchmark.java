@@ -0,0 +1,70 @@
+package wpm.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import wpm.file.BinaryPageFormat;
+
+/**
+ * This class measures saving the page, in both formats. Each operation
+ * takes the snapshot of the page and writes the whole file.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SaveBenchmark {
+    // WHERE THE PAGES ARE SAVED TO
+    Path jsonFile;
+    Path binaryFile;
+
+    /**
+     * This method makes the files to save to.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+	jsonFile = Files.createTempFile("wpm_bench", ".json");
+	binaryFile = Files.createTempFile("wpm_bench", BinaryPageFormat.BINARY_PAGE_EXTENSION);
+    }
+
+    /**
+     * This method removes the saved files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+	Files.deleteIfExists(jsonFile);
+	Files.deleteIfExists(binaryFile);
+    }
+
+    /**
+     * This method saves the page as JSON.
+     *
+     * @param page The page to save.
+     */
+    @Benchmark
+    public void saveJSON(PageState page) throws IOException {
+	page.fileManager.writeData(page.dataManager, jsonFile.toString());
+    }
+
+    /**
+     * This method saves the page in the binary page format.
+     *
+     * @param page The page to save.
+     */
+    @Benchmark
+    public void saveBinary(PageState page) throws IOException {
+	page.fileManager.writeData(page.dataManager, binaryFile.toString());
+    }
+}
\ No newline at end of file
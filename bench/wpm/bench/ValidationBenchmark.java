@@ -0,0 +1,88 @@
+package wpm.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import wpm.data.HTMLTagPrototype;
+import wpm.data.TagSchema;
+
+/**
+ * This class measures the checks done when the user selects an element,
+ * which test every tag the user could add against the selected element.
+ * Each operation does this for every element of the page. The check
+ * against the tag's own list of legal parent names is measured too, for
+ * comparison, as is swapping in a tag schema when the tags file changes.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ValidationBenchmark {
+
+    /**
+     * This method tests every tag against every element using the data
+     * manager's legality matrix, like the workspace does.
+     *
+     * @param page The page whose elements are tested.
+     *
+     * @return The number of legal placements, so the work isn't skipped.
+     */
+    @Benchmark
+    public int legalityMatrix(PageState page) {
+	int legal = 0;
+	for (int node : page.nodes) {
+	    HTMLTagPrototype parent = page.pageTree.getTag(node);
+	    for (HTMLTagPrototype tag : page.dataManager.getTags()) {
+		if (page.dataManager.isLegalParent(tag, parent)) {
+		    legal++;
+		}
+	    }
+	}
+	return legal;
+    }
+
+    /**
+     * This method does the same tests by comparing tag names.
+     *
+     * @param page The page whose elements are tested.
+     *
+     * @return The number of legal placements, so the work isn't skipped.
+     */
+    @Benchmark
+    public int legalParentNames(PageState page) {
+	int legal = 0;
+	for (int node : page.nodes) {
+	    HTMLTagPrototype parent = page.pageTree.getTag(node);
+	    for (HTMLTagPrototype tag : page.dataManager.getTags()) {
+		if (tag.isLegalParent(parent.getTagName())) {
+		    legal++;
+		}
+	    }
+	}
+	return legal;
+    }
+
+    /**
+     * This method swaps in a new tag schema with the same types, like when
+     * the tags file is saved without changing them, which has to look at
+     * every element of the page but shouldn't change any of them.
+     *
+     * @param page The page whose elements are brought up to date.
+     *
+     * @return The new schema, so the work isn't skipped.
+     */
+    @Benchmark
+    public TagSchema schemaReload(PageState page) {
+	ArrayList<HTMLTagPrototype> prototypes = new ArrayList();
+	for (HTMLTagPrototype tag : page.dataManager.getTags()) {
+	    prototypes.add(tag.clone());
+	}
+	TagSchema newSchema = new TagSchema(prototypes, page.dataManager.getTagSchema());
+	page.dataManager.setTagSchema(newSchema);
+	return newSchema;
+    }
+}
@@ -0,0 +1,349 @@
+package wpm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import wpm.data.DataManager;
+import wpm.data.SiteModel;
+import wpm.data.SitePage;
+import wpm.file.BinaryPageFormat;
+import wpm.file.FileManager;
+import wpm.file.SiteExporter;
+
+/**
+ * This class exports saved pages to static sites without the user
+ * interface, such that a build can turn many pages into sites at once.
+ * Each page is exported to its own directory under the output directory,
+ * named after the page file, with the page in index.html and its CSS in
+ * css/home.css. The pages are exported in parallel, and the time taken by
+ * each, along with the overall rate, is reported when they're all done.
+ * Like the application, it must be run from the directory with the data
+ * folder in it, for example:
+ *
+ *     java -cp ... wpm.BatchExporter -out sites -threads 8 pages/
+ *
+ * Where a directory is given all the saved pages in it are exported.
+ *
+ * With -site the pages are instead exported together as one site, each to
+ * an HTML file named after it in the output directory. Pages whose CSS is
+ * the same as the first page's share one stylesheet. Exporting to the same
+ * directory again only writes the files whose content has changed, which
+ * is worked out from the manifest of hashes kept with the site.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class BatchExporter {
+    // THE COMMAND LINE OPTIONS
+    static final String OUTPUT_OPTION = "-out";
+    static final String THREADS_OPTION = "-threads";
+    static final String SITE_OPTION = "-site";
+    static final String JSON_PAGE_EXTENSION = ".json";
+    static final String PAGE_EXTENSION = ".html";
+
+    // WHAT WE EXIT WITH
+    static final int EXIT_FAILED_PAGES = 1;
+    static final int EXIT_USAGE = 2;
+
+    static final double NANOS_PER_MILLI = 1000000.0;
+    static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /**
+     * This class holds what happened when one page was exported.
+     */
+    static class PageResult {
+	Path page;
+	Path siteDir;
+	long nanos;
+	Exception error;
+    }
+
+    /**
+     * This class holds a page loaded for exporting as part of a site.
+     */
+    static class LoadedPage {
+	Path page;
+	SitePage sitePage;
+	Exception error;
+    }
+
+    /**
+     * This class has the components one worker thread uses to load and
+     * export its pages. They keep state from one page to the next, so
+     * each thread needs its own.
+     */
+    static class PageWorker {
+	FileManager fileManager;
+	DataManager dataManager;
+
+	PageWorker() throws Exception {
+	    fileManager = new FileManager();
+	    dataManager = new DataManager(fileManager);
+	}
+    }
+
+    // WHERE THE SITES GO AND HOW MANY PAGES ARE EXPORTED AT ONCE
+    Path outputDir;
+    int threads;
+
+    // THE PAGES TO EXPORT, IN THE ORDER THEY'LL BE REPORTED
+    ArrayList<Path> pages;
+
+    // EACH POOL THREAD MAKES ITS WORKER THE FIRST TIME IT'S NEEDED
+    ThreadLocal<PageWorker> workers;
+
+    /**
+     * Constructor for an exporter that exports the pages argument to
+     * sites in the outputDir argument.
+     *
+     * @param initOutputDir The directory to put the sites in.
+     *
+     * @param initThreads The number of pages to export at once.
+     *
+     * @param initPages The saved pages to export.
+     */
+    public BatchExporter(Path initOutputDir, int initThreads, ArrayList<Path> initPages) {
+	outputDir = initOutputDir;
+	threads = initThreads;
+	pages = initPages;
+	workers = new ThreadLocal();
+    }
+
+    /**
+     * This method exports all the pages and reports how it went.
+     *
+     * @return true if every page was exported, false otherwise.
+     */
+    public boolean exportAll() {
+	long startTime = System.nanoTime();
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	ArrayList<ForkJoinTask<PageResult>> tasks = new ArrayList();
+	for (Path page : pages) {
+	    tasks.add(pool.submit(() -> exportPage(page)));
+	}
+
+	// REPORT THE PAGES IN ORDER, AS THEY FINISH
+	int exported = 0;
+	for (ForkJoinTask<PageResult> task : tasks) {
+	    PageResult result = task.join();
+	    if (result.error == null) {
+		exported++;
+		System.out.println(String.format("%s -> %s: %.1f ms",
+			result.page, result.siteDir, result.nanos / NANOS_PER_MILLI));
+	    } else {
+		System.out.println(String.format("%s: FAILED (%s)", result.page, result.error));
+	    }
+	}
+	pool.shutdown();
+
+	double seconds = (System.nanoTime() - startTime) / NANOS_PER_SECOND;
+	System.out.println(String.format("Exported %d of %d pages in %.2f s, %.1f pages/s on %d threads",
+		exported, pages.size(), seconds, exported / seconds, threads));
+	return exported == pages.size();
+    }
+
+    /**
+     * This method exports all the pages together as one site, in the
+     * output directory, and reports how it went.
+     *
+     * @return true if every page was exported, false otherwise.
+     */
+    public boolean exportAsSite() {
+	long startTime = System.nanoTime();
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	ArrayList<ForkJoinTask<LoadedPage>> tasks = new ArrayList();
+	for (Path page : pages) {
+	    tasks.add(pool.submit(() -> loadPage(page)));
+	}
+
+	// THE FIRST PAGE'S CSS IS THE SITE'S, WHICH THE PAGES WITH THE SAME
+	// CSS SHARE RATHER THAN EACH HAVING A COPY
+	SiteModel site = new SiteModel();
+	int loaded = 0;
+	for (ForkJoinTask<LoadedPage> task : tasks) {
+	    LoadedPage result = task.join();
+	    if (result.error != null) {
+		System.out.println(String.format("%s: FAILED (%s)", result.page, result.error));
+		continue;
+	    }
+	    SitePage sitePage = result.sitePage;
+	    if (loaded == 0) {
+		site.setSharedCSSText(sitePage.getCSSText());
+	    }
+	    if (sitePage.getCSSText().equals(site.getSharedCSSText())) {
+		sitePage.useSharedCSS();
+	    }
+	    try {
+		site.addPage(sitePage);
+		loaded++;
+	    } catch (IllegalArgumentException iae) {
+		System.out.println(String.format("%s: FAILED (%s)", result.page, iae.getMessage()));
+	    }
+	}
+	double loadSeconds = (System.nanoTime() - startTime) / NANOS_PER_SECOND;
+
+	// AND NOW THE WHOLE SITE, ON THE SAME THREADS
+	boolean exported = true;
+	SiteExporter siteExporter = new SiteExporter(outputDir, pool);
+	try {
+	    siteExporter.exportSite(site);
+	} catch (IOException ioe) {
+	    System.out.println(String.format("%s: FAILED (%s)", outputDir, ioe));
+	    exported = false;
+	}
+	pool.shutdown();
+
+	double seconds = (System.nanoTime() - startTime) / NANOS_PER_SECOND;
+	System.out.println(String.format("Loaded %d of %d pages in %.2f s, wrote %d files and left %d unchanged in %.2f s on %d threads",
+		loaded, pages.size(), loadSeconds, siteExporter.getFilesWritten(), siteExporter.getFilesUnchanged(),
+		seconds - loadSeconds, threads));
+	return exported && (loaded == pages.size());
+    }
+
+    // HELPER METHOD THAT LOADS ONE PAGE OF A SITE, WHICH IS RUN ON ONE OF
+    // THE POOL'S THREADS
+    private LoadedPage loadPage(Path page) {
+	LoadedPage result = new LoadedPage();
+	result.page = page;
+	try {
+	    PageWorker worker = getWorker();
+	    result.sitePage = worker.fileManager.loadSitePage(worker.dataManager, page.toString(), getSiteName(page));
+	} catch (Exception e) {
+	    result.error = e;
+	}
+	return result;
+    }
+
+    // HELPER METHOD THAT LOADS AND EXPORTS ONE PAGE, WHICH IS RUN ON
+    // ONE OF THE POOL'S THREADS
+    private PageResult exportPage(Path page) {
+	PageResult result = new PageResult();
+	result.page = page;
+	result.siteDir = outputDir.resolve(getSiteName(page));
+	long startTime = System.nanoTime();
+	try {
+	    PageWorker worker = getWorker();
+
+	    // LOADING REPLACES THE LAST PAGE'S TREE, WHICH THE EXPORTER NOTICES
+	    worker.fileManager.loadData(worker.dataManager, page.toString());
+	    worker.fileManager.exportSite(worker.dataManager, result.siteDir.toString());
+	} catch (Exception e) {
+	    result.error = e;
+	}
+	result.nanos = System.nanoTime() - startTime;
+	return result;
+    }
+
+    // HELPER METHOD FOR GETTING THE CALLING POOL THREAD'S WORKER
+    private PageWorker getWorker() throws Exception {
+	PageWorker worker = workers.get();
+	if (worker == null) {
+	    worker = new PageWorker();
+	    workers.set(worker);
+	}
+	return worker;
+    }
+
+    // HELPER METHOD FOR GETTING THE NAME OF A PAGE'S SITE DIRECTORY, OR
+    // OF THE PAGE IN A SITE, WHICH IS THE PAGE'S FILE NAME WITHOUT ITS
+    // EXTENSION
+    private static String getSiteName(Path page) {
+	String fileName = page.getFileName().toString();
+	int dot = fileName.lastIndexOf('.');
+	return (dot > 0) ? fileName.substring(0, dot) : fileName;
+    }
+
+    // HELPER METHOD FOR TESTING WHETHER A FILE IS A SAVED PAGE
+    private static boolean isPageFile(Path file) {
+	String fileName = file.getFileName().toString().toLowerCase();
+	return Files.isRegularFile(file)
+		&& (fileName.endsWith(JSON_PAGE_EXTENSION) || fileName.endsWith(BinaryPageFormat.BINARY_PAGE_EXTENSION));
+    }
+
+    // HELPER METHOD FOR ADDING THE PAGE ARGUMENT, OR ALL THE PAGES IN IT
+    // IF IT'S A DIRECTORY, TO THE LIST OF PAGES TO EXPORT
+    private static void addPages(Path path, ArrayList<Path> pages) throws IOException {
+	if (!Files.isDirectory(path)) {
+	    pages.add(path);
+	    return;
+	}
+	ArrayList<Path> dirPages = new ArrayList();
+	try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+	    for (Path file : stream) {
+		if (isPageFile(file)) {
+		    dirPages.add(file);
+		}
+	    }
+	}
+	Collections.sort(dirPages);
+	pages.addAll(dirPages);
+    }
+
+    // HELPER METHOD FOR TELLING THE USER HOW TO RUN US
+    private static void exitWithUsage(String problem) {
+	System.err.println(problem);
+	System.err.println("Usage: java wpm.BatchExporter " + OUTPUT_OPTION + " <output directory> ["
+		+ THREADS_OPTION + " <count>] [" + SITE_OPTION + "] <page file or directory>...");
+	System.exit(EXIT_USAGE);
+    }
+
+    /**
+     * This is where batch exporting begins. Note that JavaFX is never
+     * started, no window is opened.
+     *
+     * @param args The options followed by the pages to export.
+     */
+    public static void main(String[] args) throws IOException {
+	Locale.setDefault(Locale.US);
+	Path outputDir = null;
+	int threads = Runtime.getRuntime().availableProcessors();
+	boolean asSite = false;
+	ArrayList<Path> pages = new ArrayList();
+	for (int i = 0; i < args.length; i++) {
+	    if (args[i].equals(OUTPUT_OPTION) && (i + 1 < args.length)) {
+		outputDir = Paths.get(args[++i]);
+	    } else if (args[i].equals(THREADS_OPTION) && (i + 1 < args.length)) {
+		try {
+		    threads = Integer.parseInt(args[++i]);
+		} catch (NumberFormatException nfe) {
+		    exitWithUsage("Not a thread count: " + args[i]);
+		}
+		if (threads < 1) {
+		    exitWithUsage("Not a thread count: " + args[i]);
+		}
+	    } else if (args[i].equals(SITE_OPTION)) {
+		asSite = true;
+	    } else {
+		addPages(Paths.get(args[i]), pages);
+	    }
+	}
+	if (outputDir == null) {
+	    exitWithUsage("No output directory given");
+	}
+	if (pages.isEmpty()) {
+	    exitWithUsage("No pages to export");
+	}
+
+	// TWO PAGES WITH THE SAME NAME WOULD BE EXPORTED TO THE SAME PLACE
+	HashSet<String> siteNames = new HashSet();
+	for (Path page : pages) {
+	    if (!siteNames.add(getSiteName(page))) {
+		exitWithUsage("More than one page would be exported to " + outputDir + File.separator + getSiteName(page)
+			+ (asSite ? PAGE_EXTENSION : ""));
+	    }
+	}
+
+	BatchExporter batchExporter = new BatchExporter(outputDir, threads, pages);
+	boolean allExported = asSite ? batchExporter.exportAsSite() : batchExporter.exportAll();
+	System.exit(allExported ? 0 : EXIT_FAILED_PAGES);
+    }
+}
@@ -26,6 +26,8 @@ public enum PropertyType {
     REMOVE_ELEMENT_ERROR_TITLE,
     REMOVAL_VERIFICATION_MESSAGE,
     REMOVAL_VERIFICATION_TITLE,
+    DUPLICATE_COUNT_MESSAGE,
+    DUPLICATE_COUNT_TITLE,
     ILLEGAL_NODE_REMOVAL_ERROR_MESSAGE, 
     ILLEGAL_NODE_REMOVAL_ERROR_TITLE,
     TEMP_PAGE_LOAD_ERROR_MESSAGE,
@@ -33,5 +35,15 @@ public enum PropertyType {
     CSS_EXPORT_ERROR_MESSAGE,
     CSS_EXPORT_ERROR_TITLE,
     UPDATE_ERROR_MESSAGE,
-    UPDATE_ERROR_TITLE
+    UPDATE_ERROR_TITLE,
+    EXPORT_ERROR_MESSAGE,
+    EXPORT_ERROR_TITLE,
+    SAVE_ERROR_MESSAGE,
+    SAVE_ERROR_TITLE,
+    RECOVER_EDITS_MESSAGE,
+    RECOVER_EDITS_TITLE,
+    TAGS_RELOAD_ERROR_MESSAGE,
+    TAGS_RELOAD_ERROR_TITLE,
+    EDIT_COALESCING_WINDOW,
+    UNDO_MEMORY_LIMIT
 }
\ No newline at end of file
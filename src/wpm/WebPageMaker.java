@@ -2,6 +2,7 @@ package wpm;
 
 import java.util.Locale;
 import static javafx.application.Application.launch;
+import javafx.stage.Stage;
 import properties_manager.PropertiesManager;
 import saf.components.AppComponentsBuilder;
 import saf.components.AppDataComponent;
@@ -14,6 +15,7 @@ import static wpm.PropertyType.UPDATE_ERROR_TITLE;
 import wpm.data.DataManager;
 import wpm.file.FileManager;
 import wpm.gui.Workspace;
+import wpm.perf.StartupTimer;
 
 /**
  * This class serves as the application class for our Web Page Maker program. 
@@ -21,13 +23,40 @@ import wpm.gui.Workspace;
  * the Simple App Framework. This app starts by loading all the app-specific
  * messages like icon files and tooltips and other settings, then the full 
  * User Interface is loaded using those settings. Note that this is a 
- * JavaFX application.
+ * JavaFX application. The tags file is read on a thread of its own while
+ * the settings are loaded, and each phase of starting up is timed.
  * 
  * @author Richard McKenna
  * @author Zhe Lin
  * @version 1.0
  */
 public class WebPageMaker extends AppTemplate {
+    // THIS IS MADE BEFORE THE FRAMEWORK ASKS FOR IT, SO THAT IT CAN START
+    // READING THE TAGS RIGHT AWAY
+    FileManager fileManager;
+    
+    // WHEN WE WERE STARTED, THE FRAMEWORK LOADS THE SETTINGS BEFORE IT
+    // ASKS FOR ANY OF OUR COMPONENTS
+    long startTime;
+
+    /**
+     * This method starts the application, reading the tags file while the
+     * framework loads the settings and builds the user interface, and
+     * logging how long it took before the window could be used.
+     * 
+     * @param primaryStage The window for the application.
+     */
+    @Override
+    public void start(Stage primaryStage) {
+	StartupTimer timer = StartupTimer.getTimer();
+	startTime = timer.startTime();
+	fileManager = new FileManager();
+	fileManager.preloadHTMLTags(DataManager.TAG_TYPES_FILE_PATH);
+	super.start(primaryStage);
+	timer.record("window", startTime);
+	timer.markInteractive();
+    }
+
     /**
      * This builder provides methods for properly setting up all
      * the custom objects needed to run this application. Note that
@@ -52,7 +81,11 @@ public class WebPageMaker extends AppTemplate {
 	    @Override
 	    public AppDataComponent buildDataComponent() throws Exception {
                 try{
-                    return new DataManager(WebPageMaker.this);
+                    StartupTimer timer = StartupTimer.getTimer();
+                    long startTime = timer.startTime();
+                    DataManager dataManager = new DataManager(WebPageMaker.this);
+                    timer.record("data", startTime);
+                    return dataManager;
                 } catch(Exception e){
                     AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
                     PropertiesManager props = PropertiesManager.getPropertiesManager();
@@ -73,7 +106,12 @@ public class WebPageMaker extends AppTemplate {
 	    @Override
 	    public AppFileComponent buildFileComponent() throws Exception {
 		try{
-                    return new FileManager();
+                    // IT'S ALREADY BEEN MADE IF WE WERE STARTED AS AN APP
+                    if (fileManager == null) {
+                        return new FileManager();
+                    }
+                    StartupTimer.getTimer().record("settings", startTime);
+                    return fileManager;
                 } catch(Exception e){
                     AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
                     PropertiesManager props = PropertiesManager.getPropertiesManager();
@@ -94,7 +132,11 @@ public class WebPageMaker extends AppTemplate {
 	    @Override
 	    public AppWorkspaceComponent buildWorkspaceComponent() throws Exception {
 		try{
-                    return new Workspace(WebPageMaker.this);
+                    StartupTimer timer = StartupTimer.getTimer();
+                    long startTime = timer.startTime();
+                    Workspace workspace = new Workspace(WebPageMaker.this);
+                    timer.record("workspace", startTime);
+                    return workspace;
                 } catch(Exception e){
                     AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
                     PropertiesManager props = PropertiesManager.getPropertiesManager();
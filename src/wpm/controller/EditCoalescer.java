@@ -0,0 +1,152 @@
+package wpm.controller;
+
+import java.util.LinkedHashMap;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+/**
+ * This class gathers up the bursts of edits produced as the user types into
+ * the attribute and CSS text fields so that the page only gets exported and
+ * refreshed once per burst, rather than once per keystroke. The first edit
+ * of a burst starts a timer and every edit received before it goes off is
+ * folded into the same batch, with the latest value winning for each node's
+ * attribute and for the CSS. When the timer goes off the whole batch is
+ * handed to the controller.
+ *
+ * Note that the timer runs on the JavaFX application thread, so no locking
+ * is needed.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class EditCoalescer {
+    // HOW LONG WE WAIT FOR MORE EDITS, IN MILLISECONDS, IF NOTHING IS SPECIFIED
+    public static final int DEFAULT_WINDOW = 100;
+
+    // THE CONTROLLER THAT WILL APPLY EACH BATCH
+    PageEditController pageEditController;
+
+    // GOES OFF AT THE END OF EACH BURST
+    PauseTransition timer;
+    boolean timerRunning;
+
+    // THE LATEST VALUE OF EVERY ATTRIBUTE EDITED DURING THIS BURST,
+    // FOR EACH NODE, IN THE ORDER THEY WERE FIRST EDITED
+    LinkedHashMap<Integer, LinkedHashMap<String, String>> pendingAttributes;
+
+    // THE LATEST CSS, OR null IF IT HASN'T BEEN EDITED THIS BURST
+    String pendingCSS;
+
+    // FOR KEEPING TRACK OF HOW MUCH WORK WE'RE SAVING
+    long eventsReceived;
+    long flushesPerformed;
+
+    /**
+     * Constructor for initializing the coalescer, which starts with
+     * nothing pending.
+     *
+     * @param initPageEditController The controller to send batches of
+     * edits to.
+     *
+     * @param windowMillis How long after the first edit of a burst
+     * to wait before flushing, in milliseconds.
+     */
+    public EditCoalescer(PageEditController initPageEditController, int windowMillis) {
+	pageEditController = initPageEditController;
+	pendingAttributes = new LinkedHashMap();
+	timer = new PauseTransition(Duration.millis(windowMillis));
+	timer.setOnFinished(e -> {
+	    timerRunning = false;
+	    flush();
+	});
+    }
+
+    /**
+     * Mutator method for changing how long bursts of edits are gathered for.
+     *
+     * @param windowMillis The new window, in milliseconds.
+     */
+    public void setWindow(int windowMillis) {
+	timer.setDuration(Duration.millis(windowMillis));
+    }
+
+    /**
+     * This method records that an attribute of a node in the tree has
+     * been changed.
+     *
+     * @param node The node whose attribute was changed.
+     *
+     * @param attributeName The name of the attribute that was changed.
+     *
+     * @param attributeValue The new value of the attribute.
+     */
+    public void attributeChanged(int node, String attributeName, String attributeValue) {
+	LinkedHashMap<String, String> nodeAttributes = pendingAttributes.get(node);
+	if (nodeAttributes == null) {
+	    nodeAttributes = new LinkedHashMap();
+	    pendingAttributes.put(node, nodeAttributes);
+	}
+	nodeAttributes.put(attributeName, attributeValue);
+	received();
+    }
+
+    /**
+     * This method records that the CSS has been changed.
+     *
+     * @param cssText The full new text of the CSS.
+     */
+    public void cssChanged(String cssText) {
+	pendingCSS = cssText;
+	received();
+    }
+
+    /**
+     * This method immediately hands everything pending to the controller,
+     * which should be done before anything else changes the tree.
+     */
+    public void flush() {
+	if (timerRunning) {
+	    timer.stop();
+	    timerRunning = false;
+	}
+	if (pendingAttributes.isEmpty() && (pendingCSS == null)) {
+	    return;
+	}
+
+	// START A NEW BATCH BEFORE PROCESSING THIS ONE
+	LinkedHashMap<Integer, LinkedHashMap<String, String>> attributeEdits = pendingAttributes;
+	String cssEdit = pendingCSS;
+	pendingAttributes = new LinkedHashMap();
+	pendingCSS = null;
+	flushesPerformed++;
+	pageEditController.processEdits(attributeEdits, cssEdit);
+    }
+
+    /**
+     * Accessor method for getting the number of edits received so far.
+     *
+     * @return The number of attribute and CSS edits received.
+     */
+    public long getEventsReceived() {
+	return eventsReceived;
+    }
+
+    /**
+     * Accessor method for getting the number of batches sent to the
+     * controller so far, each of which costs one export and refresh.
+     *
+     * @return The number of flushes performed.
+     */
+    public long getFlushesPerformed() {
+	return flushesPerformed;
+    }
+
+    // EVERY EDIT EITHER STARTS A NEW BURST OR JOINS THE CURRENT ONE
+    private void received() {
+	eventsReceived++;
+	if (!timerRunning) {
+	    timerRunning = true;
+	    timer.playFromStart();
+	}
+    }
+}
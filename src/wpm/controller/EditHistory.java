@@ -0,0 +1,561 @@
+package wpm.controller;
+
+import java.util.ArrayDeque;
+import wpm.data.CSSBuffer;
+import wpm.data.DataManager;
+import wpm.data.HTMLTagPrototype;
+import wpm.data.PageFragment;
+import wpm.data.PageTree;
+import wpm.file.EditJournal;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class makes the edits to the page that the user can undo, and keeps
+ * a log of them so that they can be undone and redone. Rather than copying
+ * the page, each edit is logged as a small record of what changed, which
+ * is undone by applying its inverse, so undoing and redoing cost as much
+ * as the edit itself. Elements removed from the page are only detached
+ * from the tree, so that putting them back gives the very same nodes and
+ * later records that mention them stay valid.
+ *
+ * Keystrokes typed into the same attribute, or into the same part of the
+ * CSS, are merged into one record until endMerge is called. The records
+ * are kept until they use more than the memory limit, at which point the
+ * oldest are dropped. Every edit, including those made by undoing and
+ * redoing, is also written to the edit journal, if there is one.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class EditHistory implements PageTree.Listener {
+    // HOW MUCH MEMORY THE RECORDS MAY USE IF NOTHING IS SPECIFIED
+    public static final long DEFAULT_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    // ROUGHLY WHAT A RECORD, ONE OF ITS CHARACTERS, AND A NODE IT KEEPS
+    // OUT OF THE TREE COST IN MEMORY
+    static final int EDIT_SIZE = 48;
+    static final int CHAR_SIZE = 2;
+    static final int NODE_SIZE = 96;
+
+    /**
+     * This class is one record in the log.
+     */
+    public abstract class Edit {
+	// TRUE WHILE THE EDIT IS UNDONE
+	boolean undone;
+
+	abstract void undo();
+
+	abstract void redo();
+
+	// ROUGHLY HOW MUCH MEMORY THE RECORD USES
+	abstract long getSize();
+
+	// CALLED WHEN THE RECORD IS DROPPED FROM THE LOG
+	void discard() {
+	}
+    }
+
+    /**
+     * This class records one attribute being set, or a run of keystrokes
+     * setting the same attribute.
+     */
+    class AttributeEdit extends Edit {
+	int node;
+	String attributeName;
+	String oldValue;
+	String newValue;
+
+	@Override
+	void undo() {
+	    pageTree.setAttribute(node, attributeName, oldValue);
+	}
+
+	@Override
+	void redo() {
+	    pageTree.setAttribute(node, attributeName, newValue);
+	}
+
+	@Override
+	long getSize() {
+	    return EDIT_SIZE + CHAR_SIZE * (length(oldValue) + length(newValue));
+	}
+    }
+
+    /**
+     * This class records an element being added or removed. Whichever
+     * way the element is out of the tree, it is kept detached.
+     */
+    class ElementEdit extends Edit {
+	int node;
+	int parent;
+	int index;
+	boolean added;
+	int keptNodes;
+
+	@Override
+	void undo() {
+	    if (added) {
+		pageTree.detachNode(node);
+	    } else {
+		pageTree.attachNode(parent, index, node);
+	    }
+	}
+
+	@Override
+	void redo() {
+	    if (added) {
+		pageTree.attachNode(parent, index, node);
+	    } else {
+		pageTree.detachNode(node);
+	    }
+	}
+
+	@Override
+	long getSize() {
+	    return EDIT_SIZE + NODE_SIZE * keptNodes;
+	}
+
+	@Override
+	void discard() {
+	    // ONCE NOTHING CAN PUT THE ELEMENT BACK ITS NODES CAN BE REUSED
+	    if (added == undone) {
+		pageTree.discardNode(node);
+	    }
+	}
+    }
+
+    /**
+     * This class records copies of a fragment being added next to each
+     * other, all of which are undone and redone together. Whichever way
+     * they are out of the tree, they are kept detached.
+     */
+    class PasteEdit extends Edit {
+	int[] nodes;
+	int parent;
+	int index;
+	int keptNodes;
+
+	@Override
+	void undo() {
+	    for (int i = nodes.length - 1; i >= 0; i--) {
+		pageTree.detachNode(nodes[i]);
+	    }
+	}
+
+	@Override
+	void redo() {
+	    for (int i = 0; i < nodes.length; i++) {
+		pageTree.attachNode(parent, index + i, nodes[i]);
+	    }
+	}
+
+	@Override
+	long getSize() {
+	    return EDIT_SIZE + NODE_SIZE * keptNodes;
+	}
+
+	@Override
+	void discard() {
+	    if (undone) {
+		for (int node : nodes) {
+		    pageTree.discardNode(node);
+		}
+	    }
+	}
+    }
+
+    /**
+     * This class records one change to the CSS as the text that was
+     * replaced and the text that replaced it, rather than the whole CSS.
+     */
+    class CSSEdit extends Edit {
+	int offset;
+	String removedText;
+	String insertedText;
+
+	@Override
+	void undo() {
+	    replaceCSS(offset, insertedText.length(), removedText);
+	}
+
+	@Override
+	void redo() {
+	    replaceCSS(offset, removedText.length(), insertedText);
+	}
+
+	@Override
+	long getSize() {
+	    return EDIT_SIZE + CHAR_SIZE * (removedText.length() + insertedText.length());
+	}
+    }
+
+    // THE PAGE THE EDITS ARE MADE TO
+    DataManager dataManager;
+    PageTree pageTree;
+
+    // THE RECORDS THAT CAN BE UNDONE, OLDEST FIRST, AND THOSE THAT CAN
+    // BE REDONE, THE NEXT ONE TO REDO LAST
+    ArrayDeque<Edit> undoEdits;
+    ArrayDeque<Edit> redoEdits;
+
+    // THE JOURNAL THAT KEEPS THE EDITS ON DISK, OR null IF THERE IS NONE
+    EditJournal editJournal;
+
+    // TRUE WHILE THE NEXT EDIT MAY BE MERGED INTO THE LAST RECORD
+    boolean merging;
+
+    // HOW MUCH MEMORY THE RECORDS USE, AND HOW MUCH THEY MAY USE
+    long memoryUsed;
+    long memoryLimit;
+
+    /**
+     * Constructor for a history of the edits made to the data manager's
+     * page, which starts out empty.
+     *
+     * @param initDataManager The data manager with the page being edited.
+     *
+     * @param initMemoryLimit Roughly how many bytes the records may use.
+     */
+    public EditHistory(DataManager initDataManager, long initMemoryLimit) {
+	dataManager = initDataManager;
+	pageTree = dataManager.getPageTree();
+	memoryLimit = initMemoryLimit;
+	undoEdits = new ArrayDeque();
+	redoEdits = new ArrayDeque();
+	pageTree.addListener(this);
+    }
+
+    /**
+     * Mutator method for setting the journal every edit is written to.
+     * Note that the journal records changes to the tree by listening to
+     * it, this history tells it about the CSS.
+     *
+     * @param initEditJournal The journal, may be null.
+     */
+    public void setEditJournal(EditJournal initEditJournal) {
+	editJournal = initEditJournal;
+    }
+
+    /**
+     * This method adds a new element to the end of a node's children.
+     *
+     * @param parent The node to add the element to.
+     *
+     * @param tag The tag for the new element.
+     *
+     * @return The new node.
+     */
+    public int addElement(int parent, HTMLTagPrototype tag) {
+	beforeEdit();
+	ElementEdit edit = new ElementEdit();
+	edit.node = pageTree.appendChild(parent, tag);
+	edit.parent = parent;
+	edit.index = pageTree.getChildCount(parent) - 1;
+	edit.added = true;
+	edit.keptNodes = 1;
+	record(edit);
+	return edit.node;
+    }
+
+    /**
+     * This method adds copies of a fragment of a page to a node's
+     * children as one edit, such that they are undone together.
+     *
+     * @param parent The node to add the copies to.
+     *
+     * @param index Where among the parent's children to put the first
+     * copy, the others follow it.
+     *
+     * @param fragment The fragment to copy.
+     *
+     * @param copies How many copies to add.
+     *
+     * @return The new nodes for the copies, in order.
+     */
+    public int[] pasteElements(int parent, int index, PageFragment fragment, int copies) {
+	beforeEdit();
+	PasteEdit edit = new PasteEdit();
+	edit.nodes = new int[copies];
+	edit.parent = parent;
+	edit.index = index;
+	edit.keptNodes = fragment.size() * copies;
+	for (int i = 0; i < copies; i++) {
+	    edit.nodes[i] = pageTree.buildSubtree(fragment);
+	    pageTree.attachNode(parent, index + i, edit.nodes[i]);
+	}
+	record(edit);
+	return edit.nodes;
+    }
+
+    /**
+     * This method removes an element, along with everything in it, from
+     * the page.
+     *
+     * @param node The node to remove.
+     */
+    public void removeElement(int node) {
+	beforeEdit();
+	ElementEdit edit = new ElementEdit();
+	edit.node = node;
+	edit.parent = pageTree.getParent(node);
+	edit.index = pageTree.indexOf(node);
+	edit.added = false;
+	edit.keptNodes = countNodes(node);
+	pageTree.detachNode(node);
+	record(edit);
+    }
+
+    /**
+     * This method sets the value of one of a node's attributes.
+     *
+     * @param node The node to change.
+     *
+     * @param attributeName The name of the attribute.
+     *
+     * @param attributeValue The new value of the attribute.
+     */
+    public void setAttribute(int node, String attributeName, String attributeValue) {
+	beforeEdit();
+	String oldValue = pageTree.getTag(node).getAttribute(attributeName);
+	pageTree.setAttribute(node, attributeName, attributeValue);
+
+	// MORE TYPING INTO THE SAME ATTRIBUTE JOINS THE LAST RECORD
+	Edit lastEdit = merging ? undoEdits.peekLast() : null;
+	if (lastEdit instanceof AttributeEdit) {
+	    AttributeEdit attributeEdit = (AttributeEdit) lastEdit;
+	    if ((attributeEdit.node == node) && attributeEdit.attributeName.equals(attributeName)) {
+		memoryUsed -= attributeEdit.getSize();
+		attributeEdit.newValue = attributeValue;
+		memoryUsed += attributeEdit.getSize();
+		evict();
+		return;
+	    }
+	}
+	AttributeEdit edit = new AttributeEdit();
+	edit.node = node;
+	edit.attributeName = attributeName;
+	edit.oldValue = oldValue;
+	edit.newValue = attributeValue;
+	record(edit);
+    }
+
+    /**
+     * This method replaces the CSS with the cssText argument, logging
+     * only the part of it that changed.
+     *
+     * @param cssText The full new text of the CSS.
+     */
+    public void setCSSText(String cssText) {
+	beforeEdit();
+	CSSBuffer oldText = dataManager.getCSSBuffer();
+
+	// THE CHANGE IS WHATEVER IS BETWEEN THE COMMON PREFIX AND SUFFIX
+	int maxCommon = Math.min(oldText.length(), cssText.length());
+	int prefix = 0;
+	while ((prefix < maxCommon) && (oldText.charAt(prefix) == cssText.charAt(prefix))) {
+	    prefix++;
+	}
+	int suffix = 0;
+	while ((suffix < maxCommon - prefix)
+		&& (oldText.charAt(oldText.length() - 1 - suffix) == cssText.charAt(cssText.length() - 1 - suffix))) {
+	    suffix++;
+	}
+	int removedEnd = oldText.length() - suffix;
+	int insertedEnd = cssText.length() - suffix;
+	if ((prefix == removedEnd) && (prefix == insertedEnd)) {
+	    return;
+	}
+
+	// ONLY THE CHANGED PART OF THE BUFFER IS TOUCHED
+	String removedText = oldText.substring(prefix, removedEnd);
+	String insertedText = cssText.substring(prefix, insertedEnd);
+	dataManager.replaceCSSText(prefix, removedText.length(), insertedText);
+	if (editJournal != null) {
+	    editJournal.cssReplaced(prefix, removedText.length(), insertedText);
+	}
+
+	// A CHANGE TOUCHING THE PART THE LAST RECORD CHANGED JOINS IT, ANY
+	// OLD TEXT THE MERGED RECORD NEEDS IS PART OF WHAT WAS JUST REMOVED
+	Edit lastEdit = merging ? undoEdits.peekLast() : null;
+	if (lastEdit instanceof CSSEdit) {
+	    CSSEdit cssEdit = (CSSEdit) lastEdit;
+	    int lastEnd = cssEdit.offset + cssEdit.insertedText.length();
+	    if ((prefix <= lastEnd) && (removedEnd >= cssEdit.offset)) {
+		int start = Math.min(prefix, cssEdit.offset);
+		int end = Math.max(removedEnd, lastEnd);
+		memoryUsed -= cssEdit.getSize();
+		cssEdit.removedText = removedText.substring(0, cssEdit.offset - start)
+			+ cssEdit.removedText
+			+ removedText.substring(removedText.length() - (end - lastEnd));
+		cssEdit.insertedText = cssText.substring(start, end - removedEnd + insertedEnd);
+		cssEdit.offset = start;
+		memoryUsed += cssEdit.getSize();
+		evict();
+		return;
+	    }
+	}
+	CSSEdit edit = new CSSEdit();
+	edit.offset = prefix;
+	edit.removedText = removedText;
+	edit.insertedText = insertedText;
+	record(edit);
+    }
+
+    /**
+     * This method makes sure the next edit starts a new record rather
+     * than being merged into the last one. It should be called whenever
+     * the user moves on to something else, like another element.
+     */
+    public void endMerge() {
+	merging = false;
+    }
+
+    /**
+     * Accessor method for testing whether there is an edit to undo.
+     *
+     * @return true if undo would do something, false otherwise.
+     */
+    public boolean canUndo() {
+	return !undoEdits.isEmpty();
+    }
+
+    /**
+     * Accessor method for testing whether there is an edit to redo.
+     *
+     * @return true if redo would do something, false otherwise.
+     */
+    public boolean canRedo() {
+	return !redoEdits.isEmpty();
+    }
+
+    /**
+     * This method undoes the latest edit that hasn't been undone.
+     *
+     * @return The edit that was undone, or null if there was none.
+     */
+    public Edit undo() {
+	Edit edit = undoEdits.pollLast();
+	if (edit != null) {
+	    merging = false;
+	    beforeEdit();
+	    edit.undo();
+	    edit.undone = true;
+	    redoEdits.addLast(edit);
+	}
+	return edit;
+    }
+
+    /**
+     * This method redoes the latest edit that was undone.
+     *
+     * @return The edit that was redone, or null if there was none.
+     */
+    public Edit redo() {
+	Edit edit = redoEdits.pollLast();
+	if (edit != null) {
+	    merging = false;
+	    beforeEdit();
+	    edit.redo();
+	    edit.undone = false;
+	    undoEdits.addLast(edit);
+	}
+	return edit;
+    }
+
+    /**
+     * This method forgets every edit, after which there is nothing to
+     * undo or redo.
+     */
+    public void clear() {
+	while (!undoEdits.isEmpty()) {
+	    undoEdits.pollFirst().discard();
+	}
+	clearRedo();
+	memoryUsed = 0;
+	merging = false;
+    }
+
+    /**
+     * Accessor method for getting roughly how much memory the records
+     * currently use.
+     *
+     * @return The memory used, in bytes.
+     */
+    public long getMemoryUsed() {
+	return memoryUsed;
+    }
+
+    /**
+     * When the whole page is replaced the nodes the records mention are
+     * gone, so the records are simply dropped.
+     */
+    @Override
+    public void pageReplaced() {
+	undoEdits.clear();
+	redoEdits.clear();
+	memoryUsed = 0;
+	merging = false;
+    }
+
+    // HELPER METHOD FOR ADDING A NEW RECORD, WHICH MEANS THE UNDONE
+    // EDITS CAN'T BE REDONE ANYMORE
+    private void record(Edit edit) {
+	clearRedo();
+	undoEdits.addLast(edit);
+	memoryUsed += edit.getSize();
+	merging = true;
+	evict();
+    }
+
+    // HELPER METHOD FOR DROPPING THE EDITS THAT CAN BE REDONE
+    private void clearRedo() {
+	while (!redoEdits.isEmpty()) {
+	    Edit edit = redoEdits.pollFirst();
+	    memoryUsed -= edit.getSize();
+	    edit.discard();
+	}
+    }
+
+    // HELPER METHOD FOR DROPPING THE OLDEST RECORDS UNTIL WE'RE UNDER THE
+    // MEMORY LIMIT, ALWAYS KEEPING THE LATEST ONE
+    private void evict() {
+	while ((memoryUsed > memoryLimit) && (undoEdits.size() > 1)) {
+	    Edit edit = undoEdits.pollFirst();
+	    memoryUsed -= edit.getSize();
+	    edit.discard();
+	}
+    }
+
+    // HELPER METHOD FOR REPLACING length CHARACTERS OF THE CSS AT offset
+    private void replaceCSS(int offset, int length, String text) {
+	dataManager.replaceCSSText(offset, length, text);
+	if (editJournal != null) {
+	    editJournal.cssReplaced(offset, length, text);
+	}
+    }
+
+    // HELPER METHOD FOR LETTING THE JOURNAL CATCH UP BEFORE THE PAGE CHANGES
+    private void beforeEdit() {
+	if (editJournal != null) {
+	    editJournal.beforeEdit();
+	}
+    }
+
+    // HELPER METHOD FOR COUNTING THE NODES OF A SUBTREE, WITHOUT FILLING
+    // IN ANY THAT ARE STILL ONLY IN A MAPPED FILE
+    private int countNodes(int node) {
+	int count = 1;
+	if (!pageTree.isUnmaterialized(node)) {
+	    for (int child = pageTree.getFirstChild(node); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+		count += countNodes(child);
+	    }
+	}
+	return count;
+    }
+
+    // HELPER METHOD FOR THE LENGTH OF A VALUE THAT MAY BE null
+    private static int length(String value) {
+	return (value == null) ? 0 : value.length();
+    }
+}
@@ -1,40 +1,40 @@
 package wpm.controller;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import javafx.scene.control.TreeItem;
+import java.util.LinkedHashMap;
 import javafx.scene.control.TreeView;
-import javafx.scene.web.WebEngine;
 import properties_manager.PropertiesManager;
 import saf.controller.AppFileController;
 import saf.ui.AppMessageDialogSingleton;
 import saf.ui.AppYesNoCancelDialogSingleton;
-import static wpm.PropertyType.ADD_ELEMENT_ERROR_MESSAGE;
-import static wpm.PropertyType.ADD_ELEMENT_ERROR_TITLE;
 import static wpm.PropertyType.ADD_ELEMENT_ILLEGAL_MESSAGE;
 import static wpm.PropertyType.ADD_ELEMENT_ILLEGAL_TITLE;
 import static wpm.PropertyType.ATTRIBUTE_UPDATE_ERROR_MESSAGE;
 import static wpm.PropertyType.ATTRIBUTE_UPDATE_ERROR_TITLE;
 import static wpm.PropertyType.CSS_EXPORT_ERROR_MESSAGE;
 import static wpm.PropertyType.CSS_EXPORT_ERROR_TITLE;
+import static wpm.PropertyType.EDIT_COALESCING_WINDOW;
 import static wpm.PropertyType.ILLEGAL_NODE_REMOVAL_ERROR_MESSAGE;
 import static wpm.PropertyType.ILLEGAL_NODE_REMOVAL_ERROR_TITLE;
 import static wpm.PropertyType.REMOVAL_VERIFICATION_MESSAGE;
 import static wpm.PropertyType.REMOVAL_VERIFICATION_TITLE;
-import static wpm.PropertyType.REMOVE_ELEMENT_ERROR_MESSAGE;
-import static wpm.PropertyType.REMOVE_ELEMENT_ERROR_TITLE;
+import static wpm.PropertyType.UNDO_MEMORY_LIMIT;
+import wpm.PropertyType;
 import wpm.WebPageMaker;
 import wpm.data.DataManager;
 import wpm.data.HTMLTagPrototype;
-import static wpm.data.HTMLTagPrototype.TAG_BODY;
-import static wpm.data.HTMLTagPrototype.TAG_HEAD;
-import static wpm.data.HTMLTagPrototype.TAG_HTML;
-import static wpm.data.HTMLTagPrototype.TAG_LINK;
-import static wpm.data.HTMLTagPrototype.TAG_TITLE;
+import wpm.data.PageFragment;
+import wpm.data.PageTree;
+import static wpm.data.PageTree.NO_NODE;
 import wpm.file.FileManager;
 import static wpm.file.FileManager.TEMP_CSS_PATH;
 import static wpm.file.FileManager.TEMP_PAGE;
+import wpm.gui.PageTreeAdapter;
+import wpm.gui.PageTreeItem;
+import wpm.gui.PreviewSync;
 import wpm.gui.Workspace;
+import wpm.perf.LatencyMonitor;
+import static wpm.perf.LatencyMonitor.Stage.MODEL_UPDATE;
 
 /**
  * This class provides event programmed responses to workspace interactions for
@@ -46,6 +46,10 @@ import wpm.gui.Workspace;
  * @version 1.0
  */
 public class PageEditController {
+    /**
+     * The most copies of an element one duplicate request may add.
+     */
+    public static final int MAX_DUPLICATES = 1000;
 
     // HERE'S THE FULL APP, WHICH GIVES US ACCESS TO OTHER STUFF
     WebPageMaker app;
@@ -54,6 +58,20 @@ public class PageEditController {
     // VALUES DON'T THEMSELVES TRIGGER EVENTS
     private boolean enabled;
 
+    // THIS GATHERS UP BURSTS OF TYPING SO WE DON'T EXPORT AND
+    // REFRESH THE PAGE ON EVERY KEYSTROKE
+    EditCoalescer editCoalescer;
+
+    // ALL EDITS TO THE PAGE GO THROUGH THIS SO THEY CAN BE UNDONE
+    EditHistory editHistory;
+
+    // WE ONLY NEED ONE OF THESE FOR MARKING THE FILE AS EDITED
+    AppFileController appFileController;
+
+    // THE LAST ELEMENT COPIED OR CUT, ALONG WITH EVERYTHING IN IT, OR null
+    // IF NOTHING HAS BEEN YET. IT STAYS AS OTHER PAGES ARE OPENED
+    PageFragment clipboard;
+
     /**
      * Constructor for initializing this object, it will keep the app for later.
      *
@@ -62,6 +80,58 @@ public class PageEditController {
     public PageEditController(WebPageMaker initApp) {
 	// KEEP IT FOR LATER
 	app = initApp;
+
+	// HOW LONG TO GATHER EDITS FOR CAN BE CUSTOMIZED IN THE PROPERTIES
+	int window = getIntProperty(EDIT_COALESCING_WINDOW, EditCoalescer.DEFAULT_WINDOW);
+	editCoalescer = new EditCoalescer(this, window);
+
+	// AS CAN HOW MUCH UNDO HISTORY WE KEEP
+	long memoryLimit = getIntProperty(UNDO_MEMORY_LIMIT, (int) (EditHistory.DEFAULT_MEMORY_LIMIT / 1024)) * 1024L;
+	editHistory = new EditHistory((DataManager) app.getDataComponent(), memoryLimit);
+    }
+
+    // HELPER METHOD FOR READING A NUMBER FROM THE PROPERTIES, KEEPING THE
+    // DEFAULT IF IT ISN'T THERE OR ISN'T A NUMBER
+    private int getIntProperty(PropertyType property, int defaultValue) {
+	String value = PropertiesManager.getPropertiesManager().getProperty(property);
+	if (value != null) {
+	    try {
+		return Integer.parseInt(value.trim());
+	    } catch (NumberFormatException nfe) {
+		// JUST KEEP THE DEFAULT
+	    }
+	}
+	return defaultValue;
+    }
+
+    /**
+     * Accessor method for getting the history of edits made to the page.
+     *
+     * @return The edit history used by this controller.
+     */
+    public EditHistory getEditHistory() {
+	return editHistory;
+    }
+
+    /**
+     * Accessor method for getting the object that gathers up bursts of
+     * edits, which also keeps count of how many edits it has merged.
+     *
+     * @return The edit coalescer used by this controller.
+     */
+    public EditCoalescer getEditCoalescer() {
+	return editCoalescer;
+    }
+
+    /**
+     * This method immediately exports and displays any edits that are
+     * still waiting for their burst to end. It should be called before
+     * the tree is changed in any other way. Edits made after this start
+     * a new undo step.
+     */
+    public void flushEdits() {
+	editCoalescer.flush();
+	editHistory.endMerge();
     }
 
     /**
@@ -77,10 +147,10 @@ public class PageEditController {
     /**
      * This function responds live to the user typing changes into a text field
      * for updating element attributes. It will respond by updating the
-     * appropriate data and then forcing an update of the temp site and its
-     * display.
+     * appropriate data right away and then, once the user pauses typing,
+     * forcing an update of the temp site and its display.
      *
-     * @param selectedTag The element in the DOM (our tree) that's currently
+     * @param selectedNode The node in the DOM (our tree) that's currently
      * selected and therefore is currently having its attribute updated.
      *
      * @param attributeName The name of the attribute for the element that is
@@ -89,28 +159,71 @@ public class PageEditController {
      * @param attributeValue The new value for the attribute that is being
      * updated.
      */
-    public void handleAttributeUpdate(HTMLTagPrototype selectedTag, String attributeName, String attributeValue) {
+    public void handleAttributeUpdate(int selectedNode, String attributeName, String attributeValue) {
 	if (enabled) {
-	    try {
-                // MARK THE FILE AS EDITED
-                AppFileController afc = new AppFileController(app);
-                afc.markAsEdited(app.getGUI());
-                
-		// FIRST UPDATE THE ELEMENT'S DATA
-		selectedTag.addAttribute(attributeName, attributeValue);
-
-		// THEN FORCE THE CHANGES TO THE TEMP HTML PAGE
-		FileManager fileManager = (FileManager) app.getFileComponent();
+	    // FIRST UPDATE THE ELEMENT'S DATA, ONLY THIS ELEMENT AND
+	    // THOSE CONTAINING IT WILL NEED REGENERATING
+	    LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	    long startTime = monitor.startTime();
+	    long startAllocated = monitor.allocatedBytes();
+	    editHistory.setAttribute(selectedNode, attributeName, attributeValue);
+	    monitor.record(MODEL_UPDATE, startTime, startAllocated);
+
+	    // THE PAGE WILL BE UPDATED WHEN THE USER PAUSES
+	    editCoalescer.attributeChanged(selectedNode, attributeName, attributeValue);
+	}
+    }
+
+    /**
+     * This function exports and displays a batch of edits gathered up by
+     * the edit coalescer. Note that the data has already been updated
+     * by the time the batch arrives.
+     *
+     * @param attributeEdits The latest value of every attribute edited
+     * during the batch, for each edited node.
+     *
+     * @param cssText The latest CSS, or null if it was not edited during
+     * the batch.
+     */
+    public void processEdits(LinkedHashMap<Integer, LinkedHashMap<String, String>> attributeEdits, String cssText) {
+	try {
+	    // MARK THE FILE AS EDITED
+	    markAsEdited();
+
+	    // FORCE THE CHANGES TO THE TEMP SITE, ONCE FOR THE WHOLE BATCH,
+	    // THE DISPLAYED PAGE IS GIVEN NEW CSS DIRECTLY SO ITS FILE CAN
+	    // WAIT UNTIL THE USER HAS STOPPED TYPING FOR A WHILE
+	    FileManager fileManager = (FileManager) app.getFileComponent();
+	    if (!attributeEdits.isEmpty()) {
 		fileManager.exportData(app.getDataComponent(), TEMP_PAGE);
+	    } else {
+		fileManager.exportCSSLater(cssText, TEMP_CSS_PATH);
+	    }
 
-		// AND FINALLY UPDATE THE WEB PAGE DISPLAY USING THE NEW VALUES
-		Workspace workspace = (Workspace) app.getWorkspaceComponent();
-		workspace.getHTMLEngine().reload();
-	    } catch (IOException ioe) {
-		// AN ERROR HAPPENED WRITING TO THE TEMP FILE, NOTIFY THE USER
-		PropertiesManager props = PropertiesManager.getPropertiesManager();
-		AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
+	    // AND UPDATE THE WEB PAGE DISPLAY USING THE NEW VALUES, IF IT'S
+	    // BEEN SHOWN YET
+	    Workspace workspace = (Workspace) app.getWorkspaceComponent();
+	    PreviewSync previewSync = workspace.getPreviewSync();
+	    if (previewSync == null) {
+		return;
+	    }
+	    for (int node : attributeEdits.keySet()) {
+		LinkedHashMap<String, String> nodeEdits = attributeEdits.get(node);
+		for (String attributeName : nodeEdits.keySet()) {
+		    previewSync.updateAttribute(node, attributeName, nodeEdits.get(attributeName));
+		}
+	    }
+	    if (cssText != null) {
+		previewSync.updateStylesheet(cssText);
+	    }
+	} catch (IOException ioe) {
+	    // AN ERROR HAPPENED WRITING TO THE TEMP FILES, NOTIFY THE USER
+	    PropertiesManager props = PropertiesManager.getPropertiesManager();
+	    AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
+	    if (!attributeEdits.isEmpty()) {
 		dialog.show(props.getProperty(ATTRIBUTE_UPDATE_ERROR_TITLE), props.getProperty(ATTRIBUTE_UPDATE_ERROR_MESSAGE));
+	    } else {
+		dialog.show(props.getProperty(CSS_EXPORT_ERROR_TITLE), props.getProperty(CSS_EXPORT_ERROR_MESSAGE));
 	    }
 	}
     }
@@ -123,36 +236,39 @@ public class PageEditController {
      */
     public void handleAddElementRequest(HTMLTagPrototype element) {
 	if (enabled) {
+            // GET ANY PENDING TYPING ONTO THE PAGE FIRST
+            flushEdits();
+
             // MARK THE FILE AS EDITED
-            AppFileController afc = new AppFileController(app);
-            afc.markAsEdited(app.getGUI());
+            markAsEdited();
             
 	    Workspace workspace = (Workspace) app.getWorkspaceComponent();
 
 	    // GET THE TREE TO SEE WHICH NODE IS CURRENTLY SELECTED
 	    TreeView tree = workspace.getHTMLTree();
-	    TreeItem selectedItem = (TreeItem) tree.getSelectionModel().getSelectedItem();
-	    HTMLTagPrototype selectedTag = (HTMLTagPrototype) selectedItem.getValue();
+	    PageTreeItem selectedItem = (PageTreeItem) tree.getSelectionModel().getSelectedItem();
+	    HTMLTagPrototype selectedTag = selectedItem.getValue();
 
-	    // MAKE A NEW HTMLTagPrototype AND PUT IT IN A NODE
+	    // MAKE A NEW HTMLTagPrototype FOR THE NEW NODE
 	    HTMLTagPrototype newTag = element.clone();
-	    TreeItem newNode = new TreeItem(newTag);
 
 	    // CHECK IF THE NEW TAG IS BEING ADDED TO A LEGAL PARENT 
-            ArrayList<String> legals = newTag.getLegalParents();
-            boolean isLegal = false;
-            for(int i = 0; i < legals.size(); i++) {
-                if(legals.get(i).equals(selectedTag.getTagName())) {
-                     isLegal = true;
-                }
-            }
+            DataManager dataManager = (DataManager) app.getDataComponent();
+            boolean isLegal = dataManager.isLegalParent(newTag, selectedTag);
+            
             // IF THE SELECTED NODE IS ITS LEGAL PARENT
             if(isLegal){
-                // ADD THE NEW NODE
-	        selectedItem.getChildren().add(newNode);
+                // ADD THE NEW NODE, THE TREE VIEW AND THE DISPLAYED
+                // PAGE ARE UPDATED AS IT'S ADDED
+                LatencyMonitor monitor = LatencyMonitor.getMonitor();
+                long startTime = monitor.startTime();
+                long startAllocated = monitor.allocatedBytes();
+                int newNode = editHistory.addElement(selectedItem.getNode(), newTag);
+                monitor.record(MODEL_UPDATE, startTime, startAllocated);
             
                 // SELECT THE NEW NODE
-                tree.getSelectionModel().select(newNode);
+                PageTreeAdapter treeAdapter = workspace.getTreeAdapter();
+                tree.getSelectionModel().select(treeAdapter.getItem(newNode));
                 selectedItem.setExpanded(true);
             } else {
                 PropertiesManager props = PropertiesManager.getPropertiesManager();
@@ -162,16 +278,6 @@ public class PageEditController {
 
 	    // FORCE A RELOAD OF TAG EDITOR
 	    workspace.reloadWorkspace();
-
-	    try {
-		FileManager fileManager = (FileManager) app.getFileComponent();
-		fileManager.exportData(app.getDataComponent(), TEMP_PAGE);
-	    } catch (IOException ioe) {
-		// AN ERROR HAPPENED WRITING TO THE TEMP FILE, NOTIFY THE USER
-		PropertiesManager props = PropertiesManager.getPropertiesManager();
-		AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
-		dialog.show(props.getProperty(ADD_ELEMENT_ERROR_TITLE), props.getProperty(ADD_ELEMENT_ERROR_MESSAGE));
-	    }
 	}
     }
 
@@ -181,33 +287,24 @@ public class PageEditController {
      */
     public void handleRemoveElementRequest() {
 	if (enabled) {     
+            // GET ANY PENDING TYPING ONTO THE PAGE FIRST
+            flushEdits();
+
             // MARK THE FILE AS EDITED
-            AppFileController afc = new AppFileController(app);
-            afc.markAsEdited(app.getGUI());
+            markAsEdited();
             
 	    Workspace workspace = (Workspace) app.getWorkspaceComponent();
             PropertiesManager props = PropertiesManager.getPropertiesManager();
 
 	    // GET THE TREE TO SEE WHICH NODE IS CURRENTLY SELECTED
 	    TreeView tree = workspace.getHTMLTree();
-	    TreeItem selectedItem = (TreeItem) tree.getSelectionModel().getSelectedItem();
-	    HTMLTagPrototype selectedTag = (HTMLTagPrototype) selectedItem.getValue();
+	    PageTreeItem selectedItem = (PageTreeItem) tree.getSelectionModel().getSelectedItem();
+	    HTMLTagPrototype selectedTag = selectedItem.getValue();
             
             // CHECK IF THE USER VERIFY THE EDIT
             // CHECK IF THE SELECTED ITEM IS LEGAL TO BE DELETED
-            String name = selectedTag.getTagName();
-            boolean isLegal = true;
-            if(name.equals(TAG_HTML)) {
-                isLegal = false;
-            } else if(name.equals(TAG_HEAD)) {
-                isLegal = false;
-            } else if(name.equals(TAG_TITLE)) {
-                isLegal = false;
-            } else if(name.equals(TAG_LINK)) {
-                isLegal = false;
-            } else if(name.equals(TAG_BODY)) {
-                isLegal = false;
-            }
+            DataManager dataManager = (DataManager) app.getDataComponent();
+            boolean isLegal = dataManager.isRemovable(selectedTag);
             
             // DELETE THAT NODE IF IT IS LEGAL TO
             if(isLegal) {
@@ -217,7 +314,11 @@ public class PageEditController {
                 // AND NOW GET THE USER'S SELECTION
                 String selection = yesNoDialog.getSelection();
                 if (selection.equals(AppYesNoCancelDialogSingleton.YES)){
-                    selectedItem.getParent().getChildren().remove(selectedItem);
+                    LatencyMonitor monitor = LatencyMonitor.getMonitor();
+                    long startTime = monitor.startTime();
+                    long startAllocated = monitor.allocatedBytes();
+                    editHistory.removeElement(selectedItem.getNode());
+                    monitor.record(MODEL_UPDATE, startTime, startAllocated);
                 }
             } else {
                 AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
@@ -226,50 +327,236 @@ public class PageEditController {
             
 	    // FORCE A RELOAD OF TAG EDITOR
 	    workspace.reloadWorkspace();
+	}
+    }
+    
+    /**
+     * This function responds to the user copying the selected element,
+     * along with everything in it, so that it can be pasted later.
+     */
+    public void handleCopyRequest() {
+	if (enabled) {
+	    PageTreeItem selectedItem = getSelectedItem();
+	    if (selectedItem != null) {
+		DataManager dataManager = (DataManager) app.getDataComponent();
+		clipboard = dataManager.getPageTree().copySubtree(selectedItem.getNode());
+	    }
+	}
+    }
+
+    /**
+     * This function responds to the user cutting the selected element,
+     * which copies it like handleCopyRequest and then removes it from the
+     * page, without asking since it can be pasted back.
+     */
+    public void handleCutRequest() {
+	if (enabled) {
+	    PageTreeItem selectedItem = getSelectedItem();
+	    if (selectedItem == null) {
+		return;
+	    }
+	    flushEdits();
+
+	    // THE TAGS EVERY PAGE NEEDS CAN'T BE CUT ANY MORE THAN REMOVED
+	    DataManager dataManager = (DataManager) app.getDataComponent();
+	    if (!dataManager.isRemovable(selectedItem.getValue())) {
+		PropertiesManager props = PropertiesManager.getPropertiesManager();
+		AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
+		dialog.show(props.getProperty(ILLEGAL_NODE_REMOVAL_ERROR_TITLE), props.getProperty(ILLEGAL_NODE_REMOVAL_ERROR_MESSAGE));
+		return;
+	    }
+	    markAsEdited();
+	    LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	    long startTime = monitor.startTime();
+	    long startAllocated = monitor.allocatedBytes();
+	    clipboard = dataManager.getPageTree().copySubtree(selectedItem.getNode());
+	    editHistory.removeElement(selectedItem.getNode());
+	    monitor.record(MODEL_UPDATE, startTime, startAllocated);
+
+	    // THIS EXPORTS THE PAGE AND SHOWS WHAT'S SELECTED NOW
+	    Workspace workspace = (Workspace) app.getWorkspaceComponent();
+	    workspace.reloadWorkspace();
+	}
+    }
 
-	    try {
-		FileManager fileManager = (FileManager) app.getFileComponent();
-		fileManager.exportData(app.getDataComponent(), TEMP_PAGE);
-	    } catch (IOException ioe) {
-		// AN ERROR HAPPENED WRITING TO THE TEMP FILE, NOTIFY THE USER
+    /**
+     * This function responds to the user pasting what was last copied or
+     * cut at the end of the selected element's children.
+     */
+    public void handlePasteRequest() {
+	if (enabled) {
+	    PageTreeItem selectedItem = getSelectedItem();
+	    if ((selectedItem == null) || (clipboard == null)) {
+		return;
+	    }
+	    flushEdits();
+	    DataManager dataManager = (DataManager) app.getDataComponent();
+	    int parent = selectedItem.getNode();
+	    int index = dataManager.getPageTree().getChildCount(parent);
+	    if (pasteCopies(parent, index, clipboard, 1)) {
+		selectedItem.setExpanded(true);
+	    }
+	}
+    }
+
+    /**
+     * This function responds to the user asking for copies of the selected
+     * element, which are added right after it all at once. Unlike copying
+     * and pasting, this leaves what was last copied alone.
+     *
+     * @param copies How many copies to add, which is kept between 1 and
+     * MAX_DUPLICATES.
+     */
+    public void handleDuplicateRequest(int copies) {
+	if (enabled) {
+	    PageTreeItem selectedItem = getSelectedItem();
+	    if (selectedItem == null) {
+		return;
+	    }
+	    flushEdits();
+	    DataManager dataManager = (DataManager) app.getDataComponent();
+	    PageTree pageTree = dataManager.getPageTree();
+	    int node = selectedItem.getNode();
+	    int parent = pageTree.getParent(node);
+	    if (parent == NO_NODE) {
+		PropertiesManager props = PropertiesManager.getPropertiesManager();
 		AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
-		dialog.show(props.getProperty(REMOVE_ELEMENT_ERROR_TITLE), props.getProperty(REMOVE_ELEMENT_ERROR_MESSAGE));
+		dialog.show(props.getProperty(ADD_ELEMENT_ILLEGAL_TITLE), props.getProperty(ADD_ELEMENT_ILLEGAL_MESSAGE));
+		return;
 	    }
+	    copies = Math.max(1, Math.min(copies, MAX_DUPLICATES));
+	    pasteCopies(parent, pageTree.indexOf(node) + 1, pageTree.copySubtree(node), copies);
 	}
     }
-    
+
+    // HELPER METHOD FOR ADDING COPIES OF A FRAGMENT TO A NODE'S CHILDREN AS
+    // ONE EDIT, WITH ONE LEGALITY CHECK AND ONE EXPORT FOR ALL OF THEM,
+    // RETURNING WHETHER THEY COULD BE ADDED
+    private boolean pasteCopies(int parent, int index, PageFragment fragment, int copies) {
+	Workspace workspace = (Workspace) app.getWorkspaceComponent();
+	DataManager dataManager = (DataManager) app.getDataComponent();
+	PageTree pageTree = dataManager.getPageTree();
+
+	// THE COPIES ARE ALL THE SAME, AND WHAT'S IN THEM WAS LEGAL WHERE
+	// IT WAS COPIED FROM, SO ONLY THE FRAGMENT'S ROOT NEEDS CHECKING
+	if (!dataManager.isLegalParent(fragment.getRootTag(), pageTree.getTag(parent))) {
+	    PropertiesManager props = PropertiesManager.getPropertiesManager();
+	    AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
+	    dialog.show(props.getProperty(ADD_ELEMENT_ILLEGAL_TITLE), props.getProperty(ADD_ELEMENT_ILLEGAL_MESSAGE));
+	    return false;
+	}
+	markAsEdited();
+	LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	long startTime = monitor.startTime();
+	long startAllocated = monitor.allocatedBytes();
+	int[] newNodes = editHistory.pasteElements(parent, index, fragment, copies);
+	monitor.record(MODEL_UPDATE, startTime, startAllocated);
+
+	// SELECT THE FIRST COPY
+	TreeView tree = workspace.getHTMLTree();
+	PageTreeAdapter treeAdapter = workspace.getTreeAdapter();
+	tree.getSelectionModel().select(treeAdapter.getItem(newNodes[0]));
+
+	// AND EXPORT THE PAGE, JUST ONCE FOR ALL THE COPIES
+	workspace.reloadWorkspace();
+	return true;
+    }
+
+    // HELPER METHOD FOR GETTING THE ITEM SELECTED IN THE TREE, OR null
+    private PageTreeItem getSelectedItem() {
+	Workspace workspace = (Workspace) app.getWorkspaceComponent();
+	TreeView tree = workspace.getHTMLTree();
+	return (PageTreeItem) tree.getSelectionModel().getSelectedItem();
+    }
+
     /**
      * This function provides a response to when the user changes the CSS
-     * content. It responds but updating the data manager with the new CSS text,
-     * and by exporting the CSS to the temp css file.
+     * content. It responds by updating the data manager with the new CSS text
+     * right away and then, once the user pauses typing, by swapping it into
+     * the displayed page. The temp css file is written once the user has
+     * paused for longer.
      *
      * @param cssContent The css content.
      *
      */
     public void handleCSSEditing(String cssContent) {
 	if (enabled) {
-	    try {
-                // MARK THE FILE AS EDITED
-                AppFileController afc = new AppFileController(app);
-                afc.markAsEdited(app.getGUI());
-                
-		// MAKE SURE THE DATA MANAGER GETS THE CSS TEXT
-		DataManager dataManager = (DataManager) app.getDataComponent();
-		dataManager.setCSSText(cssContent);
+	    // MAKE SURE THE DATA MANAGER GETS THE CSS TEXT
+	    LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	    long startTime = monitor.startTime();
+	    long startAllocated = monitor.allocatedBytes();
+	    editHistory.setCSSText(cssContent);
+	    monitor.record(MODEL_UPDATE, startTime, startAllocated);
 
-		// WRITE OUT THE TEXT TO THE CSS FILE
-		FileManager fileManager = (FileManager) app.getFileComponent();
-		fileManager.exportCSS(cssContent, TEMP_CSS_PATH);
+	    // THE PAGE WILL BE UPDATED WHEN THE USER PAUSES
+	    editCoalescer.cssChanged(cssContent);
+	}
+    }
 
-		// REFRESH THE HTML VIEW VIA THE ENGINE
-		Workspace workspace = (Workspace) app.getWorkspaceComponent();
-		WebEngine htmlEngine = workspace.getHTMLEngine();
-		htmlEngine.reload();
-	    } catch (IOException ioe) {
-		AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
-		PropertiesManager props = PropertiesManager.getPropertiesManager();
-		dialog.show(props.getProperty(CSS_EXPORT_ERROR_TITLE), props.getProperty(CSS_EXPORT_ERROR_MESSAGE));
-	    }
+    /**
+     * This function responds to the user asking to undo the last edit
+     * to the page.
+     */
+    public void handleUndoRequest() {
+	if (enabled) {
+	    flushEdits();
+	    LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	    long startTime = monitor.startTime();
+	    long startAllocated = monitor.allocatedBytes();
+	    EditHistory.Edit edit = editHistory.undo();
+	    monitor.record(MODEL_UPDATE, startTime, startAllocated);
+	    showHistoryEdit(edit);
+	}
+    }
+
+    /**
+     * This function responds to the user asking to redo the last edit
+     * that was undone.
+     */
+    public void handleRedoRequest() {
+	if (enabled) {
+	    flushEdits();
+	    LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	    long startTime = monitor.startTime();
+	    long startAllocated = monitor.allocatedBytes();
+	    EditHistory.Edit edit = editHistory.redo();
+	    monitor.record(MODEL_UPDATE, startTime, startAllocated);
+	    showHistoryEdit(edit);
+	}
+    }
+
+    // HELPER METHOD FOR PUTTING AN UNDONE OR REDONE EDIT ON THE PAGE,
+    // ADDED AND REMOVED ELEMENTS ARE ALREADY ON THE DISPLAYED PAGE
+    private void showHistoryEdit(EditHistory.Edit edit) {
+	if (edit == null) {
+	    return;
+	}
+	markAsEdited();
+
+	// THIS EXPORTS THE PAGE AND SHOWS THE EDITED VALUES IN THE EDITORS
+	Workspace workspace = (Workspace) app.getWorkspaceComponent();
+	workspace.reloadWorkspace();
+
+	// THEN THE DISPLAYED PAGE CAN BE PATCHED, IF IT'S BEEN SHOWN YET
+	PreviewSync previewSync = workspace.getPreviewSync();
+	if (previewSync == null) {
+	    return;
+	}
+	if (edit instanceof EditHistory.AttributeEdit) {
+	    EditHistory.AttributeEdit attributeEdit = (EditHistory.AttributeEdit) edit;
+	    previewSync.updateAttribute(attributeEdit.node, attributeEdit.attributeName,
+		    attributeEdit.undone ? attributeEdit.oldValue : attributeEdit.newValue);
+	} else if (edit instanceof EditHistory.CSSEdit) {
+	    DataManager dataManager = (DataManager) app.getDataComponent();
+	    previewSync.updateStylesheet(dataManager.getCSSText());
+	}
+    }
+
+    // HELPER METHOD FOR MARKING THE FILE AS EDITED
+    private void markAsEdited() {
+	if (appFileController == null) {
+	    appFileController = new AppFileController(app);
 	}
+	appFileController.markAsEdited(app.getGUI());
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,64 @@
+package wpm.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class holds the attribute names for one type of tag, like all the
+ * attributes a "p" element can have according to the tags file. It is
+ * shared by every element of that type, so each element only has to keep
+ * an array of its values, in the same order as the names here.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+class AttributeSchema {
+    // A SCHEMA WITH NO ATTRIBUTES, WHICH IS WHAT EVERY TAG STARTS WITH
+    static final AttributeSchema EMPTY = new AttributeSchema(new String[0]);
+
+    // THE NAMES, IN THE ORDER THE VALUES ARE STORED IN
+    final String[] names;
+
+    // WHERE EACH NAME IS IN names
+    final HashMap<String, Integer> indices;
+
+    // ALL EMPTY VALUES, WHICH NEW ELEMENTS SHARE UNTIL ONE IS SET
+    final String[] emptyValues;
+
+    /**
+     * Constructor for a schema with the names argument, which is kept.
+     *
+     * @param initNames The attribute names for the tag type.
+     */
+    AttributeSchema(String[] initNames) {
+	names = initNames;
+	indices = new HashMap();
+	for (int i = 0; i < names.length; i++) {
+	    indices.put(names[i], i);
+	}
+	emptyValues = new String[names.length];
+	Arrays.fill(emptyValues, "");
+    }
+
+    /**
+     * Accessor method for getting the number of attributes in the schema.
+     *
+     * @return The number of attribute names.
+     */
+    int size() {
+	return names.length;
+    }
+
+    /**
+     * Accessor method for finding where an attribute's value is stored.
+     *
+     * @param name The name of the attribute.
+     *
+     * @return The index of the attribute's value, or -1 if it isn't part
+     * of this schema.
+     */
+    int indexOf(String name) {
+	Integer index = indices.get(name);
+	return (index == null) ? -1 : index;
+    }
+}
\ No newline at end of file
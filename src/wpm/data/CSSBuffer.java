@@ -0,0 +1,193 @@
+package wpm.data;
+
+/**
+ * This class holds the text of the page's CSS in a gap buffer, an array
+ * with an unused gap at the place the text was last changed. Since typing
+ * happens at one place, each keystroke only moves the characters between
+ * the old and new place of the gap and then fills in or widens the gap,
+ * rather than copying the whole stylesheet into a new String. The text is
+ * only turned into a String when it is asked for, which is then kept until
+ * the next change.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class CSSBuffer implements CharSequence {
+    // HOW BIG THE GAP IS MADE WHENEVER IT RUNS OUT
+    static final int MIN_GAP = 256;
+
+    // THE TEXT IS chars[0, gapStart) FOLLOWED BY chars[gapEnd, chars.length)
+    char[] chars;
+    int gapStart;
+    int gapEnd;
+
+    // THE TEXT AS A String, OR null IF IT HAS CHANGED SINCE IT WAS LAST
+    // ASKED FOR
+    String text;
+
+    /**
+     * Constructor for an empty buffer.
+     */
+    public CSSBuffer() {
+	chars = new char[MIN_GAP];
+	gapStart = 0;
+	gapEnd = chars.length;
+	text = "";
+    }
+
+    /**
+     * Accessor method for getting the number of characters in the text.
+     *
+     * @return The length of the text.
+     */
+    @Override
+    public int length() {
+	return chars.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * Accessor method for getting one character of the text.
+     *
+     * @param index Which character to get.
+     *
+     * @return The character at index.
+     */
+    @Override
+    public char charAt(int index) {
+	if (index < 0 || index >= length()) {
+	    throw new IndexOutOfBoundsException("Index " + index + " of " + length());
+	}
+	return (index < gapStart) ? chars[index] : chars[index + (gapEnd - gapStart)];
+    }
+
+    /**
+     * Accessor method for getting part of the text.
+     *
+     * @param start Where the part starts.
+     *
+     * @param end Where the part ends, exclusive.
+     *
+     * @return The characters between start and end.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+	return substring(start, end);
+    }
+
+    /**
+     * Accessor method for getting part of the text as a String, which only
+     * copies that part.
+     *
+     * @param start Where the part starts.
+     *
+     * @param end Where the part ends, exclusive.
+     *
+     * @return The characters between start and end.
+     */
+    public String substring(int start, int end) {
+	if (start < 0 || end > length() || start > end) {
+	    throw new IndexOutOfBoundsException("Range " + start + " to " + end + " of " + length());
+	}
+	if (text != null) {
+	    return text.substring(start, end);
+	}
+	if (end <= gapStart) {
+	    return new String(chars, start, end - start);
+	}
+	int gapLength = gapEnd - gapStart;
+	if (start >= gapStart) {
+	    return new String(chars, start + gapLength, end - start);
+	}
+	StringBuilder part = new StringBuilder(end - start);
+	part.append(chars, start, gapStart - start);
+	part.append(chars, gapEnd, end - gapStart);
+	return part.toString();
+    }
+
+    /**
+     * Mutator method for replacing the whole text.
+     *
+     * @param initText The new text.
+     */
+    public void setText(String initText) {
+	int length = initText.length();
+	chars = new char[length + MIN_GAP];
+	initText.getChars(0, length, chars, 0);
+	gapStart = length;
+	gapEnd = chars.length;
+	text = initText;
+    }
+
+    /**
+     * This method replaces part of the text with the insertedText argument,
+     * moving the gap to where the change is.
+     *
+     * @param offset Where the part to replace starts.
+     *
+     * @param removedLength How many characters to replace.
+     *
+     * @param insertedText The text to put in their place.
+     */
+    public void replace(int offset, int removedLength, String insertedText) {
+	if (offset < 0 || removedLength < 0 || offset + removedLength > length()) {
+	    throw new IndexOutOfBoundsException("Range " + offset + " to " + (offset + removedLength) + " of " + length());
+	}
+	if (removedLength == 0 && insertedText.isEmpty()) {
+	    return;
+	}
+	moveGap(offset);
+	gapEnd += removedLength;
+	int insertedLength = insertedText.length();
+	if (insertedLength > gapEnd - gapStart) {
+	    growGap(insertedLength);
+	}
+	insertedText.getChars(0, insertedLength, chars, gapStart);
+	gapStart += insertedLength;
+	text = null;
+    }
+
+    /**
+     * Accessor method for getting the whole text, which is only built
+     * the first time it is asked for after a change.
+     *
+     * @return The text.
+     */
+    @Override
+    public String toString() {
+	if (text == null) {
+	    StringBuilder builder = new StringBuilder(length());
+	    builder.append(chars, 0, gapStart);
+	    builder.append(chars, gapEnd, chars.length - gapEnd);
+	    text = builder.toString();
+	}
+	return text;
+    }
+
+    // HELPER METHOD FOR MOVING THE GAP TO START AT offset, WHICH ONLY
+    // MOVES THE CHARACTERS BETWEEN ITS OLD AND NEW PLACE
+    private void moveGap(int offset) {
+	if (offset < gapStart) {
+	    int moved = gapStart - offset;
+	    System.arraycopy(chars, offset, chars, gapEnd - moved, moved);
+	    gapStart -= moved;
+	    gapEnd -= moved;
+	} else if (offset > gapStart) {
+	    int moved = offset - gapStart;
+	    System.arraycopy(chars, gapEnd, chars, gapStart, moved);
+	    gapStart += moved;
+	    gapEnd += moved;
+	}
+    }
+
+    // HELPER METHOD FOR MAKING THE GAP BIG ENOUGH FOR needed CHARACTERS,
+    // LEAVING ROOM TO GROW
+    private void growGap(int needed) {
+	int afterGap = chars.length - gapEnd;
+	int newLength = Math.max(chars.length * 2, gapStart + needed + afterGap + MIN_GAP);
+	char[] newChars = new char[newLength];
+	System.arraycopy(chars, 0, newChars, 0, gapStart);
+	System.arraycopy(chars, gapEnd, newChars, newLength - afterGap, afterGap);
+	chars = newChars;
+	gapEnd = newLength - afterGap;
+    }
+}
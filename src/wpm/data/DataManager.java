@@ -1,8 +1,6 @@
 package wpm.data;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import javafx.scene.control.TreeItem;
+import java.util.List;
 import saf.components.AppDataComponent;
 import saf.AppTemplate;
 import static wpm.data.HTMLTagPrototype.ATT_HREF;
@@ -12,11 +10,11 @@ import static wpm.data.HTMLTagPrototype.HREF_HOME;
 import static wpm.data.HTMLTagPrototype.REL_STYLESHEET;
 import static wpm.data.HTMLTagPrototype.TAG_BODY;
 import static wpm.data.HTMLTagPrototype.TAG_HEAD;
+import static wpm.data.HTMLTagPrototype.TAG_HTML;
 import static wpm.data.HTMLTagPrototype.TAG_LINK;
 import static wpm.data.HTMLTagPrototype.TAG_TITLE;
 import static wpm.data.HTMLTagPrototype.TYPE_TEXT_CSS;
 import wpm.file.FileManager;
-import wpm.gui.Workspace;
 
 /**
  * This class serves as the data management component for this application.
@@ -27,19 +25,22 @@ import wpm.gui.Workspace;
  */
 public class DataManager implements AppDataComponent {
 
-    // THIS FILE HAS THE LIST OF TAGS OUR APPLICATION WILL USE
-    static final String TAG_TYPES_FILE_PATH = "data/tags.json";
+    /**
+     * This file has the list of tags our application will use.
+     */
+    public static final String TAG_TYPES_FILE_PATH = "data/tags.json";
 
-    // THESE ARE ALL THE AVAILABLE TAGS FROM WHICH WE WILL CLONE
-    ArrayList<HTMLTagPrototype> tags;
-    HashMap<String, HTMLTagPrototype> hashTags;
+    // ALL THE AVAILABLE TAGS FROM WHICH WE WILL CLONE, AND WHERE THEY MAY
+    // GO. THE SCHEMA IS REPLACED AS A WHOLE WHEN THE TAGS FILE CHANGES
+    volatile TagSchema tagSchema;
 
-    // THIS IS THE ROOT OF THE TREE, FROM WHICH WE CAN
-    // ACCESS THE ENTIRE TREE
-    TreeItem htmlRoot;
+    // THIS IS THE TREE OF ELEMENTS FOR THE PAGE, IT STAYS THE SAME
+    // OBJECT AS PAGES ARE LOADED, SO LISTENERS NEED ONLY BE ADDED ONCE
+    PageTree pageTree;
     
-    // THE FULL CONTENTS OF THE CSS FILE
-    String cssText;
+    // THE FULL CONTENTS OF THE CSS FILE, KEPT IN A GAP BUFFER SO THAT
+    // TYPING ONLY CHANGES THE PART BEING TYPED INTO
+    CSSBuffer cssBuffer;
 
     // THIS IS A SHARED REFERENCE TO THE APPLICATION
     AppTemplate app;
@@ -51,25 +52,96 @@ public class DataManager implements AppDataComponent {
      * @param initApp The application within which this data manager is serving.
      */
     public DataManager(AppTemplate initApp) throws Exception {
+	this((FileManager) initApp.getFileComponent());
+
 	// KEEP THE APP FOR LATER
 	app = initApp;
+    }
 
-	// WE'LL STORE THE TAGS HERE
-	tags = new ArrayList();
-	hashTags = new HashMap();
+    /**
+     * This constructor creates a data manager that isn't part of the
+     * application, for tools that work with pages without the user
+     * interface.
+     *
+     * @param fileManager The file manager to load the tags with.
+     */
+    public DataManager(FileManager fileManager) throws Exception {
+	tagSchema = new TagSchema();
+	pageTree = new PageTree();
+	cssBuffer = new CSSBuffer();
 
 	// NOW LOAD ALL THE TAGS WE'LL USE
-	FileManager fileManager = (FileManager) app.getFileComponent();
 	fileManager.loadHTMLTags(this, TAG_TYPES_FILE_PATH);
     }
     
     /**
-     * Accessor method for getting the CSS text.
+     * Accessor method for getting the types of tags we know and where they
+     * may go. Note that the schema may be replaced at any time, so code
+     * that asks it more than one thing should get it once and keep it.
+     * 
+     * @return The current tag schema.
+     */
+    public TagSchema getTagSchema() {
+	return tagSchema;
+    }
+    
+    /**
+     * Mutator method for replacing the tag schema, like when the tags file
+     * has changed. The elements of the page are brought up to date with
+     * the new schema, which only costs anything for those whose type has
+     * changed. This must be done on the thread that edits the page.
+     * 
+     * @param newTagSchema The new schema.
+     */
+    public void setTagSchema(TagSchema newTagSchema) {
+	TagSchema oldTagSchema = tagSchema;
+	tagSchema = newTagSchema;
+	pageTree.rebindTags(oldTagSchema, newTagSchema);
+    }
+    
+    /**
+     * This method tests whether the child argument may be placed inside
+     * the parent argument.
+     * 
+     * @param child The tag to be placed.
+     * 
+     * @param parent The tag it would be placed inside.
+     * 
+     * @return true if parent is a legal parent for child, false otherwise.
+     */
+    public boolean isLegalParent(HTMLTagPrototype child, HTMLTagPrototype parent) {
+	TagSchema schema = tagSchema;
+	int childId = schema.getTypeId(child);
+	if (schema.isType(childId)) {
+	    return schema.isLegalParent(childId, schema.getTypeId(parent));
+	}
+	
+	// TYPES THAT AREN'T IN THE TAGS FILE HAVE TO CHECK THEIR OWN LIST
+	return child.isLegalParent(parent.getTagName());
+    }
+    
+    /**
+     * This method tests whether the tag argument may be removed from the
+     * page, which isn't the case for the tags every page needs.
+     * 
+     * @param tag The tag to test.
+     * 
+     * @return true if the tag may be removed, false otherwise.
+     */
+    public boolean isRemovable(HTMLTagPrototype tag) {
+	TagSchema schema = tagSchema;
+	return schema.isRemovable(schema.getTypeId(tag));
+    }
+    
+    /**
+     * Accessor method for getting the CSS text. Note that after the CSS
+     * has been changed the text is only built again the first time this
+     * is called.
      * 
      * @return The contents of the CSS file for the page.
      */
     public String getCSSText() {
-	return cssText;
+	return cssBuffer.toString();
     }
     
     /**
@@ -78,25 +150,40 @@ public class DataManager implements AppDataComponent {
      * @param initCSSText The text to set for the css text.
      */
     public void setCSSText(String initCSSText) {
-	cssText = initCSSText;
+	cssBuffer.setText(initCSSText);
     }
-
+    
     /**
-     * Accessor method for getting the tree's root node.
-     *
-     * @return The root of the tree.
+     * This method replaces part of the CSS text, which is much cheaper
+     * than setting all of it when only a little has changed.
+     * 
+     * @param offset Where the part to replace starts.
+     * 
+     * @param removedLength How many characters to replace.
+     * 
+     * @param insertedText The text to put in their place.
+     */
+    public void replaceCSSText(int offset, int removedLength, String insertedText) {
+	cssBuffer.replace(offset, removedLength, insertedText);
+    }
+    
+    /**
+     * Accessor method for getting the buffer holding the CSS text, which
+     * lets the text be read without building it.
+     * 
+     * @return The CSS buffer.
      */
-    public TreeItem getHTMLRoot() {
-	return htmlRoot;
+    public CSSBuffer getCSSBuffer() {
+	return cssBuffer;
     }
 
     /**
-     * Mutator method for setting the tree's root node.
+     * Accessor method for getting the tree of elements for the page.
      *
-     * @param initHTMLRoot The value to set as the root of the tree.
+     * @return The page's tree.
      */
-    public void setHTMLRoot(TreeItem initHTMLRoot) {
-	htmlRoot = initHTMLRoot;
+    public PageTree getPageTree() {
+	return pageTree;
     }
 
     /**
@@ -107,26 +194,17 @@ public class DataManager implements AppDataComponent {
      * @return The HTMLTagPrototype object that has tagName as its name.
      */
     public HTMLTagPrototype getTag(String tagName) {
-	return hashTags.get(tagName);
-    }
-
-    /**
-     * This method adds the tag argument to the set of tags.
-     *
-     * @param tag A tag representing an HTML element.
-     */
-    public void addTag(HTMLTagPrototype tag) {
-	tags.add(tag);
-	hashTags.put(tag.tagName, tag);
+	return tagSchema.getPrototype(tagName);
     }
 
     /**
      * Accessor method for getting all the tags.
      *
-     * @return A list containing all the tags used by this data manager.
+     * @return A list containing all the tags used by this data manager,
+     * which can't be changed.
      */
-    public ArrayList<HTMLTagPrototype> getTags() {
-	return tags;
+    public List<HTMLTagPrototype> getTags() {
+	return tagSchema.getPrototypes();
     }
 
     /**
@@ -137,6 +215,7 @@ public class DataManager implements AppDataComponent {
     @Override
     public void reset() {
 	// LET'S BUILD OUR START TAGS
+	HTMLTagPrototype htmlTag = new HTMLTagPrototype(TAG_HTML, true);
 	HTMLTagPrototype headTag = new HTMLTagPrototype(TAG_HEAD, true);
 	HTMLTagPrototype titleTag = new HTMLTagPrototype(TAG_TITLE, true);
 	HTMLTagPrototype linkTag = new HTMLTagPrototype(TAG_LINK, false);
@@ -145,23 +224,16 @@ public class DataManager implements AppDataComponent {
 	linkTag.addAttribute(ATT_HREF, HREF_HOME);
 	HTMLTagPrototype bodyTag = new HTMLTagPrototype(TAG_BODY, true);
 
-	// NOW MAKE THE NODES
-	Workspace workspace = (Workspace) app.getWorkspaceComponent();
-	TreeItem headItem = new TreeItem(headTag);
-	TreeItem titleItem = new TreeItem(titleTag);
-	TreeItem linkItem = new TreeItem(linkTag);
-	TreeItem bodyItem = new TreeItem(bodyTag);
-
 	// FIRST CLEAR OUT ANY OLD STUFF
-	htmlRoot.getChildren().clear();
+	int htmlNode = pageTree.clear(htmlTag);
 
 	// AND ARRANGE THEM IN THE TREE
-	htmlRoot.getChildren().add(headItem);
-	headItem.getChildren().add(titleItem);
-	headItem.getChildren().add(linkItem);
-	htmlRoot.getChildren().add(bodyItem);
+	int headNode = pageTree.appendChild(htmlNode, headTag);
+	pageTree.appendChild(headNode, titleTag);
+	pageTree.appendChild(headNode, linkTag);
+	pageTree.appendChild(htmlNode, bodyTag);
 	
 	// AND FINALLY CLEAR THE CSS
-	cssText = "";
+	cssBuffer.setText("");
     }
 }
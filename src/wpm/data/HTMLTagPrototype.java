@@ -2,6 +2,7 @@ package wpm.data;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 /**
  * This class represents a single element (i.e. tag) in an HTML tree.
  *
@@ -24,13 +25,27 @@ public class HTMLTagPrototype implements Comparable<HTMLTagPrototype>, Cloneable
     public static final String ATT_HREF = "href";
     public static final String HREF_HOME = "./css/home.css";
     
+    // USED FOR TAGS WHOSE TYPE HASN'T BEEN LOOKED UP IN THE TAG SCHEMA
+    // YET, AND FOR THOSE THAT AREN'T IN IT
+    public static final int UNKNOWN_TYPE_ID = -1;
+    public static final int NO_TYPE_ID = -2;
+    
     // NOW FOR THE DATA FOR EACH TAG
    
     // EACH TAG HAS A NAME, LIKE A PARAGRAPH IS "p"
     String tagName;
     
-    // THE SET OF ATTRIBUTES FOR THIS TAG, MEANING NAME, VALUE PAIRS
-    HashMap<String, String> attributes;
+    // THE SET OF ATTRIBUTES FOR THIS TAG, MEANING NAME, VALUE PAIRS. THE
+    // NAMES ARE KEPT IN A SCHEMA SHARED BY ALL TAGS OF THIS TYPE, WHICH
+    // COMES FROM THE PROTOTYPE WE WERE CLONED FROM, SO WE ONLY KEEP THE
+    // VALUES. UNTIL ONE IS SET THE VALUES ARRAY IS ALSO SHARED. ANY
+    // ATTRIBUTES NOT IN THE SCHEMA GO IN THE EXTRA MAP, WHICH IS
+    // USUALLY null
+    AttributeSchema attributeSchema;
+    String[] attributeValues;
+    boolean ownsAttributeValues;
+    LinkedHashMap<String, String> extraAttributes;
+    String[] extraAttributeNames;
     
     // THIS IS USEFUL WHEN SAVING THE TREE
     int nodeIndex;
@@ -45,6 +60,12 @@ public class HTMLTagPrototype implements Comparable<HTMLTagPrototype>, Cloneable
     // DOES NOT HAVE A CLOSING TAG
     boolean hasClosingTag;
     
+    // THE ID OF THIS TAG'S TYPE IN THE TAG SCHEMA, WHICH SAVES US FROM
+    // COMPARING TAG NAMES, AND THE GENERATION OF THE SCHEMA IT'S FROM,
+    // SINCE IT HAS TO BE LOOKED UP AGAIN WHEN THE SCHEMA IS REPLACED
+    int typeId;
+    int typeGeneration;
+    
     /**
      * Constructor that initializes the minimal requirements, meaning
      * the name of the tag and whether it has a closing tag. Note that 
@@ -62,9 +83,11 @@ public class HTMLTagPrototype implements Comparable<HTMLTagPrototype>, Cloneable
 	// KEEP THE DATA
 	tagName = initTagName;
 	hasClosingTag = initHasClosingTag;
+	typeId = UNKNOWN_TYPE_ID;
 	
 	// AND INIT THE DATA STRUCTURES TO BE FILLED IN LATER
-	attributes = new HashMap();
+	attributeSchema = AttributeSchema.EMPTY;
+	attributeValues = attributeSchema.emptyValues;
 	legalParents = new ArrayList();
     }
     
@@ -88,6 +111,42 @@ public class HTMLTagPrototype implements Comparable<HTMLTagPrototype>, Cloneable
 	return tagName;
     }
 
+    /**
+     * Accessor method for getting the id of this tag's type, which is
+     * assigned by the tag schema.
+     * 
+     * @return The type id, UNKNOWN_TYPE_ID if it hasn't been assigned yet
+     * or NO_TYPE_ID if the schema doesn't know this type of tag. Note that
+     * it's only valid for the schema whose generation getTypeGeneration
+     * returns.
+     */
+    public int getTypeId() {
+	return typeId;
+    }
+
+    /**
+     * Accessor method for getting which tag schema this tag's type id was
+     * assigned by.
+     * 
+     * @return The generation of the schema, or 0 if the id hasn't been
+     * assigned yet.
+     */
+    public int getTypeGeneration() {
+	return typeGeneration;
+    }
+
+    /**
+     * Mutator method for setting the id of this tag's type.
+     * 
+     * @param initTypeId The id the tag schema uses for this tag's type.
+     * 
+     * @param initTypeGeneration The generation of that schema.
+     */
+    public void setTypeId(int initTypeId, int initTypeGeneration) {
+	typeId = initTypeId;
+	typeGeneration = initTypeGeneration;
+    }
+
     /**
      * Accessor method for getting the node index for this tag in
      * the HTML page tree.
@@ -136,7 +195,21 @@ public class HTMLTagPrototype implements Comparable<HTMLTagPrototype>, Cloneable
      * @param value The value for the attribute to add.
      */
     public void addAttribute(String name, String value) {
-	attributes.put(name, value);
+	int index = attributeSchema.indexOf(name);
+	if (index >= 0) {
+	    if (!ownsAttributeValues) {
+		attributeValues = attributeValues.clone();
+		ownsAttributeValues = true;
+	    }
+	    attributeValues[index] = value;
+	} else {
+	    if (extraAttributes == null) {
+		extraAttributes = new LinkedHashMap();
+	    }
+	    if (extraAttributes.put(name, value) == null) {
+		extraAttributeNames = extraAttributes.keySet().toArray(new String[extraAttributes.size()]);
+	    }
+	}
     }
     
     /**
@@ -148,18 +221,68 @@ public class HTMLTagPrototype implements Comparable<HTMLTagPrototype>, Cloneable
      * for this element.
      */
     public String getAttribute(String name) {
-	return attributes.get(name);
+	int index = attributeSchema.indexOf(name);
+	if (index >= 0) {
+	    return attributeValues[index];
+	}
+	return (extraAttributes == null) ? null : extraAttributes.get(name);
     }
     
     /**
-     * Accessor method for getting all of this tag's attributes
+     * Accessor method for getting all of this tag's attributes. Note that
+     * this builds a copy, so changing it doesn't change this tag, and that
+     * going through the attributes by index is cheaper.
      * 
      * @return The complete hash table of attributes for this element.
      */
     public HashMap<String,String> getAttributes() { 
+	LinkedHashMap<String, String> attributes = new LinkedHashMap();
+	for (int i = 0; i < getAttributeCount(); i++) {
+	    attributes.put(getAttributeName(i), getAttributeValue(i));
+	}
 	return attributes;
     }
     
+    /**
+     * Accessor method for getting the number of attributes this tag has.
+     * 
+     * @return The number of name, value pairs.
+     */
+    public int getAttributeCount() {
+	return attributeSchema.size() + ((extraAttributes == null) ? 0 : extraAttributes.size());
+    }
+    
+    /**
+     * Accessor method for getting the name of one of this tag's attributes.
+     * The attributes of the tag's type come first, in the order of the
+     * tags file, followed by any others in the order they were added.
+     * 
+     * @param index Which attribute to get.
+     * 
+     * @return The name of the attribute.
+     */
+    public String getAttributeName(int index) {
+	if (index < attributeSchema.size()) {
+	    return attributeSchema.names[index];
+	}
+	return extraAttributeNames[index - attributeSchema.size()];
+    }
+    
+    /**
+     * Accessor method for getting the value of one of this tag's attributes.
+     * 
+     * @param index Which attribute to get, in the same order as
+     * getAttributeName.
+     * 
+     * @return The value of the attribute.
+     */
+    public String getAttributeValue(int index) {
+	if (index < attributeSchema.size()) {
+	    return attributeValues[index];
+	}
+	return extraAttributes.get(extraAttributeNames[index - attributeSchema.size()]);
+    }
+    
     /**
      * This method tests to see if the testParent argument is
      * a legal parent tag for this type of tag.
@@ -238,12 +361,87 @@ public class HTMLTagPrototype implements Comparable<HTMLTagPrototype>, Cloneable
 	
 	// MAKE SURE IT HAS THE SAME LEGAL PARENTS
 	clonedTag.legalParents = legalParents;
+	clonedTag.typeId = typeId;
+	clonedTag.typeGeneration = typeGeneration;
+	
+	// WE WANT ALL THE SAME ATTRIBUTS, BUT NO VALUES, SO THE CLONE
+	// SHARES OUR SCHEMA AND ITS EMPTY VALUES
+	compactAttributes();
+	clonedTag.attributeSchema = attributeSchema;
+	clonedTag.attributeValues = attributeSchema.emptyValues;
 	
-	// WE WANT ALL THE SAME ATTRIBUTS, BUT NO VALUES
-	for (String attributeName : attributes.keySet()) {
-	    clonedTag.addAttribute(attributeName, "");
-	}
 	// AND RETURN THE CLONED OBJECT
 	return clonedTag;
     }
+    
+    /**
+     * This method makes a copy of this tag, with the same attribute values
+     * as well as the same name and attributes, like for copying part of
+     * the page. The values aren't copied, both tags share them until either
+     * one sets a value, so copying a big part of the page costs little more
+     * than making the tags.
+     * 
+     * @return A newly constructed tag object with the same tag name,
+     * attributes and attribute values.
+     */
+    public HTMLTagPrototype copy() {
+	HTMLTagPrototype copiedTag = new HTMLTagPrototype(tagName, hasClosingTag);
+	copiedTag.legalParents = legalParents;
+	copiedTag.typeId = typeId;
+	copiedTag.typeGeneration = typeGeneration;
+	
+	// FROM NOW ON NEITHER OF US MAY CHANGE THE SHARED VALUES IN PLACE
+	copiedTag.attributeSchema = attributeSchema;
+	copiedTag.attributeValues = attributeValues;
+	ownsAttributeValues = false;
+	if (extraAttributes != null) {
+	    copiedTag.extraAttributes = new LinkedHashMap(extraAttributes);
+	    copiedTag.extraAttributeNames = extraAttributeNames;
+	}
+	return copiedTag;
+    }
+    
+    // HELPER METHOD FOR SWITCHING TO ANOTHER ATTRIBUTE SCHEMA, KEEPING ALL
+    // THE VALUES, ATTRIBUTES THE NEW SCHEMA DOESN'T HAVE BECOME EXTRAS
+    void rebindAttributes(AttributeSchema newSchema) {
+	int size = getAttributeCount();
+	String[] names = new String[size];
+	String[] values = new String[size];
+	for (int i = 0; i < size; i++) {
+	    names[i] = getAttributeName(i);
+	    values[i] = getAttributeValue(i);
+	}
+	attributeSchema = newSchema;
+	attributeValues = newSchema.emptyValues;
+	ownsAttributeValues = false;
+	extraAttributes = null;
+	extraAttributeNames = null;
+	for (int i = 0; i < size; i++) {
+	    // EMPTY VALUES IN THE SCHEMA ARE SHARED
+	    if (!"".equals(values[i]) || (newSchema.indexOf(names[i]) < 0)) {
+		addAttribute(names[i], values[i]);
+	    }
+	}
+    }
+    
+    // HELPER METHOD FOR MOVING ANY EXTRA ATTRIBUTES INTO THE SCHEMA, WHICH
+    // IS DONE FOR PROTOTYPES BEFORE THEY ARE CLONED SO THAT THEIR CLONES
+    // HAVE ALL THEIR ATTRIBUTES IN THE SCHEMA
+    private void compactAttributes() {
+	if (extraAttributes == null) {
+	    return;
+	}
+	int size = getAttributeCount();
+	String[] names = new String[size];
+	String[] values = new String[size];
+	for (int i = 0; i < size; i++) {
+	    names[i] = getAttributeName(i);
+	    values[i] = getAttributeValue(i);
+	}
+	attributeSchema = new AttributeSchema(names);
+	attributeValues = values;
+	ownsAttributeValues = true;
+	extraAttributes = null;
+	extraAttributeNames = null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package wpm.data;
+
+/**
+ * This class holds a copy of an element of a page along with everything in
+ * it, like what the user has copied to paste elsewhere. It doesn't belong
+ * to any tree, so it stays the same as the page it was copied from changes
+ * or is replaced by another page, and it can be put into a tree any number
+ * of times. The elements are kept in the order a walk of the subtree would
+ * visit them, the copied element first, along with where each one's parent
+ * is in that order.
+ *
+ * Note that the tags share their attribute values with the elements they
+ * were copied from, and with the elements made from them, until any of
+ * those are changed, so copying and pasting costs little more than the
+ * tags themselves.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PageFragment {
+    // THE ELEMENTS, THE ROOT FIRST, AND WHERE EACH ONE'S PARENT IS IN THAT
+    // ORDER, -1 FOR THE ROOT. THE TAGS ARE NEVER CHANGED, ONLY COPIED
+    HTMLTagPrototype[] tags;
+    int[] parentIndices;
+
+    // HELPER CONSTRUCTOR, FRAGMENTS ARE MADE BY COPYING PART OF A TREE
+    PageFragment(HTMLTagPrototype[] initTags, int[] initParentIndices) {
+	tags = initTags;
+	parentIndices = initParentIndices;
+    }
+
+    /**
+     * Accessor method for getting how many elements the fragment has.
+     *
+     * @return The number of elements, including the copied one.
+     */
+    public int size() {
+	return tags.length;
+    }
+
+    /**
+     * Accessor method for getting the tag of the copied element, which is
+     * what has to be legal wherever the fragment is put.
+     *
+     * @return The tag of the fragment's root, which mustn't be changed.
+     */
+    public HTMLTagPrototype getRootTag() {
+	return tags[0];
+    }
+}
@@ -0,0 +1,312 @@
+package wpm.data;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class is an immutable copy of the page being edited, meaning its tree
+ * of tags and its CSS, such that it can be saved or exported on a background
+ * thread while the user keeps editing the real thing. It is also what pages
+ * are read into when loaded, before the tree itself is built. The nodes are
+ * stored in pre-order, the same order they are saved in, so the root is
+ * node 0 and each node's children follow it. Parts of a memory-mapped page
+ * whose children have never been filled in are copied straight from the
+ * mapped file.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PageSnapshot {
+    // THE DATA FOR EACH NODE, ALL INDEXED BY NODE INDEX
+    final String[] tagNames;
+    final boolean[] closingTags;
+    final String[][] attributeNames;
+    final String[][] attributeValues;
+    final List<String>[] legalParents;
+    final int[] parentIndices;
+    final int[] childCounts;
+
+    // THE FULL CONTENTS OF THE CSS FILE
+    final String cssText;
+
+    // USED WHILE COPYING THE TREE
+    private int nodeCounter;
+    private HashMap<Integer, PageSnapshot> mappedSubtrees;
+
+    /**
+     * Constructor that copies the tree argument along with the CSS text.
+     * Note that this must be done on the thread editing the tree, the
+     * snapshot may then be used on any thread.
+     *
+     * @param tree The tree to copy.
+     *
+     * @param initCSSText The CSS for the page.
+     */
+    public PageSnapshot(PageTree tree, String initCSSText) {
+	mappedSubtrees = new HashMap();
+	int size = countNodes(tree, tree.getRoot());
+	tagNames = new String[size];
+	closingTags = new boolean[size];
+	attributeNames = new String[size][];
+	attributeValues = new String[size][];
+	legalParents = new List[size];
+	parentIndices = new int[size];
+	childCounts = new int[size];
+	cssText = initCSSText;
+	nodeCounter = 0;
+	copyNode(tree, tree.getRoot(), -1);
+	mappedSubtrees = null;
+    }
+
+    /**
+     * Constructor for a page that has been read from a file. Note that
+     * the arrays are kept, not copied, and so must not be changed
+     * afterwards.
+     *
+     * @param initTagNames The tag name of each node.
+     *
+     * @param initClosingTags Whether or not each node has a closing tag.
+     *
+     * @param initAttributeNames The names of each node's attributes.
+     *
+     * @param initAttributeValues The values of each node's attributes.
+     *
+     * @param initLegalParents The legal parents of each node's element.
+     *
+     * @param initParentIndices The index of each node's parent, -1 for
+     * the root.
+     *
+     * @param initChildCounts The number of children each node has.
+     *
+     * @param initCSSText The CSS for the page.
+     */
+    public PageSnapshot(String[] initTagNames, boolean[] initClosingTags,
+	    String[][] initAttributeNames, String[][] initAttributeValues,
+	    List<String>[] initLegalParents, int[] initParentIndices,
+	    int[] initChildCounts, String initCSSText) {
+	tagNames = initTagNames;
+	closingTags = initClosingTags;
+	attributeNames = initAttributeNames;
+	attributeValues = initAttributeValues;
+	legalParents = initLegalParents;
+	parentIndices = initParentIndices;
+	childCounts = initChildCounts;
+	cssText = initCSSText;
+    }
+
+    /**
+     * Constructor for taking a snapshot of the page held by a data manager.
+     *
+     * @param dataManager The data manager holding the page.
+     */
+    public PageSnapshot(DataManager dataManager) {
+	this(dataManager.getPageTree(), dataManager.getCSSText());
+    }
+
+    // HELPER METHOD FOR COUNTING THE NODES IN A SUBTREE
+    private int countNodes(PageTree tree, int node) {
+	if (tree.isUnmaterialized(node)) {
+	    PageSnapshot subtree = tree.getMappedPage().copySubtree(tree.getMappedOffset(node));
+	    mappedSubtrees.put(node, subtree);
+	    return subtree.size();
+	}
+	int count = 1;
+	for (int child = tree.getFirstChild(node); child != NO_NODE; child = tree.getNextSibling(child)) {
+	    count += countNodes(tree, child);
+	}
+	return count;
+    }
+
+    // HELPER METHOD FOR COPYING A SUBTREE IN PRE-ORDER
+    private void copyNode(PageTree tree, int node, int parentIndex) {
+	int index = nodeCounter++;
+	HTMLTagPrototype tag = tree.getTag(node);
+	tagNames[index] = tag.getTagName();
+	closingTags[index] = tag.hasClosingTag();
+	String[] names = new String[tag.getAttributeCount()];
+	String[] values = new String[names.length];
+	for (int i = 0; i < names.length; i++) {
+	    names[i] = tag.getAttributeName(i);
+	    values[i] = tag.getAttributeValue(i);
+	}
+	attributeNames[index] = names;
+	attributeValues[index] = values;
+	legalParents[index] = Collections.unmodifiableList(tag.getLegalParents());
+	parentIndices[index] = parentIndex;
+
+	// THE DESCENDANTS OF AN UNMATERIALIZED MAPPED NODE COME FROM THE FILE
+	PageSnapshot subtree = mappedSubtrees.get(node);
+	if (subtree != null) {
+	    copyDescendants(subtree, index);
+	    return;
+	}
+	childCounts[index] = tree.getChildCount(node);
+	for (int child = tree.getFirstChild(node); child != NO_NODE; child = tree.getNextSibling(child)) {
+	    copyNode(tree, child, index);
+	}
+    }
+
+    // HELPER METHOD FOR COPYING ALL BUT THE ROOT OF A SUBTREE COPIED FROM
+    // A MAPPED FILE, WHOSE ROOT IS AT index
+    private void copyDescendants(PageSnapshot subtree, int index) {
+	childCounts[index] = subtree.childCounts[0];
+	for (int i = 1; i < subtree.size(); i++) {
+	    int copyIndex = nodeCounter++;
+	    tagNames[copyIndex] = subtree.tagNames[i];
+	    closingTags[copyIndex] = subtree.closingTags[i];
+	    attributeNames[copyIndex] = subtree.attributeNames[i];
+	    attributeValues[copyIndex] = subtree.attributeValues[i];
+	    legalParents[copyIndex] = subtree.legalParents[i];
+	    parentIndices[copyIndex] = index + subtree.parentIndices[i];
+	    childCounts[copyIndex] = subtree.childCounts[i];
+	}
+    }
+
+    // HELPER METHOD FOR MAKING THE TAG FOR EVERY NODE OF THIS PAGE WHEN
+    // IT IS LOADED INTO A TREE. NODES WITH A TAG TYPE KNOWN TO THE DATA
+    // MANAGER ARE CLONED FROM THAT TYPE'S PROTOTYPE, AND SO SHARE ITS
+    // LIST OF LEGAL PARENTS, ALL OTHER NODES OF THE SAME TYPE SHARE ONE
+    // LIST BUILT FROM THIS PAGE
+    HTMLTagPrototype[] buildTags(DataManager dataManager) {
+	int size = size();
+	HTMLTagPrototype[] tags = new HTMLTagPrototype[size];
+	HashMap<String, HTMLTagPrototype> pagePrototypes = new HashMap();
+	for (int i = 0; i < size; i++) {
+	    // MAKE THE TAG BY CLONING ITS PROTOTYPE
+	    HTMLTagPrototype prototype = dataManager.getTag(tagNames[i]);
+	    if (prototype == null) {
+		prototype = pagePrototypes.get(tagNames[i]);
+		if (prototype == null) {
+		    prototype = new HTMLTagPrototype(tagNames[i], closingTags[i]);
+		    for (String legalParent : legalParents[i]) {
+			prototype.addLegalParent(legalParent);
+		    }
+
+		    // SO THAT ALL TAGS OF THIS TYPE SHARE ONE ATTRIBUTE SCHEMA
+		    for (String attributeName : attributeNames[i]) {
+			prototype.addAttribute(attributeName, "");
+		    }
+		    pagePrototypes.put(tagNames[i], prototype);
+		}
+	    }
+	    HTMLTagPrototype tag = prototype.clone();
+	    for (int j = 0; j < attributeNames[i].length; j++) {
+		tag.addAttribute(attributeNames[i][j], attributeValues[i][j]);
+	    }
+	    tags[i] = tag;
+	}
+	return tags;
+    }
+
+    /**
+     * Accessor method for getting the number of nodes in the page.
+     *
+     * @return The number of nodes in the tree.
+     */
+    public int size() {
+	return tagNames.length;
+    }
+
+    /**
+     * Accessor method for getting the CSS text.
+     *
+     * @return The contents of the CSS file for the page.
+     */
+    public String getCSSText() {
+	return cssText;
+    }
+
+    /**
+     * Accessor method for getting a node's tag name.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @return The name of that node's tag, like "p".
+     */
+    public String getTagName(int nodeIndex) {
+	return tagNames[nodeIndex];
+    }
+
+    /**
+     * Accessor method for testing whether a node has a closing tag.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @return true if that node's element has a closing tag, false otherwise.
+     */
+    public boolean hasClosingTag(int nodeIndex) {
+	return closingTags[nodeIndex];
+    }
+
+    /**
+     * Accessor method for getting the number of attributes a node has.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @return The number of attributes, meaning name, value pairs.
+     */
+    public int getAttributeCount(int nodeIndex) {
+	return attributeNames[nodeIndex].length;
+    }
+
+    /**
+     * Accessor method for getting the name of one of a node's attributes.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @param attributeIndex Which of the node's attributes to get.
+     *
+     * @return The name of the attribute.
+     */
+    public String getAttributeName(int nodeIndex, int attributeIndex) {
+	return attributeNames[nodeIndex][attributeIndex];
+    }
+
+    /**
+     * Accessor method for getting the value of one of a node's attributes.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @param attributeIndex Which of the node's attributes to get.
+     *
+     * @return The value of the attribute.
+     */
+    public String getAttributeValue(int nodeIndex, int attributeIndex) {
+	return attributeValues[nodeIndex][attributeIndex];
+    }
+
+    /**
+     * Accessor method for getting the legal parents of a node's element.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @return The names of the tags this node's element may be placed in.
+     */
+    public List<String> getLegalParents(int nodeIndex) {
+	return legalParents[nodeIndex];
+    }
+
+    /**
+     * Accessor method for getting the index of a node's parent.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @return The index of the node's parent, -1 for the root.
+     */
+    public int getParentIndex(int nodeIndex) {
+	return parentIndices[nodeIndex];
+    }
+
+    /**
+     * Accessor method for getting the number of children a node has.
+     *
+     * @param nodeIndex The index of the node.
+     *
+     * @return The number of children the node has.
+     */
+    public int getChildCount(int nodeIndex) {
+	return childCounts[nodeIndex];
+    }
+}
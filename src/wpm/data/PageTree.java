@@ -0,0 +1,733 @@
+package wpm.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import wpm.file.MappedPage;
+
+/**
+ * This class holds the tree of elements for the page being edited. Each
+ * node is just an int, an index into a table of arrays holding the node's
+ * tag along with the indices of its parent, its first and last child and
+ * its siblings, so walking, loading and copying the tree never touches
+ * anything but those arrays. The nodes of removed subtrees are reused for
+ * the nodes added afterwards.
+ *
+ * Every change made through this class is announced to its listeners,
+ * which is how the exporter, the tree view and the live preview follow
+ * along. Loading a page replaces all the nodes at once and is announced
+ * once, rather than once per node.
+ *
+ * Nodes of a page that has been opened from a memory-mapped file have
+ * their children filled in from the file the first time they are asked
+ * for. Until then isUnmaterialized returns true for them, and their
+ * subtrees can be read straight from the file instead.
+ *
+ * Note that the tree isn't tied to the JavaFX application thread, but
+ * it also isn't synchronized, so it must only be used by one thread at
+ * a time.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PageTree {
+    // USED FOR NODES THAT DON'T EXIST, LIKE THE PARENT OF THE ROOT
+    public static final int NO_NODE = -1;
+
+    static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * This interface is implemented by those that need to know about
+     * changes to the tree. The tree is always in a consistent state
+     * when these are called.
+     */
+    public interface Listener {
+	/**
+	 * Called after the node argument, along with any descendants it
+	 * has, has been added to the tree.
+	 *
+	 * @param node The added node.
+	 */
+	default void nodeInserted(int node) {
+	}
+
+	/**
+	 * Called just before the node argument and all its descendants
+	 * are removed from the tree.
+	 *
+	 * @param node The node about to be removed.
+	 */
+	default void nodeRemoving(int node) {
+	}
+
+	/**
+	 * Called after one of a node's attributes has been changed.
+	 *
+	 * @param node The node whose attribute was changed.
+	 *
+	 * @param attributeName The name of the changed attribute.
+	 *
+	 * @param attributeValue Its new value.
+	 */
+	default void attributeChanged(int node, String attributeName, String attributeValue) {
+	}
+
+	/**
+	 * Called after the whole tree has been replaced, like when a page
+	 * has been loaded, after which all old node indices are invalid.
+	 */
+	default void pageReplaced() {
+	}
+
+	/**
+	 * Called after the tags in the tree have been brought up to date
+	 * with a new tag schema, which may have changed how some of them
+	 * are exported, though not the tree itself.
+	 */
+	default void tagsRebound() {
+	}
+    }
+
+    // THE NODE TABLE, A NODE WITH NO TAG IS ON THE FREE LIST, WHICH IS
+    // CHAINED THROUGH nextSiblings
+    HTMLTagPrototype[] tags;
+    int[] parents;
+    int[] firstChildren;
+    int[] lastChildren;
+    int[] nextSiblings;
+    int[] previousSiblings;
+    int[] childCounts;
+
+    // HOW MANY NODES HAVE EVER BEEN USED, HOW MANY ARE IN THE TREE, AND
+    // THE FIRST ONE THAT'S FREE FOR REUSE
+    int nodeLimit;
+    int nodeCount;
+    int firstFreeNode;
+
+    // THE ROOT OF THE TREE
+    int root;
+
+    // FOR A PAGE OPENED FROM A MAPPED FILE, WHERE EACH NODE THAT HASN'T
+    // HAD ITS CHILDREN FILLED IN YET IS IN THE FILE, OR -1
+    MappedPage mappedPage;
+    int[] mappedOffsets;
+
+    // THOSE WHO FOLLOW ALONG WITH OUR CHANGES
+    ArrayList<Listener> listeners;
+
+    /**
+     * Constructor for an empty tree, with not even a root.
+     */
+    public PageTree() {
+	listeners = new ArrayList();
+	allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * This method adds the listener argument, which will be told about
+     * every change made to the tree from now on.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(Listener listener) {
+	listeners.add(listener);
+    }
+
+    /**
+     * This method removes the listener argument.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(Listener listener) {
+	listeners.remove(listener);
+    }
+
+    /**
+     * Accessor method for getting the root of the tree.
+     *
+     * @return The root node, or NO_NODE if the tree is empty.
+     */
+    public int getRoot() {
+	return root;
+    }
+
+    /**
+     * Accessor method for getting the number of nodes in the tree. Note
+     * that the descendants of unmaterialized nodes aren't counted, while
+     * detached nodes are until they are discarded.
+     *
+     * @return The number of nodes in the table.
+     */
+    public int size() {
+	return nodeCount;
+    }
+
+    /**
+     * Accessor method for getting a node's tag.
+     *
+     * @param node The node.
+     *
+     * @return The tag for the node's element.
+     */
+    public HTMLTagPrototype getTag(int node) {
+	return tags[node];
+    }
+
+    /**
+     * Accessor method for getting a node's parent.
+     *
+     * @param node The node.
+     *
+     * @return The node's parent, or NO_NODE for the root.
+     */
+    public int getParent(int node) {
+	return parents[node];
+    }
+
+    /**
+     * Accessor method for getting a node's first child, filling in the
+     * node's children first if they are still only in the mapped file.
+     *
+     * @param node The node.
+     *
+     * @return The node's first child, or NO_NODE if it has none.
+     */
+    public int getFirstChild(int node) {
+	materialize(node);
+	return firstChildren[node];
+    }
+
+    /**
+     * Accessor method for getting a node's last child, filling in the
+     * node's children first if they are still only in the mapped file.
+     *
+     * @param node The node.
+     *
+     * @return The node's last child, or NO_NODE if it has none.
+     */
+    public int getLastChild(int node) {
+	materialize(node);
+	return lastChildren[node];
+    }
+
+    /**
+     * Accessor method for getting the sibling after a node.
+     *
+     * @param node The node.
+     *
+     * @return The next sibling, or NO_NODE if the node is the last child.
+     */
+    public int getNextSibling(int node) {
+	return nextSiblings[node];
+    }
+
+    /**
+     * Accessor method for getting the sibling before a node.
+     *
+     * @param node The node.
+     *
+     * @return The previous sibling, or NO_NODE if the node is the first
+     * child.
+     */
+    public int getPreviousSibling(int node) {
+	return previousSiblings[node];
+    }
+
+    /**
+     * Accessor method for getting the number of children a node has,
+     * which doesn't fill them in.
+     *
+     * @param node The node.
+     *
+     * @return The number of children.
+     */
+    public int getChildCount(int node) {
+	return childCounts[node];
+    }
+
+    /**
+     * Accessor method for getting one of a node's children.
+     *
+     * @param node The node.
+     *
+     * @param index The position of the child among its siblings.
+     *
+     * @return The child, or NO_NODE if there isn't one at index.
+     */
+    public int getChild(int node, int index) {
+	int child = getFirstChild(node);
+	for (int i = 0; (i < index) && (child != NO_NODE); i++) {
+	    child = nextSiblings[child];
+	}
+	return child;
+    }
+
+    /**
+     * Accessor method for getting a node's position among its siblings.
+     *
+     * @param node The node.
+     *
+     * @return The index of the node in its parent's children, 0 for the
+     * root.
+     */
+    public int indexOf(int node) {
+	int index = 0;
+	for (int sibling = previousSiblings[node]; sibling != NO_NODE; sibling = previousSiblings[sibling]) {
+	    index++;
+	}
+	return index;
+    }
+
+    /**
+     * This method tests whether the node argument's children are still
+     * only in the mapped file, in which case its subtree should be read
+     * from there rather than walked.
+     *
+     * @param node The node to test.
+     *
+     * @return true if the node's children haven't been filled in yet.
+     */
+    public boolean isUnmaterialized(int node) {
+	return mappedOffsets[node] >= 0;
+    }
+
+    /**
+     * Accessor method for getting the mapped page this tree was opened
+     * from.
+     *
+     * @return The mapped page, or null if the tree wasn't opened from one.
+     */
+    public MappedPage getMappedPage() {
+	return mappedPage;
+    }
+
+    /**
+     * Accessor method for getting where in the mapped file the record
+     * of an unmaterialized node starts.
+     *
+     * @param node The node.
+     *
+     * @return The offset of the node in the mapped file, or -1 if its
+     * children have been filled in.
+     */
+    public int getMappedOffset(int node) {
+	return mappedOffsets[node];
+    }
+
+    /**
+     * This method adds a new node with the tag argument to the end of a
+     * node's children.
+     *
+     * @param parent The node to add the new node to.
+     *
+     * @param tag The tag for the new node, which the tree keeps.
+     *
+     * @return The new node.
+     */
+    public int appendChild(int parent, HTMLTagPrototype tag) {
+	materialize(parent);
+	return insertBefore(parent, NO_NODE, tag);
+    }
+
+    /**
+     * This method adds a new node with the tag argument to a node's
+     * children.
+     *
+     * @param parent The node to add the new node to.
+     *
+     * @param index Where among the parent's children to put the new node.
+     *
+     * @param tag The tag for the new node, which the tree keeps.
+     *
+     * @return The new node.
+     */
+    public int insertChild(int parent, int index, HTMLTagPrototype tag) {
+	return insertBefore(parent, getChild(parent, index), tag);
+    }
+
+    /**
+     * This method removes the node argument, along with all its
+     * descendants, from the tree.
+     *
+     * @param node The node to remove, which must not be the root.
+     */
+    public void removeNode(int node) {
+	detachNode(node);
+	freeSubtree(node);
+    }
+
+    /**
+     * This method takes the node argument, along with all its
+     * descendants, out of the tree but keeps them, such that they can be
+     * put back with attachNode. Detached nodes keep their ids until they
+     * are discarded.
+     *
+     * @param node The node to detach, which must not be the root.
+     */
+    public void detachNode(int node) {
+	for (Listener listener : listeners) {
+	    listener.nodeRemoving(node);
+	}
+	unlink(node);
+    }
+
+    /**
+     * This method puts a detached node, along with all its descendants,
+     * back into the tree.
+     *
+     * @param parent The node to add the detached node to.
+     *
+     * @param index Where among the parent's children to put it.
+     *
+     * @param node The detached node.
+     */
+    public void attachNode(int parent, int index, int node) {
+	link(node, parent, getChild(parent, index));
+	for (Listener listener : listeners) {
+	    listener.nodeInserted(node);
+	}
+    }
+
+    /**
+     * This method copies a node, along with all its descendants, into a
+     * fragment that isn't part of any tree. Nodes whose children are still
+     * only in a mapped file have them filled in first.
+     *
+     * @param node The node to copy.
+     *
+     * @return The copy.
+     */
+    public PageFragment copySubtree(int node) {
+	int size = countSubtree(node);
+	HTMLTagPrototype[] fragmentTags = new HTMLTagPrototype[size];
+	int[] parentIndices = new int[size];
+	copySubtree(node, -1, fragmentTags, parentIndices, 0);
+	return new PageFragment(fragmentTags, parentIndices);
+    }
+
+    // HELPER METHOD FOR COUNTING THE NODES OF A SUBTREE, FILLING IN ANY
+    // THAT ARE STILL ONLY IN A MAPPED FILE
+    private int countSubtree(int node) {
+	int count = 1;
+	for (int child = getFirstChild(node); child != NO_NODE; child = nextSiblings[child]) {
+	    count += countSubtree(child);
+	}
+	return count;
+    }
+
+    // HELPER METHOD FOR COPYING A SUBTREE INTO THE FRAGMENT ARRAYS STARTING
+    // AT index, RETURNING WHERE THE NEXT SUBTREE GOES
+    private int copySubtree(int node, int parentIndex, HTMLTagPrototype[] fragmentTags, int[] parentIndices, int index) {
+	int nodeIndex = index++;
+	fragmentTags[nodeIndex] = tags[node].copy();
+	parentIndices[nodeIndex] = parentIndex;
+	for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+	    index = copySubtree(child, nodeIndex, fragmentTags, parentIndices, index);
+	}
+	return index;
+    }
+
+    /**
+     * This method makes new nodes copying a fragment, which are detached
+     * until they are put into the tree with attachNode, so nobody is told
+     * about them before then.
+     *
+     * @param fragment The fragment to copy.
+     *
+     * @return The new node copying the fragment's root.
+     */
+    public int buildSubtree(PageFragment fragment) {
+	int[] nodes = new int[fragment.size()];
+	for (int i = 0; i < nodes.length; i++) {
+	    nodes[i] = createNode(fragment.tags[i].copy());
+	    int parentIndex = fragment.parentIndices[i];
+	    if (parentIndex >= 0) {
+		link(nodes[i], nodes[parentIndex], NO_NODE);
+	    }
+	}
+	return nodes[0];
+    }
+
+    /**
+     * This method frees a detached node and all its descendants, after
+     * which their ids may be reused for new nodes.
+     *
+     * @param node The detached node.
+     */
+    public void discardNode(int node) {
+	freeSubtree(node);
+    }
+
+    /**
+     * This method sets the value of one of a node's attributes.
+     *
+     * @param node The node to change.
+     *
+     * @param attributeName The name of the attribute.
+     *
+     * @param attributeValue The new value of the attribute.
+     */
+    public void setAttribute(int node, String attributeName, String attributeValue) {
+	tags[node].addAttribute(attributeName, attributeValue);
+	for (Listener listener : listeners) {
+	    listener.attributeChanged(node, attributeName, attributeValue);
+	}
+    }
+
+    /**
+     * This method replaces the whole tree with a single root node.
+     *
+     * @param rootTag The tag for the new root.
+     *
+     * @return The new root.
+     */
+    public int clear(HTMLTagPrototype rootTag) {
+	removeAll();
+	root = createNode(rootTag);
+	firePageReplaced();
+	return root;
+    }
+
+    /**
+     * This method replaces the whole tree with the page argument. Nodes
+     * with a tag type known to the data manager are cloned from that
+     * type's prototype.
+     *
+     * @param page The page to load, which mustn't be empty.
+     *
+     * @param dataManager The data manager with the tag prototypes.
+     */
+    public void load(PageSnapshot page, DataManager dataManager) {
+	HTMLTagPrototype[] pageTags = page.buildTags(dataManager);
+	removeAll();
+	ensureCapacity(pageTags.length);
+
+	// THE NODES ARE IN PRE-ORDER, SO EVERY PARENT IS ALREADY THERE
+	// AND EACH NODE IS ITS PARENT'S NEXT CHILD
+	for (int i = 0; i < pageTags.length; i++) {
+	    int node = createNode(pageTags[i]);
+	    link(node, page.getParentIndex(i), NO_NODE);
+	}
+	root = 0;
+	firePageReplaced();
+    }
+
+    /**
+     * This method replaces the whole tree with the page in the mapped
+     * file argument, of which only the root is read now.
+     *
+     * @param page The opened page.
+     *
+     * @throws IOException Thrown should the file be damaged.
+     */
+    public void load(MappedPage page) throws IOException {
+	removeAll();
+	mappedPage = page;
+	root = page.createRoot(this);
+	firePageReplaced();
+    }
+
+    /**
+     * This method adds a node read from a mapped file, whose children are
+     * only filled in from the file when they're first asked for. It is
+     * used by MappedPage and, since filling in a node's children doesn't
+     * change the page, doesn't tell the listeners.
+     *
+     * @param parent The node to add the new node to, or NO_NODE for the
+     * root.
+     *
+     * @param tag The tag for the new node.
+     *
+     * @param offset Where in the mapped file the node's record starts.
+     *
+     * @param mappedChildCount The number of children the node has in
+     * the file.
+     *
+     * @return The new node.
+     */
+    public int appendMappedNode(int parent, HTMLTagPrototype tag, int offset, int mappedChildCount) {
+	int node = createNode(tag);
+	link(node, parent, NO_NODE);
+	if (mappedChildCount > 0) {
+	    mappedOffsets[node] = offset;
+	    childCounts[node] = mappedChildCount;
+	}
+	return node;
+    }
+
+    /**
+     * This method brings the tags in the tree up to date with a new tag
+     * schema, telling the listeners if any of them will now be exported
+     * differently. Nodes of types that haven't changed aren't touched.
+     *
+     * @param oldSchema The schema the tags were made with.
+     *
+     * @param newSchema The schema replacing it.
+     */
+    public void rebindTags(TagSchema oldSchema, TagSchema newSchema) {
+	boolean changed = false;
+	for (int i = 0; i < nodeLimit; i++) {
+	    if ((tags[i] != null) && newSchema.rebind(tags[i], oldSchema)) {
+		changed = true;
+	    }
+	}
+	if (mappedPage != null) {
+	    mappedPage.rebindTypes(oldSchema, newSchema);
+	}
+	if (changed) {
+	    for (Listener listener : listeners) {
+		listener.tagsRebound();
+	    }
+	}
+    }
+
+    // HELPER METHOD FOR ADDING A NEW NODE BEFORE THE before CHILD, OR AT
+    // THE END IF before IS NO_NODE, AND TELLING THE LISTENERS
+    private int insertBefore(int parent, int before, HTMLTagPrototype tag) {
+	int node = createNode(tag);
+	link(node, parent, before);
+	for (Listener listener : listeners) {
+	    listener.nodeInserted(node);
+	}
+	return node;
+    }
+
+    // HELPER METHOD FOR FILLING IN A MAPPED NODE'S CHILDREN
+    private void materialize(int node) {
+	int offset = mappedOffsets[node];
+	if (offset >= 0) {
+	    mappedOffsets[node] = -1;
+	    childCounts[node] = 0;
+	    mappedPage.createChildren(this, node, offset);
+	}
+    }
+
+    // HELPER METHOD FOR GETTING A NODE FOR THE TAG ARGUMENT THAT ISN'T
+    // IN THE TREE YET
+    private int createNode(HTMLTagPrototype tag) {
+	int node = firstFreeNode;
+	if (node != NO_NODE) {
+	    firstFreeNode = nextSiblings[node];
+	} else {
+	    ensureCapacity(nodeLimit + 1);
+	    node = nodeLimit++;
+	}
+	tags[node] = tag;
+	parents[node] = NO_NODE;
+	firstChildren[node] = NO_NODE;
+	lastChildren[node] = NO_NODE;
+	nextSiblings[node] = NO_NODE;
+	previousSiblings[node] = NO_NODE;
+	childCounts[node] = 0;
+	mappedOffsets[node] = -1;
+	nodeCount++;
+	return node;
+    }
+
+    // HELPER METHOD FOR PUTTING A NODE INTO ITS PARENT'S CHILDREN BEFORE
+    // THE before NODE, OR AT THE END IF before IS NO_NODE
+    private void link(int node, int parent, int before) {
+	parents[node] = parent;
+	if (parent == NO_NODE) {
+	    return;
+	}
+	int after = (before == NO_NODE) ? lastChildren[parent] : previousSiblings[before];
+	previousSiblings[node] = after;
+	nextSiblings[node] = before;
+	if (after == NO_NODE) {
+	    firstChildren[parent] = node;
+	} else {
+	    nextSiblings[after] = node;
+	}
+	if (before == NO_NODE) {
+	    lastChildren[parent] = node;
+	} else {
+	    previousSiblings[before] = node;
+	}
+	childCounts[parent]++;
+    }
+
+    // HELPER METHOD FOR TAKING A NODE OUT OF ITS PARENT'S CHILDREN
+    private void unlink(int node) {
+	int parent = parents[node];
+	int after = previousSiblings[node];
+	int before = nextSiblings[node];
+	if (after == NO_NODE) {
+	    firstChildren[parent] = before;
+	} else {
+	    nextSiblings[after] = before;
+	}
+	if (before == NO_NODE) {
+	    lastChildren[parent] = after;
+	} else {
+	    previousSiblings[before] = after;
+	}
+	childCounts[parent]--;
+	parents[node] = NO_NODE;
+	previousSiblings[node] = NO_NODE;
+	nextSiblings[node] = NO_NODE;
+    }
+
+    // HELPER METHOD FOR PUTTING A REMOVED SUBTREE'S NODES ON THE FREE
+    // LIST, WITHOUT FILLING IN ANY MAPPED CHILDREN
+    private void freeSubtree(int node) {
+	int child = firstChildren[node];
+	while (child != NO_NODE) {
+	    int nextChild = nextSiblings[child];
+	    freeSubtree(child);
+	    child = nextChild;
+	}
+	tags[node] = null;
+	nextSiblings[node] = firstFreeNode;
+	firstFreeNode = node;
+	nodeCount--;
+    }
+
+    // HELPER METHOD FOR EMPTYING THE TREE, WHICH MAKES ALL NODES NEW AGAIN
+    private void removeAll() {
+	Arrays.fill(tags, 0, nodeLimit, null);
+	nodeLimit = 0;
+	nodeCount = 0;
+	firstFreeNode = NO_NODE;
+	root = NO_NODE;
+	mappedPage = null;
+    }
+
+    // HELPER METHOD FOR TELLING THE LISTENERS THE TREE HAS BEEN REPLACED
+    private void firePageReplaced() {
+	for (Listener listener : listeners) {
+	    listener.pageReplaced();
+	}
+    }
+
+    // HELPER METHOD FOR MAKING ROOM FOR AT LEAST capacity NODES
+    private void ensureCapacity(int capacity) {
+	if (capacity > tags.length) {
+	    int newCapacity = Math.max(capacity, tags.length * 2);
+	    tags = Arrays.copyOf(tags, newCapacity);
+	    parents = Arrays.copyOf(parents, newCapacity);
+	    firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+	    lastChildren = Arrays.copyOf(lastChildren, newCapacity);
+	    nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+	    previousSiblings = Arrays.copyOf(previousSiblings, newCapacity);
+	    childCounts = Arrays.copyOf(childCounts, newCapacity);
+	    mappedOffsets = Arrays.copyOf(mappedOffsets, newCapacity);
+	}
+    }
+
+    // HELPER METHOD FOR MAKING THE EMPTY TABLE
+    private void allocate(int capacity) {
+	tags = new HTMLTagPrototype[capacity];
+	parents = new int[capacity];
+	firstChildren = new int[capacity];
+	lastChildren = new int[capacity];
+	nextSiblings = new int[capacity];
+	previousSiblings = new int[capacity];
+	childCounts = new int[capacity];
+	mappedOffsets = new int[capacity];
+	nodeLimit = 0;
+	nodeCount = 0;
+	firstFreeNode = NO_NODE;
+	root = NO_NODE;
+    }
+}
@@ -0,0 +1,165 @@
+package wpm.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+/**
+ * This class holds a whole site, a number of pages along with the
+ * stylesheet they share. Each page is exported to an HTML file named after
+ * it in the site's directory, the shared CSS to css/home.css, where every
+ * page links to it by default, and the CSS of pages that have their own to
+ * css/pages, named after the page.
+ *
+ * Like the page tree, the site isn't synchronized, so it must only be used
+ * by one thread at a time.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class SiteModel {
+    /**
+     * Where the shared CSS goes, relative to the site.
+     */
+    public static final String SHARED_CSS_PATH = "css/home.css";
+
+    // PAGE NAMES ARE USED AS FILE NAMES, SO WE KEEP THEM SIMPLE
+    static final Pattern PAGE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    // THE PAGES, IN THE ORDER THEY WERE ADDED, AND BY NAME
+    ArrayList<SitePage> pages;
+    HashMap<String, SitePage> pagesByName;
+
+    // THE CSS SHARED BY THE PAGES WITHOUT THEIR OWN, AND HOW MANY TIMES
+    // IT HAS CHANGED
+    CSSBuffer sharedCSSBuffer;
+    long sharedCSSRevision;
+
+    /**
+     * Constructor for a site with no pages and empty shared CSS.
+     */
+    public SiteModel() {
+	pages = new ArrayList();
+	pagesByName = new HashMap();
+	sharedCSSBuffer = new CSSBuffer();
+    }
+
+    /**
+     * This method adds a page to the site, using the shared CSS.
+     *
+     * @param name The name of the page, which may only have letters,
+     * digits, dashes and underscores in it, and is used to name its files.
+     *
+     * @param pageTree The page's elements.
+     *
+     * @return The added page.
+     *
+     * @throws IllegalArgumentException Thrown should the name not be
+     * allowed or another page already have it.
+     */
+    public SitePage addPage(String name, PageTree pageTree) {
+	SitePage page = new SitePage(name, pageTree);
+	addPage(page);
+	return page;
+    }
+
+    /**
+     * This method adds a page that was made elsewhere, like one loaded
+     * from a file, to the site.
+     *
+     * @param page The page to add.
+     *
+     * @throws IllegalArgumentException Thrown should the page's name not
+     * be allowed or another page already have it.
+     */
+    public void addPage(SitePage page) {
+	String name = page.getName();
+	if (!PAGE_NAME_PATTERN.matcher(name).matches()) {
+	    throw new IllegalArgumentException("Not a page name: " + name);
+	}
+	if (pagesByName.containsKey(name)) {
+	    throw new IllegalArgumentException("The site already has a page named " + name);
+	}
+	pages.add(page);
+	pagesByName.put(name, page);
+    }
+
+    /**
+     * This method removes the page with the name argument from the site.
+     *
+     * @param name The name of the page to remove.
+     *
+     * @return The removed page, or null if there was no such page.
+     */
+    public SitePage removePage(String name) {
+	SitePage page = pagesByName.remove(name);
+	if (page != null) {
+	    pages.remove(page);
+	}
+	return page;
+    }
+
+    /**
+     * Accessor method for getting a page by name.
+     *
+     * @param name The name of the page.
+     *
+     * @return The page, or null if the site has no such page.
+     */
+    public SitePage getPage(String name) {
+	return pagesByName.get(name);
+    }
+
+    /**
+     * Accessor method for getting all the pages.
+     *
+     * @return The pages, in the order they were added.
+     */
+    public ArrayList<SitePage> getPages() {
+	return pages;
+    }
+
+    /**
+     * Accessor method for getting the shared CSS.
+     *
+     * @return The text of the CSS used by the pages without their own.
+     */
+    public String getSharedCSSText() {
+	return sharedCSSBuffer.toString();
+    }
+
+    /**
+     * Mutator method for setting the shared CSS.
+     *
+     * @param cssText The text of the CSS.
+     */
+    public void setSharedCSSText(String cssText) {
+	sharedCSSBuffer.setText(cssText);
+	sharedCSSRevision++;
+    }
+
+    /**
+     * This method replaces part of the shared CSS.
+     *
+     * @param offset Where the part to replace starts.
+     *
+     * @param removedLength How many characters to replace.
+     *
+     * @param insertedText The text to put in their place.
+     */
+    public void replaceSharedCSSText(int offset, int removedLength, String insertedText) {
+	sharedCSSBuffer.replace(offset, removedLength, insertedText);
+	sharedCSSRevision++;
+    }
+
+    /**
+     * Accessor method for getting how many times the shared CSS has
+     * changed, which is only useful for comparing against an earlier
+     * revision.
+     *
+     * @return The shared CSS's revision.
+     */
+    public long getSharedCSSRevision() {
+	return sharedCSSRevision;
+    }
+}
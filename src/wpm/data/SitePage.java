@@ -0,0 +1,215 @@
+package wpm.data;
+
+import static wpm.data.HTMLTagPrototype.ATT_HREF;
+import static wpm.data.HTMLTagPrototype.ATT_REL;
+import static wpm.data.HTMLTagPrototype.REL_STYLESHEET;
+import static wpm.data.HTMLTagPrototype.TAG_LINK;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class represents one page of a site, its tree of elements along
+ * with its own CSS, should it have any. A page without its own CSS uses the
+ * site's shared stylesheet. The page's stylesheet link is kept pointing at
+ * whichever of the two it uses, so that its HTML can be exported as is.
+ *
+ * Every change to the page, through its tree or its CSS, counts up its
+ * revision, which is how exporting the site knows which pages to leave
+ * alone.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class SitePage {
+    // WHERE PAGES AND THEIR OWN CSS GO IN THE SITE
+    static final String PAGE_EXTENSION = ".html";
+    static final String PAGE_CSS_DIR = "css/pages/";
+    static final String CSS_EXTENSION = ".css";
+    static final String RELATIVE_PREFIX = "./";
+
+    // THE NAME OF THE PAGE, WHICH ITS FILES ARE NAMED AFTER
+    String name;
+
+    // THE PAGE'S ELEMENTS
+    PageTree pageTree;
+
+    // THE PAGE'S OWN CSS, OR null IF IT USES THE SHARED CSS
+    CSSBuffer cssBuffer;
+
+    // COUNTS UP WITH EVERY CHANGE TO THE PAGE
+    long revision;
+
+    // COUNTS CHANGES TO THE TREE
+    PageTree.Listener treeListener;
+
+    /**
+     * Constructor for a page using the shared CSS. Note that the name
+     * should be checked by the site first.
+     *
+     * @param initName The name of the page.
+     *
+     * @param initPageTree The page's elements.
+     */
+    public SitePage(String initName, PageTree initPageTree) {
+	name = initName;
+	pageTree = initPageTree;
+	treeListener = new PageTree.Listener() {
+	    @Override
+	    public void nodeInserted(int node) {
+		revision++;
+	    }
+
+	    @Override
+	    public void nodeRemoving(int node) {
+		revision++;
+	    }
+
+	    @Override
+	    public void attributeChanged(int node, String attributeName, String attributeValue) {
+		revision++;
+	    }
+
+	    @Override
+	    public void pageReplaced() {
+		revision++;
+	    }
+
+	    @Override
+	    public void tagsRebound() {
+		revision++;
+	    }
+	};
+	pageTree.addListener(treeListener);
+    }
+
+    /**
+     * Accessor method for getting the page's name.
+     *
+     * @return The name of the page.
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Accessor method for getting the page's elements.
+     *
+     * @return The page's tree.
+     */
+    public PageTree getPageTree() {
+	return pageTree;
+    }
+
+    /**
+     * Accessor method for getting how many times the page has changed,
+     * which is only useful for comparing against an earlier revision.
+     *
+     * @return The page's revision.
+     */
+    public long getRevision() {
+	return revision;
+    }
+
+    /**
+     * Accessor method for getting where the page goes in the site.
+     *
+     * @return The path of the page's HTML file, relative to the site.
+     */
+    public String getPagePath() {
+	return name + PAGE_EXTENSION;
+    }
+
+    /**
+     * Accessor method for getting where the page's own CSS goes in the
+     * site.
+     *
+     * @return The path of the page's CSS file, relative to the site,
+     * which is only used if it has its own CSS.
+     */
+    public String getCSSPath() {
+	return PAGE_CSS_DIR + name + CSS_EXTENSION;
+    }
+
+    /**
+     * Accessor method for testing whether the page has its own CSS.
+     *
+     * @return true if it has its own CSS, false if it uses the site's.
+     */
+    public boolean hasOwnCSS() {
+	return cssBuffer != null;
+    }
+
+    /**
+     * Accessor method for getting the page's own CSS.
+     *
+     * @return The text of the page's CSS, or null if it uses the site's.
+     */
+    public String getCSSText() {
+	return (cssBuffer == null) ? null : cssBuffer.toString();
+    }
+
+    /**
+     * Mutator method for giving the page CSS of its own, which its
+     * stylesheet link is changed to point at.
+     *
+     * @param cssText The text of the page's CSS.
+     */
+    public void setOwnCSS(String cssText) {
+	if (cssBuffer == null) {
+	    cssBuffer = new CSSBuffer();
+	    relinkStylesheet(RELATIVE_PREFIX + SiteModel.SHARED_CSS_PATH, RELATIVE_PREFIX + getCSSPath());
+	}
+	cssBuffer.setText(cssText);
+	revision++;
+    }
+
+    /**
+     * This method replaces part of the page's own CSS, which is much
+     * cheaper than setting all of it when only a little has changed.
+     *
+     * @param offset Where the part to replace starts.
+     *
+     * @param removedLength How many characters to replace.
+     *
+     * @param insertedText The text to put in their place.
+     */
+    public void replaceOwnCSS(int offset, int removedLength, String insertedText) {
+	if (cssBuffer == null) {
+	    throw new IllegalStateException(name + " uses the shared CSS");
+	}
+	cssBuffer.replace(offset, removedLength, insertedText);
+	revision++;
+    }
+
+    /**
+     * This method drops the page's own CSS, after which it uses the
+     * site's shared CSS again.
+     */
+    public void useSharedCSS() {
+	if (cssBuffer != null) {
+	    cssBuffer = null;
+	    relinkStylesheet(RELATIVE_PREFIX + getCSSPath(), RELATIVE_PREFIX + SiteModel.SHARED_CSS_PATH);
+	    revision++;
+	}
+    }
+
+    // HELPER METHOD FOR POINTING THE PAGE'S STYLESHEET LINKS THAT POINT AT
+    // oldHref AT newHref INSTEAD, LINKS TO OTHER STYLESHEETS ARE LEFT ALONE
+    private void relinkStylesheet(String oldHref, String newHref) {
+	int root = pageTree.getRoot();
+	if (root != NO_NODE) {
+	    relinkStylesheet(root, oldHref, newHref);
+	}
+    }
+
+    private void relinkStylesheet(int node, String oldHref, String newHref) {
+	HTMLTagPrototype tag = pageTree.getTag(node);
+	if (tag.getTagName().equals(TAG_LINK)
+		&& REL_STYLESHEET.equalsIgnoreCase(tag.getAttribute(ATT_REL))
+		&& oldHref.equals(tag.getAttribute(ATT_HREF))) {
+	    pageTree.setAttribute(node, ATT_HREF, newHref);
+	}
+	for (int child = pageTree.getFirstChild(node); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+	    relinkStylesheet(child, oldHref, newHref);
+	}
+    }
+}
@@ -0,0 +1,286 @@
+package wpm.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static wpm.data.HTMLTagPrototype.NO_TYPE_ID;
+import static wpm.data.HTMLTagPrototype.TAG_BODY;
+import static wpm.data.HTMLTagPrototype.TAG_HEAD;
+import static wpm.data.HTMLTagPrototype.TAG_HTML;
+import static wpm.data.HTMLTagPrototype.TAG_LINK;
+import static wpm.data.HTMLTagPrototype.TAG_TITLE;
+
+/**
+ * This class holds everything the tags file says about the types of tags
+ * the user can build with: a prototype to clone for each type, its
+ * attributes, whether it has a closing tag, and which tags it may be placed
+ * inside. Every tag name it knows of, both the types and the legal parents
+ * they name, has a small id. The types come first, so that the legal
+ * parents of the type with id childId are the bits set in
+ * legalParentSets[childId], and legality checks never compare tag names.
+ *
+ * A schema never changes once it has been made, so when the tags file
+ * changes a new schema is made and swapped in for the old one in one step.
+ * Each schema has its own generation, which tags keep along with the type
+ * id they have looked up, such that an id looked up in an old schema is
+ * simply looked up again. Types that are the same in the new schema as in
+ * the old one keep their attribute schemas, so elements of those types
+ * don't have to be touched at all.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class TagSchema {
+    // EVERY SCHEMA GETS THE NEXT GENERATION, TAGS THAT HAVEN'T LOOKED UP
+    // THEIR TYPE IN ANY SCHEMA HAVE GENERATION 0
+    static final AtomicInteger generationCounter = new AtomicInteger();
+
+    // THE TAGS EVERY PAGE MUST KEEP
+    static final String[] UNREMOVABLE_TAG_NAMES = {TAG_HTML, TAG_HEAD, TAG_TITLE, TAG_LINK, TAG_BODY};
+
+    // WHICH SCHEMA THIS IS
+    final int generation;
+
+    // THE PROTOTYPE OF EACH TYPE, INDEXED BY TYPE ID, AND THE SAME AS A
+    // LIST THAT CAN'T BE CHANGED
+    final HTMLTagPrototype[] prototypes;
+    final List<HTMLTagPrototype> prototypeList;
+
+    // THE ID OF EVERY TAG NAME WE KNOW OF
+    final HashMap<String, Integer> typeIds;
+
+    // THE LEGAL PARENTS OF EACH TYPE, AND THE TYPES THAT CAN'T BE REMOVED
+    final BitSet[] legalParentSets;
+    final BitSet unremovableTypes;
+
+    /**
+     * Constructor for a schema with the types of the prototypes argument.
+     * The prototypes, which are given their type ids and attribute
+     * schemas here, are kept, so they mustn't be changed afterwards.
+     *
+     * @param initPrototypes A prototype for each type of tag, in the order
+     * they should be offered to the user, along with its attributes, all
+     * with empty values, and its legal parents.
+     *
+     * @param previousSchema The schema this one replaces, whose attribute
+     * schemas are reused for the types that have the same attributes, or
+     * null if there is none.
+     *
+     * @throws IllegalArgumentException Thrown should two prototypes be
+     * for the same type of tag.
+     */
+    public TagSchema(List<HTMLTagPrototype> initPrototypes, TagSchema previousSchema) {
+	generation = generationCounter.incrementAndGet();
+	prototypes = initPrototypes.toArray(new HTMLTagPrototype[initPrototypes.size()]);
+	prototypeList = Collections.unmodifiableList(Arrays.asList(prototypes));
+	typeIds = new HashMap();
+	for (HTMLTagPrototype prototype : prototypes) {
+	    if (typeIds.containsKey(prototype.getTagName())) {
+		throw new IllegalArgumentException("More than one type of tag named " + prototype.getTagName());
+	    }
+	    int typeId = assignTypeId(prototype.getTagName());
+	    prototype.setTypeId(typeId, generation);
+
+	    // ALL THE PROTOTYPE'S ATTRIBUTES GO IN ITS TYPE'S SCHEMA
+	    String[] attributeNames = new String[prototype.getAttributeCount()];
+	    for (int i = 0; i < attributeNames.length; i++) {
+		attributeNames[i] = prototype.getAttributeName(i);
+	    }
+	    AttributeSchema attributeSchema = null;
+	    if (previousSchema != null) {
+		attributeSchema = previousSchema.getAttributeSchema(prototype.getTagName());
+	    }
+	    if ((attributeSchema == null) || !Arrays.equals(attributeSchema.names, attributeNames)) {
+		attributeSchema = new AttributeSchema(attributeNames);
+	    }
+	    prototype.rebindAttributes(attributeSchema);
+	}
+
+	// NOW WHERE EACH TYPE MAY GO
+	legalParentSets = new BitSet[prototypes.length];
+	for (HTMLTagPrototype prototype : prototypes) {
+	    BitSet legalParentSet = new BitSet();
+	    for (String legalParent : prototype.getLegalParents()) {
+		legalParentSet.set(assignTypeId(legalParent));
+	    }
+	    legalParentSets[prototype.getTypeId()] = legalParentSet;
+	}
+	unremovableTypes = new BitSet();
+	for (String tagName : UNREMOVABLE_TAG_NAMES) {
+	    unremovableTypes.set(assignTypeId(tagName));
+	}
+    }
+
+    /**
+     * Constructor for a schema without any types, which is what a data
+     * manager starts with until the tags file has been loaded.
+     */
+    public TagSchema() {
+	this(new ArrayList(), null);
+    }
+
+    // HELPER METHOD FOR GETTING THE ID FOR A TAG NAME, GIVING IT THE
+    // NEXT ONE IF IT DOESN'T HAVE ONE YET
+    private int assignTypeId(String tagName) {
+	Integer typeId = typeIds.get(tagName);
+	if (typeId == null) {
+	    typeId = typeIds.size();
+	    typeIds.put(tagName, typeId);
+	}
+	return typeId;
+    }
+
+    /**
+     * Accessor method for getting which schema this is.
+     *
+     * @return The schema's generation, which is different for every
+     * schema made.
+     */
+    public int getGeneration() {
+	return generation;
+    }
+
+    /**
+     * Accessor method for getting the prototypes of all the types.
+     *
+     * @return The prototypes, in the order of the tags file, as a list
+     * that can't be changed.
+     */
+    public List<HTMLTagPrototype> getPrototypes() {
+	return prototypeList;
+    }
+
+    /**
+     * Accessor method for getting the prototype of a type of tag.
+     *
+     * @param tagName The name of the type.
+     *
+     * @return The prototype, or null if there is no such type.
+     */
+    public HTMLTagPrototype getPrototype(String tagName) {
+	Integer typeId = typeIds.get(tagName);
+	if ((typeId == null) || (typeId >= prototypes.length)) {
+	    return null;
+	}
+	return prototypes[typeId];
+    }
+
+    /**
+     * Accessor method for getting the id of a tag name.
+     *
+     * @param tagName The name of the tag.
+     *
+     * @return Its id, which is below getPrototypes().size() for the types
+     * of tags, or NO_TYPE_ID if the name isn't known.
+     */
+    public int getTypeId(String tagName) {
+	Integer typeId = typeIds.get(tagName);
+	return (typeId == null) ? NO_TYPE_ID : typeId;
+    }
+
+    /**
+     * Accessor method for getting the id of a tag's type, which the tag
+     * keeps, so that it's only looked up by name the first time the tag
+     * is used with this schema.
+     *
+     * @param tag The tag.
+     *
+     * @return The id of its type, or NO_TYPE_ID if it isn't known.
+     */
+    public int getTypeId(HTMLTagPrototype tag) {
+	if (tag.getTypeGeneration() == generation) {
+	    return tag.getTypeId();
+	}
+	int typeId = getTypeId(tag.getTagName());
+	tag.setTypeId(typeId, generation);
+	return typeId;
+    }
+
+    /**
+     * This method tests whether a type of tag may be placed inside
+     * another.
+     *
+     * @param childId The id of the type of tag to be placed, which must
+     * be one of the types.
+     *
+     * @param parentId The id of the tag it would be placed inside, which
+     * may be any known id.
+     *
+     * @return true if the parent is a legal parent for the child.
+     */
+    public boolean isLegalParent(int childId, int parentId) {
+	return (parentId >= 0) && legalParentSets[childId].get(parentId);
+    }
+
+    /**
+     * Accessor method for testing whether an id is the id of a type of tag,
+     * rather than only being named as a legal parent, or not known at all.
+     *
+     * @param typeId The id to test.
+     *
+     * @return true if there's a prototype for it.
+     */
+    public boolean isType(int typeId) {
+	return (typeId >= 0) && (typeId < prototypes.length);
+    }
+
+    /**
+     * Accessor method for testing whether tags with the id argument may
+     * be removed from the page.
+     *
+     * @param typeId The id of the tag's name.
+     *
+     * @return true if they may be removed, false for the tags every page
+     * needs.
+     */
+    public boolean isRemovable(int typeId) {
+	return (typeId < 0) || !unremovableTypes.get(typeId);
+    }
+
+    // HELPER METHOD FOR GETTING THE ATTRIBUTE SCHEMA OF A TYPE OF TAG, OR
+    // null IF THERE IS NO SUCH TYPE
+    AttributeSchema getAttributeSchema(String tagName) {
+	HTMLTagPrototype prototype = getPrototype(tagName);
+	return (prototype == null) ? null : prototype.attributeSchema;
+    }
+
+    /**
+     * This method brings an element made with an older schema up to date
+     * with this one. Elements that were cloned from a type whose attributes
+     * have changed get the new attributes, keeping the values they had,
+     * and those whose type now has or doesn't have a closing tag follow
+     * suit. Either way their type id and legal parents are brought up to
+     * date. Elements of types we don't know, or that were made with their
+     * own attributes, are left alone.
+     *
+     * @param tag The element to bring up to date.
+     *
+     * @param oldSchema The schema it was made with.
+     *
+     * @return true if the element will now be exported differently, false
+     * if only what we know about it has changed.
+     */
+    boolean rebind(HTMLTagPrototype tag, TagSchema oldSchema) {
+	int typeId = getTypeId(tag);
+	if (!isType(typeId)) {
+	    return false;
+	}
+	HTMLTagPrototype prototype = prototypes[typeId];
+	tag.legalParents = prototype.legalParents;
+	boolean changed = false;
+	AttributeSchema oldAttributeSchema = oldSchema.getAttributeSchema(tag.getTagName());
+	if ((tag.attributeSchema == oldAttributeSchema) && (oldAttributeSchema != prototype.attributeSchema)) {
+	    tag.rebindAttributes(prototype.attributeSchema);
+	    changed = true;
+	}
+	if (tag.hasClosingTag != prototype.hasClosingTag) {
+	    tag.hasClosingTag = prototype.hasClosingTag;
+	    changed = true;
+	}
+	return changed;
+    }
+}
@@ -0,0 +1,274 @@
+package wpm.file;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.application.Platform;
+import wpm.perf.LatencyMonitor;
+import static wpm.perf.LatencyMonitor.Stage.DISK_WRITE;
+
+/**
+ * This class performs all of our file writing on a single background thread
+ * so that a slow disk never freezes the user interface. Whatever is to be
+ * written must be captured on the JavaFX application thread as an immutable
+ * value, like a String or a snapshot of the page, and then handed to this
+ * object. Since there is only one writer thread, writes happen in the order
+ * they are requested, and should a newer write to the same file be queued
+ * before an older one has started, the older one is simply skipped. That way
+ * an old version of a file can never overwrite a newer one. Every file is
+ * first written to a temporary file next to it, which is then moved into
+ * place, so nobody, like the web view, ever sees a half written file.
+ * Files that change all the time but aren't needed right away, like the
+ * CSS as it is typed, can instead be written after a delay, such that only
+ * the last version written during the delay hits the disk.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class BackgroundWriter {
+    // HOW LONG WE'LL WAIT FOR QUEUED WRITES WHEN THE APPLICATION CLOSES
+    static final long SHUTDOWN_WAIT_SECONDS = 10;
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * This interface represents the actual writing of a file, which
+     * will be done on the writer thread.
+     */
+    public interface WriteTask {
+	/**
+	 * Writes the file.
+	 *
+	 * @param target The path of the file to write, which will be a
+	 * temporary file that is moved into place afterwards.
+	 *
+	 * @throws IOException Thrown should there be an error writing.
+	 */
+	void write(Path target) throws IOException;
+    }
+
+    // THE ONE AND ONLY WRITER THREAD
+    ScheduledExecutorService executor;
+
+    // THE LATEST VERSION REQUESTED FOR EACH FILE
+    ConcurrentHashMap<Path, Long> latestVersions;
+    AtomicLong versionCounter;
+
+    // THE WRITES WAITING OUT THEIR DELAY, BY FILE
+    ConcurrentHashMap<Path, Runnable> delayedWrites;
+
+    /**
+     * Constructor for initializing the writer, which starts its thread
+     * and makes sure anything still queued gets written when the
+     * application exits.
+     */
+    public BackgroundWriter() {
+	executor = Executors.newSingleThreadScheduledExecutor(r -> {
+	    Thread writerThread = new Thread(r, "wpm-writer");
+	    writerThread.setDaemon(true);
+	    return writerThread;
+	});
+	latestVersions = new ConcurrentHashMap();
+	versionCounter = new AtomicLong();
+	delayedWrites = new ConcurrentHashMap();
+	Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+	    flushDelayedWrites();
+	    executor.shutdown();
+	    try {
+		executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+	    } catch (InterruptedException ie) {
+		Thread.currentThread().interrupt();
+	    }
+	}));
+    }
+
+    /**
+     * This method queues the content argument to be written to the
+     * file found at filePath.
+     *
+     * @param filePath The path of the file to write.
+     *
+     * @param content The full text to write to the file.
+     *
+     * @param onFailure Run on the JavaFX application thread should the
+     * write fail, may be null.
+     */
+    public void write(String filePath, String content, Runnable onFailure) {
+	write(filePath, target -> {
+	    try (Writer writer = Files.newBufferedWriter(target, Charset.defaultCharset())) {
+		writer.write(content);
+	    }
+	}, onFailure);
+    }
+
+    /**
+     * This method queues the task argument to write the file found at
+     * filePath.
+     *
+     * @param filePath The path of the file to write.
+     *
+     * @param task Does the actual writing, note that it will be run
+     * on the writer thread and so must not touch the tree or the UI.
+     *
+     * @param onFailure Run on the JavaFX application thread should the
+     * write fail, may be null.
+     */
+    public void write(String filePath, WriteTask task, Runnable onFailure) {
+	write(filePath, task, null, onFailure);
+    }
+
+    /**
+     * This method queues the task argument to write the file found at
+     * filePath, and tells the caller once the file is in place.
+     *
+     * @param filePath The path of the file to write.
+     *
+     * @param task Does the actual writing, note that it will be run
+     * on the writer thread and so must not touch the tree or the UI.
+     *
+     * @param onSuccess Run on the JavaFX application thread once the
+     * file has been written and moved into place, may be null.
+     *
+     * @param onFailure Run on the JavaFX application thread should the
+     * write fail, may be null.
+     */
+    public void write(String filePath, WriteTask task, Runnable onSuccess, Runnable onFailure) {
+	Path target = Paths.get(filePath).toAbsolutePath().normalize();
+
+	// THIS VERSION IS NEWER THAN ANY STILL WAITING OUT ITS DELAY
+	delayedWrites.remove(target);
+	long version = versionCounter.incrementAndGet();
+	latestVersions.put(target, version);
+	executor.execute(() -> {
+	    // A NEWER VERSION IS ALREADY QUEUED BEHIND US
+	    if (latestVersions.get(target) != version) {
+		return;
+	    }
+	    Path tempFile = null;
+	    LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	    long startTime = monitor.startTime();
+	    long startAllocated = monitor.allocatedBytes();
+	    try {
+		tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), TEMP_FILE_SUFFIX);
+		task.write(tempFile);
+		moveIntoPlace(tempFile, target);
+		monitor.record(DISK_WRITE, startTime, startAllocated);
+		if (onSuccess != null) {
+		    Platform.runLater(onSuccess);
+		}
+	    } catch (IOException | RuntimeException e) {
+		if (onFailure != null) {
+		    Platform.runLater(onFailure);
+		}
+	    } finally {
+		deleteQuietly(tempFile);
+	    }
+	});
+    }
+
+    /**
+     * This method queues the content argument to be written to the file
+     * found at filePath once delayMillis have passed, unless the file is
+     * written again before then, in which case only the newer version
+     * is written.
+     *
+     * @param filePath The path of the file to write.
+     *
+     * @param content The full text to write to the file.
+     *
+     * @param delayMillis How long to wait before writing, in milliseconds.
+     *
+     * @param onFailure Run on the JavaFX application thread should the
+     * write fail, may be null.
+     */
+    public void writeLater(String filePath, String content, long delayMillis, Runnable onFailure) {
+	Path target = Paths.get(filePath).toAbsolutePath().normalize();
+	Runnable delayedWrite = new Runnable() {
+	    @Override
+	    public void run() {
+		// ONLY IF NOTHING NEWER HAS COME ALONG SINCE
+		if (delayedWrites.remove(target, this)) {
+		    write(filePath, content, onFailure);
+		}
+	    }
+	};
+	delayedWrites.put(target, delayedWrite);
+	executor.schedule(delayedWrite, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method queues every write that is still waiting out its delay
+     * to be written right away.
+     */
+    public void flushDelayedWrites() {
+	for (Runnable delayedWrite : delayedWrites.values()) {
+	    delayedWrite.run();
+	}
+    }
+
+    // HELPER METHOD FOR REPLACING A FILE WITH ITS NEW VERSION IN ONE STEP
+    // WHEREVER THE FILE SYSTEM ALLOWS IT
+    private void moveIntoPlace(Path tempFile, Path target) throws IOException {
+	try {
+	    Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	} catch (AtomicMoveNotSupportedException amnse) {
+	    Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+    }
+
+    // HELPER METHOD FOR CLEANING UP A TEMPORARY FILE THAT WASN'T MOVED
+    private void deleteQuietly(Path tempFile) {
+	if (tempFile != null) {
+	    try {
+		Files.deleteIfExists(tempFile);
+	    } catch (IOException ioe) {
+		// NOTHING MORE WE CAN DO
+	    }
+	}
+    }
+
+    /**
+     * This method queues the creation of the directory found at dirPath,
+     * along with any missing parent directories.
+     *
+     * @param dirPath The path of the directory to create.
+     *
+     * @param onFailure Run on the JavaFX application thread should the
+     * directory not be created, may be null.
+     */
+    public void createDirectories(String dirPath, Runnable onFailure) {
+	Path target = Paths.get(dirPath);
+	executor.execute(() -> {
+	    try {
+		Files.createDirectories(target);
+	    } catch (IOException | RuntimeException e) {
+		if (onFailure != null) {
+		    Platform.runLater(onFailure);
+		}
+	    }
+	});
+    }
+
+    /**
+     * This method schedules the action argument to be run on the JavaFX
+     * application thread once everything queued so far has been written,
+     * including the writes that were waiting out their delay.
+     *
+     * @param action The action to run, like reloading a written page.
+     */
+    public void afterPendingWrites(Runnable action) {
+	flushDelayedWrites();
+	executor.execute(() -> {
+	    Platform.runLater(action);
+	});
+    }
+}
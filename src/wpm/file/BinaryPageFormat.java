@@ -0,0 +1,463 @@
+package wpm.file;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import wpm.data.PageSnapshot;
+
+/**
+ * This class reads and writes pages in our compact binary format, which is
+ * much smaller and faster to load than JSON for large documents. A file
+ * is laid out as follows, where every count, length and id is an unsigned
+ * varint, meaning 7 bits per byte with the high bit set on all but the
+ * last byte:
+ *
+ *   "WPMB", then the format version byte
+ *   the string table: a count, then each string as a UTF-8 length and bytes
+ *   the tag types: a count, then for each type its name id, a flags byte
+ *      for the closing tag, and a count followed by its legal parent ids
+ *   the nodes: a count, then in pre-order each node's type id, a count
+ *      followed by name id and value pairs for its attributes, its number
+ *      of children, and the number of bytes taken up by its descendants
+ *   the CSS, as a UTF-8 length and bytes
+ *
+ * Tag names, attribute names and legal parents all go in the string table,
+ * and the legal parents are stored once per tag type rather than once per
+ * node. Attribute values, which are rarely repeated, are written inline.
+ * Since every node says how many bytes its descendants take up, a whole
+ * subtree can be skipped without decoding it, which is what lets a
+ * MappedPage open a page without reading all of it. Version 1 files,
+ * which don't have these byte counts, can still be read.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class BinaryPageFormat {
+    // FILES WITH THIS EXTENSION ARE SAVED IN THIS FORMAT
+    public static final String BINARY_PAGE_EXTENSION = ".wpmb";
+
+    // USED TO RECOGNIZE OUR FILES
+    static final byte[] MAGIC = {'W', 'P', 'M', 'B'};
+    static final int FORMAT_VERSION = 2;
+    static final int FIRST_SUBTREE_LENGTH_VERSION = 2;
+    static final int FLAG_CLOSING_TAG = 1;
+
+    // HOW MUCH WE READ OR WRITE AT A TIME
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    // ALL THE I/O GOES THROUGH THESE, NOTE THAT WHEN READING A MAPPED
+    // FILE THERE IS NO CHANNEL AND THE BUFFER IS THE WHOLE FILE
+    FileChannel channel;
+    ByteBuffer buffer;
+
+    // THE VERSION OF THE FILE BEING READ
+    int version;
+
+    // THE STRING TABLE AND TAG TYPES OF THE FILE BEING READ, NOTE THAT
+    // ALL NODES OF A TYPE SHARE ONE LIST OF LEGAL PARENTS
+    String[] strings;
+    String[] typeNames;
+    boolean[] typeClosingTags;
+    List<String>[] typeLegalParents;
+
+    // THIS IS ONLY USED THROUGH THE STATIC METHODS AND BY MappedPage
+    private BinaryPageFormat(FileChannel initChannel) {
+	channel = initChannel;
+	buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    BinaryPageFormat(ByteBuffer mappedFile) {
+	buffer = mappedFile;
+    }
+
+    /**
+     * This method writes the page argument to the file at target in the
+     * binary format, making sure it is all on disk before returning.
+     *
+     * @param page The page to write.
+     *
+     * @param target The path of the file to write.
+     *
+     * @throws IOException Thrown should there be an error writing the file.
+     */
+    static void write(PageSnapshot page, Path target) throws IOException {
+	// FIRST GATHER UP THE STRINGS AND TAG TYPES
+	ArrayList<String> strings = new ArrayList();
+	HashMap<String, Integer> stringIds = new HashMap();
+	ArrayList<List<Object>> types = new ArrayList();
+	HashMap<List<Object>, Integer> typeIds = new HashMap();
+	int[] nodeTypes = new int[page.size()];
+	for (int i = 0; i < page.size(); i++) {
+	    List<Object> type = Arrays.asList(page.getTagName(i), page.hasClosingTag(i), page.getLegalParents(i));
+	    Integer typeId = typeIds.get(type);
+	    if (typeId == null) {
+		typeId = types.size();
+		types.add(type);
+		typeIds.put(type, typeId);
+		intern(page.getTagName(i), strings, stringIds);
+		for (String legalParent : page.getLegalParents(i)) {
+		    intern(legalParent, strings, stringIds);
+		}
+	    }
+	    nodeTypes[i] = typeId;
+	    for (int j = 0; j < page.getAttributeCount(i); j++) {
+		intern(page.getAttributeName(i, j), strings, stringIds);
+	    }
+	}
+
+	// THEN HOW MANY BYTES EACH NODE'S DESCENDANTS WILL TAKE UP, GOING
+	// BACKWARDS SO THAT EVERY NODE IS DONE BEFORE ITS PARENT
+	long[] descendantLengths = new long[page.size()];
+	for (int i = page.size() - 1; i >= 0; i--) {
+	    long nodeLength = varintLength(nodeTypes[i]) + varintLength(page.getAttributeCount(i));
+	    for (int j = 0; j < page.getAttributeCount(i); j++) {
+		int valueLength = utf8Length(page.getAttributeValue(i, j));
+		nodeLength += varintLength(stringIds.get(page.getAttributeName(i, j)))
+			+ varintLength(valueLength) + valueLength;
+	    }
+	    nodeLength += varintLength(page.getChildCount(i));
+	    if (descendantLengths[i] > Integer.MAX_VALUE) {
+		throw new IOException("Page is too large for the binary format");
+	    }
+	    nodeLength += varintLength((int) descendantLengths[i]) + descendantLengths[i];
+	    if (page.getParentIndex(i) >= 0) {
+		descendantLengths[page.getParentIndex(i)] += nodeLength;
+	    }
+	}
+
+	try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    BinaryPageFormat out = new BinaryPageFormat(channel);
+	    out.writeBytes(MAGIC);
+	    out.writeByte(FORMAT_VERSION);
+
+	    // THE STRING TABLE
+	    out.writeVarint(strings.size());
+	    for (String s : strings) {
+		out.writeString(s);
+	    }
+
+	    // THE TAG TYPES
+	    out.writeVarint(types.size());
+	    for (List<Object> type : types) {
+		out.writeVarint(stringIds.get((String) type.get(0)));
+		out.writeByte(((Boolean) type.get(1)) ? FLAG_CLOSING_TAG : 0);
+		List<String> legalParents = (List<String>) type.get(2);
+		out.writeVarint(legalParents.size());
+		for (String legalParent : legalParents) {
+		    out.writeVarint(stringIds.get(legalParent));
+		}
+	    }
+
+	    // THE NODES
+	    out.writeVarint(page.size());
+	    for (int i = 0; i < page.size(); i++) {
+		out.writeVarint(nodeTypes[i]);
+		out.writeVarint(page.getAttributeCount(i));
+		for (int j = 0; j < page.getAttributeCount(i); j++) {
+		    out.writeVarint(stringIds.get(page.getAttributeName(i, j)));
+		    out.writeString(page.getAttributeValue(i, j));
+		}
+		out.writeVarint(page.getChildCount(i));
+		out.writeVarint((int) descendantLengths[i]);
+	    }
+
+	    // AND THE CSS
+	    out.writeString(page.getCSSText());
+	    out.flush();
+
+	    // MAKE SURE IT'S ALL ON DISK BEFORE IT REPLACES THE OLD FILE
+	    channel.force(true);
+	}
+    }
+
+    /**
+     * This method reads the page saved in the binary format in the file
+     * at source.
+     *
+     * @param source The path of the file to read.
+     *
+     * @return The page that was read.
+     *
+     * @throws IOException Thrown should there be an error reading the file
+     * or should it not be a valid binary page.
+     */
+    static PageSnapshot read(Path source) throws IOException {
+	try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+	    BinaryPageFormat in = new BinaryPageFormat(channel);
+	    in.buffer.flip();
+	    in.readHeader(source);
+	    in.readTables();
+
+	    // THE NODES, KEEPING A STACK OF THE ANCESTORS THAT ARE STILL
+	    // WAITING FOR CHILDREN SO WE KNOW EACH NODE'S PARENT
+	    int size = in.readVarint();
+	    String[] tagNames = new String[size];
+	    boolean[] closingTags = new boolean[size];
+	    String[][] attributeNames = new String[size][];
+	    String[][] attributeValues = new String[size][];
+	    List<String>[] legalParents = new List[size];
+	    int[] parentIndices = new int[size];
+	    int[] childCounts = new int[size];
+	    int[] openNodes = new int[size];
+	    int[] childrenLeft = new int[size];
+	    int openCount = 0;
+	    for (int i = 0; i < size; i++) {
+		int typeId = in.readTypeId();
+		tagNames[i] = in.typeNames[typeId];
+		closingTags[i] = in.typeClosingTags[typeId];
+		legalParents[i] = in.typeLegalParents[typeId];
+		int attributeCount = in.readVarint();
+		attributeNames[i] = new String[attributeCount];
+		attributeValues[i] = new String[attributeCount];
+		for (int j = 0; j < attributeCount; j++) {
+		    attributeNames[i][j] = in.readStringId();
+		    attributeValues[i][j] = in.readString();
+		}
+		childCounts[i] = in.readVarint();
+		in.readDescendantLength();
+
+		// FIND THIS NODE'S PARENT
+		while ((openCount > 0) && (childrenLeft[openCount - 1] == 0)) {
+		    openCount--;
+		}
+		if (openCount > 0) {
+		    parentIndices[i] = openNodes[openCount - 1];
+		    childrenLeft[openCount - 1]--;
+		} else if (i == 0) {
+		    parentIndices[i] = -1;
+		} else {
+		    throw new IOException(source + " has more than one root");
+		}
+		openNodes[openCount] = i;
+		childrenLeft[openCount] = childCounts[i];
+		openCount++;
+	    }
+
+	    // AND THE CSS
+	    String cssText = in.readString();
+	    return new PageSnapshot(tagNames, closingTags, attributeNames, attributeValues,
+		    legalParents, parentIndices, childCounts, cssText);
+	}
+    }
+
+    // HELPER METHOD FOR CHECKING THAT THIS IS ONE OF OUR FILES AND
+    // GETTING ITS VERSION
+    void readHeader(Path source) throws IOException {
+	for (byte b : MAGIC) {
+	    if (readByte() != b) {
+		throw new IOException(source + " is not a binary page");
+	    }
+	}
+	version = readByte();
+	if ((version < 1) || (version > FORMAT_VERSION)) {
+	    throw new IOException(source + " has unsupported format version " + version);
+	}
+    }
+
+    // HELPER METHOD FOR READING THE STRING TABLE AND TAG TYPES
+    void readTables() throws IOException {
+	strings = new String[readVarint()];
+	for (int i = 0; i < strings.length; i++) {
+	    strings[i] = readString();
+	}
+	int typeCount = readVarint();
+	typeNames = new String[typeCount];
+	typeClosingTags = new boolean[typeCount];
+	typeLegalParents = new List[typeCount];
+	for (int i = 0; i < typeCount; i++) {
+	    typeNames[i] = readStringId();
+	    typeClosingTags[i] = (readByte() & FLAG_CLOSING_TAG) != 0;
+	    String[] legalParents = new String[readVarint()];
+	    for (int j = 0; j < legalParents.length; j++) {
+		legalParents[j] = readStringId();
+	    }
+	    typeLegalParents[i] = Collections.unmodifiableList(Arrays.asList(legalParents));
+	}
+    }
+
+    // ACCESSOR METHOD FOR TESTING WHETHER THE FILE BEING READ SAYS HOW
+    // MANY BYTES EACH NODE'S DESCENDANTS TAKE UP
+    boolean hasDescendantLengths() {
+	return version >= FIRST_SUBTREE_LENGTH_VERSION;
+    }
+
+    // READS THE NUMBER OF BYTES A NODE'S DESCENDANTS TAKE UP, WHICH
+    // OLDER FILES DON'T HAVE
+    int readDescendantLength() throws IOException {
+	return hasDescendantLengths() ? readVarint() : -1;
+    }
+
+    int readTypeId() throws IOException {
+	int typeId = readVarint();
+	if (typeId >= typeNames.length) {
+	    throw new IOException("Invalid tag type " + typeId);
+	}
+	return typeId;
+    }
+
+    String readStringId() throws IOException {
+	int id = readVarint();
+	if (id >= strings.length) {
+	    throw new IOException("Invalid string id " + id);
+	}
+	return strings[id];
+    }
+
+    // HELPER METHOD FOR SKIPPING OVER AN ATTRIBUTE VALUE OR ANY OTHER
+    // STRING WITHOUT DECODING IT
+    void skipString() throws IOException {
+	int length = readVarint();
+	if (length > buffer.remaining()) {
+	    throw new EOFException("Unexpected end of binary page");
+	}
+	buffer.position(buffer.position() + length);
+    }
+
+    // HELPER METHOD FOR ADDING A STRING TO THE STRING TABLE ONCE
+    private static void intern(String s, ArrayList<String> strings, HashMap<String, Integer> stringIds) {
+	if (!stringIds.containsKey(s)) {
+	    stringIds.put(s, strings.size());
+	    strings.add(s);
+	}
+    }
+
+    // HELPER METHOD FOR FIGURING OUT HOW MANY BYTES A VARINT WILL TAKE UP
+    private static int varintLength(int value) {
+	int length = 1;
+	while ((value & ~0x7F) != 0) {
+	    value >>>= 7;
+	    length++;
+	}
+	return length;
+    }
+
+    // HELPER METHOD FOR FIGURING OUT HOW MANY BYTES A STRING WILL TAKE UP
+    // IN UTF-8 WITHOUT ENCODING IT, NOTE THAT A LONE SURROGATE BECOMES A
+    // ONE BYTE REPLACEMENT CHARACTER, JUST LIKE IN getBytes
+    private static int utf8Length(String s) {
+	int length = 0;
+	for (int i = 0; i < s.length(); i++) {
+	    char c = s.charAt(i);
+	    if (c < 0x80) {
+		length += 1;
+	    } else if (c < 0x800) {
+		length += 2;
+	    } else if (Character.isHighSurrogate(c)
+		    && (i + 1 < s.length()) && Character.isLowSurrogate(s.charAt(i + 1))) {
+		length += 4;
+		i++;
+	    } else if (Character.isSurrogate(c)) {
+		length += 1;
+	    } else {
+		length += 3;
+	    }
+	}
+	return length;
+    }
+
+    // HELPER METHOD FOR WRITING OUT WHATEVER IS IN THE BUFFER
+    private void flush() throws IOException {
+	buffer.flip();
+	while (buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+	buffer.clear();
+    }
+
+    private void writeByte(int b) throws IOException {
+	if (!buffer.hasRemaining()) {
+	    flush();
+	}
+	buffer.put((byte) b);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+	int offset = 0;
+	while (offset < bytes.length) {
+	    if (!buffer.hasRemaining()) {
+		flush();
+	    }
+	    int length = Math.min(buffer.remaining(), bytes.length - offset);
+	    buffer.put(bytes, offset, length);
+	    offset += length;
+	}
+    }
+
+    private void writeVarint(int value) throws IOException {
+	while ((value & ~0x7F) != 0) {
+	    writeByte((value & 0x7F) | 0x80);
+	    value >>>= 7;
+	}
+	writeByte(value);
+    }
+
+    private void writeString(String s) throws IOException {
+	byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+	writeVarint(bytes.length);
+	writeBytes(bytes);
+    }
+
+    // HELPER METHOD FOR READING MORE OF THE FILE INTO THE BUFFER
+    private void fill() throws IOException {
+	if (channel == null) {
+	    throw new EOFException("Unexpected end of binary page");
+	}
+	buffer.compact();
+	int read = channel.read(buffer);
+	buffer.flip();
+	if (read < 0) {
+	    throw new EOFException("Unexpected end of binary page");
+	}
+    }
+
+    int readByte() throws IOException {
+	while (!buffer.hasRemaining()) {
+	    fill();
+	}
+	return buffer.get() & 0xFF;
+    }
+
+    int readVarint() throws IOException {
+	int value = 0;
+	for (int shift = 0; shift < 32; shift += 7) {
+	    int b = readByte();
+	    value |= (b & 0x7F) << shift;
+	    if ((b & 0x80) == 0) {
+		if (value < 0) {
+		    throw new IOException("Invalid count in binary page");
+		}
+		return value;
+	    }
+	}
+	throw new IOException("Invalid varint in binary page");
+    }
+
+    String readString() throws IOException {
+	int length = readVarint();
+	if ((length <= buffer.remaining()) && buffer.hasArray()) {
+	    String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+	    buffer.position(buffer.position() + length);
+	    return s;
+	}
+	byte[] bytes = new byte[length];
+	int offset = 0;
+	while (offset < length) {
+	    while (!buffer.hasRemaining()) {
+		fill();
+	    }
+	    int chunk = Math.min(buffer.remaining(), length - offset);
+	    buffer.get(bytes, offset, chunk);
+	    offset += chunk;
+	}
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
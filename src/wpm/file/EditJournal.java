@@ -0,0 +1,841 @@
+package wpm.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import wpm.data.DataManager;
+import wpm.data.HTMLTagPrototype;
+import wpm.data.PageSnapshot;
+import wpm.data.PageTree;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class keeps an append-only journal of the edits made to the page
+ * since it was last saved, such that they can be recovered should the
+ * application crash before the user saves. The journal starts with the
+ * file the page was loaded from, its base, followed by one record for
+ * every element added or removed, attribute set and change to the CSS.
+ * Nodes are recorded by their path of child indices from the root, since
+ * node ids don't survive a restart.
+ *
+ * Records are written as the edits are made, but only forced to disk every
+ * so often on a background thread, so that a burst of typing costs one
+ * disk sync rather than one per keystroke. Once the journal grows too big,
+ * or the page is saved, the journal starts over with a new base, which for
+ * a big journal is a checkpoint of the page written next to it. When the
+ * application exits normally the journal is deleted, so a journal found
+ * at startup means the last session didn't get to exit.
+ *
+ * Note that records are written on the JavaFX application thread, as is
+ * the snapshot of the page a checkpoint is made from, but the checkpoint
+ * itself and starting the journal over are done on the journal's own
+ * thread. Until the new journal is in place the records keep going into
+ * the old one, or into memory should there not be one yet, and the ones
+ * made after the new base are carried over.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class EditJournal implements PageTree.Listener {
+    // HOW OFTEN WRITTEN RECORDS ARE FORCED TO DISK, IN MILLISECONDS
+    static final long SYNC_INTERVAL = 200;
+
+    // ONCE THE JOURNAL IS THIS BIG THE PAGE IS CHECKPOINTED
+    static final long CHECKPOINT_SIZE = 4 * 1024 * 1024;
+
+    // THE CHECKPOINTS TAKE TURNS, SO THE ONE THE JOURNAL IS BASED ON IS
+    // NEVER OVERWRITTEN. THEY ARE SAVED IN THE BINARY PAGE FORMAT
+    static final String[] CHECKPOINT_SUFFIXES = {".a", ".b"};
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // THE KINDS OF RECORDS, EACH OF WHICH IS WRITTEN AS THE LENGTH AND
+    // CRC OF ITS CONTENTS FOLLOWED BY THE CONTENTS
+    static final byte RECORD_BASE = 1;
+    static final byte RECORD_INSERT = 2;
+    static final byte RECORD_REMOVE = 3;
+    static final byte RECORD_ATTRIBUTE = 4;
+    static final byte RECORD_CSS = 5;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    // WRITTEN IN PLACE OF THE LENGTH OF A null STRING
+    static final int NULL_STRING_LENGTH = -1;
+
+    // THE PAGE BEING JOURNALED, AND WHAT WE LOAD AND CHECKPOINT IT WITH
+    DataManager dataManager;
+    PageTree pageTree;
+    FileManager fileManager;
+
+    // THE JOURNAL AND THE CHECKPOINTS THAT CAN BE ITS BASE
+    Path journalPath;
+    Path[] checkpointPaths;
+
+    // THE FILE THE JOURNAL IS CURRENTLY BASED ON
+    String basePath;
+
+    // THE OPEN JOURNAL, OR null IF THERE ISN'T ONE YET, IN WHICH CASE
+    // RECORDS WAIT IN MEMORY FOR THE FIRST ONE, STARTING FROM waitingWritten
+    // IN THE COUNT OF RECORD BYTES. THE LOCK IS HELD WHILE RECORDS ARE
+    // ADDED AND WHILE A NEW JOURNAL TAKES OVER
+    volatile FileChannel channel;
+    ByteArrayOutputStream waitingRecords;
+    long waitingWritten;
+    final Object journalLock = new Object();
+
+    // TRUE WHILE EDITS ARE RECORDED, WHICH IS ONCE THE JOURNAL HAS, OR IS
+    // ABOUT TO HAVE, A BASE FOR THE CURRENT PAGE
+    volatile boolean recording;
+
+    // TRUE ONCE THE JOURNAL HAS GROWN BIG ENOUGH TO BE CHECKPOINTED,
+    // WHICH IS DONE BEFORE THE NEXT EDIT, AND WHILE A CHECKPOINT IS
+    // BEING WRITTEN, WHEN ANOTHER ISN'T NEEDED
+    boolean checkpointDue;
+    volatile boolean checkpointPending;
+
+    // TRUE WHILE THE LAST SESSION'S EDITS ARE BEING REPLAYED, WHEN THE
+    // OLD JOURNAL MUST BE KEPT
+    boolean replaying;
+
+    // TRUE ONCE WRITING THE JOURNAL HAS FAILED, AFTER WHICH WE DON'T KEEP
+    // TRYING UNTIL THE NEXT PAGE
+    volatile boolean failed;
+
+    // TRUE WHEN RECORDS HAVE BEEN WRITTEN BUT NOT FORCED TO DISK
+    volatile boolean unsynced;
+    volatile boolean closed;
+
+    // HOW MANY RECORD BYTES HAVE BEEN WRITTEN SINCE WE STARTED, WHICH
+    // SAVES USE TO TELL WHICH RECORDS THEY INCLUDE, AND WHERE THE RECORDS
+    // AFTER THE JOURNAL'S BASE START IN THAT COUNT AND IN THE FILE. THEY
+    // ONLY CHANGE WHILE THE LOCK IS HELD
+    long written;
+    long baseWritten;
+    long baseLength;
+
+    // THE RECORDS LEFT BY THE LAST SESSION, OR null IF THERE ARE NONE
+    ArrayList<byte[]> recoveredRecords;
+
+    // EACH RECORD IS BUILT UP HERE
+    ByteArrayOutputStream recordBytes;
+    DataOutputStream recordOut;
+    CRC32 crc;
+
+    // FORCES THE JOURNAL TO DISK EVERY SO OFTEN, AND WRITES THE
+    // CHECKPOINTS AND NEW JOURNALS
+    ScheduledExecutorService syncer;
+
+    /**
+     * Constructor for a journal of the edits made to the data manager's
+     * page, which reads whatever journal the last session left behind
+     * but doesn't change it until the page is first edited, saved or
+     * loaded.
+     *
+     * @param initDataManager The data manager with the page being edited.
+     *
+     * @param initFileManager The file manager for loading and
+     * checkpointing the page.
+     *
+     * @param journalFilePath Path (including file name/extension) to the
+     * journal.
+     */
+    public EditJournal(DataManager initDataManager, FileManager initFileManager, String journalFilePath) {
+	dataManager = initDataManager;
+	pageTree = dataManager.getPageTree();
+	fileManager = initFileManager;
+	journalPath = Paths.get(journalFilePath).toAbsolutePath().normalize();
+	checkpointPaths = new Path[CHECKPOINT_SUFFIXES.length];
+	for (int i = 0; i < checkpointPaths.length; i++) {
+	    checkpointPaths[i] = journalPath.resolveSibling(journalPath.getFileName()
+		    + CHECKPOINT_SUFFIXES[i] + BinaryPageFormat.BINARY_PAGE_EXTENSION);
+	}
+	recordBytes = new ByteArrayOutputStream();
+	recordOut = new DataOutputStream(recordBytes);
+	crc = new CRC32();
+	recoveredRecords = readRecords();
+	pageTree.addListener(this);
+
+	syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+	    Thread syncThread = new Thread(r, "wpm-journal");
+	    syncThread.setDaemon(true);
+	    return syncThread;
+	});
+	syncer.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+	Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Accessor method for testing whether the last session left edits
+     * behind that can be recovered.
+     *
+     * @return true if recover would change the page, false otherwise.
+     */
+    public boolean hasRecoverableEdits() {
+	return recoveredRecords != null;
+    }
+
+    /**
+     * This method forgets the edits the last session left behind, which
+     * is done when the user doesn't want them back. The old journal is
+     * replaced as soon as the page is edited.
+     */
+    public void discardRecoverableEdits() {
+	recoveredRecords = null;
+    }
+
+    /**
+     * This method replaces the page with the one the last session was
+     * editing, by loading the page the journal is based on and then
+     * replaying the edits recorded after it. Should a record turn out to
+     * be damaged, the edits before it are still recovered. The recovered
+     * page is then checkpointed, after which the old journal is gone.
+     *
+     * @return true if the page was recovered, false if there was nothing
+     * to recover or the page the journal is based on couldn't be loaded.
+     */
+    public boolean recover() {
+	ArrayList<byte[]> records = recoveredRecords;
+	recoveredRecords = null;
+	if (records == null) {
+	    return false;
+	}
+
+	// FIRST THE PAGE THE EDITS WERE MADE TO
+	recording = false;
+	replaying = true;
+	try {
+	    DataInputStream in = openRecord(records.get(0));
+	    in.readByte();
+	    basePath = readString(in);
+	    fileManager.loadData(dataManager, basePath);
+
+	    // THEN THE EDITS, AS FAR AS THEY GO
+	    for (int i = 1; i < records.size(); i++) {
+		try {
+		    replay(openRecord(records.get(i)));
+		} catch (IOException | RuntimeException e) {
+		    break;
+		}
+	    }
+	} catch (IOException | RuntimeException e) {
+	    dataManager.reset();
+	    return false;
+	} finally {
+	    replaying = false;
+	}
+	checkpoint();
+	return true;
+    }
+
+    /**
+     * This method starts the journal over for a page that was just loaded
+     * from the file found at filePath, which becomes its base.
+     *
+     * @param filePath The path of the loaded page.
+     */
+    public void startPage(String filePath) {
+	if (replaying || closed) {
+	    return;
+	}
+	failed = false;
+	recording = true;
+	checkpointDue = false;
+	String newBasePath = Paths.get(filePath).toAbsolutePath().toString();
+	long keepFrom = written;
+	syncer.execute(() -> {
+	    startBase(newBasePath, keepFrom);
+	});
+    }
+
+    /**
+     * Accessor method for getting a mark for the edits recorded so far,
+     * which is taken when the page is saved and later given to pageSaved.
+     *
+     * @return The mark.
+     */
+    public long mark() {
+	return written;
+    }
+
+    /**
+     * This method starts the journal over once a save has been written
+     * to disk, with the saved file as the new base and only the edits made
+     * since the save was started. Should the journal have started over
+     * with a newer base in the meantime, nothing needs doing.
+     *
+     * @param filePath The path of the saved page.
+     *
+     * @param savedMark The mark taken when the save was started.
+     */
+    public void pageSaved(String filePath, long savedMark) {
+	if (recording && !closed) {
+	    String newBasePath = Paths.get(filePath).toAbsolutePath().toString();
+	    syncer.execute(() -> {
+		startBase(newBasePath, savedMark);
+	    });
+	}
+    }
+
+    /**
+     * This method must be called before every edit the user makes to the
+     * page. If the journal has no base for the page yet, like for a new
+     * page, or has grown too big, the page is checkpointed first, which
+     * only takes a snapshot of it here.
+     */
+    public void beforeEdit() {
+	if ((!recording || checkpointDue) && !checkpointPending && !failed && !closed) {
+	    checkpoint();
+	}
+    }
+
+    /**
+     * This method records a change to the CSS.
+     *
+     * @param offset Where in the CSS the change starts.
+     *
+     * @param removedLength How many characters were replaced.
+     *
+     * @param insertedText The text that replaced them.
+     */
+    public void cssReplaced(int offset, int removedLength, String insertedText) {
+	if (recording) {
+	    try {
+		startRecord(RECORD_CSS);
+		recordOut.writeInt(offset);
+		recordOut.writeInt(removedLength);
+		writeString(recordOut, insertedText);
+		appendRecord();
+	    } catch (IOException ioe) {
+		fail();
+	    }
+	}
+    }
+
+    /**
+     * This method records an element, along with everything in it, being
+     * added to the page.
+     *
+     * @param node The added node.
+     */
+    @Override
+    public void nodeInserted(int node) {
+	if (recording) {
+	    try {
+		startRecord(RECORD_INSERT);
+		writePath(recordOut, pageTree.getParent(node));
+		recordOut.writeInt(pageTree.indexOf(node));
+		writeSubtree(recordOut, node);
+		appendRecord();
+	    } catch (IOException ioe) {
+		fail();
+	    }
+	}
+    }
+
+    /**
+     * This method records an element, along with everything in it, being
+     * removed from the page.
+     *
+     * @param node The node about to be removed.
+     */
+    @Override
+    public void nodeRemoving(int node) {
+	if (recording) {
+	    try {
+		startRecord(RECORD_REMOVE);
+		writePath(recordOut, node);
+		appendRecord();
+	    } catch (IOException ioe) {
+		fail();
+	    }
+	}
+    }
+
+    /**
+     * This method records an attribute being set.
+     *
+     * @param node The node whose attribute was set.
+     *
+     * @param attributeName The name of the attribute.
+     *
+     * @param attributeValue Its new value.
+     */
+    @Override
+    public void attributeChanged(int node, String attributeName, String attributeValue) {
+	if (recording) {
+	    try {
+		startRecord(RECORD_ATTRIBUTE);
+		writePath(recordOut, node);
+		writeString(recordOut, attributeName);
+		writeString(recordOut, attributeValue);
+		appendRecord();
+	    } catch (IOException ioe) {
+		fail();
+	    }
+	}
+    }
+
+    /**
+     * When the whole page is replaced the journal stops recording until
+     * it is given a base for the new page.
+     */
+    @Override
+    public void pageReplaced() {
+	recording = false;
+    }
+
+    /**
+     * This method forces whatever has been written to the journal to disk,
+     * which is done every so often on the journal's own thread.
+     */
+    public void sync() {
+	FileChannel journalChannel = channel;
+	if (unsynced && (journalChannel != null)) {
+	    unsynced = false;
+	    try {
+		journalChannel.force(false);
+	    } catch (IOException ioe) {
+		// THE CHANNEL WAS CLOSED FOR A NEW BASE, WHICH IS SYNCED
+		// ON ITS OWN
+	    }
+	}
+    }
+
+    /**
+     * This method closes the journal and deletes it, along with its
+     * checkpoints, which is done when the application exits normally.
+     */
+    public void close() {
+	closed = true;
+	recording = false;
+	syncer.shutdown();
+	synchronized (journalLock) {
+	    closeChannel();
+	}
+	for (Path path : checkpointPaths) {
+	    deleteQuietly(path);
+	}
+	deleteQuietly(journalPath);
+    }
+
+    // HELPER METHOD FOR TAKING A SNAPSHOT OF THE PAGE AND HAVING IT
+    // WRITTEN TO A CHECKPOINT, WHICH THE JOURNAL THEN STARTS OVER WITH AS
+    // THE BASE. THE EDITS MADE IN THE MEANTIME ARE RECORDED AS USUAL
+    private void checkpoint() {
+	PageSnapshot page = new PageSnapshot(dataManager);
+	long keepFrom = written;
+	recording = true;
+	checkpointDue = false;
+	checkpointPending = true;
+	syncer.execute(() -> {
+	    try {
+		writeCheckpoint(page, keepFrom);
+	    } finally {
+		checkpointPending = false;
+	    }
+	});
+    }
+
+    // HELPER METHOD RUN ON THE JOURNAL'S THREAD FOR WRITING A CHECKPOINT
+    // AND STARTING THE JOURNAL OVER WITH IT AS THE BASE
+    private void writeCheckpoint(PageSnapshot page, long keepFrom) {
+	if (closed) {
+	    return;
+	}
+	int checkpoint = checkpointPaths[0].toString().equals(basePath) ? 1 : 0;
+	Path checkpointPath = checkpointPaths[checkpoint];
+	Path tempPath = journalPath.resolveSibling(journalPath.getFileName()
+		+ CHECKPOINT_SUFFIXES[checkpoint] + TEMP_FILE_SUFFIX + BinaryPageFormat.BINARY_PAGE_EXTENSION);
+	try {
+	    Files.createDirectories(journalPath.getParent());
+	    BinaryPageFormat.write(page, tempPath);
+	    moveIntoPlace(tempPath, checkpointPath);
+	} catch (IOException | RuntimeException e) {
+	    deleteQuietly(tempPath);
+	    fail();
+	    return;
+	}
+	startBase(checkpointPath.toString(), keepFrom);
+    }
+
+    // HELPER METHOD RUN ON THE JOURNAL'S THREAD FOR STARTING THE JOURNAL
+    // OVER WITH A NEW BASE, KEEPING THE RECORDS WRITTEN AFTER keepFrom,
+    // WHICH ARE IN THE OLD JOURNAL. SHOULD THE JOURNAL ALREADY HAVE
+    // STARTED OVER WITH A NEWER BASE, NOTHING NEEDS DOING
+    private void startBase(String newBasePath, long keepFrom) {
+	if (closed || (keepFrom < baseWritten)) {
+	    return;
+	}
+	Path tempPath = journalPath.resolveSibling(journalPath.getFileName() + TEMP_FILE_SUFFIX);
+	FileChannel out = null;
+	try {
+	    ByteBuffer base = makeBaseRecord(newBasePath);
+	    long newBaseLength = base.remaining();
+
+	    // THE NEW JOURNAL IS WRITTEN NEXT TO THE OLD ONE AND THEN
+	    // REPLACES IT, SO THERE IS ALWAYS ONE ON DISK. MOST OF THE
+	    // RECORDS TO KEEP ARE COPIED WHILE THE USER KEEPS EDITING
+	    Files.createDirectories(journalPath.getParent());
+	    out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	    writeFully(out, base);
+	    FileChannel oldChannel = channel;
+	    long copied = baseLength + (keepFrom - baseWritten);
+	    if (oldChannel != null) {
+		copied = transferRecords(oldChannel, copied, out);
+	    }
+	    out.force(true);
+
+	    // ONLY THE FEW RECORDS WRITTEN SINCE ARE COPIED WHILE EDITS WAIT,
+	    // THEY ARE SYNCED LATER LIKE ANY OTHER
+	    synchronized (journalLock) {
+		if (closed) {
+		    throw new IOException("The journal was closed");
+		}
+		if (oldChannel != null) {
+		    transferRecords(oldChannel, copied, out);
+		} else if (waitingRecords != null) {
+		    int skipped = (int) Math.max(0, keepFrom - waitingWritten);
+		    byte[] waiting = waitingRecords.toByteArray();
+		    writeFully(out, ByteBuffer.wrap(waiting, skipped, waiting.length - skipped));
+		}
+		out.close();
+		closeChannel();
+		moveIntoPlace(tempPath, journalPath);
+		channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		channel.position(channel.size());
+		waitingRecords = null;
+		baseLength = newBaseLength;
+		baseWritten = keepFrom;
+		basePath = newBasePath;
+		unsynced = true;
+	    }
+	} catch (IOException | RuntimeException e) {
+	    closeQuietly(out);
+	    deleteQuietly(tempPath);
+	    fail();
+	}
+    }
+
+    // HELPER METHOD FOR COPYING THE RECORDS OF A JOURNAL FROM start TO
+    // WHEREVER IT ENDS RIGHT NOW, RETURNING WHERE THE COPYING STOPPED
+    private static long transferRecords(FileChannel from, long start, FileChannel to) throws IOException {
+	long end = from.size();
+	while (start < end) {
+	    start += from.transferTo(start, end - start, to);
+	}
+	return start;
+    }
+
+    // HELPER METHOD FOR MAKING THE BASE RECORD OF A NEW JOURNAL, WHICH IS
+    // DONE ON THE JOURNAL'S THREAD, SO IT CAN'T USE THE RECORD BUFFER
+    private static ByteBuffer makeBaseRecord(String newBasePath) throws IOException {
+	ByteArrayOutputStream baseBytes = new ByteArrayOutputStream();
+	DataOutputStream baseOut = new DataOutputStream(baseBytes);
+	baseOut.writeInt(0);
+	baseOut.writeInt(0);
+	baseOut.writeByte(RECORD_BASE);
+	writeString(baseOut, newBasePath);
+	return sealRecord(baseBytes.toByteArray(), new CRC32());
+    }
+
+    // HELPER METHOD FOR STARTING A NEW RECORD
+    private void startRecord(byte recordType) throws IOException {
+	recordBytes.reset();
+	recordOut.writeInt(0);
+	recordOut.writeInt(0);
+	recordOut.writeByte(recordType);
+    }
+
+    // HELPER METHOD FOR FILLING IN THE LENGTH AND CRC OF THE RECORD
+    private ByteBuffer finishRecord() {
+	return sealRecord(recordBytes.toByteArray(), crc);
+    }
+
+    // HELPER METHOD FOR FILLING IN THE LENGTH AND CRC OF A RECORD BUILT
+    // UP IN bytes, HEADER FIRST
+    private static ByteBuffer sealRecord(byte[] bytes, CRC32 crc) {
+	ByteBuffer record = ByteBuffer.wrap(bytes);
+	int length = bytes.length - RECORD_HEADER_SIZE;
+	crc.reset();
+	crc.update(bytes, RECORD_HEADER_SIZE, length);
+	record.putInt(0, length);
+	record.putInt(4, (int) crc.getValue());
+	return record;
+    }
+
+    // HELPER METHOD FOR ADDING THE RECORD TO THE JOURNAL, WHICH IS SYNCED
+    // LATER, OR TO THE RECORDS WAITING FOR THE FIRST JOURNAL. NOTE THAT A
+    // RECORD MAY BE WRITTEN BEFORE ITS EDIT IS MADE, SO A JOURNAL THAT IS
+    // TOO BIG IS ONLY CHECKPOINTED BEFORE THE NEXT EDIT
+    private void appendRecord() throws IOException {
+	ByteBuffer record = finishRecord();
+	int length = record.remaining();
+	synchronized (journalLock) {
+	    if (channel != null) {
+		writeFully(channel, record);
+		unsynced = true;
+	    } else {
+		if (waitingRecords == null) {
+		    waitingRecords = new ByteArrayOutputStream();
+		    waitingWritten = written;
+		}
+		waitingRecords.write(record.array(), 0, length);
+	    }
+	    written += length;
+	    if (!checkpointPending && (baseLength + (written - baseWritten) >= CHECKPOINT_SIZE)) {
+		checkpointDue = true;
+	    }
+	}
+    }
+
+    // HELPER METHOD FOR GIVING UP ON THE JOURNAL UNTIL THE NEXT PAGE
+    private void fail() {
+	recording = false;
+	failed = true;
+	synchronized (journalLock) {
+	    waitingRecords = null;
+	}
+    }
+
+    // HELPER METHOD FOR READING THE RECORDS OF THE JOURNAL WE FOUND AT
+    // STARTUP, UP TO THE FIRST ONE THAT IS CUT SHORT OR DAMAGED. THERE IS
+    // NOTHING TO RECOVER WITHOUT A BASE AND AT LEAST ONE EDIT
+    private ArrayList<byte[]> readRecords() {
+	if (!Files.exists(journalPath)) {
+	    return null;
+	}
+	ArrayList<byte[]> records = new ArrayList();
+	try (DataInputStream in = new DataInputStream(Files.newInputStream(journalPath))) {
+	    while (true) {
+		int length = in.readInt();
+		int expectedCRC = in.readInt();
+		if (length <= 0) {
+		    break;
+		}
+		byte[] record = new byte[length];
+		in.readFully(record);
+		crc.reset();
+		crc.update(record, 0, length);
+		if ((int) crc.getValue() != expectedCRC) {
+		    break;
+		}
+		records.add(record);
+	    }
+	} catch (EOFException eofe) {
+	    // A RECORD THAT WAS BEING WRITTEN WHEN WE STOPPED
+	} catch (IOException | RuntimeException e) {
+	    // WHATEVER WE READ BEFORE THE ERROR IS STILL GOOD
+	}
+	if ((records.size() < 2) || (records.get(0)[0] != RECORD_BASE)) {
+	    return null;
+	}
+	return records;
+    }
+
+    // HELPER METHOD FOR APPLYING ONE RECORDED EDIT TO THE PAGE
+    private void replay(DataInputStream in) throws IOException {
+	byte recordType = in.readByte();
+	if (recordType == RECORD_INSERT) {
+	    int parent = readPath(in);
+	    int index = in.readInt();
+	    if ((index < 0) || (index > pageTree.getChildCount(parent))) {
+		throw new IOException("Bad child index " + index);
+	    }
+	    readSubtree(in, parent, index);
+	} else if (recordType == RECORD_REMOVE) {
+	    int node = readPath(in);
+	    if (node == pageTree.getRoot()) {
+		throw new IOException("Can't remove the root");
+	    }
+	    pageTree.removeNode(node);
+	} else if (recordType == RECORD_ATTRIBUTE) {
+	    int node = readPath(in);
+	    String attributeName = readString(in);
+	    pageTree.setAttribute(node, attributeName, readString(in));
+	} else if (recordType == RECORD_CSS) {
+	    int offset = in.readInt();
+	    int removedLength = in.readInt();
+	    String insertedText = readString(in);
+	    if ((offset < 0) || (removedLength < 0) || (offset + removedLength > dataManager.getCSSBuffer().length())) {
+		throw new IOException("Bad CSS change at " + offset);
+	    }
+	    dataManager.replaceCSSText(offset, removedLength, insertedText);
+	} else {
+	    throw new IOException("Unknown record type " + recordType);
+	}
+    }
+
+    // HELPER METHOD FOR WRITING A NODE AS ITS PATH FROM THE ROOT
+    private void writePath(DataOutputStream out, int node) throws IOException {
+	int depth = 0;
+	for (int ancestor = node; ancestor != pageTree.getRoot(); ancestor = pageTree.getParent(ancestor)) {
+	    depth++;
+	}
+	int[] path = new int[depth];
+	for (int ancestor = node; ancestor != pageTree.getRoot(); ancestor = pageTree.getParent(ancestor)) {
+	    path[--depth] = pageTree.indexOf(ancestor);
+	}
+	out.writeInt(path.length);
+	for (int index : path) {
+	    out.writeInt(index);
+	}
+    }
+
+    // HELPER METHOD FOR FINDING THE NODE AT A RECORDED PATH
+    private int readPath(DataInputStream in) throws IOException {
+	int depth = in.readInt();
+	int node = pageTree.getRoot();
+	for (int i = 0; i < depth; i++) {
+	    int index = in.readInt();
+	    node = (index < 0) ? NO_NODE : pageTree.getChild(node, index);
+	    if (node == NO_NODE) {
+		throw new IOException("Bad path at depth " + i);
+	    }
+	}
+	return node;
+    }
+
+    // HELPER METHOD FOR WRITING A NODE AND EVERYTHING IN IT, IN PRE-ORDER
+    private void writeSubtree(DataOutputStream out, int node) throws IOException {
+	HTMLTagPrototype tag = pageTree.getTag(node);
+	writeString(out, tag.getTagName());
+	out.writeBoolean(tag.hasClosingTag());
+	ArrayList<String> legalParents = tag.getLegalParents();
+	out.writeInt(legalParents.size());
+	for (String legalParent : legalParents) {
+	    writeString(out, legalParent);
+	}
+	out.writeInt(tag.getAttributeCount());
+	for (int i = 0; i < tag.getAttributeCount(); i++) {
+	    writeString(out, tag.getAttributeName(i));
+	    writeString(out, tag.getAttributeValue(i));
+	}
+	out.writeInt(pageTree.getChildCount(node));
+	for (int child = pageTree.getFirstChild(node); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+	    writeSubtree(out, child);
+	}
+    }
+
+    // HELPER METHOD FOR ADDING A RECORDED SUBTREE TO THE PAGE, AT THE END
+    // OF THE PARENT'S CHILDREN IF index IS NEGATIVE. TAGS OF A TYPE WE
+    // KNOW ARE CLONED FROM ITS PROTOTYPE
+    private void readSubtree(DataInputStream in, int parent, int index) throws IOException {
+	String tagName = readString(in);
+	boolean hasClosingTag = in.readBoolean();
+	HTMLTagPrototype prototype = dataManager.getTag(tagName);
+	HTMLTagPrototype tag = (prototype != null) ? prototype.clone() : new HTMLTagPrototype(tagName, hasClosingTag);
+	int legalParentCount = in.readInt();
+	for (int i = 0; i < legalParentCount; i++) {
+	    String legalParent = readString(in);
+	    if (prototype == null) {
+		tag.addLegalParent(legalParent);
+	    }
+	}
+	int attributeCount = in.readInt();
+	for (int i = 0; i < attributeCount; i++) {
+	    String attributeName = readString(in);
+	    tag.addAttribute(attributeName, readString(in));
+	}
+	int node = (index < 0) ? pageTree.appendChild(parent, tag) : pageTree.insertChild(parent, index, tag);
+	int childCount = in.readInt();
+	for (int i = 0; i < childCount; i++) {
+	    readSubtree(in, node, -1);
+	}
+    }
+
+    // HELPER METHOD FOR WRITING A STRING THAT MAY BE null OR LONGER THAN
+    // writeUTF ALLOWS
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+	if (value == null) {
+	    out.writeInt(NULL_STRING_LENGTH);
+	} else {
+	    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+	    out.writeInt(bytes.length);
+	    out.write(bytes);
+	}
+    }
+
+    // HELPER METHOD FOR READING A STRING WRITTEN BY writeString
+    private static String readString(DataInputStream in) throws IOException {
+	int length = in.readInt();
+	if (length == NULL_STRING_LENGTH) {
+	    return null;
+	}
+	if (length < 0) {
+	    throw new IOException("Bad string length " + length);
+	}
+	byte[] bytes = new byte[length];
+	in.readFully(bytes);
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // HELPER METHOD FOR READING THE CONTENTS OF A RECORD
+    private static DataInputStream openRecord(byte[] record) {
+	return new DataInputStream(new ByteArrayInputStream(record));
+    }
+
+    // HELPER METHOD FOR WRITING ALL OF A BUFFER
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    out.write(buffer);
+	}
+    }
+
+    // HELPER METHOD FOR CLOSING THE JOURNAL, IF IT IS OPEN
+    private void closeChannel() {
+	FileChannel journalChannel = channel;
+	channel = null;
+	if (journalChannel != null) {
+	    try {
+		journalChannel.close();
+	    } catch (IOException ioe) {
+		// NOTHING MORE WE CAN DO
+	    }
+	}
+    }
+
+    // HELPER METHOD FOR REPLACING A FILE WITH ITS NEW VERSION IN ONE STEP
+    // WHEREVER THE FILE SYSTEM ALLOWS IT
+    private static void moveIntoPlace(Path tempFile, Path target) throws IOException {
+	try {
+	    Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	} catch (AtomicMoveNotSupportedException amnse) {
+	    Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+    }
+
+    // HELPER METHOD FOR CLOSING A FILE THAT MAY NOT HAVE BEEN OPENED
+    private static void closeQuietly(FileChannel file) {
+	if (file != null) {
+	    try {
+		file.close();
+	    } catch (IOException ioe) {
+		// NOTHING MORE WE CAN DO
+	    }
+	}
+    }
+
+    // HELPER METHOD FOR DELETING A FILE THAT MAY NOT BE THERE
+    private static void deleteQuietly(Path path) {
+	try {
+	    Files.deleteIfExists(path);
+	} catch (IOException ioe) {
+	    // NOTHING MORE WE CAN DO
+	}
+    }
+}
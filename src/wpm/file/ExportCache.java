@@ -0,0 +1,114 @@
+package wpm.file;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+/**
+ * This class remembers what was last exported to each file, such that a
+ * file whose new content is the same as what it already has doesn't have
+ * to be written again. Rewriting it would only cost a disk write and make
+ * the web view throw away what it has cached for the file. Since files are
+ * written in the background, what is remembered is what the file will have
+ * once everything queued so far has been written, so every write of a
+ * file, skipped or not, has to be recorded here, and a write that fails
+ * has to be forgotten.
+ *
+ * The last content of each file is kept as it was handed over, so new
+ * content is simply compared with it, which stops at the first character
+ * that differs and costs nothing at all for content of a different length,
+ * which is what most edits produce. Content handed over as the very same
+ * String as last time, which is what the HTML exporter gives back when
+ * nothing on the page has changed, isn't even compared. How often writes
+ * were skipped, the hits, and how often they weren't, the misses, is
+ * counted.
+ *
+ * Note that this class isn't synchronized, so it should only be used on
+ * the JavaFX application thread, like the file manager's exports.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class ExportCache {
+    // WHAT EACH FILE WILL HAVE, BY ITS ABSOLUTE PATH
+    HashMap<Path, String> contents;
+
+    // HOW MANY WRITES WERE SKIPPED AND HOW MANY WEREN'T
+    long hits;
+    long misses;
+
+    /**
+     * Constructor for a cache that doesn't know about any files yet, so
+     * the first export of each file is always written.
+     */
+    public ExportCache() {
+	contents = new HashMap();
+    }
+
+    /**
+     * This method records the content argument as what the file found at
+     * filePath is about to be written with, and tests whether that's
+     * what the file already has.
+     *
+     * @param filePath The path of the file.
+     *
+     * @param content The full text about to be written to the file.
+     *
+     * @return true if the file has to be written, false if it already
+     * has, or is already going to have, this content.
+     */
+    public boolean record(String filePath, String content) {
+	String lastContent = contents.put(toKey(filePath), content);
+	if ((lastContent == content) || content.equals(lastContent)) {
+	    hits++;
+	    return false;
+	}
+	misses++;
+	return true;
+    }
+
+    /**
+     * This method forgets what the file found at filePath has, like after
+     * writing it failed, such that it's written the next time for sure.
+     *
+     * @param filePath The path of the file.
+     */
+    public void forget(String filePath) {
+	contents.remove(toKey(filePath));
+    }
+
+    /**
+     * Accessor method for getting how many writes were skipped since the
+     * counters were last reset.
+     *
+     * @return The number of writes skipped.
+     */
+    public long getHits() {
+	return hits;
+    }
+
+    /**
+     * Accessor method for getting how many writes weren't skipped since
+     * the counters were last reset.
+     *
+     * @return The number of files written.
+     */
+    public long getMisses() {
+	return misses;
+    }
+
+    /**
+     * This method sets the hit and miss counters back to 0, leaving what
+     * is known about the files alone.
+     */
+    public void resetCounters() {
+	hits = 0;
+	misses = 0;
+    }
+
+    // HELPER METHOD FOR GETTING THE KEY OF A FILE, SUCH THAT DIFFERENT
+    // PATHS TO THE SAME FILE ARE THE SAME FILE
+    private Path toKey(String filePath) {
+	return Paths.get(filePath).toAbsolutePath().normalize();
+    }
+}
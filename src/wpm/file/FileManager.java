@@ -1,32 +1,53 @@
 package wpm.file;
 
-import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import javafx.collections.ObservableList;
-import javafx.scene.control.TreeItem;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.JsonWriter;
-import javax.json.JsonWriterFactory;
+import javax.json.JsonException;
 import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import properties_manager.PropertiesManager;
 import saf.components.AppDataComponent;
 import saf.components.AppFileComponent;
+import saf.ui.AppMessageDialogSingleton;
+import wpm.PropertyType;
+import static wpm.PropertyType.CSS_EXPORT_ERROR_MESSAGE;
+import static wpm.PropertyType.CSS_EXPORT_ERROR_TITLE;
+import static wpm.PropertyType.EXPORT_ERROR_MESSAGE;
+import static wpm.PropertyType.EXPORT_ERROR_TITLE;
+import static wpm.PropertyType.SAVE_ERROR_MESSAGE;
+import static wpm.PropertyType.SAVE_ERROR_TITLE;
 import wpm.data.DataManager;
 import wpm.data.HTMLTagPrototype;
+import wpm.data.PageSnapshot;
+import wpm.data.PageTree;
+import wpm.data.SitePage;
+import wpm.data.TagSchema;
+import wpm.perf.LatencyMonitor;
+import wpm.perf.StartupTimer;
+import static wpm.perf.LatencyMonitor.Stage.SERIALIZATION;
 import static wpm.data.HTMLTagPrototype.TAG_TEXT;
 import static wpm.file.FileManager.JSON_TAG_NAME;
 
@@ -54,6 +75,14 @@ public class FileManager implements AppFileComponent {
     static final String JSON_CSS_CONTENT = "css_content";
     static final String DEFAULT_DOCTYPE_DECLARATION = "<!doctype html>\n";
     static final String DEFAULT_ATTRIBUTE_VALUE = "";
+    static final int SAVE_BUFFER_SIZE = 64 * 1024;
+    static final int INITIAL_LOAD_CAPACITY = 1024;
+    
+    // BINARY PAGES AT LEAST THIS BIG ARE MEMORY-MAPPED AND LOADED LAZILY
+    static final long MAPPED_LOAD_MIN_SIZE = 1024 * 1024;
+    
+    // HOW LONG CSS BEING TYPED WAITS BEFORE IT IS WRITTEN, IN MILLISECONDS
+    static final long CSS_WRITE_DELAY = 2000;
     
     // THIS IS THE TEMP PAGE FOR OUR SITE
     public static final String INDEX_FILE = "index.html";
@@ -64,13 +93,48 @@ public class FileManager implements AppFileComponent {
     public static final String TEMP_PAGE = PATH_TEMP + INDEX_FILE;
     public static final String PATH_IMAGE = "./temp/images/";
     
+    // THIS IS WHERE EDITS ARE JOURNALED UNTIL THE PAGE IS SAVED
+    public static final String JOURNAL_FILE = PATH_TEMP + "edits.journal";
+    
+    // WHERE THE CSS GOES IN AN EXPORTED SITE, WHICH IS WHERE THE PAGE
+    // LINKS TO IT
+    static final String SITE_CSS_DIR = "css";
+    
     // THIS BOOLEAN VARIABLE RECORDS IF ./temp/css/ AND ./temp/images/
     // ARE CREATED OR NOT
     private boolean Folder_Created = false;
     
+    // THIS GENERATES THE PAGE, ONLY REBUILDING THE PARTS THAT CHANGED
+    HTMLExporter htmlExporter = new HTMLExporter();
+    
+    // ALL OUR FILES ARE WRITTEN ON THIS OBJECT'S THREAD
+    BackgroundWriter backgroundWriter = new BackgroundWriter();
+    
+    // KNOWS WHAT THE EXPORTED FILES HAVE, SO THE SAME CONTENT ISN'T
+    // WRITTEN TWICE, AND WHETHER THE LAST EXPORT CHANGED THE PAGE
+    ExportCache exportCache = new ExportCache();
+    boolean lastExportChanged = true;
+    
+    // THE JOURNAL OF EDITS SINCE THE PAGE WAS LAST SAVED, OR null WHEN
+    // NOBODY IS EDITING, LIKE FOR THE BATCH EXPORTER
+    EditJournal editJournal;
+    
+    // THE TAGS FILE BEING READ AHEAD OF TIME, AND WHAT IT WILL BECOME,
+    // OR null IF NONE IS
+    String preloadedTagsPath;
+    FutureTask<TagSchema> preloadedTags;
+    
+    // FOR STREAMING OUT SAVED PAGES WITH PRETTY PRINTING
+    JsonGeneratorFactory jsonGeneratorFactory = Json.createGeneratorFactory(
+	    Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+    
     /**
      * This method is for saving user work, which in the case of this
-     * application means the data that constitutes the page DOM.
+     * application means the data that constitutes the page DOM. Note
+     * that only a snapshot of the page is taken here, the file itself
+     * is streamed out on the writer thread, in the binary page format
+     * if the file has the binary page extension and as JSON otherwise.
+     * Once the file is in place the edit journal starts over from it.
      * 
      * @param data The data management component for this application.
      * 
@@ -82,135 +146,469 @@ public class FileManager implements AppFileComponent {
      */
     @Override
     public void saveData(AppDataComponent data, String filePath) throws IOException {
-	StringWriter sw = new StringWriter();
+	// TAKE A SNAPSHOT OF THE PAGE, WHICH IS ALL THE WRITER THREAD WILL SEE
+	LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	long startTime = monitor.startTime();
+	long startAllocated = monitor.allocatedBytes();
+	PageSnapshot page = new PageSnapshot((DataManager)data);
+	monitor.record(SERIALIZATION, startTime, startAllocated);
+	
+	// THE TEMP FILES SHOULDN'T LAG BEHIND A SAVED PAGE
+	backgroundWriter.flushDelayedWrites();
+	
+	// THE JOURNAL NEEDS TO KNOW WHICH EDITS THE SAVED FILE HAS
+	Runnable onSaved = null;
+	if (editJournal != null) {
+	    EditJournal journal = editJournal;
+	    long savedMark = journal.mark();
+	    onSaved = () -> {
+		journal.pageSaved(filePath, savedMark);
+	    };
+	}
+	backgroundWriter.write(filePath, target -> {
+	    writePage(page, target);
+	}, onSaved, errorReporter(SAVE_ERROR_TITLE, SAVE_ERROR_MESSAGE));
+    }
 
-	// BUILD THE HTMLTags ARRAY
-	DataManager dataManager = (DataManager)data;
+    /**
+     * Mutator method for setting the journal that is started over
+     * whenever a page is loaded or saved.
+     *
+     * @param initEditJournal The journal of the page being edited, may
+     * be null.
+     */
+    public void setEditJournal(EditJournal initEditJournal) {
+	editJournal = initEditJournal;
+    }
+
+    /**
+     * This method saves the page like saveData, but writes the file
+     * right away on the calling thread, which is what tools that run
+     * without the user interface need.
+     *
+     * @param data The data management component for this application.
+     *
+     * @param filePath Path (including file name/extension) to where
+     * to save the data to.
+     *
+     * @throws IOException Thrown should there be an error writing
+     * out data to the file.
+     */
+    public void writeData(AppDataComponent data, String filePath) throws IOException {
+	PageSnapshot page = new PageSnapshot((DataManager)data);
+	writePage(page, Paths.get(filePath));
+    }
 
-	// THEN THE TREE
-	JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
-	TreeItem root = dataManager.getHTMLRoot();
-	fillArrayWithTreeTags(root, arrayBuilder);
-	JsonArray nodesArray = arrayBuilder.build();
+    // HELPER METHOD FOR SAVING DATA TO A JSON FORMAT
+    private void writeJSONPage(PageSnapshot page, Path target) throws IOException {
+	try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), SAVE_BUFFER_SIZE);
+	    JsonGenerator generator = jsonGeneratorFactory.createGenerator(out);
+	    generatePage(generator, page);
+	    generator.flush();
+	    
+	    // MAKE SURE IT'S ALL ON DISK BEFORE IT REPLACES THE OLD FILE
+	    channel.force(true);
+	    generator.close();
+	}
+    }
+    
+    // HELPER METHOD FOR SAVING DATA TO A JSON FORMAT, THE NODES ARE
+    // WRITTEN OUT ONE AT A TIME AS WE GO, SO THE DOCUMENT IS NEVER
+    // BUILT UP IN MEMORY
+    private void generatePage(JsonGenerator generator, PageSnapshot page) {
+	generator.writeStartObject();
 	
-	// THEN PUT IT ALL TOGETHER IN A JsonObject
-	JsonObject dataManagerJSO = Json.createObjectBuilder()
-		.add(JSON_TAG_TREE, nodesArray)
-		.add(JSON_CSS_CONTENT, dataManager.getCSSText())
-		.build();
+	// FIRST THE TREE
+	generator.writeStartArray(JSON_TAG_TREE);
+	for (int i = 0; i < page.size(); i++) {
+	    writeTag(generator, page, i);
+	}
+	generator.writeEnd();
 	
-	// AND NOW OUTPUT IT TO A JSON FILE WITH PRETTY PRINTING
-	Map<String, Object> properties = new HashMap<>(1);
-	properties.put(JsonGenerator.PRETTY_PRINTING, true);
-	JsonWriterFactory writerFactory = Json.createWriterFactory(properties);
-	JsonWriter jsonWriter = writerFactory.createWriter(sw);
-	jsonWriter.writeObject(dataManagerJSO);
-	jsonWriter.close();
-
-	// INIT THE WRITER
-	OutputStream os = new FileOutputStream(filePath);
-	JsonWriter jsonFileWriter = Json.createWriter(os);
-	jsonFileWriter.writeObject(dataManagerJSO);
-	String prettyPrinted = sw.toString();
-	PrintWriter pw = new PrintWriter(filePath);
-	pw.write(prettyPrinted);
-	pw.close();
+	// THEN THE CSS
+	generator.write(JSON_CSS_CONTENT, page.getCSSText());
+	generator.writeEnd();
     }
     
     // HELPER METHOD FOR SAVING DATA TO A JSON FORMAT
-    private JsonObject makeTagJsonObject(HTMLTagPrototype tag, int numChildren) {
-	String tagName;
-	HashMap<String, String> attributes = tag.getAttributes();
-	ArrayList<String> legalParents = tag.getLegalParents();
-	JsonObject jso = Json.createObjectBuilder()
-		.add(JSON_TAG_NAME, tag.getTagName())
-		.add(JSON_TAG_HAS_CLOSING_TAG, tag.hasClosingTag())
-		.add(JSON_TAG_LEGAL_PARENTS, buildJsonArray(legalParents))
-		.add(JSON_TAG_ATTRIBUTES, makeAttributesJsonArray(attributes))
-		.add(JSON_TAG_NUMBER_OF_CHILDREN, numChildren)
-		.add(JSON_TAG_NODE_INDEX, tag.getNodeIndex())
-		.add(JSON_TAG_PARENT_INDEX, tag.getParentIndex())
-		.build();
-	return jso;
-    }    
-    
-    int maxNodeCounter;
+    private void writeTag(JsonGenerator generator, PageSnapshot page, int nodeIndex) {
+	generator.writeStartObject()
+		.write(JSON_TAG_NAME, page.getTagName(nodeIndex))
+		.write(JSON_TAG_HAS_CLOSING_TAG, page.hasClosingTag(nodeIndex));
+	generator.writeStartArray(JSON_TAG_LEGAL_PARENTS);
+	for (String legalParent : page.getLegalParents(nodeIndex)) {
+	    generator.write(legalParent);
+	}
+	generator.writeEnd();
+	generator.writeStartArray(JSON_TAG_ATTRIBUTES);
+	for (int i = 0; i < page.getAttributeCount(nodeIndex); i++) {
+	    generator.writeStartObject()
+		    .write(JSON_TAG_ATTRIBUTE_NAME, page.getAttributeName(nodeIndex, i))
+		    .write(JSON_TAG_ATTRIBUTE_VALUE, page.getAttributeValue(nodeIndex, i))
+		    .writeEnd();
+	}
+	generator.writeEnd();
+	generator.write(JSON_TAG_NUMBER_OF_CHILDREN, page.getChildCount(nodeIndex))
+		.write(JSON_TAG_NODE_INDEX, nodeIndex)
+		.write(JSON_TAG_PARENT_INDEX, page.getParentIndex(nodeIndex))
+		.writeEnd();
+    }
     
-    // HELPER METHOD FOR SAVING DATA TO A JSON FORMAT
-    private void fillArrayWithTreeTags(TreeItem root, JsonArrayBuilder arrayBuilder) {
-	maxNodeCounter = 0;
+    /**
+     * This method loads a saved page into the data manager, replacing the
+     * tree and CSS it currently holds. Pages saved with the binary page
+     * extension are read in the binary format, all others as JSON. Either
+     * way the file is streamed in without building any JSON objects and
+     * the tree is then built in a single pass. Large binary pages are
+     * instead memory-mapped, and only the root and its children are made
+     * right away, the rest of the tree is made as it is expanded. Note
+     * that nodes with a tag type we know from the tags file share that
+     * type's list of legal parents rather than loading their own. The
+     * edit journal then starts over from the loaded file.
+     * 
+     * @param data The data management component for this application.
+     * 
+     * @param filePath Path (including file name/extension) to the file
+     * to load the data from.
+     * 
+     * @throws IOException Thrown should there be an error reading
+     * in data from the file.
+     */
+    public void loadData(AppDataComponent data, String filePath) throws IOException {
+	DataManager dataManager = (DataManager) data;
+	MappedPage mappedPage = null;
+	if (isBinaryPage(filePath) && (Files.size(Paths.get(filePath)) >= MAPPED_LOAD_MIN_SIZE)) {
+	    mappedPage = MappedPage.open(Paths.get(filePath), dataManager);
+	}
+	
+	// THE LOADED PAGE REPLACES THE TREE EVERYBODY ELSE IS USING,
+	// SMALL PAGES AND OLD FILES ARE READ ALL AT ONCE
+	if (mappedPage != null) {
+	    dataManager.getPageTree().load(mappedPage);
+	    dataManager.setCSSText(mappedPage.getCSSText());
+	} else {
+	    PageSnapshot page = readPage(filePath, dataManager);
+	    if (page.size() == 0) {
+		throw new IOException(filePath + " contains no tag tree");
+	    }
+	    dataManager.getPageTree().load(page, dataManager);
+	    dataManager.setCSSText(page.getCSSText());
+	}
+	if (editJournal != null) {
+	    editJournal.startPage(filePath);
+	}
+    }
+    
+    /**
+     * This method converts a saved page from one format to the other,
+     * for example from JSON to the binary format. The format of each file
+     * is determined by its extension. Note that the conversion is
+     * lossless, converting a page back and forth gives the same page.
+     * 
+     * @param sourcePath Path (including file name/extension) to the
+     * saved page to convert.
+     * 
+     * @param targetPath Path (including file name/extension) to where
+     * to save the converted page.
+     * 
+     * @throws IOException Thrown should there be an error reading or
+     * writing either file.
+     */
+    public void convertPage(String sourcePath, String targetPath) throws IOException {
+	PageSnapshot page = readPage(sourcePath, null);
+	writePage(page, Paths.get(targetPath));
+    }
+    
+    /**
+     * This method loads a saved page as a page of a site, with its own
+     * tree, such that any number of pages can be loaded at once without
+     * disturbing the page being edited. The page keeps its own CSS, see
+     * SitePage.useSharedCSS for sharing the site's instead.
+     * 
+     * @param dataManager The data manager, whose tags the page's
+     * elements are made from.
+     * 
+     * @param filePath Path (including file name/extension) to the saved
+     * page.
+     * 
+     * @param pageName The name to give the page in the site.
+     * 
+     * @return The loaded page.
+     * 
+     * @throws IOException Thrown should there be an error reading the
+     * file, or should it have no tag tree.
+     */
+    public SitePage loadSitePage(DataManager dataManager, String filePath, String pageName) throws IOException {
+	PageSnapshot snapshot = readPage(filePath, dataManager);
+	if (snapshot.size() == 0) {
+	    throw new IOException(filePath + " contains no tag tree");
+	}
+	PageTree pageTree = new PageTree();
+	pageTree.load(snapshot, dataManager);
+	SitePage page = new SitePage(pageName, pageTree);
+	page.setOwnCSS(snapshot.getCSSText());
+	return page;
+    }
+    
+    /**
+     * Accessor method for testing whether a file is to be saved and
+     * loaded in the binary page format.
+     * 
+     * @param filePath The path of the file.
+     * 
+     * @return true if the file has the binary page extension, false
+     * if it is JSON.
+     */
+    public boolean isBinaryPage(String filePath) {
+	return filePath.toLowerCase().endsWith(BinaryPageFormat.BINARY_PAGE_EXTENSION);
+    }
+    
+    // HELPER METHOD FOR READING A SAVED PAGE IN EITHER FORMAT, IF THE
+    // DATA MANAGER IS PROVIDED, THE LEGAL PARENTS OF TAGS IT KNOWS ARE
+    // NOT READ
+    private PageSnapshot readPage(String filePath, DataManager dataManager) throws IOException {
+	if (isBinaryPage(filePath)) {
+	    return BinaryPageFormat.read(Paths.get(filePath));
+	}
+	return readJSONPage(filePath, dataManager);
+    }
+    
+    // HELPER METHOD FOR WRITING A PAGE IN THE FORMAT GIVEN BY THE
+    // TARGET'S EXTENSION
+    private void writePage(PageSnapshot page, Path target) throws IOException {
+	if (isBinaryPage(target.toString())) {
+	    BinaryPageFormat.write(page, target);
+	} else {
+	    writeJSONPage(page, target);
+	}
+    }
+    
+    // HELPER METHOD FOR LOADING DATA FROM A JSON FORMAT, STREAMING THE
+    // NODES INTO ARRAYS INDEXED BY NODE INDEX
+    private PageSnapshot readJSONPage(String filePath, DataManager dataManager) throws IOException {
+	try (InputStream is = new BufferedInputStream(new FileInputStream(filePath));
+		JsonParser parser = Json.createParser(is)) {
+	    // THE TOP LEVEL OBJECT HAS THE TREE AND THE CSS
+	    JSONPageReader reader = new JSONPageReader(dataManager);
+	    String cssContent = DEFAULT_ATTRIBUTE_VALUE;
+	    expectEvent(parser, Event.START_OBJECT);
+	    Event event = parser.next();
+	    while (event != Event.END_OBJECT) {
+		String key = parser.getString();
+		if (key.equals(JSON_TAG_TREE)) {
+		    reader.readTagTree(parser);
+		} else if (key.equals(JSON_CSS_CONTENT)) {
+		    expectEvent(parser, Event.VALUE_STRING);
+		    cssContent = parser.getString();
+		} else {
+		    skipValue(parser, parser.next());
+		}
+		event = parser.next();
+	    }
+	    return reader.toPage(cssContent);
+	} catch (JsonException | IllegalStateException | NoSuchElementException e) {
+	    throw new IOException("Error loading " + filePath, e);
+	}
+    }
+    
+    // HELPER CLASS THAT GATHERS UP THE NODES OF A JSON PAGE AS THEY ARE READ
+    private class JSONPageReader {
+	// THE PROTOTYPES FOR SHARING LEGAL PARENTS, MAY BE null
+	DataManager dataManager;
 	
-	// FIRST THE ROOT NODE
-	HTMLTagPrototype nodeData = (HTMLTagPrototype)root.getValue();
-	nodeData.setNodeIndex(0);
-	nodeData.setParentIndex(-1);
-	JsonObject tagObject = makeTagJsonObject(nodeData, root.getChildren().size());
-	arrayBuilder.add(tagObject);
+	// THE NODE DATA, INDEXED BY NODE INDEX, GROWN AS NEEDED
+	String[] tagNames = new String[INITIAL_LOAD_CAPACITY];
+	boolean[] closingTags = new boolean[INITIAL_LOAD_CAPACITY];
+	String[][] attributeNames = new String[INITIAL_LOAD_CAPACITY][];
+	String[][] attributeValues = new String[INITIAL_LOAD_CAPACITY][];
+	List<String>[] legalParents = new List[INITIAL_LOAD_CAPACITY];
+	int[] parentIndices = new int[INITIAL_LOAD_CAPACITY];
+	int nodeCount = 0;
 	
-	// INC THE COUNTER
-	maxNodeCounter++;
-
-	// AND NOW START THE RECURSIVE FUNCTION
-	addChildrenToTagTreeJsonObject(root, arrayBuilder);
+	// SO THAT ALL NODES OF A TYPE SHARE ONE LIST OF LEGAL PARENTS
+	HashMap<String, List<String>> sharedLegalParents = new HashMap();
+	
+	// THESE ARE REUSED FOR EVERY NODE
+	ArrayList<String> nodeAttributeNames = new ArrayList();
+	ArrayList<String> nodeAttributeValues = new ArrayList();
+	ArrayList<String> nodeLegalParents = new ArrayList();
+	
+	JSONPageReader(DataManager initDataManager) {
+	    dataManager = initDataManager;
+	}
+	
+	// READS THE ARRAY OF TAGS
+	void readTagTree(JsonParser parser) throws IOException {
+	    expectEvent(parser, Event.START_ARRAY);
+	    while (parser.next() == Event.START_OBJECT) {
+		readTag(parser);
+	    }
+	}
+	
+	// READS ONE TAG OBJECT
+	void readTag(JsonParser parser) throws IOException {
+	    String tagName = null;
+	    boolean hasClosingTag = true;
+	    boolean hasLegalParents = false;
+	    int nodeIndex = nodeCount;
+	    int parentIndex = -1;
+	    nodeAttributeNames.clear();
+	    nodeAttributeValues.clear();
+	    nodeLegalParents.clear();
+	    
+	    Event event = parser.next();
+	    while (event != Event.END_OBJECT) {
+		String key = parser.getString();
+		event = parser.next();
+		if (key.equals(JSON_TAG_NAME)) {
+		    tagName = parser.getString();
+		} else if (key.equals(JSON_TAG_HAS_CLOSING_TAG)) {
+		    hasClosingTag = readBoolean(parser, event);
+		} else if (key.equals(JSON_TAG_NODE_INDEX)) {
+		    nodeIndex = parser.getInt();
+		} else if (key.equals(JSON_TAG_PARENT_INDEX)) {
+		    parentIndex = parser.getInt();
+		} else if (key.equals(JSON_TAG_LEGAL_PARENTS) && !isKnownTag(tagName)) {
+		    while (parser.next() == Event.VALUE_STRING) {
+			nodeLegalParents.add(parser.getString());
+		    }
+		    hasLegalParents = true;
+		} else if (key.equals(JSON_TAG_ATTRIBUTES)) {
+		    loadAttributes(parser, nodeAttributeNames, nodeAttributeValues);
+		} else {
+		    skipValue(parser, event);
+		}
+		event = parser.next();
+	    }
+	    if (tagName == null) {
+		throw new IOException("Tag without a name at node " + nodeIndex);
+	    }
+	    if (nodeIndex < 0 || parentIndex >= nodeIndex || (nodeIndex > 0 && parentIndex < 0)) {
+		throw new IOException("Bad node index " + nodeIndex + " for parent " + parentIndex);
+	    }
+	    if (nodeIndex >= tagNames.length) {
+		grow(Math.max(tagNames.length * 2, nodeIndex + 1));
+	    }
+	    
+	    // NOW KEEP THE NODE'S DATA
+	    tagNames[nodeIndex] = tagName;
+	    closingTags[nodeIndex] = hasClosingTag;
+	    attributeNames[nodeIndex] = nodeAttributeNames.toArray(new String[nodeAttributeNames.size()]);
+	    attributeValues[nodeIndex] = nodeAttributeValues.toArray(new String[nodeAttributeValues.size()]);
+	    parentIndices[nodeIndex] = parentIndex;
+	    if (isKnownTag(tagName)) {
+		legalParents[nodeIndex] = dataManager.getTag(tagName).getLegalParents();
+	    } else {
+		List<String> typeLegalParents = sharedLegalParents.get(tagName);
+		if (typeLegalParents == null || (hasLegalParents && !typeLegalParents.equals(nodeLegalParents))) {
+		    typeLegalParents = new ArrayList(nodeLegalParents);
+		    sharedLegalParents.put(tagName, typeLegalParents);
+		}
+		legalParents[nodeIndex] = typeLegalParents;
+	    }
+	    nodeCount = Math.max(nodeCount, nodeIndex + 1);
+	}
+	
+	// TESTS TO SEE IF THE DATA MANAGER HAS A PROTOTYPE FOR THIS TAG
+	boolean isKnownTag(String tagName) {
+	    return dataManager != null && tagName != null && dataManager.getTag(tagName) != null;
+	}
+	
+	// MAKES ROOM FOR MORE NODES
+	void grow(int capacity) {
+	    tagNames = Arrays.copyOf(tagNames, capacity);
+	    closingTags = Arrays.copyOf(closingTags, capacity);
+	    attributeNames = Arrays.copyOf(attributeNames, capacity);
+	    attributeValues = Arrays.copyOf(attributeValues, capacity);
+	    legalParents = Arrays.copyOf(legalParents, capacity);
+	    parentIndices = Arrays.copyOf(parentIndices, capacity);
+	}
+	
+	// PUTS IT ALL TOGETHER ONCE EVERY NODE HAS BEEN READ
+	PageSnapshot toPage(String cssContent) throws IOException {
+	    int[] childCounts = new int[nodeCount];
+	    for (int i = 0; i < nodeCount; i++) {
+		if (tagNames[i] == null) {
+		    throw new IOException("Missing node " + i);
+		}
+		if (parentIndices[i] >= 0) {
+		    childCounts[parentIndices[i]]++;
+		}
+	    }
+	    return new PageSnapshot(Arrays.copyOf(tagNames, nodeCount),
+		    Arrays.copyOf(closingTags, nodeCount),
+		    Arrays.copyOf(attributeNames, nodeCount),
+		    Arrays.copyOf(attributeValues, nodeCount),
+		    Arrays.copyOf(legalParents, nodeCount),
+		    Arrays.copyOf(parentIndices, nodeCount),
+		    childCounts, cssContent);
+	}
     }
-
-    // HELPER METHOD FOR SAVING DATA TO A JSON FORMAT
-    private void addChildrenToTagTreeJsonObject(TreeItem node, JsonArrayBuilder arrayBuilder) {
-	HTMLTagPrototype parentData = (HTMLTagPrototype)node.getValue();
-	// AND NOW GO THROUGH THE CHILDREN
-	ObservableList<TreeItem> children = node.getChildren();
-	for (TreeItem child : children) {
-	    HTMLTagPrototype childData = (HTMLTagPrototype)child.getValue();
-	    childData.setParentIndex(parentData.getNodeIndex());
-	    childData.setNodeIndex(maxNodeCounter);
-	    maxNodeCounter++;
-	    arrayBuilder.add(makeTagJsonObject(childData, child.getChildren().size()));
-
-	    // AND NOW MAKE THE RECURSIVE CALL ON THE CHILDREN
-	    addChildrenToTagTreeJsonObject(child, arrayBuilder);
+    
+    // HELPER METHOD FOR LOADING A TAG'S ARRAY OF ATTRIBUTES
+    private void loadAttributes(JsonParser parser, ArrayList<String> attributeNames, ArrayList<String> attributeValues) {
+	while (parser.next() == Event.START_OBJECT) {
+	    String attributeName = null;
+	    String attributeValue = DEFAULT_ATTRIBUTE_VALUE;
+	    Event event = parser.next();
+	    while (event != Event.END_OBJECT) {
+		String key = parser.getString();
+		event = parser.next();
+		if (key.equals(JSON_TAG_ATTRIBUTE_NAME)) {
+		    attributeName = parser.getString();
+		} else if (key.equals(JSON_TAG_ATTRIBUTE_VALUE)) {
+		    attributeValue = parser.getString();
+		} else {
+		    skipValue(parser, event);
+		}
+		event = parser.next();
+	    }
+	    if (attributeName != null) {
+		attributeNames.add(attributeName);
+		attributeValues.add(attributeValue);
+	    }
 	}
     }
     
-    // HELPER METHOD FOR SAVING DATA TO A JSON FORMAT
-    private JsonArray buildJsonArray(ArrayList<String> data) {
-        JsonArrayBuilder jsb = Json.createArrayBuilder();
-        for (String d : data) {
-           jsb.add(d);
-        }
-        JsonArray jA = jsb.build();
-        return jA;
+    // HELPER METHOD FOR READING A BOOLEAN, WHICH OLDER FILES STORE AS A STRING
+    private boolean readBoolean(JsonParser parser, Event event) {
+	if (event == Event.VALUE_STRING) {
+	    return Boolean.parseBoolean(parser.getString());
+	}
+	return event == Event.VALUE_TRUE;
     }
-  
-    // HELPER METHOD FOR SAVING DATA TO A JSON FORMAT
-    private JsonArray makeAttributesJsonArray(HashMap<String,String> attributes) {
-	Set<String> keys = attributes.keySet();
-	JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
-	for (String attributeName : keys) {
-	    String attributeValue = attributes.get(attributeName);
-	    JsonObject jso = Json.createObjectBuilder()
-		.add(JSON_TAG_ATTRIBUTE_NAME, attributeName)
-		.add(JSON_TAG_ATTRIBUTE_VALUE, attributeValue)
-		.build();
-	    arrayBuilder.add(jso);
-	}
-	JsonArray jA = arrayBuilder.build();
-	return jA;
-    }
-    
-    // HELPER METHOD FOR LOADING DATA FROM A JSON FORMAT
-    private JsonObject loadJSONFile(String jsonFilePath) throws IOException {
-	InputStream is = new FileInputStream(jsonFilePath);
-	JsonReader jsonReader = Json.createReader(is);
-	JsonObject json = jsonReader.readObject();
-	jsonReader.close();
-	is.close();
-	return json;
+    
+    // HELPER METHOD FOR MAKING SURE THE FILE IS SHAPED LIKE WE EXPECT
+    private void expectEvent(JsonParser parser, Event expected) throws IOException {
+	Event event = parser.next();
+	if (event != expected) {
+	    throw new IOException("Expected " + expected + " but found " + event);
+	}
     }
-
+    
+    // HELPER METHOD FOR SKIPPING OVER A VALUE WE DON'T NEED, WHICH MAY BE
+    // A WHOLE OBJECT OR ARRAY
+    private void skipValue(JsonParser parser, Event event) {
+	if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+	    int depth = 1;
+	    while (depth > 0) {
+		event = parser.next();
+		if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+		    depth++;
+		} else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+		    depth--;
+		}
+	    }
+	}
+    }
+    
     /**
      * This method exports the contents of the data manager to a 
      * Web page including the html page, needed directories, and
-     * the CSS file.
+     * the CSS file. Note that the page is generated here but written
+     * out on the writer thread, and that files that would be written
+     * with what they already have aren't written at all.
      * 
      * @param data The data management component.
      * 
@@ -223,26 +621,81 @@ public class FileManager implements AppFileComponent {
     @Override
     public void exportData(AppDataComponent data, String filePath) throws IOException {
 	// THIS SHOULD EXPORT THE WEB PAGE TO THE temp DIRECTORY, INCLUDING THE CSS FILE
-        //saveData(data, filePath);
 	DataManager dataManager = (DataManager) data;
-        PrintWriter pw = new PrintWriter(filePath);
-        TreeItem root = dataManager.getHTMLRoot();
-        htmlWriter(root, pw, 0);
+	LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	long startTime = monitor.startTime();
+	long startAllocated = monitor.allocatedBytes();
+        String pageContent = htmlExporter.export(dataManager.getPageTree());
         String cssContent = dataManager.getCSSText();
+	monitor.record(SERIALIZATION, startTime, startAllocated);
         if(!Folder_Created) {
-            File cssFolder = new File(PATH_CSS);
-            cssFolder.mkdir();
-            File imageFolder = new File(PATH_IMAGE);
-            imageFolder.mkdir();
+            backgroundWriter.createDirectories(PATH_CSS, errorReporter(EXPORT_ERROR_TITLE, EXPORT_ERROR_MESSAGE));
+            backgroundWriter.createDirectories(PATH_IMAGE, errorReporter(EXPORT_ERROR_TITLE, EXPORT_ERROR_MESSAGE));
             Folder_Created = true;
         }
-        exportCSS(cssContent, TEMP_CSS_PATH);
-        pw.close();
+        boolean pageChanged = exportCache.record(filePath, pageContent);
+        if (pageChanged) {
+            backgroundWriter.write(filePath, pageContent, exportErrorReporter(filePath, EXPORT_ERROR_TITLE, EXPORT_ERROR_MESSAGE));
+        }
+        boolean cssChanged = exportCache.record(TEMP_CSS_PATH, cssContent);
+        if (cssChanged) {
+            backgroundWriter.write(TEMP_CSS_PATH, cssContent, exportErrorReporter(TEMP_CSS_PATH, CSS_EXPORT_ERROR_TITLE, CSS_EXPORT_ERROR_MESSAGE));
+        }
+        lastExportChanged = pageChanged || cssChanged;
     }
     
+    /**
+     * Accessor method for testing whether the last exportData changed
+     * either file, if it didn't the displayed page needn't be reloaded.
+     * 
+     * @return true if the page or its CSS was written, false if both
+     * already had what was exported.
+     */
+    public boolean isLastExportChanged() {
+	return lastExportChanged;
+    }
+    
+    /**
+     * Accessor method for getting the cache of what the exported files
+     * have, like for reading how many writes it saved.
+     * 
+     * @return The export cache.
+     */
+    public ExportCache getExportCache() {
+	return exportCache;
+    }
+    
+    /**
+     * This method exports the page like exportData, but to the directory
+     * argument rather than to the temp directory, writing the page to
+     * index.html and the CSS to css/home.css, which is where the page
+     * links to it. Note that the files are written right away on the
+     * calling thread, and that a file manager keeps the last page it
+     * exported, so it must not be used by more than one thread at once.
+     *
+     * @param data The data management component for this application.
+     *
+     * @param dirPath Path to the directory to export the page to, which
+     * is created if it doesn't exist.
+     *
+     * @throws IOException Thrown should there be an error writing
+     * either file.
+     */
+    public void exportSite(AppDataComponent data, String dirPath) throws IOException {
+	DataManager dataManager = (DataManager) data;
+	String pageContent = htmlExporter.export(dataManager.getPageTree());
+	Path siteDir = Paths.get(dirPath);
+	Path cssDir = siteDir.resolve(SITE_CSS_DIR);
+	Files.createDirectories(cssDir);
+	Files.write(siteDir.resolve(INDEX_FILE), pageContent.getBytes(Charset.defaultCharset()));
+	Files.write(cssDir.resolve(CSS_FILE), dataManager.getCSSText().getBytes(Charset.defaultCharset()));
+    }
+
     /**
      * This function writes the CSS content out to the CSS file
-     * that is found using the filePath argument.
+     * that is found using the filePath argument. Note that the
+     * file is written on the writer thread, and only if it doesn't
+     * already have this content.
      * 
      * @param cssContent The CSS content to write.
      * 
@@ -252,9 +705,38 @@ public class FileManager implements AppFileComponent {
      * to the CSS File.
      */
     public void exportCSS(String cssContent, String filePath) throws IOException {
-	PrintWriter out = new PrintWriter(filePath);
-	out.print(cssContent);
-	out.close();
+	if (exportCache.record(filePath, cssContent)) {
+	    backgroundWriter.write(filePath, cssContent, exportErrorReporter(filePath, CSS_EXPORT_ERROR_TITLE, CSS_EXPORT_ERROR_MESSAGE));
+	}
+    }
+    
+    /**
+     * This function writes the CSS content out to the CSS file like
+     * exportCSS, but only after a delay, during which newer content
+     * replaces it. This is for CSS that is being typed, which the
+     * displayed page is given directly, such that the file only needs
+     * to catch up eventually. Note that the file is written right away
+     * should the page be reloaded or saved in the meantime.
+     * 
+     * @param cssContent The CSS content to write.
+     * 
+     * @param filePath The path to the CSS file.
+     */
+    public void exportCSSLater(String cssContent, String filePath) {
+	if (exportCache.record(filePath, cssContent)) {
+	    backgroundWriter.writeLater(filePath, cssContent, CSS_WRITE_DELAY, exportErrorReporter(filePath, CSS_EXPORT_ERROR_TITLE, CSS_EXPORT_ERROR_MESSAGE));
+	}
+    }
+    
+    /**
+     * This method schedules the action argument to be run on the JavaFX
+     * application thread once all the files queued for writing so far
+     * have been written, like for loading an exported page.
+     * 
+     * @param action The action to run.
+     */
+    public void afterPendingWrites(Runnable action) {
+	backgroundWriter.afterPendingWrites(action);
     }
     
     /**
@@ -271,36 +753,139 @@ public class FileManager implements AppFileComponent {
      * the JSON file.
      */
     public void loadHTMLTags(DataManager data, String filePath) throws IOException {
-	// LOAD THE JSON FILE WITH ALL THE DATA
-	JsonObject json = loadJSONFile(filePath);
-	
-	// GET THE ARRAY
-	JsonArray tagsArray = json.getJsonArray(JSON_TAGS_ARRAY_NAME);	
+	FutureTask<TagSchema> preload = null;
+	if (filePath.equals(preloadedTagsPath)) {
+	    preload = preloadedTags;
+	    preloadedTagsPath = null;
+	    preloadedTags = null;
+	}
+	if (preload == null) {
+	    data.setTagSchema(readTagSchema(filePath, data.getTagSchema()));
+	    return;
+	}
 	
-	// AND LOAD ALL THE ITEMS IN
-	for (int i = 0; i < tagsArray.size(); i++) {
-	    JsonObject tagJSO = tagsArray.getJsonObject(i);
-	    String tagName = tagJSO.getString(JSON_TAG_NAME);
-	    String tagHasClosingTag = tagJSO.getString(JSON_TAG_HAS_CLOSING_TAG);
-	    boolean hasClosingTag = Boolean.parseBoolean(tagHasClosingTag);
-	    HTMLTagPrototype tag = new HTMLTagPrototype(tagName, hasClosingTag);
-	    
-	    // NOW GET ALL THE TAG ATTRIBUTES THAT CAN BE EDITED
-	    JsonArray attributesArray = tagJSO.getJsonArray(JSON_TAG_ATTRIBUTES);
-	    for (int j = 0; j < attributesArray.size(); j++) {
-		String attribute = attributesArray.getString(j);
-		tag.addAttribute(attribute, DEFAULT_ATTRIBUTE_VALUE);
+	// THE FILE WAS READ WHILE THE REST OF THE APP STARTED UP
+	try {
+	    data.setTagSchema(preload.get());
+	} catch (ExecutionException ee) {
+	    if (ee.getCause() instanceof IOException) {
+		throw (IOException) ee.getCause();
 	    }
-
-	    // AND NOW GET THE LEGAL PARENTS
-	    JsonArray legalParentsArray = tagJSO.getJsonArray(JSON_TAG_LEGAL_PARENTS);
-	    for (int k = 0; k < legalParentsArray.size(); k++) {
-		String legalParent = legalParentsArray.getString(k);
-		tag.addLegalParent(legalParent);
+	    throw new IOException("Error loading " + filePath, ee.getCause());
+	} catch (InterruptedException ie) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted loading " + filePath, ie);
+	}
+    }
+    
+    /**
+     * This method starts reading the HTML tags on a thread of their own,
+     * so that the file is read while the application does other things.
+     * The next call to loadHTMLTags for the same file waits for it to be
+     * read rather than reading it again.
+     * 
+     * @param filePath File path and name/extension of the JSON file that 
+     * contains the list of tags to be used for editing.
+     */
+    public void preloadHTMLTags(String filePath) {
+	preloadedTagsPath = filePath;
+	preloadedTags = new FutureTask(() -> {
+	    StartupTimer timer = StartupTimer.getTimer();
+	    long startTime = timer.startTime();
+	    TagSchema schema = readTagSchema(filePath, null);
+	    timer.record("tags read", startTime);
+	    return schema;
+	});
+	Thread loaderThread = new Thread(preloadedTags, "wpm-tags-loader");
+	loaderThread.setDaemon(true);
+	loaderThread.start();
+    }
+    
+    /**
+     * This method reads the HTML tags the application will let the user
+     * build with into a new tag schema, streaming through the file rather
+     * than building it up as objects first. Nothing is changed, so it may
+     * be called from any thread, like to read a tags file that has changed
+     * while the application is running.
+     * 
+     * @param filePath File path and name/extension of the JSON file that 
+     * contains the list of tags to be used for editing.
+     * 
+     * @param previousSchema The schema the new one will replace, or null.
+     * 
+     * @return The new schema.
+     * 
+     * @throws IOException Thrown should there be a problem reading from
+     * the JSON file, or should it not be a valid tags file.
+     */
+    public TagSchema readTagSchema(String filePath, TagSchema previousSchema) throws IOException {
+	try (InputStream is = new BufferedInputStream(new FileInputStream(filePath));
+		JsonParser parser = Json.createParser(is)) {
+	    // THE TOP LEVEL OBJECT HAS THE ARRAY OF TAGS
+	    ArrayList<HTMLTagPrototype> prototypes = new ArrayList();
+	    expectEvent(parser, Event.START_OBJECT);
+	    Event event = parser.next();
+	    while (event != Event.END_OBJECT) {
+		String key = parser.getString();
+		if (key.equals(JSON_TAGS_ARRAY_NAME)) {
+		    expectEvent(parser, Event.START_ARRAY);
+		    while (parser.next() == Event.START_OBJECT) {
+			prototypes.add(readTagType(parser));
+		    }
+		} else {
+		    skipValue(parser, parser.next());
+		}
+		event = parser.next();
 	    }
-	    
-	    // NOW GIVE THE LOADED TAG TO THE DATA MANAGER
-	    data.addTag(tag);
+	    return new TagSchema(prototypes, previousSchema);
+	} catch (JsonException | IllegalStateException | NoSuchElementException | IllegalArgumentException e) {
+	    throw new IOException("Error loading " + filePath, e);
+	}
+    }
+    
+    // HELPER METHOD FOR READING ONE TYPE OF TAG FROM THE TAGS FILE, ONCE ITS
+    // OBJECT HAS BEEN STARTED
+    private HTMLTagPrototype readTagType(JsonParser parser) throws IOException {
+	String tagName = null;
+	boolean hasClosingTag = true;
+	ArrayList<String> attributeNames = new ArrayList();
+	ArrayList<String> legalParents = new ArrayList();
+	Event event = parser.next();
+	while (event != Event.END_OBJECT) {
+	    String key = parser.getString();
+	    event = parser.next();
+	    if (key.equals(JSON_TAG_NAME)) {
+		tagName = parser.getString();
+	    } else if (key.equals(JSON_TAG_HAS_CLOSING_TAG)) {
+		hasClosingTag = readBoolean(parser, event);
+	    } else if (key.equals(JSON_TAG_ATTRIBUTES)) {
+		readStrings(parser, attributeNames);
+	    } else if (key.equals(JSON_TAG_LEGAL_PARENTS)) {
+		readStrings(parser, legalParents);
+	    } else {
+		skipValue(parser, event);
+	    }
+	    event = parser.next();
+	}
+	if (tagName == null) {
+	    throw new IOException("Tag type without a " + JSON_TAG_NAME);
+	}
+	
+	// ALL THE TAG ATTRIBUTES THAT CAN BE EDITED START OUT EMPTY
+	HTMLTagPrototype tag = new HTMLTagPrototype(tagName, hasClosingTag);
+	for (String attributeName : attributeNames) {
+	    tag.addAttribute(attributeName, DEFAULT_ATTRIBUTE_VALUE);
+	}
+	for (String legalParent : legalParents) {
+	    tag.addLegalParent(legalParent);
+	}
+	return tag;
+    }
+    
+    // HELPER METHOD FOR READING AN ARRAY OF STRINGS, ONCE IT HAS BEEN STARTED
+    private void readStrings(JsonParser parser, ArrayList<String> strings) {
+	while (parser.next() == Event.VALUE_STRING) {
+	    strings.add(parser.getString());
 	}
     }
     
@@ -313,62 +898,28 @@ public class FileManager implements AppFileComponent {
      * to the file to clear.
      */
     public void clearFile(String filePath) throws IOException {
-	PrintWriter out = new PrintWriter(filePath);
-	out.print("");
-	out.close();
+	exportCache.record(filePath, "");
+	backgroundWriter.write(filePath, "", exportErrorReporter(filePath, EXPORT_ERROR_TITLE, EXPORT_ERROR_MESSAGE));
     }
     
-    /**
-     * This function is a helper function to export the data
-     * to index.html
-     * 
-     * @param Node A Node in the html tree
-     * @param pw The PrintWriter to index.html
-     * @param depth The depth of a node in the tree
-     */
-    private void htmlWriter(TreeItem Node, PrintWriter pw, int depth) {
-        // Print the space
-        String tagSpace = "    ";
-        for (int i = 0; i < depth; i++) {
-            pw.print(tagSpace);
-        }
-        
-        // Print the tag and attributes
-        HTMLTagPrototype nodeData = (HTMLTagPrototype)Node.getValue();
-        if(nodeData.getTagName().equals("Text")) {
-            String text = nodeData.getAttribute("text");
-            pw.println(text);
-        }
-        else{
-            pw.print("<" + nodeData.getTagName());
-            Set<String> keys = nodeData.getAttributes().keySet();
-            if(!keys.isEmpty()) {
-                String attributes = "";
-                for(String key : keys) {
-                    String value = nodeData.getAttribute(key);
-                    if(!value.equals("")) {
-                        attributes += " " + key + "=\"" + value + "\"";
-                    }
-                    
-                }
-                pw.print(attributes);
-            }
-            pw.println(">");
-        
-            ObservableList<TreeItem> children = Node.getChildren();
-            for (TreeItem child : children) {
-                // AND NOW MAKE THE RECURSIVE CALL ON THE CHILDREN
-                htmlWriter(child, pw, depth + 1);
-            }
-        
-            // Print the closing tag
-            if (nodeData.hasClosingTag()) {
-                for (int i = 0; i < depth; i++) {
-                    pw.print(tagSpace);
-                }
-                pw.println("</" + nodeData.getTagName() + ">");
-            }
-        }
+    // HELPER METHOD FOR TELLING THE USER ABOUT A FAILED WRITE, WHICH
+    // WE ONLY FIND OUT ABOUT AFTER THE FACT
+    private Runnable errorReporter(PropertyType title, PropertyType message) {
+	return () -> {
+	    PropertiesManager props = PropertiesManager.getPropertiesManager();
+	    AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
+	    dialog.show(props.getProperty(title), props.getProperty(message));
+	};
+    }
+    
+    // HELPER METHOD FOR TELLING THE USER ABOUT A FAILED EXPORT, AFTER
+    // WHICH WE NO LONGER KNOW WHAT THE FILE HAS
+    private Runnable exportErrorReporter(String filePath, PropertyType title, PropertyType message) {
+	Runnable reporter = errorReporter(title, message);
+	return () -> {
+	    exportCache.forget(filePath);
+	    reporter.run();
+	};
     }
 
 }
@@ -0,0 +1,697 @@
+package wpm.file;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import wpm.data.HTMLTagPrototype;
+import wpm.data.PageTree;
+import static wpm.data.HTMLTagPrototype.TAG_TEXT;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class generates the HTML for a page tree incrementally. The page is
+ * written into a reusable character buffer and the exporter remembers
+ * where the HTML of every element ended up, by the element's node, so
+ * after an edit only the elements on the path
+ * from the edited node up to the root have to be regenerated, and each of
+ * those simply copies the HTML of its untouched children straight out of
+ * the previous page. Two buffers take turns holding the previous and the
+ * current page, so exporting creates next to no garbage beyond the String
+ * of the finished page. Parts of a memory-mapped page whose nodes have
+ * never been filled in are exported straight from the mapped bytes.
+ *
+ * Attribute values and text are escaped, such that whatever the user types
+ * shows up on the page as typed.
+ *
+ * A big page that has to be exported from scratch, like right after it has
+ * been loaded, can instead be exported in parallel. Elements with too many
+ * descendants for one thread are split up, their children being exported in
+ * runs of siblings, each into its own buffer, on the common fork/join pool.
+ * The buffers are then copied into the page in document order, giving the
+ * same page the sequential export would. Pages with mapped parts are always
+ * exported sequentially, since the mapped file can only be read by one
+ * thread at a time.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class HTMLExporter {
+    // USED FOR FORMATTING THE PAGE
+    static final String TAG_SPACE = "    ";
+    static final String ATT_TEXT = "text";
+    static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    static final int INITIAL_INDENT_DEPTH = 32;
+
+    // PAGES WITH FEWER NODES THAN THIS ARE NEVER EXPORTED IN PARALLEL
+    static final int PARALLEL_MIN_NODES = 8192;
+
+    // THE FEWEST NODES WORTH EXPORTING AS A PIECE OF THEIR OWN, AND HOW
+    // MANY PIECES EACH THREAD SHOULD GET SO THE WORK EVENS OUT
+    static final int MIN_PIECE_NODES = 1024;
+    static final int PIECES_PER_THREAD = 4;
+    static final int INITIAL_PIECE_BUFFER_SIZE = 16 * 1024;
+
+    // THE KINDS OF PIECES A PAGE IS EXPORTED IN
+    static final int PIECE_START_TAG = 0;
+    static final int PIECE_RUN = 1;
+    static final int PIECE_END_TAG = 2;
+
+    // THE TREE WE ARE CURRENTLY EXPORTING
+    PageTree boundTree;
+
+    // WHERE THE HTML FOR EACH NODE AND ITS CHILDREN WAS IN THE LAST PAGE,
+    // AS AN OFFSET FROM WHERE ITS PARENT'S WAS, AND HOW LONG IT WAS, SO
+    // THAT UNCHANGED PARTS OF THE PAGE CAN SIMPLY BE COPIED. A LENGTH OF
+    // -1 MEANS THE NODE WASN'T IN THE LAST PAGE. THE DIRTY NODES HAVE
+    // CHANGED SINCE, AND THE MAPPED ONES HAD THEIR CHILDREN EXPORTED
+    // STRAIGHT FROM THE MAPPED FILE, SO THOSE CHILDREN WEREN'T NODES YET
+    int[] exportedOffsets;
+    int[] exportedLengths;
+    BitSet dirtyNodes;
+    BitSet mappedNodes;
+
+    // LISTENS FOR ALL CHANGES TO THE TREE, SO WE KNOW WHAT TO REGENERATE
+    PageTree.Listener treeListener;
+
+    // THE PAGE BEING WRITTEN AND THE LAST PAGE WRITTEN, WHICH MAY ONLY
+    // BE COPIED FROM IF THE LAST EXPORT FINISHED
+    char[] page;
+    int pageLength;
+    char[] lastPage;
+    boolean lastPageComplete;
+
+    // THE TEXT OF THE LAST PAGE AND ITS ROOT, WHICH IS GIVEN BACK AS IS
+    // WHEN NOTHING HAS CHANGED SINCE
+    String lastPageText;
+    int lastRoot;
+
+    // SPACES FOR INDENTING, AND THE START AND END TAG TEXT FOR EACH TAG
+    // NAME, SO NONE OF IT HAS TO BE BUILT UP AGAIN
+    char[] indentChars;
+    char[] lineSeparatorChars;
+    HashMap<String, char[]> startTagChars;
+    HashMap<String, char[]> endTagChars;
+
+    // FOR MEASURING HOW FAST WE EXPORT
+    long charactersExported;
+    long nanosExporting;
+
+    // WHETHER BIG PAGES ARE EXPORTED IN PARALLEL, THE NUMBER OF NODES IN
+    // EVERY SUBTREE, AND HOW MANY NODES MAKE A PIECE
+    boolean parallel;
+    int[] subtreeSizes;
+    int pieceNodes;
+
+    // THE EXPORTERS THE PIECES ARE WRITTEN WITH, KEPT WITH THEIR BUFFERS
+    // FOR THE NEXT PARALLEL EXPORT
+    ConcurrentLinkedQueue<HTMLExporter> pieceWriters;
+
+    // A PART OF THE PAGE EXPORTED ON ITS OWN, EITHER THE START OR END TAG
+    // OF AN ELEMENT WHOSE CHILDREN WERE SPLIT UP, OR A RUN OF SIBLINGS
+    private static class Piece {
+	int kind;
+	int firstNode;
+	int lastNode;
+	HTMLExporter writer;
+
+	Piece(int initKind, int initFirstNode, int initLastNode, HTMLExporter initWriter) {
+	    kind = initKind;
+	    firstNode = initFirstNode;
+	    lastNode = initLastNode;
+	    writer = initWriter;
+	}
+    }
+
+    /**
+     * Constructor for initializing the exporter, which starts off
+     * without a tree.
+     */
+    public HTMLExporter() {
+	page = new char[INITIAL_BUFFER_SIZE];
+	lastPage = new char[INITIAL_BUFFER_SIZE];
+	lineSeparatorChars = LINE_SEPARATOR.toCharArray();
+	indentChars = buildIndent(INITIAL_INDENT_DEPTH);
+	startTagChars = new HashMap();
+	endTagChars = new HashMap();
+	parallel = Runtime.getRuntime().availableProcessors() > 1;
+	exportedOffsets = new int[0];
+	exportedLengths = new int[0];
+	dirtyNodes = new BitSet();
+	mappedNodes = new BitSet();
+	subtreeSizes = new int[0];
+	pieceWriters = new ConcurrentLinkedQueue();
+	treeListener = new PageTree.Listener() {
+	    @Override
+	    public void nodeInserted(int node) {
+		// WHEREVER THE ADDED NODE, OR ONE THAT HAD ITS ID, WAS
+		// BEFORE DOESN'T COUNT
+		ensureNodeCapacity(node);
+		exportedLengths[node] = -1;
+		mappedNodes.clear(node);
+		markDirty(boundTree.getParent(node));
+	    }
+
+	    @Override
+	    public void nodeRemoving(int node) {
+		markDirty(boundTree.getParent(node));
+	    }
+
+	    @Override
+	    public void attributeChanged(int node, String attributeName, String attributeValue) {
+		markDirty(node);
+	    }
+
+	    @Override
+	    public void pageReplaced() {
+		invalidate();
+	    }
+
+	    @Override
+	    public void tagsRebound() {
+		invalidate();
+	    }
+	};
+    }
+
+    // HELPER CONSTRUCTOR FOR AN EXPORTER THAT ONLY WRITES PIECES OF A PAGE
+    // FOR ANOTHER ONE, AND SO NEVER COPIES FROM A LAST PAGE. IT RECORDS
+    // WHERE THE NODES WENT IN THE OTHER ONE'S ARRAYS, BUT KEEPS ITS OWN
+    // BIT SETS, SINCE THOSE CAN'T BE CHANGED BY MORE THAN ONE THREAD
+    private HTMLExporter(int bufferSize) {
+	page = new char[bufferSize];
+	dirtyNodes = new BitSet();
+	mappedNodes = new BitSet();
+	lineSeparatorChars = LINE_SEPARATOR.toCharArray();
+	indentChars = buildIndent(INITIAL_INDENT_DEPTH);
+	startTagChars = new HashMap();
+	endTagChars = new HashMap();
+    }
+
+    // HELPER METHOD FOR MARKING A NODE AS NEEDING TO BE REGENERATED,
+    // ALONG WITH ALL OF ITS ANCESTORS, SINCE THEIR HTML CONTAINS THE
+    // NODE'S HTML
+    private void markDirty(int node) {
+	for (int dirtyNode = node; dirtyNode != NO_NODE; dirtyNode = boundTree.getParent(dirtyNode)) {
+	    dirtyNodes.set(dirtyNode);
+	}
+    }
+
+    // HELPER METHOD FOR MAKING SURE THERE'S ROOM TO RECORD WHERE node IS
+    // EXPORTED TO, NEW ROOM MEANING NODES THAT WEREN'T EXPORTED
+    private void ensureNodeCapacity(int node) {
+	int oldLength = exportedLengths.length;
+	if (node >= oldLength) {
+	    int newLength = Math.max(node + 1, oldLength * 2);
+	    exportedOffsets = Arrays.copyOf(exportedOffsets, newLength);
+	    exportedLengths = Arrays.copyOf(exportedLengths, newLength);
+	    Arrays.fill(exportedLengths, oldLength, newLength, -1);
+	}
+    }
+
+    /**
+     * This method makes the exporter forget the last page it generated,
+     * such that the next export regenerates every element.
+     */
+    public void invalidate() {
+	lastPageComplete = false;
+    }
+
+    /**
+     * This method stops the exporter from listening to the tree it last
+     * exported, which must be done before an exporter is thrown away while
+     * its tree is still in use. Should it export again, it starts over.
+     */
+    public void unbind() {
+	if (boundTree != null) {
+	    boundTree.removeListener(treeListener);
+	    boundTree = null;
+	}
+	lastPageComplete = false;
+    }
+
+    /**
+     * Mutator method for turning parallel exporting on or off. It starts
+     * out on if there's more than one processor. Either way the exported
+     * page is the same.
+     *
+     * @param initParallel If true, pages of at least PARALLEL_MIN_NODES
+     * nodes that have to be exported from scratch are exported in
+     * parallel. If false, every page is exported on the calling thread.
+     */
+    public void setParallel(boolean initParallel) {
+	parallel = initParallel;
+    }
+
+    /**
+     * Accessor method for testing whether or not big pages are exported
+     * in parallel.
+     *
+     * @return true if they are, false otherwise.
+     */
+    public boolean isParallel() {
+	return parallel;
+    }
+
+    /**
+     * This method generates the full HTML page for the tree argument,
+     * regenerating only those elements that have changed since the last
+     * export. Should nothing have changed, the very same String as last
+     * time is returned.
+     *
+     * @param tree The page tree to export.
+     *
+     * @return The full text of the HTML page.
+     */
+    public String export(PageTree tree) {
+	long startTime = System.nanoTime();
+	bind(tree);
+	int root = tree.getRoot();
+
+	// AN UNCHANGED ROOT MEANS AN UNCHANGED PAGE, WHICH WOULD ONLY BE
+	// COPIED OVER IN ONE PIECE
+	if (lastPageComplete && (root == lastRoot) && (lastPageText != null)) {
+	    if (!dirtyNodes.get(root) && (exportedLengths[root] == lastPageText.length())) {
+		return lastPageText;
+	    }
+	}
+
+	// THE LAST PAGE BECOMES THE ONE WE COPY FROM
+	char[] swap = lastPage;
+	lastPage = page;
+	page = swap;
+	pageLength = 0;
+	boolean canCopy = lastPageComplete;
+	lastPageComplete = false;
+	if (!canCopy && parallel && (tree.size() >= PARALLEL_MIN_NODES) && (countSubtree(root) >= PARALLEL_MIN_NODES)) {
+	    exportParallel(root, subtreeSizes[root]);
+
+	    // EVERY NODE WAS JUST EXPORTED FROM THE TREE ITSELF
+	    dirtyNodes.clear();
+	    mappedNodes.clear();
+	} else {
+	    exportNode(root, 0, canCopy ? 0 : -1, 0);
+	}
+	lastPageComplete = true;
+	String pageText = new String(page, 0, pageLength);
+	lastPageText = pageText;
+	lastRoot = root;
+
+	charactersExported += pageLength;
+	nanosExporting += System.nanoTime() - startTime;
+	return pageText;
+    }
+
+    /**
+     * Accessor method for getting how fast pages have been exported so far.
+     *
+     * @return The export throughput in millions of characters per second,
+     * which for the usual mostly ASCII page is the same as MB/s.
+     */
+    public double getThroughput() {
+	if (nanosExporting == 0) {
+	    return 0;
+	}
+	return (charactersExported * 1000.0) / nanosExporting;
+    }
+
+    // IF WE'RE GIVEN A NEW TREE WE HAVE TO START LISTENING TO IT
+    // AND MAKE SURE NOTHING IS COPIED FROM THE OLD ONE'S PAGE
+    private void bind(PageTree tree) {
+	if (tree != boundTree) {
+	    if (boundTree != null) {
+		boundTree.removeListener(treeListener);
+	    }
+	    tree.addListener(treeListener);
+	    lastPageComplete = false;
+	    boundTree = tree;
+	}
+    }
+
+    // HELPER METHOD THAT WRITES THE HTML FOR THE SUBTREE AT node, COPYING
+    // IT FROM THE LAST PAGE IF IT HASN'T CHANGED. lastParentStart IS WHERE
+    // THE NODE'S PARENT WAS IN THE LAST PAGE, OR -1 IF IT WASN'T THERE, AND
+    // parentStart IS WHERE ITS PARENT IS IN THIS PAGE
+    private void exportNode(int node, int depth, int lastParentStart, int parentStart) {
+	HTMLTagPrototype nodeData = boundTree.getTag(node);
+	ensureNodeCapacity(node);
+	int start = pageLength;
+	int lastStart = -1;
+	if ((lastParentStart >= 0) && (exportedLengths[node] >= 0)) {
+	    lastStart = lastParentStart + exportedOffsets[node];
+	}
+	if ((lastStart >= 0) && !dirtyNodes.get(node)) {
+	    append(lastPage, lastStart, exportedLengths[node]);
+	} else if (isText(nodeData.getTagName())) {
+	    appendText(nodeData.getAttribute(ATT_TEXT), depth);
+	} else {
+	    appendStartTag(nodeData.getTagName(), depth);
+	    for (int i = 0; i < nodeData.getAttributeCount(); i++) {
+		appendAttribute(nodeData.getAttributeName(i), nodeData.getAttributeValue(i));
+	    }
+	    finishStartTag();
+
+	    // NOW THE CHILDREN, MOST OF WHICH WILL JUST BE COPIED, UNLESS
+	    // THEY HAVE NEVER BEEN LOADED FROM THE MAPPED FILE
+	    if (boundTree.isUnmaterialized(node)) {
+		mappedNodes.set(node);
+		boundTree.getMappedPage().appendChildrenHTML(this, boundTree.getMappedOffset(node), depth + 1);
+	    } else {
+		// CHILDREN FILLED IN FROM THE MAPPED FILE SINCE THE LAST
+		// EXPORT MAY HAVE IDS OF NODES THAT WERE IN IT
+		int lastChildrenStart = mappedNodes.get(node) ? -1 : lastStart;
+		mappedNodes.clear(node);
+		for (int child = boundTree.getFirstChild(node); child != NO_NODE; child = boundTree.getNextSibling(child)) {
+		    exportNode(child, depth + 1, lastChildrenStart, start);
+		}
+	    }
+
+	    // AND THE CLOSING TAG
+	    if (nodeData.hasClosingTag()) {
+		appendEndTag(nodeData.getTagName(), depth);
+	    }
+	}
+	setExported(node, start - parentStart, pageLength - start);
+    }
+
+    // HELPER METHOD FOR RECORDING WHERE A NODE WAS EXPORTED TO
+    private void setExported(int node, int offset, int length) {
+	exportedOffsets[node] = offset;
+	exportedLengths[node] = length;
+	dirtyNodes.clear(node);
+    }
+
+    // HELPER METHOD FOR COUNTING THE NODES IN EVERY SUBTREE, RETURNING -1
+    // IF ANY OF IT IS STILL ONLY IN THE MAPPED FILE. THIS ALSO MAKES ROOM
+    // FOR EVERY NODE, SO THE PIECES CAN BE EXPORTED WITHOUT ANY GROWING
+    private int countSubtree(int node) {
+	if (boundTree.isUnmaterialized(node)) {
+	    return -1;
+	}
+	int count = 1;
+	for (int child = boundTree.getFirstChild(node); child != NO_NODE; child = boundTree.getNextSibling(child)) {
+	    int childCount = countSubtree(child);
+	    if (childCount < 0) {
+		return -1;
+	    }
+	    count += childCount;
+	}
+	if (node >= subtreeSizes.length) {
+	    subtreeSizes = Arrays.copyOf(subtreeSizes, Math.max(node + 1, subtreeSizes.length * 2));
+	}
+	ensureNodeCapacity(node);
+	subtreeSizes[node] = count;
+	return count;
+    }
+
+    // HELPER METHOD FOR EXPORTING THE WHOLE PAGE IN PIECES ON THE COMMON
+    // FORK/JOIN POOL AND THEN COPYING THEM INTO THE PAGE IN ORDER. THE
+    // ELEMENTS IN A RUN KNOW WHERE THEY ARE IN THEIR PIECE, AND THE SPLIT
+    // UP ELEMENTS DON'T KNOW WHERE THEY ARE AT ALL, SO THAT IS FIXED UP
+    // AS THE PIECES ARE COPIED
+    private void exportParallel(int root, int nodeCount) {
+	int threads = ForkJoinPool.getCommonPoolParallelism() + 1;
+	pieceNodes = Math.max(MIN_PIECE_NODES, nodeCount / (threads * PIECES_PER_THREAD));
+	ArrayList<Piece> pieces = new SplitTask(root, 0).invoke();
+
+	// WHERE EACH OF THE SPLIT UP ELEMENTS WE'RE INSIDE OF STARTS
+	int[] openStarts = new int[pieces.size()];
+	int openCount = 0;
+	for (Piece piece : pieces) {
+	    int pieceStart = pageLength;
+	    if (piece.writer != null) {
+		append(piece.writer.page, 0, piece.writer.pageLength);
+		releaseWriter(piece.writer);
+	    }
+	    if (piece.kind == PIECE_START_TAG) {
+		openStarts[openCount++] = pieceStart;
+	    } else if (piece.kind == PIECE_RUN) {
+		int shift = pieceStart - openStarts[openCount - 1];
+		for (int node = piece.firstNode; ; node = boundTree.getNextSibling(node)) {
+		    exportedOffsets[node] += shift;
+		    if (node == piece.lastNode) {
+			break;
+		    }
+		}
+	    } else {
+		int start = openStarts[--openCount];
+		int parentStart = (openCount > 0) ? openStarts[openCount - 1] : 0;
+		setExported(piece.firstNode, start - parentStart, pageLength - start);
+	    }
+	}
+    }
+
+    // HELPER METHOD FOR GETTING AN EXPORTER TO WRITE A PIECE WITH, WHICH
+    // MAY BE CALLED FROM ANY THREAD
+    private HTMLExporter acquireWriter() {
+	HTMLExporter writer = pieceWriters.poll();
+	if (writer == null) {
+	    writer = new HTMLExporter(INITIAL_PIECE_BUFFER_SIZE);
+	}
+	writer.boundTree = boundTree;
+	writer.exportedOffsets = exportedOffsets;
+	writer.exportedLengths = exportedLengths;
+	return writer;
+    }
+
+    // HELPER METHOD FOR PUTTING AN EXPORTER BACK ONCE ITS PIECE IS COPIED
+    private void releaseWriter(HTMLExporter writer) {
+	writer.pageLength = 0;
+	writer.boundTree = null;
+	writer.exportedOffsets = null;
+	writer.exportedLengths = null;
+	writer.dirtyNodes.clear();
+	writer.mappedNodes.clear();
+	pieceWriters.add(writer);
+    }
+
+    // EXPORTS AN ELEMENT WITH TOO MANY DESCENDANTS FOR ONE PIECE, ITS TAGS
+    // GO IN PIECES OF THEIR OWN AND ITS CHILDREN ARE GROUPED INTO RUNS OF
+    // SMALL SIBLINGS AND CHILDREN TO SPLIT UP AGAIN, ALL DONE IN PARALLEL
+    private class SplitTask extends RecursiveTask<ArrayList<Piece>> {
+	int node;
+	int depth;
+
+	SplitTask(int initNode, int initDepth) {
+	    node = initNode;
+	    depth = initDepth;
+	}
+
+	@Override
+	protected ArrayList<Piece> compute() {
+	    HTMLTagPrototype nodeData = boundTree.getTag(node);
+	    HTMLExporter startTagWriter = acquireWriter();
+	    startTagWriter.appendStartTag(nodeData.getTagName(), depth);
+	    for (int i = 0; i < nodeData.getAttributeCount(); i++) {
+		startTagWriter.appendAttribute(nodeData.getAttributeName(i), nodeData.getAttributeValue(i));
+	    }
+	    startTagWriter.finishStartTag();
+
+	    // GROUP THE CHILDREN, KEEPING THEM IN DOCUMENT ORDER
+	    ArrayList<RecursiveTask<ArrayList<Piece>>> childTasks = new ArrayList();
+	    int runFirst = NO_NODE;
+	    int runLast = NO_NODE;
+	    int runNodes = 0;
+	    for (int child = boundTree.getFirstChild(node); child != NO_NODE; child = boundTree.getNextSibling(child)) {
+		if (subtreeSizes[child] > pieceNodes) {
+		    if (runFirst != NO_NODE) {
+			childTasks.add(new RunTask(runFirst, runLast, depth + 1));
+			runFirst = NO_NODE;
+			runNodes = 0;
+		    }
+		    childTasks.add(new SplitTask(child, depth + 1));
+		} else {
+		    if (runFirst == NO_NODE) {
+			runFirst = child;
+		    }
+		    runLast = child;
+		    runNodes += subtreeSizes[child];
+		    if (runNodes >= pieceNodes) {
+			childTasks.add(new RunTask(runFirst, runLast, depth + 1));
+			runFirst = NO_NODE;
+			runNodes = 0;
+		    }
+		}
+	    }
+	    if (runFirst != NO_NODE) {
+		childTasks.add(new RunTask(runFirst, runLast, depth + 1));
+	    }
+	    invokeAll(childTasks);
+
+	    // AND PUT ALL THE PIECES TOGETHER
+	    ArrayList<Piece> pieces = new ArrayList();
+	    pieces.add(new Piece(PIECE_START_TAG, node, node, startTagWriter));
+	    for (RecursiveTask<ArrayList<Piece>> childTask : childTasks) {
+		pieces.addAll(childTask.join());
+	    }
+	    HTMLExporter endTagWriter = null;
+	    if (nodeData.hasClosingTag()) {
+		endTagWriter = acquireWriter();
+		endTagWriter.appendEndTag(nodeData.getTagName(), depth);
+	    }
+	    pieces.add(new Piece(PIECE_END_TAG, node, node, endTagWriter));
+	    return pieces;
+	}
+    }
+
+    // EXPORTS A RUN OF SIBLINGS INTO ONE PIECE, EACH OF THEM SEQUENTIALLY
+    private class RunTask extends RecursiveTask<ArrayList<Piece>> {
+	int firstNode;
+	int lastNode;
+	int depth;
+
+	RunTask(int initFirstNode, int initLastNode, int initDepth) {
+	    firstNode = initFirstNode;
+	    lastNode = initLastNode;
+	    depth = initDepth;
+	}
+
+	@Override
+	protected ArrayList<Piece> compute() {
+	    HTMLExporter runWriter = acquireWriter();
+	    for (int node = firstNode; ; node = boundTree.getNextSibling(node)) {
+		runWriter.exportNode(node, depth, -1, 0);
+		if (node == lastNode) {
+		    break;
+		}
+	    }
+	    ArrayList<Piece> pieces = new ArrayList();
+	    pieces.add(new Piece(PIECE_RUN, firstNode, lastNode, runWriter));
+	    return pieces;
+	}
+    }
+
+    // THE TEXT OF A TEXT NODE IS EXPORTED ON ITS OWN, WITHOUT ANY TAGS
+    boolean isText(String tagName) {
+	return tagName.equals(TAG_TEXT);
+    }
+
+    // HELPER METHOD FOR EXPORTING THE TEXT OF A TEXT NODE ON ITS OWN LINE
+    void appendText(String text, int depth) {
+	appendIndent(depth);
+	if (text != null) {
+	    appendEscaped(text, false);
+	}
+	append(lineSeparatorChars, 0, lineSeparatorChars.length);
+    }
+
+    // HELPER METHOD FOR STARTING AN ELEMENT'S START TAG, AFTER WHICH ITS
+    // ATTRIBUTES ARE APPENDED AND THE TAG FINISHED
+    void appendStartTag(String tagName, int depth) {
+	char[] startTag = startTagChars.get(tagName);
+	if (startTag == null) {
+	    startTag = ("<" + tagName).toCharArray();
+	    startTagChars.put(tagName, startTag);
+	}
+	appendIndent(depth);
+	append(startTag, 0, startTag.length);
+    }
+
+    // EMPTY ATTRIBUTES ARE LEFT OUT
+    void appendAttribute(String name, String value) {
+	if (value != null && !value.isEmpty()) {
+	    ensureCapacity(name.length() + 3);
+	    page[pageLength++] = ' ';
+	    name.getChars(0, name.length(), page, pageLength);
+	    pageLength += name.length();
+	    page[pageLength++] = '=';
+	    page[pageLength++] = '"';
+	    appendEscaped(value, true);
+	    ensureCapacity(1);
+	    page[pageLength++] = '"';
+	}
+    }
+
+    void finishStartTag() {
+	ensureCapacity(1);
+	page[pageLength++] = '>';
+	append(lineSeparatorChars, 0, lineSeparatorChars.length);
+    }
+
+    // HELPER METHOD FOR EXPORTING AN ELEMENT'S CLOSING TAG
+    void appendEndTag(String tagName, int depth) {
+	char[] endTag = endTagChars.get(tagName);
+	if (endTag == null) {
+	    endTag = ("</" + tagName + ">" + LINE_SEPARATOR).toCharArray();
+	    endTagChars.put(tagName, endTag);
+	}
+	appendIndent(depth);
+	append(endTag, 0, endTag.length);
+    }
+
+    // HELPER METHOD FOR INDENTING A LINE
+    private void appendIndent(int depth) {
+	int length = depth * TAG_SPACE.length();
+	if (length > indentChars.length) {
+	    indentChars = buildIndent(depth * 2);
+	}
+	append(indentChars, 0, length);
+    }
+
+    // HELPER METHOD FOR MAKING THE SPACES FOR INDENTING UP TO depth LEVELS
+    private char[] buildIndent(int depth) {
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < depth; i++) {
+	    sb.append(TAG_SPACE);
+	}
+	return sb.toString().toCharArray();
+    }
+
+    // HELPER METHOD FOR APPENDING TEXT WITH THE CHARACTERS THAT MEAN
+    // SOMETHING IN HTML ESCAPED, INCLUDING QUOTES INSIDE ATTRIBUTES.
+    // RUNS OF ORDINARY CHARACTERS ARE COPIED IN ONE GO
+    private void appendEscaped(String text, boolean inAttribute) {
+	int runStart = 0;
+	for (int i = 0; i < text.length(); i++) {
+	    String entity;
+	    switch (text.charAt(i)) {
+		case '&':
+		    entity = "&amp;";
+		    break;
+		case '<':
+		    entity = "&lt;";
+		    break;
+		case '>':
+		    entity = "&gt;";
+		    break;
+		case '"':
+		    entity = inAttribute ? "&quot;" : null;
+		    break;
+		default:
+		    entity = null;
+	    }
+	    if (entity != null) {
+		appendChars(text, runStart, i);
+		appendChars(entity, 0, entity.length());
+		runStart = i + 1;
+	    }
+	}
+	appendChars(text, runStart, text.length());
+    }
+
+    private void appendChars(String text, int start, int end) {
+	ensureCapacity(end - start);
+	text.getChars(start, end, page, pageLength);
+	pageLength += end - start;
+    }
+
+    private void append(char[] chars, int start, int length) {
+	ensureCapacity(length);
+	System.arraycopy(chars, start, page, pageLength, length);
+	pageLength += length;
+    }
+
+    // HELPER METHOD FOR GROWING THE PAGE BUFFER, WHICH IS KEPT FOR THE
+    // NEXT EXPORT, SO THIS ONLY HAPPENS UNTIL IT'S BIG ENOUGH
+    private void ensureCapacity(int extra) {
+	if (pageLength + extra > page.length) {
+	    char[] biggerPage = new char[Math.max(page.length * 2, pageLength + extra)];
+	    System.arraycopy(page, 0, biggerPage, 0, pageLength);
+	    page = biggerPage;
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,374 @@
+package wpm.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import wpm.data.DataManager;
+import wpm.data.HTMLTagPrototype;
+import wpm.data.PageSnapshot;
+import wpm.data.PageTree;
+import wpm.data.TagSchema;
+
+/**
+ * This class provides access to a page saved in the binary format without
+ * reading all of it. The file is memory-mapped and tree nodes are only
+ * made for the parts of the page that are actually looked at, the page
+ * tree asks for a node's children the first time somebody walks them, so
+ * opening a huge page costs next to nothing and memory is only used in
+ * proportion to how much of the tree is expanded. The parts of the page
+ * that are never looked at are exported and saved straight from the
+ * mapped bytes.
+ *
+ * Note that, like the tree itself, this must only be used by one thread
+ * at a time.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class MappedPage {
+    // THE WHOLE FILE, AND THE READER WE USE TO DECODE IT
+    ByteBuffer bytes;
+    BinaryPageFormat reader;
+
+    // THE PROTOTYPE FOR EACH TAG TYPE IN THE FILE, THE NODES WE MAKE ARE
+    // CLONED FROM THESE. THE ATTRIBUTES OF TYPES WE DON'T KNOW FROM THE
+    // TAGS FILE ARE TAKEN FROM THE FIRST NODE OF THAT TYPE WE MAKE
+    HTMLTagPrototype[] typePrototypes;
+    boolean[] typeAttributesKnown;
+
+    // WHERE THE ROOT NODE STARTS
+    int rootOffset;
+
+    // THE CSS, WHICH IS READ RIGHT AWAY SINCE IT'S NEEDED RIGHT AWAY
+    String cssText;
+
+    // THIS IS ONLY MADE THROUGH open
+    private MappedPage(ByteBuffer initBytes) {
+	bytes = initBytes;
+	reader = new BinaryPageFormat(bytes);
+    }
+
+    /**
+     * This method opens the page saved in the binary format in the file
+     * at source. Only the string table and the tag types are read now,
+     * the nodes are read as they are needed.
+     *
+     * @param source The path of the file to open.
+     *
+     * @param dataManager The data manager with the tag prototypes, nodes
+     * of the types it knows share their legal parents.
+     *
+     * @return The opened page, or null if the file was saved in an older
+     * version of the format that can't be read lazily.
+     *
+     * @throws IOException Thrown should there be an error reading the file
+     * or should it not be a valid binary page.
+     */
+    public static MappedPage open(Path source, DataManager dataManager) throws IOException {
+	ByteBuffer bytes;
+	try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+	    bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+	MappedPage page = new MappedPage(bytes);
+	try {
+	    page.reader.readHeader(source);
+	    if (!page.reader.hasDescendantLengths()) {
+		return null;
+	    }
+	    page.reader.readTables();
+	    page.makePrototypes(dataManager);
+	    if (page.reader.readVarint() == 0) {
+		throw new IOException(source + " contains no tag tree");
+	    }
+	    page.rootOffset = bytes.position();
+
+	    // THE CSS COMES RIGHT AFTER THE ROOT'S SUBTREE
+	    bytes.position(page.skipNode(page.rootOffset));
+	    page.cssText = page.reader.readString();
+	} catch (IllegalArgumentException iae) {
+	    throw new IOException(source + " is not a valid binary page", iae);
+	}
+	return page;
+    }
+
+    // HELPER METHOD FOR MAKING THE PROTOTYPE FOR EACH TAG TYPE
+    private void makePrototypes(DataManager dataManager) {
+	typePrototypes = new HTMLTagPrototype[reader.typeNames.length];
+	typeAttributesKnown = new boolean[typePrototypes.length];
+	for (int i = 0; i < typePrototypes.length; i++) {
+	    HTMLTagPrototype prototype = dataManager.getTag(reader.typeNames[i]);
+	    typeAttributesKnown[i] = (prototype != null);
+	    if (prototype == null) {
+		prototype = new HTMLTagPrototype(reader.typeNames[i], reader.typeClosingTags[i]);
+		for (String legalParent : reader.typeLegalParents[i]) {
+		    prototype.addLegalParent(legalParent);
+		}
+	    }
+	    typePrototypes[i] = prototype;
+	}
+    }
+
+    /**
+     * This method makes the nodes that are still to be filled in from the
+     * file use the prototypes of a new tag schema, for the types whose
+     * prototypes came from the old one.
+     *
+     * @param oldSchema The schema the page was opened with.
+     *
+     * @param newSchema The schema replacing it.
+     */
+    public void rebindTypes(TagSchema oldSchema, TagSchema newSchema) {
+	for (int i = 0; i < typePrototypes.length; i++) {
+	    HTMLTagPrototype newPrototype = newSchema.getPrototype(reader.typeNames[i]);
+	    if ((newPrototype != null) && (typePrototypes[i] == oldSchema.getPrototype(reader.typeNames[i]))) {
+		typePrototypes[i] = newPrototype;
+	    }
+	}
+    }
+
+    /**
+     * Accessor method for getting the CSS saved with the page.
+     *
+     * @return The contents of the CSS file for the page.
+     */
+    public String getCSSText() {
+	return cssText;
+    }
+
+    /**
+     * This method adds the node for the root of the page to the tree
+     * argument, none of whose children are made yet.
+     *
+     * @param tree The empty tree to add the root to.
+     *
+     * @return The root of the page's tree.
+     *
+     * @throws IOException Thrown should the file be damaged.
+     */
+    public int createRoot(PageTree tree) throws IOException {
+	return createNode(tree, PageTree.NO_NODE, rootOffset);
+    }
+
+    /**
+     * This method adds the nodes for the children of the node argument,
+     * which is how the tree fills in a node's children the first time
+     * they are needed. None of the children's children are made yet.
+     *
+     * @param tree The tree to add the children to.
+     *
+     * @param parent The node whose children to make.
+     *
+     * @param offset Where in the file the parent's record starts.
+     */
+    public void createChildren(PageTree tree, int parent, int offset) {
+	try {
+	    int childCount = readNode(offset);
+	    reader.readDescendantLength();
+	    int childOffset = bytes.position();
+	    for (int i = 0; i < childCount; i++) {
+		createNode(tree, parent, childOffset);
+		childOffset = skipNode(childOffset);
+	    }
+	} catch (IOException | IllegalArgumentException e) {
+	    // THE FILE WAS CHECKED WHEN IT WAS OPENED, SO THIS MEANS IT
+	    // HAS BEEN CHANGED OR DAMAGED SINCE
+	    throw new IllegalStateException("The mapped page can no longer be read", e);
+	}
+    }
+
+    /**
+     * This method copies the subtree of the node at offset straight from
+     * the mapped bytes, which is how unexpanded parts of the page get
+     * saved.
+     *
+     * @param offset Where in the file the record of the node whose
+     * subtree to copy starts. Note that the node itself is included,
+     * though its current tag may have been edited since, so the caller
+     * should take the node's own data from the tree.
+     *
+     * @return A copy of the subtree, with the node at index 0.
+     */
+    public PageSnapshot copySubtree(int offset) {
+	try {
+	    // FIRST COUNT THE NODES
+	    int size = countNodes(offset);
+	    String[] tagNames = new String[size];
+	    boolean[] closingTags = new boolean[size];
+	    String[][] attributeNames = new String[size][];
+	    String[][] attributeValues = new String[size][];
+	    List<String>[] legalParents = new List[size];
+	    int[] parentIndices = new int[size];
+	    int[] childCounts = new int[size];
+
+	    // THEN COPY THEM IN PRE-ORDER, KEEPING A STACK OF THE ANCESTORS
+	    // STILL WAITING FOR CHILDREN
+	    int[] openNodes = new int[size];
+	    int[] childrenLeft = new int[size];
+	    int openCount = 0;
+	    bytes.position(offset);
+	    for (int i = 0; i < size; i++) {
+		int typeId = reader.readTypeId();
+		tagNames[i] = reader.typeNames[typeId];
+		closingTags[i] = reader.typeClosingTags[typeId];
+		legalParents[i] = reader.typeLegalParents[typeId];
+		int attributeCount = reader.readVarint();
+		attributeNames[i] = new String[attributeCount];
+		attributeValues[i] = new String[attributeCount];
+		for (int j = 0; j < attributeCount; j++) {
+		    attributeNames[i][j] = reader.readStringId();
+		    attributeValues[i][j] = reader.readString();
+		}
+		childCounts[i] = reader.readVarint();
+		reader.readDescendantLength();
+		while ((openCount > 0) && (childrenLeft[openCount - 1] == 0)) {
+		    openCount--;
+		}
+		if (openCount > 0) {
+		    parentIndices[i] = openNodes[openCount - 1];
+		    childrenLeft[openCount - 1]--;
+		} else {
+		    parentIndices[i] = -1;
+		}
+		openNodes[openCount] = i;
+		childrenLeft[openCount] = childCounts[i];
+		openCount++;
+	    }
+	    return new PageSnapshot(tagNames, closingTags, attributeNames, attributeValues,
+		    legalParents, parentIndices, childCounts, null);
+	} catch (IOException | IllegalArgumentException e) {
+	    throw new IllegalStateException("The mapped page can no longer be read", e);
+	}
+    }
+
+    /**
+     * This method exports the HTML for the descendants of the node at
+     * offset straight from the mapped bytes, without making any nodes.
+     *
+     * @param exporter The exporter the HTML is written to.
+     *
+     * @param offset Where in the file the record of the node whose
+     * descendants to export starts.
+     *
+     * @param depth The depth of the node's children in the tree.
+     */
+    void appendChildrenHTML(HTMLExporter exporter, int offset, int depth) {
+	try {
+	    int childCount = readNode(offset);
+	    reader.readDescendantLength();
+	    int childOffset = bytes.position();
+	    for (int i = 0; i < childCount; i++) {
+		childOffset = appendNodeHTML(exporter, childOffset, depth);
+	    }
+	} catch (IOException | IllegalArgumentException e) {
+	    throw new IllegalStateException("The mapped page can no longer be read", e);
+	}
+    }
+
+    // HELPER METHOD FOR EXPORTING THE NODE AT offset AND ITS DESCENDANTS,
+    // RETURNING WHERE THE NEXT NODE STARTS
+    private int appendNodeHTML(HTMLExporter exporter, int offset, int depth) throws IOException {
+	bytes.position(offset);
+	int typeId = reader.readTypeId();
+	String tagName = reader.typeNames[typeId];
+	boolean isText = exporter.isText(tagName);
+	int attributeCount = reader.readVarint();
+	if (isText) {
+	    String text = null;
+	    for (int i = 0; i < attributeCount; i++) {
+		if (reader.readStringId().equals(HTMLExporter.ATT_TEXT)) {
+		    text = reader.readString();
+		} else {
+		    reader.skipString();
+		}
+	    }
+	    exporter.appendText(text, depth);
+	} else {
+	    exporter.appendStartTag(tagName, depth);
+	    for (int i = 0; i < attributeCount; i++) {
+		String name = reader.readStringId();
+		exporter.appendAttribute(name, reader.readString());
+	    }
+	    exporter.finishStartTag();
+	}
+	int childCount = reader.readVarint();
+	int descendantLength = reader.readDescendantLength();
+	int childOffset = bytes.position();
+	int nextOffset = childOffset + descendantLength;
+	if (!isText) {
+	    for (int i = 0; i < childCount; i++) {
+		childOffset = appendNodeHTML(exporter, childOffset, depth + 1);
+	    }
+	    if (reader.typeClosingTags[typeId]) {
+		exporter.appendEndTag(tagName, depth);
+	    }
+	}
+	return nextOffset;
+    }
+
+    // HELPER METHOD FOR ADDING THE NODE FOR THE RECORD AT offset TO THE
+    // CHILDREN OF parent
+    private int createNode(PageTree tree, int parent, int offset) throws IOException {
+	bytes.position(offset);
+	int typeId = reader.readTypeId();
+	int attributeCount = reader.readVarint();
+	String[] names = new String[attributeCount];
+	String[] values = new String[attributeCount];
+	for (int i = 0; i < attributeCount; i++) {
+	    names[i] = reader.readStringId();
+	    values[i] = reader.readString();
+	}
+	int childCount = reader.readVarint();
+
+	// SO THAT ALL NODES OF THIS TYPE SHARE ONE ATTRIBUTE SCHEMA
+	HTMLTagPrototype prototype = typePrototypes[typeId];
+	if (!typeAttributesKnown[typeId]) {
+	    for (String name : names) {
+		prototype.addAttribute(name, "");
+	    }
+	    typeAttributesKnown[typeId] = true;
+	}
+	HTMLTagPrototype tag = prototype.clone();
+	for (int i = 0; i < attributeCount; i++) {
+	    tag.addAttribute(names[i], values[i]);
+	}
+	return tree.appendMappedNode(parent, tag, offset, childCount);
+    }
+
+    // HELPER METHOD FOR READING THE RECORD AT offset UP TO ITS CHILD
+    // COUNT, WHICH IS RETURNED, SKIPPING OVER ITS ATTRIBUTES
+    private int readNode(int offset) throws IOException {
+	bytes.position(offset);
+	reader.readTypeId();
+	int attributeCount = reader.readVarint();
+	for (int i = 0; i < attributeCount; i++) {
+	    reader.readStringId();
+	    reader.skipString();
+	}
+	return reader.readVarint();
+    }
+
+    // HELPER METHOD FOR FINDING WHERE THE NODE AFTER THE SUBTREE AT
+    // offset STARTS
+    private int skipNode(int offset) throws IOException {
+	readNode(offset);
+	int descendantLength = reader.readDescendantLength();
+	return bytes.position() + descendantLength;
+    }
+
+    // HELPER METHOD FOR COUNTING THE NODES IN THE SUBTREE AT offset,
+    // WHICH ARE ALL ONE AFTER THE OTHER
+    private int countNodes(int offset) throws IOException {
+	int end = skipNode(offset);
+	int count = 0;
+	bytes.position(offset);
+	while (bytes.position() < end) {
+	    readNode(bytes.position());
+	    reader.readDescendantLength();
+	    count++;
+	}
+	return count;
+    }
+}
\ No newline at end of file
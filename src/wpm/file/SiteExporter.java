@@ -0,0 +1,360 @@
+package wpm.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import wpm.data.SiteModel;
+import wpm.data.SitePage;
+
+/**
+ * This class exports a whole site to a directory, its pages in parallel.
+ * Only the pages and stylesheets that have changed since this exporter
+ * last exported them are generated again, and of those only the ones whose
+ * content actually differs from what is already in the directory are
+ * written, so files that haven't changed keep their modification times.
+ * This is worked out from a manifest kept in the directory, which has the
+ * SHA-256 hash of every file exported, in the format sha256sum uses, such
+ * that the site can also be checked with sha256sum -c. Since the manifest
+ * is read the first time a site is exported, a new exporter skips writing
+ * the files that didn't change since the last run too. Files of pages that
+ * are no longer in the site are deleted.
+ *
+ * Each page keeps its own HTML exporter, so a page that changed a little
+ * is regenerated the way the page being edited is. Note that the site must
+ * not be changed while it is being exported.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class SiteExporter {
+    /**
+     * The name of the manifest file in the site directory.
+     */
+    public static final String MANIFEST_FILE = "manifest.sha256";
+
+    static final String HASH_ALGORITHM = "SHA-256";
+    static final String MANIFEST_SEPARATOR = "  ";
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+    static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // WHAT HAPPENED TO ONE FILE OF THE SITE
+    private static class FileResult {
+	String path;
+	String hash;
+	boolean written;
+	IOException error;
+    }
+
+    // WHERE THE SITE GOES AND THE THREADS IT'S EXPORTED ON
+    Path siteDir;
+    ForkJoinPool pool;
+
+    // THE HASH OF EVERY FILE IN THE SITE, BY ITS PATH IN THE SITE, KEPT
+    // SORTED SO THE MANIFEST IS ALWAYS WRITTEN IN THE SAME ORDER
+    TreeMap<String, String> manifest;
+    boolean manifestLoaded;
+
+    // EVERY PAGE'S EXPORTER AND THE REVISION IT LAST EXPORTED, AND THE
+    // REVISION OF THE SHARED CSS LAST EXPORTED
+    HashMap<SitePage, HTMLExporter> pageExporters;
+    HashMap<SitePage, Long> exportedRevisions;
+    long exportedSharedCSSRevision;
+
+    // WHAT THE LAST EXPORT DID
+    int filesWritten;
+    int filesUnchanged;
+
+    /**
+     * Constructor for an exporter that exports to the siteDir argument on
+     * the common fork/join pool.
+     *
+     * @param initSiteDir The directory to export the site to, which is
+     * created if it doesn't exist.
+     */
+    public SiteExporter(Path initSiteDir) {
+	this(initSiteDir, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for an exporter that exports to the siteDir argument on
+     * the pool argument's threads.
+     *
+     * @param initSiteDir The directory to export the site to, which is
+     * created if it doesn't exist.
+     *
+     * @param initPool The pool to export the pages on.
+     */
+    public SiteExporter(Path initSiteDir, ForkJoinPool initPool) {
+	siteDir = initSiteDir;
+	pool = initPool;
+	manifest = new TreeMap();
+	pageExporters = new HashMap();
+	exportedRevisions = new HashMap();
+	exportedSharedCSSRevision = -1;
+    }
+
+    /**
+     * This method exports the site argument, generating only what has
+     * changed since the last time and writing only the files whose
+     * content differs from the manifest's. Should some files not be
+     * written, the rest still are, and those are tried again the next
+     * time.
+     *
+     * @param site The site to export.
+     *
+     * @throws IOException Thrown should any file of the site, or the
+     * manifest, not be written.
+     */
+    public void exportSite(SiteModel site) throws IOException {
+	if (!manifestLoaded) {
+	    loadManifest();
+	    manifestLoaded = true;
+	}
+	filesWritten = 0;
+	filesUnchanged = 0;
+
+	// EVERY FILE THE SITE HAS NOW, ANY OTHERS IN THE MANIFEST ARE OLD
+	HashSet<String> sitePaths = new HashSet();
+	sitePaths.add(SiteModel.SHARED_CSS_PATH);
+
+	// START ON ALL THAT HAS CHANGED, THE TEXT OF THE CSS IS TAKEN NOW
+	// SINCE THE SITE'S BUFFERS AREN'T SHARED WITH THE POOL
+	ArrayList<ForkJoinTask<FileResult>> tasks = new ArrayList();
+	ArrayList<SitePage> exportedPages = new ArrayList();
+	long sharedCSSRevision = site.getSharedCSSRevision();
+	if (sharedCSSRevision != exportedSharedCSSRevision) {
+	    tasks.add(submitFile(SiteModel.SHARED_CSS_PATH, site.getSharedCSSText()));
+	}
+	HashSet<SitePage> pages = new HashSet();
+	for (SitePage page : site.getPages()) {
+	    pages.add(page);
+	    sitePaths.add(page.getPagePath());
+	    if (page.hasOwnCSS()) {
+		sitePaths.add(page.getCSSPath());
+	    }
+	    Long exportedRevision = exportedRevisions.get(page);
+	    if ((exportedRevision != null) && (exportedRevision == page.getRevision())) {
+		continue;
+	    }
+	    HTMLExporter pageExporter = pageExporters.get(page);
+	    if (pageExporter == null) {
+		pageExporter = new HTMLExporter();
+		pageExporters.put(page, pageExporter);
+	    }
+	    HTMLExporter exporter = pageExporter;
+	    tasks.add(pool.submit(() -> {
+		return writeFile(page.getPagePath(), exporter.export(page.getPageTree()));
+	    }));
+	    if (page.hasOwnCSS()) {
+		tasks.add(submitFile(page.getCSSPath(), page.getCSSText()));
+	    }
+	    exportedPages.add(page);
+	}
+
+	// PAGES THAT ARE GONE DON'T NEED THEIR EXPORTERS ANYMORE, WHICH MUST
+	// STOP LISTENING TO THE PAGE'S TREE, OR THEY'D LIVE AS LONG AS IT
+	Iterator<Map.Entry<SitePage, HTMLExporter>> exporters = pageExporters.entrySet().iterator();
+	while (exporters.hasNext()) {
+	    Map.Entry<SitePage, HTMLExporter> exporter = exporters.next();
+	    if (!pages.contains(exporter.getKey())) {
+		exporter.getValue().unbind();
+		exporters.remove();
+	    }
+	}
+	exportedRevisions.keySet().retainAll(pages);
+
+	// NOW WAIT FOR THEM ALL, A PAGE IS ONLY DONE IF ALL ITS FILES ARE
+	IOException exportError = null;
+	HashSet<String> failedPaths = new HashSet();
+	for (ForkJoinTask<FileResult> task : tasks) {
+	    FileResult result = task.join();
+	    if (result.error != null) {
+		failedPaths.add(result.path);
+		if (exportError == null) {
+		    exportError = result.error;
+		} else {
+		    exportError.addSuppressed(result.error);
+		}
+		continue;
+	    }
+	    if (result.written) {
+		filesWritten++;
+	    } else {
+		filesUnchanged++;
+	    }
+	    manifest.put(result.path, result.hash);
+	}
+	if (!failedPaths.contains(SiteModel.SHARED_CSS_PATH)) {
+	    exportedSharedCSSRevision = sharedCSSRevision;
+	}
+	for (SitePage page : exportedPages) {
+	    if (!failedPaths.contains(page.getPagePath()) && !failedPaths.contains(page.getCSSPath())) {
+		exportedRevisions.put(page, page.getRevision());
+	    }
+	}
+
+	// GET RID OF THE FILES OF PAGES THAT ARE GONE AND SAVE THE MANIFEST
+	Iterator<Map.Entry<String, String>> entries = manifest.entrySet().iterator();
+	while (entries.hasNext()) {
+	    String path = entries.next().getKey();
+	    if (!sitePaths.contains(path)) {
+		Files.deleteIfExists(siteDir.resolve(path));
+		entries.remove();
+	    }
+	}
+	saveManifest();
+	if (exportError != null) {
+	    throw exportError;
+	}
+    }
+
+    /**
+     * Accessor method for getting how many files the last export wrote.
+     *
+     * @return The number of files written.
+     */
+    public int getFilesWritten() {
+	return filesWritten;
+    }
+
+    /**
+     * Accessor method for getting how many files the last export
+     * generated but didn't write, since they hadn't changed. Files of
+     * pages that hadn't changed aren't even generated, so they aren't
+     * counted here.
+     *
+     * @return The number of files left as they were.
+     */
+    public int getFilesUnchanged() {
+	return filesUnchanged;
+    }
+
+    /**
+     * Accessor method for getting the hash of a file in the site as of
+     * the last export.
+     *
+     * @param path The path of the file in the site, like index.html.
+     *
+     * @return The SHA-256 hash of the file in hexadecimal, or null if
+     * the site has no such file.
+     */
+    public String getHash(String path) {
+	return manifest.get(path);
+    }
+
+    // HELPER METHOD FOR WRITING A FILE WHOSE CONTENT IS ALREADY KNOWN
+    // ON THE POOL
+    private ForkJoinTask<FileResult> submitFile(String path, String content) {
+	return pool.submit(() -> {
+	    return writeFile(path, content);
+	});
+    }
+
+    // HELPER METHOD FOR WRITING ONE FILE OF THE SITE, UNLESS IT'S ALREADY
+    // THERE WITH THE SAME CONTENT. NOTE THAT THIS RUNS ON THE POOL, WHERE
+    // THE MANIFEST IS ONLY READ
+    private FileResult writeFile(String path, String content) {
+	FileResult result = new FileResult();
+	result.path = path;
+	try {
+	    byte[] bytes = content.getBytes(Charset.defaultCharset());
+	    result.hash = hash(bytes);
+	    Path target = siteDir.resolve(path);
+	    if (result.hash.equals(manifest.get(path)) && Files.isRegularFile(target)) {
+		return result;
+	    }
+	    Files.createDirectories(target.getParent());
+	    Path tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), TEMP_FILE_SUFFIX);
+	    try {
+		Files.write(tempFile, bytes);
+		moveIntoPlace(tempFile, target);
+	    } finally {
+		Files.deleteIfExists(tempFile);
+	    }
+	    result.written = true;
+	} catch (IOException ioe) {
+	    result.error = ioe;
+	}
+	return result;
+    }
+
+    // HELPER METHOD FOR REPLACING A FILE WITH ITS NEW VERSION IN ONE STEP
+    // WHEREVER THE FILE SYSTEM ALLOWS IT
+    private void moveIntoPlace(Path tempFile, Path target) throws IOException {
+	try {
+	    Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	} catch (AtomicMoveNotSupportedException amnse) {
+	    Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+    }
+
+    // HELPER METHOD FOR HASHING A FILE'S CONTENT
+    private String hash(byte[] bytes) throws IOException {
+	try {
+	    byte[] digest = MessageDigest.getInstance(HASH_ALGORITHM).digest(bytes);
+	    char[] hex = new char[digest.length * 2];
+	    for (int i = 0; i < digest.length; i++) {
+		hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+		hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+	    }
+	    return new String(hex);
+	} catch (NoSuchAlgorithmException nsae) {
+	    throw new IOException(HASH_ALGORITHM + " isn't available", nsae);
+	}
+    }
+
+    // HELPER METHOD FOR READING THE MANIFEST LEFT BY AN EARLIER EXPORT,
+    // IF THERE IS ONE, LINES WE CAN'T MAKE SENSE OF ARE IGNORED
+    private void loadManifest() throws IOException {
+	try (BufferedReader reader = Files.newBufferedReader(siteDir.resolve(MANIFEST_FILE), StandardCharsets.UTF_8)) {
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		int separator = line.indexOf(MANIFEST_SEPARATOR);
+		if (separator > 0) {
+		    manifest.put(line.substring(separator + MANIFEST_SEPARATOR.length()), line.substring(0, separator));
+		}
+	    }
+	} catch (NoSuchFileException nsfe) {
+	    // A NEW SITE
+	}
+    }
+
+    // HELPER METHOD FOR WRITING THE MANIFEST, WHICH LIKE THE SITE'S OTHER
+    // FILES IS ONLY WRITTEN IF IT HAS CHANGED
+    private void saveManifest() throws IOException {
+	StringBuilder content = new StringBuilder();
+	for (Map.Entry<String, String> entry : manifest.entrySet()) {
+	    content.append(entry.getValue()).append(MANIFEST_SEPARATOR).append(entry.getKey()).append('\n');
+	}
+	Path manifestFile = siteDir.resolve(MANIFEST_FILE);
+	byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+	if (Files.isRegularFile(manifestFile) && Arrays.equals(bytes, Files.readAllBytes(manifestFile))) {
+	    return;
+	}
+	Files.createDirectories(siteDir);
+	Path tempFile = Files.createTempFile(siteDir, MANIFEST_FILE, TEMP_FILE_SUFFIX);
+	try {
+	    Files.write(tempFile, bytes);
+	    moveIntoPlace(tempFile, manifestFile);
+	} finally {
+	    Files.deleteIfExists(tempFile);
+	}
+    }
+}
@@ -0,0 +1,155 @@
+package wpm.file;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import wpm.data.DataManager;
+import wpm.data.TagSchema;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * This class watches the tags file and, whenever it changes, loads the new
+ * tags into the data manager while the application keeps running. The file
+ * is read into a new tag schema on the watcher's own thread, and only the
+ * swap itself, which brings the page's elements up to date, is done on the
+ * JavaFX application thread. Should the file be changed several times in
+ * quick succession, like by an editor that writes it in pieces, it's only
+ * read once things have settled down. A file that can't be read leaves the
+ * old schema in place.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class TagSchemaWatcher {
+    // HOW LONG THE FILE MUST GO WITHOUT CHANGING BEFORE WE READ IT
+    static final long SETTLE_MILLIS = 200;
+
+    // WHAT WE READ THE FILE WITH AND WHERE THE SCHEMA GOES
+    FileManager fileManager;
+    DataManager dataManager;
+
+    // THE FILE BEING WATCHED
+    Path tagsFile;
+
+    // WHAT TO DO ON THE JAVAFX APPLICATION THREAD ONCE THE NEW SCHEMA IS
+    // IN PLACE, OR SHOULD THE FILE NOT BE READABLE
+    Runnable reloadedHandler;
+    Consumer<IOException> failureHandler;
+
+    // THE WATCHING ITSELF, null UNTIL STARTED
+    WatchService watchService;
+    Thread watcherThread;
+
+    /**
+     * Constructor for a watcher that hasn't started watching yet.
+     *
+     * @param initFileManager The file manager to read the tags file with.
+     *
+     * @param initDataManager The data manager to give the new schema to.
+     *
+     * @param tagsFilePath The tags file to watch.
+     *
+     * @param initReloadedHandler Run on the JavaFX application thread after
+     * each new schema has been put in place.
+     *
+     * @param initFailureHandler Given the error on the JavaFX application
+     * thread should the changed file not be readable.
+     */
+    public TagSchemaWatcher(FileManager initFileManager, DataManager initDataManager, String tagsFilePath,
+	    Runnable initReloadedHandler, Consumer<IOException> initFailureHandler) {
+	fileManager = initFileManager;
+	dataManager = initDataManager;
+	tagsFile = Paths.get(tagsFilePath).toAbsolutePath();
+	reloadedHandler = initReloadedHandler;
+	failureHandler = initFailureHandler;
+    }
+
+    /**
+     * This method starts watching the tags file on a daemon thread.
+     *
+     * @throws IOException Thrown should the file's directory not be
+     * watchable.
+     */
+    public void start() throws IOException {
+	watchService = FileSystems.getDefault().newWatchService();
+	tagsFile.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+	watcherThread = new Thread(this::watch, "wpm-tags-watcher");
+	watcherThread.setDaemon(true);
+	watcherThread.start();
+    }
+
+    /**
+     * This method stops watching the tags file, after which no more
+     * schemas will be loaded.
+     */
+    public void stop() {
+	if (watchService != null) {
+	    try {
+		watchService.close();
+	    } catch (IOException ioe) {
+		// THE THREAD IS A DAEMON, SO IT WON'T KEEP US RUNNING ANYWAY
+	    }
+	}
+    }
+
+    // HELPER METHOD RUN ON THE WATCHER THREAD UNTIL WE'RE STOPPED
+    private void watch() {
+	try {
+	    while (true) {
+		if (!isTagsFileChanged(watchService.take())) {
+		    continue;
+		}
+
+		// WAIT FOR THE WRITING TO FINISH
+		WatchKey key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+		while (key != null) {
+		    isTagsFileChanged(key);
+		    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		reload();
+	    }
+	} catch (ClosedWatchServiceException | InterruptedException e) {
+	    // WE'VE BEEN STOPPED
+	}
+    }
+
+    // HELPER METHOD FOR TESTING WHETHER THE EVENTS OF A KEY INCLUDE THE
+    // TAGS FILE, WHICH THEN GETS THE KEY READY FOR MORE EVENTS
+    private boolean isTagsFileChanged(WatchKey key) {
+	boolean changed = false;
+	for (WatchEvent<?> event : key.pollEvents()) {
+	    // SHOULD EVENTS HAVE BEEN LOST THE FILE MAY HAVE CHANGED
+	    if ((event.kind() == OVERFLOW) || tagsFile.getFileName().equals(event.context())) {
+		changed = true;
+	    }
+	}
+	key.reset();
+	return changed;
+    }
+
+    // HELPER METHOD FOR READING THE FILE INTO A NEW SCHEMA AND HANDING IT
+    // OVER TO THE JAVAFX APPLICATION THREAD
+    private void reload() {
+	try {
+	    TagSchema newSchema = fileManager.readTagSchema(tagsFile.toString(), dataManager.getTagSchema());
+	    Platform.runLater(() -> {
+		dataManager.setTagSchema(newSchema);
+		reloadedHandler.run();
+	    });
+	} catch (IOException ioe) {
+	    Platform.runLater(() -> {
+		failureHandler.accept(ioe);
+	    });
+	}
+    }
+}
@@ -0,0 +1,159 @@
+package wpm.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import wpm.data.PageTree;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class shows a page tree in a tree view. It listens to the page tree
+ * and keeps the tree view's items in step with it, making items only for
+ * the nodes the tree view has needed so far. Note that the items are only
+ * a view of the page, all edits are made to the page tree itself.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PageTreeAdapter implements PageTree.Listener {
+    // HOW MANY ITEMS WE HAVE ROOM FOR AT FIRST
+    static final int INITIAL_CAPACITY = 64;
+
+    // THE VIEW AND THE TREE IT SHOWS
+    TreeView treeView;
+    PageTree pageTree;
+
+    // THE ITEM FOR EACH NODE, OR null WHERE NONE HAS BEEN MADE
+    PageTreeItem[] items;
+
+    /**
+     * Constructor for an adapter that shows the pageTree argument in
+     * the treeView argument from now on.
+     *
+     * @param initTreeView The tree view to show the page in.
+     *
+     * @param initPageTree The page to show.
+     */
+    public PageTreeAdapter(TreeView initTreeView, PageTree initPageTree) {
+	treeView = initTreeView;
+	pageTree = initPageTree;
+	items = new PageTreeItem[INITIAL_CAPACITY];
+	pageTree.addListener(this);
+	if (pageTree.getRoot() != NO_NODE) {
+	    pageReplaced();
+	}
+    }
+
+    /**
+     * Accessor method for getting the page tree being shown.
+     *
+     * @return The page tree.
+     */
+    public PageTree getPageTree() {
+	return pageTree;
+    }
+
+    /**
+     * Accessor method for getting the item for the node argument, making
+     * it, and the items of its siblings and ancestors, if need be.
+     *
+     * @param node The node in the page tree.
+     *
+     * @return The node's item.
+     */
+    public PageTreeItem getItem(int node) {
+	PageTreeItem item = (node < items.length) ? items[node] : null;
+	if (item == null) {
+	    // MAKING THE PARENT'S CHILD ITEMS MAKES OURS
+	    getItem(pageTree.getParent(node)).getChildren();
+	    item = items[node];
+	}
+	return item;
+    }
+
+    /**
+     * This method makes the items for the node argument's children,
+     * which is done when the node's item is first asked for them.
+     *
+     * @param node The node whose children need items.
+     *
+     * @return The new items, in order.
+     */
+    public ArrayList<PageTreeItem> createChildItems(int node) {
+	ArrayList<PageTreeItem> childItems = new ArrayList();
+	for (int child = pageTree.getFirstChild(node); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+	    childItems.add(createItem(child));
+	}
+	return childItems;
+    }
+
+    /**
+     * This method adds an item for a node added to the page, provided
+     * its parent's child items have already been made.
+     *
+     * @param node The node that was added.
+     */
+    @Override
+    public void nodeInserted(int node) {
+	int parent = pageTree.getParent(node);
+	PageTreeItem parentItem = (parent < items.length) ? items[parent] : null;
+	if (parentItem == null) {
+	    return;
+	}
+
+	// IF THE PARENT'S CHILD ITEMS WEREN'T MADE YET MAKING THEM NOW
+	// WILL INCLUDE THE NEW NODE
+	if (parentItem.isPopulated()) {
+	    parentItem.getChildren().add(pageTree.indexOf(node), createItem(node));
+	} else {
+	    parentItem.getChildren();
+	}
+    }
+
+    /**
+     * This method removes the item for a node about to be removed from
+     * the page, along with the items for its descendants.
+     *
+     * @param node The node being removed.
+     */
+    @Override
+    public void nodeRemoving(int node) {
+	PageTreeItem item = (node < items.length) ? items[node] : null;
+	if (item != null) {
+	    forgetItems(item);
+	    item.getParent().getChildren().remove(item);
+	}
+    }
+
+    /**
+     * This method starts over with an item for the new root when the
+     * whole page has been replaced.
+     */
+    @Override
+    public void pageReplaced() {
+	Arrays.fill(items, null);
+	treeView.setRoot(createItem(pageTree.getRoot()));
+    }
+
+    // HELPER METHOD FOR MAKING THE ITEM FOR A NODE
+    private PageTreeItem createItem(int node) {
+	if (node >= items.length) {
+	    items = Arrays.copyOf(items, Math.max(node + 1, items.length * 2));
+	}
+	PageTreeItem item = new PageTreeItem(this, node, pageTree.getTag(node));
+	items[node] = item;
+	return item;
+    }
+
+    // HELPER METHOD FOR FORGETTING THE ITEMS OF A REMOVED SUBTREE, WHOSE
+    // NODES MAY BE REUSED, WITHOUT MAKING ANY NEW ONES
+    private void forgetItems(PageTreeItem item) {
+	items[item.getNode()] = null;
+	if (item.isPopulated()) {
+	    for (TreeItem child : item.getChildren()) {
+		forgetItems((PageTreeItem) child);
+	    }
+	}
+    }
+}
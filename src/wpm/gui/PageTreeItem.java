@@ -0,0 +1,86 @@
+package wpm.gui;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+import wpm.data.HTMLTagPrototype;
+
+/**
+ * This class is the tree view's item for one node of the page tree. An
+ * item's child items are only made the first time they are asked for,
+ * which is when the tree view shows them, so a large page only has items
+ * for the parts of it the user has expanded.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PageTreeItem extends TreeItem<HTMLTagPrototype> {
+    // THE ADAPTER THAT MAKES OUR CHILD ITEMS
+    PageTreeAdapter adapter;
+
+    // THE NODE IN THE PAGE TREE WE STAND FOR
+    int node;
+
+    // TRUE ONCE OUR CHILD ITEMS HAVE BEEN MADE
+    boolean populated;
+
+    /**
+     * Constructor for an item standing for the node argument, note that
+     * its child items are made later.
+     *
+     * @param initAdapter The adapter this item belongs to.
+     *
+     * @param initNode The node in the page tree.
+     *
+     * @param tag The node's tag.
+     */
+    public PageTreeItem(PageTreeAdapter initAdapter, int initNode, HTMLTagPrototype tag) {
+	super(tag);
+	adapter = initAdapter;
+	node = initNode;
+    }
+
+    /**
+     * Accessor method for getting the node this item stands for.
+     *
+     * @return The node in the page tree.
+     */
+    public int getNode() {
+	return node;
+    }
+
+    /**
+     * Accessor method for testing whether this item's child items have
+     * been made yet.
+     *
+     * @return true if the child items have been made, false otherwise.
+     */
+    public boolean isPopulated() {
+	return populated;
+    }
+
+    /**
+     * Accessor method for getting this item's child items, which are
+     * made the first time this is called.
+     *
+     * @return The child items.
+     */
+    @Override
+    public ObservableList<TreeItem<HTMLTagPrototype>> getChildren() {
+	if (!populated) {
+	    populated = true;
+	    super.getChildren().setAll(adapter.createChildItems(node));
+	}
+	return super.getChildren();
+    }
+
+    /**
+     * Accessor method for testing whether this item has children, which
+     * doesn't make its child items.
+     *
+     * @return true if the node has no children, false otherwise.
+     */
+    @Override
+    public boolean isLeaf() {
+	return populated ? super.getChildren().isEmpty() : adapter.getPageTree().getChildCount(node) == 0;
+    }
+}
@@ -0,0 +1,184 @@
+package wpm.gui;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import javafx.animation.PauseTransition;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+import wpm.file.ExportCache;
+import wpm.perf.LatencyHistogram;
+import wpm.perf.LatencyMonitor;
+import wpm.perf.LatencyMonitor.Stage;
+
+/**
+ * This class provides a small panel, shown over the displayed page, with
+ * what the latency monitor has recorded for each stage of getting an edit
+ * onto the page. It is hidden until the user asks for it, and only reads
+ * the monitor, twice a second, while it is shown. The numbers can also be
+ * saved as JSON, for comparing against later versions. Below them it shows
+ * how many exported files were written and how many were skipped since
+ * they hadn't changed.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PerformanceOverlay extends VBox {
+    // FOR TYING THE PANEL TO THE STYLE SHEET
+    static final String CLASS_LATENCY_OVERLAY = "latency_overlay";
+    static final String CLASS_LATENCY_HEADING = "latency_heading";
+
+    // WHERE THE SAVED NUMBERS GO
+    static final String LATENCY_FILE = "./latency.json";
+
+    // HOW OFTEN THE NUMBERS ARE READ WHILE THE PANEL IS SHOWN
+    static final int REFRESH_MILLIS = 500;
+
+    // WHAT THE STAGES AND THE COLUMNS ARE CALLED
+    static final String[] STAGE_NAMES = {"Model update", "Serialization", "Disk write", "Render"};
+    static final String[] COLUMN_NAMES = {"Stage", "Count", "Median", "99th", "Max", "Alloc/op"};
+    static final String NOT_AVAILABLE = "n/a";
+
+    // WHAT WE SHOW
+    LatencyMonitor monitor;
+    ExportCache exportCache;
+
+    // ONE LABEL FOR EACH NUMBER, INDEXED BY STAGE AND THEN COLUMN
+    Label[][] valueLabels;
+
+    // THE EXPORT CACHE'S COUNTERS
+    Label exportCacheLabel;
+
+    // TELLS THE USER WHERE THE NUMBERS WERE SAVED
+    Label statusLabel;
+
+    // READS THE NUMBERS AGAIN WHILE THE PANEL IS SHOWN
+    PauseTransition refreshTimer;
+
+    /**
+     * Constructor for initializing the panel, which starts out hidden.
+     *
+     * @param initExportCache The cache of the files exported for the
+     * displayed page.
+     */
+    public PerformanceOverlay(ExportCache initExportCache) {
+	monitor = LatencyMonitor.getMonitor();
+	exportCache = initExportCache;
+
+	// ONE ROW PER STAGE
+	GridPane latencyGrid = new GridPane();
+	for (int column = 0; column < COLUMN_NAMES.length; column++) {
+	    Label headingLabel = new Label(COLUMN_NAMES[column]);
+	    headingLabel.getStyleClass().add(CLASS_LATENCY_HEADING);
+	    latencyGrid.add(headingLabel, column, 0);
+	}
+	Stage[] stages = Stage.values();
+	valueLabels = new Label[stages.length][COLUMN_NAMES.length - 1];
+	for (int i = 0; i < stages.length; i++) {
+	    latencyGrid.add(new Label(STAGE_NAMES[i]), 0, i + 1);
+	    for (int column = 0; column < valueLabels[i].length; column++) {
+		valueLabels[i][column] = new Label();
+		latencyGrid.add(valueLabels[i][column], column + 1, i + 1);
+	    }
+	}
+
+	// AND THE BUTTONS FOR STARTING OVER AND SAVING
+	Button resetButton = new Button("Reset");
+	resetButton.setOnAction(e -> {
+	    monitor.reset();
+	    exportCache.resetCounters();
+	    refresh();
+	});
+	Button saveButton = new Button("Save JSON");
+	saveButton.setOnAction(e -> {
+	    saveJSON();
+	});
+	statusLabel = new Label();
+	HBox buttonBox = new HBox(resetButton, saveButton, statusLabel);
+
+	exportCacheLabel = new Label();
+	getChildren().add(latencyGrid);
+	getChildren().add(exportCacheLabel);
+	getChildren().add(buttonBox);
+	getStyleClass().add(CLASS_LATENCY_OVERLAY);
+
+	// ONLY AS BIG AS THE NUMBERS, SO THE PAGE CAN STILL BE SEEN
+	setMaxWidth(USE_PREF_SIZE);
+	setMaxHeight(USE_PREF_SIZE);
+	setVisible(false);
+
+	refreshTimer = new PauseTransition(Duration.millis(REFRESH_MILLIS));
+	refreshTimer.setOnFinished(e -> {
+	    if (isVisible()) {
+		refresh();
+		refreshTimer.playFromStart();
+	    }
+	});
+    }
+
+    /**
+     * This method shows the panel if it's hidden and hides it if it's
+     * shown.
+     */
+    public void toggle() {
+	boolean shown = !isVisible();
+	setVisible(shown);
+	if (shown) {
+	    refresh();
+	    refreshTimer.playFromStart();
+	} else {
+	    refreshTimer.stop();
+	}
+    }
+
+    /**
+     * This method reads the latest numbers from the monitor and the
+     * export cache into the panel.
+     */
+    public void refresh() {
+	Stage[] stages = Stage.values();
+	for (int i = 0; i < stages.length; i++) {
+	    LatencyHistogram histogram = monitor.getHistogram(stages[i]);
+	    long allocated = monitor.getAllocatedBytesPerOperation(stages[i]);
+	    valueLabels[i][0].setText(Long.toString(histogram.getCount()));
+	    valueLabels[i][1].setText(formatTime(histogram.getValueAtPercentile(50)));
+	    valueLabels[i][2].setText(formatTime(histogram.getValueAtPercentile(99)));
+	    valueLabels[i][3].setText(formatTime(histogram.getMax()));
+	    valueLabels[i][4].setText((allocated < 0) ? NOT_AVAILABLE : formatBytes(allocated));
+	}
+	exportCacheLabel.setText(String.format("Exported files: %d written, %d unchanged",
+		exportCache.getMisses(), exportCache.getHits()));
+    }
+
+    /**
+     * This method saves the monitor's numbers as JSON to LATENCY_FILE,
+     * telling the user how that went in the panel.
+     */
+    public void saveJSON() {
+	try (Writer out = Files.newBufferedWriter(Paths.get(LATENCY_FILE), StandardCharsets.UTF_8)) {
+	    monitor.writeJSON(out);
+	    statusLabel.setText("Saved to " + LATENCY_FILE);
+	} catch (IOException ioe) {
+	    statusLabel.setText("Couldn't save " + LATENCY_FILE);
+	}
+    }
+
+    // HELPER METHOD FOR SHOWING NANOSECONDS AS MILLISECONDS
+    private String formatTime(long nanos) {
+	return String.format("%.2f ms", nanos / 1000000.0);
+    }
+
+    // HELPER METHOD FOR SHOWING A NUMBER OF BYTES
+    private String formatBytes(long bytes) {
+	if (bytes < 1024) {
+	    return bytes + " B";
+	}
+	return String.format("%.1f KB", bytes / 1024.0);
+    }
+}
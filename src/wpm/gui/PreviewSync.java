@@ -0,0 +1,537 @@
+package wpm.gui;
+
+import java.util.Arrays;
+import javafx.concurrent.Worker.State;
+import javafx.scene.web.WebEngine;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import wpm.data.HTMLTagPrototype;
+import wpm.data.PageTree;
+import wpm.file.FileManager;
+import wpm.perf.LatencyMonitor;
+import static wpm.perf.LatencyMonitor.Stage.RENDER;
+import static wpm.data.HTMLTagPrototype.TAG_TEXT;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class keeps the page displayed in the web view in sync with the tree
+ * being edited without reloading it. After the page has been loaded, every
+ * node in the tree is matched with the live DOM node that the web engine
+ * built for it, such that attribute edits, added and removed elements, and
+ * CSS changes can be applied directly to that DOM. Elements added to and
+ * removed from the tree are patched in as the tree tells us about them,
+ * attribute edits once they're ready to be shown. Should the live page ever
+ * not correspond to the tree, for example because the browser restructured
+ * some of our markup while parsing it, we simply fall back to reloading the
+ * whole page. Nodes of a memory-mapped page that haven't been filled in yet
+ * are matched to the live page once they have been. How long patching and
+ * loading take is recorded as the rendering stage of the latency monitor.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class PreviewSync {
+    // USED FOR UPDATING THE STYLESHEET IN THE LIVE PAGE
+    static final String LIVE_CSS_ID = "wpm_live_css";
+    static final String TAG_STYLE = "style";
+    static final String TAG_TBODY = "tbody";
+    static final String TAG_TABLE = "table";
+    static final String ATT_TEXT = "text";
+    static final String ATT_REL = "rel";
+    static final String REL_STYLESHEET = "stylesheet";
+
+    // THE ENGINE DISPLAYING THE PAGE
+    WebEngine htmlEngine;
+
+    // HOW MANY NODES WE HAVE ROOM FOR AT FIRST
+    static final int INITIAL_CAPACITY = 64;
+
+    // THE TREE BEING DISPLAYED
+    PageTree pageTree;
+
+    // EVERY NODE IN THE TREE MAPPED TO ITS NODE IN THE LIVE PAGE
+    Node[] domNodes;
+
+    // TRUE WHEN domNodes CORRESPONDS TO THE PAGE CURRENTLY LOADED
+    boolean mapped;
+
+    // TRUE WHEN THE TREE HAS CHANGED IN A WAY THE LIVE PAGE DOESN'T KNOW ABOUT
+    boolean stale;
+
+    // THE LAST PAGE WE ASKED THE ENGINE TO LOAD
+    String pagePath;
+
+    // FILES ARE WRITTEN IN THE BACKGROUND, SO RELOADS HAVE TO WAIT FOR
+    // THEM, AND ONLY THE LATEST RELOAD REQUESTED NEEDS TO HAPPEN
+    FileManager fileManager;
+    int reloadCounter;
+
+    // PATCHES THE LIVE PAGE AS ELEMENTS ARE ADDED TO AND REMOVED FROM THE TREE
+    PageTree.Listener treeListener;
+
+    // WHEN THE ENGINE WAS ASKED TO LOAD THE PAGE, OR 0 IF IT ISN'T LOADING
+    long loadStartTime;
+
+    // TRUE FROM WHEN A RELOAD IS ASKED FOR UNTIL THE PAGE HAS LOADED
+    boolean loading;
+
+    /**
+     * Constructor for initializing the preview, note that nothing will
+     * be mapped until a page has been loaded.
+     *
+     * @param initHTMLEngine The engine displaying the page being edited.
+     *
+     * @param initFileManager The file manager exporting the page.
+     */
+    public PreviewSync(WebEngine initHTMLEngine, FileManager initFileManager) {
+	htmlEngine = initHTMLEngine;
+	fileManager = initFileManager;
+	domNodes = new Node[INITIAL_CAPACITY];
+	treeListener = new PageTree.Listener() {
+	    @Override
+	    public void nodeInserted(int node) {
+		LatencyMonitor monitor = LatencyMonitor.getMonitor();
+		long startTime = monitor.startTime();
+		long startAllocated = monitor.allocatedBytes();
+		insertDomNode(node);
+		monitor.record(RENDER, startTime, startAllocated);
+	    }
+
+	    @Override
+	    public void nodeRemoving(int node) {
+		LatencyMonitor monitor = LatencyMonitor.getMonitor();
+		long startTime = monitor.startTime();
+		long startAllocated = monitor.allocatedBytes();
+		removeDomNode(node);
+		monitor.record(RENDER, startTime, startAllocated);
+	    }
+
+	    @Override
+	    public void pageReplaced() {
+		Arrays.fill(domNodes, null);
+		stale = true;
+	    }
+
+	    @Override
+	    public void tagsRebound() {
+		// THE ELEMENTS ARE THE SAME BUT THEIR ATTRIBUTES MAY NOT BE
+		stale = true;
+	    }
+	};
+
+	// EVERY TIME A PAGE FINISHES LOADING WE MAP IT TO THE TREE
+	htmlEngine.getLoadWorker().stateProperty().addListener((observable, oldState, newState) -> {
+	    if (newState == State.SUCCEEDED) {
+		mapPage();
+	    } else {
+		mapped = false;
+	    }
+
+	    // A LOAD CANCELLED BY OURS STARTING DOESN'T END IT
+	    if ((newState == State.SUCCEEDED) || (newState == State.FAILED)) {
+		loading = false;
+	    }
+	    if (loadStartTime != 0) {
+		if (newState == State.SUCCEEDED) {
+		    LatencyMonitor.getMonitor().record(RENDER, loadStartTime);
+		    loadStartTime = 0;
+		} else if (newState == State.FAILED) {
+		    loadStartTime = 0;
+		}
+	    }
+	});
+    }
+
+    /**
+     * Mutator method for setting the tree being displayed.
+     *
+     * @param initPageTree The tree.
+     */
+    public void setPageTree(PageTree initPageTree) {
+	if (pageTree != null) {
+	    pageTree.removeListener(treeListener);
+	}
+	pageTree = initPageTree;
+	pageTree.addListener(treeListener);
+	Arrays.fill(domNodes, null);
+	stale = true;
+    }
+
+    /**
+     * Accessor method for testing whether or not the live page currently
+     * shows the tree as it is.
+     *
+     * @return true if the live page is in sync with the tree, false if it
+     * has to be reloaded.
+     */
+    public boolean isSynced() {
+	return mapped && !stale;
+    }
+
+    /**
+     * This method loads the page found at the pagePath argument into the
+     * engine, after which it will be mapped to the tree.
+     *
+     * @param initPagePath The URL of the page to load.
+     */
+    public void load(String initPagePath) {
+	pagePath = initPagePath;
+	reload();
+    }
+
+    /**
+     * This method forces the full page to be reloaded. This is what we
+     * fall back to whenever the live page can't be patched. Note that
+     * the page is only loaded once everything exported so far has been
+     * written out.
+     */
+    public void reload() {
+	mapped = false;
+	stale = false;
+	loading = true;
+	int reloadNumber = ++reloadCounter;
+	fileManager.afterPendingWrites(() -> {
+	    // A LATER RELOAD WILL PICK UP EVERYTHING THIS ONE WOULD
+	    if (reloadNumber != reloadCounter) {
+		return;
+	    }
+	    loadStartTime = LatencyMonitor.getMonitor().startTime();
+	    if (pagePath != null) {
+		htmlEngine.load(pagePath);
+	    } else {
+		htmlEngine.reload();
+	    }
+	});
+    }
+
+    /**
+     * This method reloads the page only if the live page is no longer
+     * in sync with the tree.
+     */
+    public void refresh() {
+	if (!isSynced()) {
+	    reload();
+	}
+    }
+
+    /**
+     * This method reloads the page only if the live page is no longer
+     * in sync with the tree, like refresh, but knowing whether the
+     * exported page has changed since it was last exported. If it hasn't,
+     * a page that is still loading will show the tree as it is once it
+     * has loaded, so it isn't loaded again.
+     *
+     * @param exportChanged true if the exported files were just written
+     * with new content, false if they already had it.
+     */
+    public void refresh(boolean exportChanged) {
+	if (!exportChanged && loading && !stale) {
+	    return;
+	}
+	refresh();
+    }
+
+    /**
+     * This method applies a change to an element's attribute to the live
+     * page. Note that for text nodes this changes the text itself.
+     *
+     * @param node The node in the tree whose attribute was changed.
+     *
+     * @param attributeName The name of the changed attribute.
+     *
+     * @param attributeValue The new value of the attribute.
+     */
+    public void updateAttribute(int node, String attributeName, String attributeValue) {
+	LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	long startTime = monitor.startTime();
+	long startAllocated = monitor.allocatedBytes();
+	patchAttribute(node, attributeName, attributeValue);
+	monitor.record(RENDER, startTime, startAllocated);
+    }
+
+    // HELPER METHOD FOR CHANGING AN ATTRIBUTE IN THE LIVE PAGE, OR
+    // RELOADING IT IF WE CAN'T
+    private void patchAttribute(int node, String attributeName, String attributeValue) {
+	Node domNode = isSynced() ? domNodeFor(node) : null;
+	if (domNode == null) {
+	    reload();
+	    return;
+	}
+	try {
+	    HTMLTagPrototype tag = pageTree.getTag(node);
+	    if (tag.getTagName().equals(TAG_TEXT)) {
+		domNode.setNodeValue(attributeValue);
+	    } else if (attributeValue == null || attributeValue.isEmpty()) {
+		((Element) domNode).removeAttribute(attributeName);
+	    } else {
+		((Element) domNode).setAttribute(attributeName, attributeValue);
+	    }
+	} catch (DOMException | ClassCastException e) {
+	    reload();
+	}
+    }
+
+    /**
+     * This method replaces the stylesheet used by the live page with the
+     * cssText argument. The first time this happens the link to the
+     * exported CSS file is replaced by a style element, after that only
+     * that element's text is changed.
+     *
+     * @param cssText The full text of the new stylesheet.
+     */
+    public void updateStylesheet(String cssText) {
+	LatencyMonitor monitor = LatencyMonitor.getMonitor();
+	long startTime = monitor.startTime();
+	long startAllocated = monitor.allocatedBytes();
+	patchStylesheet(cssText);
+	monitor.record(RENDER, startTime, startAllocated);
+    }
+
+    // HELPER METHOD FOR PUTTING NEW CSS IN THE LIVE PAGE, OR RELOADING
+    // IT IF WE CAN'T
+    private void patchStylesheet(String cssText) {
+	Document document = mapped ? htmlEngine.getDocument() : null;
+	if (document == null) {
+	    reload();
+	    return;
+	}
+	try {
+	    Element styleElement = document.getElementById(LIVE_CSS_ID);
+	    if (styleElement == null) {
+		Node headNode = document.getElementsByTagName(HTMLTagPrototype.TAG_HEAD).item(0);
+		if (headNode == null) {
+		    reload();
+		    return;
+		}
+
+		// THE STYLE ELEMENT TAKES OVER FROM THE LINKED FILE
+		NodeList links = document.getElementsByTagName(HTMLTagPrototype.TAG_LINK);
+		for (int i = links.getLength() - 1; i >= 0; i--) {
+		    Element link = (Element) links.item(i);
+		    if (REL_STYLESHEET.equalsIgnoreCase(link.getAttribute(ATT_REL))) {
+			link.getParentNode().removeChild(link);
+			forgetDomNode(link);
+		    }
+		}
+		styleElement = document.createElement(TAG_STYLE);
+		styleElement.setAttribute("id", LIVE_CSS_ID);
+		headNode.appendChild(styleElement);
+	    }
+	    styleElement.setTextContent(cssText);
+	} catch (DOMException e) {
+	    reload();
+	}
+    }
+
+    // HELPER METHOD FOR ADDING A NEW ELEMENT TO THE LIVE PAGE, WHICH IS
+    // DONE JUST AFTER IT HAS BEEN ADDED TO THE TREE
+    private void insertDomNode(int node) {
+	Node parentDomNode = isSynced() ? domNodeFor(pageTree.getParent(node)) : null;
+	if (parentDomNode == null) {
+	    stale = true;
+	    return;
+	}
+	try {
+	    int nextSibling = pageTree.getNextSibling(node);
+	    Node nextDomNode = (nextSibling != NO_NODE) ? domNodeFor(nextSibling) : null;
+	    if (nextSibling != NO_NODE && nextDomNode == null) {
+		stale = true;
+		return;
+	    }
+	    Node newDomNode = buildDomNode(parentDomNode.getOwnerDocument(), node);
+	    if (nextDomNode != null) {
+		nextDomNode.getParentNode().insertBefore(newDomNode, nextDomNode);
+	    } else {
+		contentParent(parentDomNode).appendChild(newDomNode);
+	    }
+	} catch (DOMException e) {
+	    stale = true;
+	}
+    }
+
+    // HELPER METHOD FOR REMOVING AN ELEMENT FROM THE LIVE PAGE, WHICH IS
+    // DONE JUST BEFORE IT IS REMOVED FROM THE TREE
+    private void removeDomNode(int node) {
+	Node domNode = isSynced() ? domNodeFor(node) : null;
+	if (domNode == null || domNode.getParentNode() == null) {
+	    stale = true;
+	} else {
+	    try {
+		domNode.getParentNode().removeChild(domNode);
+	    } catch (DOMException e) {
+		stale = true;
+	    }
+	}
+
+	// THE REMOVED NODES MAY BE REUSED FOR NEW ONES
+	unmapSubtree(node);
+    }
+
+    // HELPER METHOD FOR GETTING THE LIVE NODE FOR A NODE IN THE TREE, NODES
+    // THAT WEREN'T AROUND WHEN THE PAGE WAS MAPPED, BECAUSE THEY WERE STILL
+    // IN A MAPPED FILE, ARE MATCHED UP NOW ALONG WITH THEIR SIBLINGS
+    private Node domNodeFor(int node) {
+	Node domNode = (node < domNodes.length) ? domNodes[node] : null;
+	int parent = pageTree.getParent(node);
+	if (domNode == null && parent != NO_NODE) {
+	    Node parentDomNode = domNodeFor(parent);
+	    if (parentDomNode != null) {
+		if (mapChildren(parent, parentDomNode)) {
+		    domNode = domNodes[node];
+		} else {
+		    stale = true;
+		}
+	    }
+	}
+	return domNode;
+    }
+
+    // HELPER METHOD FOR MAPPING THE FRESHLY LOADED PAGE TO THE TREE
+    private void mapPage() {
+	Arrays.fill(domNodes, null);
+	mapped = false;
+	Document document = htmlEngine.getDocument();
+	if (document == null || pageTree == null || pageTree.getRoot() == NO_NODE) {
+	    return;
+	}
+	Element htmlElement = document.getDocumentElement();
+	if (htmlElement != null && mapNode(pageTree.getRoot(), htmlElement)) {
+	    mapped = true;
+	} else {
+	    Arrays.fill(domNodes, null);
+	}
+    }
+
+    // HELPER METHOD FOR REMEMBERING THE LIVE NODE FOR A NODE IN THE TREE
+    private void putDomNode(int node, Node domNode) {
+	if (node >= domNodes.length) {
+	    domNodes = Arrays.copyOf(domNodes, Math.max(node + 1, domNodes.length * 2));
+	}
+	domNodes[node] = domNode;
+    }
+
+    // HELPER METHOD FOR FORGETTING A LIVE NODE THAT IS NO LONGER IN THE PAGE
+    private void forgetDomNode(Node domNode) {
+	for (int i = 0; i < domNodes.length; i++) {
+	    if (domNodes[i] == domNode) {
+		domNodes[i] = null;
+	    }
+	}
+    }
+
+    // HELPER METHOD FOR MATCHING A NODE AND ALL ITS CHILDREN TO THE LIVE
+    // PAGE, RETURNING false IF THEY DON'T CORRESPOND
+    private boolean mapNode(int node, Node domNode) {
+	HTMLTagPrototype tag = pageTree.getTag(node);
+	if (tag.getTagName().equals(TAG_TEXT)) {
+	    String text = tag.getAttribute(ATT_TEXT);
+	    if (domNode.getNodeType() != Node.TEXT_NODE
+		    || text == null
+		    || !domNode.getNodeValue().trim().equals(text.trim())) {
+		return false;
+	    }
+	    putDomNode(node, domNode);
+	    return true;
+	}
+	if (domNode.getNodeType() != Node.ELEMENT_NODE
+		|| !domNode.getNodeName().equalsIgnoreCase(tag.getTagName())) {
+	    return false;
+	}
+	putDomNode(node, domNode);
+
+	// THE CHILDREN OF A MAPPED NODE THAT HASN'T BEEN FILLED IN ARE
+	// MATCHED UP LATER
+	if (pageTree.isUnmaterialized(node)) {
+	    return true;
+	}
+	return mapChildren(node, domNode);
+    }
+
+    // HELPER METHOD FOR MATCHING A NODE'S CHILDREN TO THE LIVE PAGE,
+    // IGNORING THE WHITESPACE OUR INDENTATION PUTS BETWEEN THEM
+    private boolean mapChildren(int node, Node domNode) {
+	NodeList domChildren = contentParent(domNode).getChildNodes();
+	int domIndex = 0;
+	for (int child = pageTree.getFirstChild(node); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+	    domIndex = nextSignificantIndex(domChildren, domIndex);
+	    if (domIndex >= domChildren.getLength()
+		    || !mapNode(child, domChildren.item(domIndex))) {
+		return false;
+	    }
+	    domIndex++;
+	}
+	return nextSignificantIndex(domChildren, domIndex) == domChildren.getLength();
+    }
+
+    // HELPER METHOD FOR SKIPPING WHITESPACE AND COMMENTS IN THE LIVE PAGE
+    private int nextSignificantIndex(NodeList domChildren, int index) {
+	while (index < domChildren.getLength()) {
+	    Node domChild = domChildren.item(index);
+	    if (domChild.getNodeType() == Node.ELEMENT_NODE) {
+		return index;
+	    }
+	    if (domChild.getNodeType() == Node.TEXT_NODE
+		    && !domChild.getNodeValue().trim().isEmpty()) {
+		return index;
+	    }
+	    index++;
+	}
+	return index;
+    }
+
+    // THE BROWSER PUTS ALL TABLE ROWS INSIDE AN IMPLIED tbody
+    private Node contentParent(Node domNode) {
+	if (domNode.getNodeName().equalsIgnoreCase(TAG_TABLE)) {
+	    NodeList domChildren = domNode.getChildNodes();
+	    for (int i = 0; i < domChildren.getLength(); i++) {
+		Node domChild = domChildren.item(i);
+		if (domChild.getNodeName().equalsIgnoreCase(TAG_TBODY)) {
+		    return domChild;
+		}
+	    }
+	}
+	return domNode;
+    }
+
+    // HELPER METHOD FOR BUILDING THE LIVE DOM FOR A NEW NODE AND ITS
+    // CHILDREN, MAPPING THEM AS WE GO
+    private Node buildDomNode(Document document, int node) {
+	HTMLTagPrototype tag = pageTree.getTag(node);
+	Node domNode;
+	if (tag.getTagName().equals(TAG_TEXT)) {
+	    String text = tag.getAttribute(ATT_TEXT);
+	    domNode = document.createTextNode(text == null ? "" : text);
+	} else {
+	    Element element = document.createElement(tag.getTagName());
+	    for (int i = 0; i < tag.getAttributeCount(); i++) {
+		String attributeName = tag.getAttributeName(i);
+		String attributeValue = tag.getAttributeValue(i);
+		if (attributeValue != null && !attributeValue.isEmpty()) {
+		    element.setAttribute(attributeName, attributeValue);
+		}
+	    }
+	    for (int child = pageTree.getFirstChild(node); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+		element.appendChild(buildDomNode(document, child));
+	    }
+	    domNode = element;
+	}
+	putDomNode(node, domNode);
+	return domNode;
+    }
+
+    // HELPER METHOD FOR FORGETTING A REMOVED SUBTREE
+    private void unmapSubtree(int node) {
+	if (node < domNodes.length) {
+	    domNodes[node] = null;
+	}
+	if (pageTree.isUnmaterialized(node)) {
+	    return;
+	}
+	for (int child = pageTree.getFirstChild(node); child != NO_NODE; child = pageTree.getNextSibling(child)) {
+	    unmapSubtree(child);
+	}
+    }
+}
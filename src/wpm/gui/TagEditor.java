@@ -0,0 +1,157 @@
+package wpm.gui;
+
+import java.util.ArrayList;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import wpm.controller.PageEditController;
+import wpm.data.HTMLTagPrototype;
+import static saf.components.AppWorkspaceComponent.CLASS_PROMPT_LABEL;
+import static saf.components.AppWorkspaceComponent.CLASS_PROMPT_TEXT_FIELD;
+import static wpm.data.PageTree.NO_NODE;
+
+/**
+ * This class provides the controls for editing the attributes of the
+ * selected element, one row with a label and a text field per attribute.
+ * Rather than being built again for every selection, the rows are made the
+ * first time that many are needed and then kept, and selecting an element
+ * only changes the text they show and hides the rows it doesn't need. Each
+ * text field has a single listener for its whole life, which sends what is
+ * typed into it to the controller as an edit of whichever element and
+ * attribute the row is showing at the time.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class TagEditor {
+    // THE PANE THE ROWS GO IN, BELOW ITS HEADING
+    GridPane editorPane;
+
+    // THE CONTROLLER THAT TYPED VALUES ARE SENT TO
+    PageEditController pageEditController;
+
+    // THE ROWS MADE SO FAR, AND THE ATTRIBUTE EACH IS SHOWING
+    ArrayList<Label> attributeLabels;
+    ArrayList<TextField> attributeTextFields;
+    ArrayList<String> attributeNames;
+
+    // HOW MANY OF THE ROWS ARE SHOWN
+    int rowsShown;
+
+    // THE NODE WHOSE ATTRIBUTES ARE SHOWN, OR NO_NODE IF THERE IS NONE
+    int node;
+
+    /**
+     * Constructor for an editor that puts its rows in the editorPane
+     * argument, below the heading argument, and starts out showing no
+     * element.
+     *
+     * @param initEditorPane The pane to put the controls in.
+     *
+     * @param heading The label to show above the rows.
+     *
+     * @param initPageEditController The controller to send typed values to.
+     */
+    public TagEditor(GridPane initEditorPane, Label heading, PageEditController initPageEditController) {
+	editorPane = initEditorPane;
+	pageEditController = initPageEditController;
+	attributeLabels = new ArrayList();
+	attributeTextFields = new ArrayList();
+	attributeNames = new ArrayList();
+	node = NO_NODE;
+	editorPane.add(heading, 0, 0, 2, 1);
+    }
+
+    /**
+     * Accessor method for getting the node whose attributes are shown.
+     *
+     * @return The node, or NO_NODE if no element is shown.
+     */
+    public int getNode() {
+	return node;
+    }
+
+    /**
+     * This method shows the attributes of the tag argument for editing,
+     * reusing the rows that are already there. Note that the values put
+     * into the text fields are sent to the controller like typed ones, so
+     * it should be disabled while this is called.
+     *
+     * @param initNode The node whose attributes to show.
+     *
+     * @param tag The node's tag.
+     */
+    public void bind(int initNode, HTMLTagPrototype tag) {
+	node = initNode;
+	int attributeCount = (tag == null) ? 0 : tag.getAttributeCount();
+	while (attributeTextFields.size() < attributeCount) {
+	    addRow();
+	}
+	for (int i = 0; i < attributeCount; i++) {
+	    // ELEMENTS OF THE SAME TYPE HAVE THE SAME ATTRIBUTES, SO MOSTLY
+	    // ONLY THE VALUES CHANGE
+	    String attributeName = tag.getAttributeName(i);
+	    if (!attributeName.equals(attributeNames.get(i))) {
+		attributeNames.set(i, attributeName);
+		attributeLabels.get(i).setText(attributeName + ": ");
+	    }
+	    String attributeValue = tag.getAttributeValue(i);
+	    TextField attributeTextField = attributeTextFields.get(i);
+	    if (attributeValue == null) {
+		attributeValue = "";
+	    }
+	    if (!attributeValue.equals(attributeTextField.getText())) {
+		attributeTextField.setText(attributeValue);
+	    }
+	}
+	showRows(attributeCount);
+    }
+
+    /**
+     * This method hides all the rows, such that no element is shown.
+     */
+    public void unbind() {
+	bind(NO_NODE, null);
+    }
+
+    // HELPER METHOD FOR MAKING ONE MORE ROW, WHICH STAYS FOR GOOD
+    private void addRow() {
+	int row = attributeTextFields.size();
+	Label attributeLabel = new Label();
+	attributeLabel.getStyleClass().add(CLASS_PROMPT_LABEL);
+	TextField attributeTextField = new TextField();
+	attributeTextField.getStyleClass().add(CLASS_PROMPT_TEXT_FIELD);
+	attributeTextField.textProperty().addListener(e -> {
+	    // UPDATE THE TEMP SITE AS WE TYPE ATTRIBUTE VALUES
+	    if (node != NO_NODE) {
+		pageEditController.handleAttributeUpdate(node, attributeNames.get(row), attributeTextField.getText());
+	    }
+	});
+	editorPane.add(attributeLabel, 0, row + 1);
+	editorPane.add(attributeTextField, 1, row + 1);
+	attributeLabels.add(attributeLabel);
+	attributeTextFields.add(attributeTextField);
+	attributeNames.add(null);
+	setRowShown(row, false);
+    }
+
+    // HELPER METHOD FOR SHOWING THE FIRST rowCount ROWS AND HIDING THE
+    // REST, ONLY TOUCHING THE ROWS THAT CHANGE
+    private void showRows(int rowCount) {
+	for (int row = Math.min(rowCount, rowsShown); row < Math.max(rowCount, rowsShown); row++) {
+	    setRowShown(row, row < rowCount);
+	}
+	rowsShown = rowCount;
+    }
+
+    // HELPER METHOD FOR SHOWING OR HIDING ONE ROW, A HIDDEN ROW TAKES
+    // UP NO SPACE
+    private void setRowShown(int row, boolean shown) {
+	Label attributeLabel = attributeLabels.get(row);
+	TextField attributeTextField = attributeTextFields.get(row);
+	attributeLabel.setVisible(shown);
+	attributeLabel.setManaged(shown);
+	attributeTextField.setVisible(shown);
+	attributeTextField.setManaged(shown);
+    }
+}
@@ -8,9 +8,12 @@ import java.nio.file.Files;
 import saf.ui.AppYesNoCancelDialogSingleton;
 import saf.ui.AppMessageDialogSingleton;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.Optional;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
@@ -19,13 +22,17 @@ import javafx.scene.control.SplitPane;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.control.TextArea;
-import javafx.scene.control.TextField;
-import javafx.scene.control.TreeItem;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.TreeView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
@@ -37,6 +44,12 @@ import saf.components.AppWorkspaceComponent;
 import saf.controller.AppFileController;
 import static saf.settings.AppStartupConstants.PATH_IMAGES;
 import wpm.PropertyType;
+import static wpm.PropertyType.DUPLICATE_COUNT_MESSAGE;
+import static wpm.PropertyType.DUPLICATE_COUNT_TITLE;
+import static wpm.PropertyType.RECOVER_EDITS_MESSAGE;
+import static wpm.PropertyType.RECOVER_EDITS_TITLE;
+import static wpm.PropertyType.TAGS_RELOAD_ERROR_MESSAGE;
+import static wpm.PropertyType.TAGS_RELOAD_ERROR_TITLE;
 import static wpm.PropertyType.TEMP_PAGE_LOAD_ERROR_MESSAGE;
 import static wpm.PropertyType.TEMP_PAGE_LOAD_ERROR_TITLE;
 import static wpm.PropertyType.UPDATE_ERROR_MESSAGE;
@@ -44,12 +57,11 @@ import static wpm.PropertyType.UPDATE_ERROR_TITLE;
 import wpm.WebPageMaker;
 import wpm.controller.PageEditController;
 import wpm.data.DataManager;
-import static wpm.data.HTMLTagPrototype.TAG_BODY;
-import static wpm.data.HTMLTagPrototype.TAG_HEAD;
-import static wpm.data.HTMLTagPrototype.TAG_HTML;
-import static wpm.data.HTMLTagPrototype.TAG_LINK;
-import static wpm.data.HTMLTagPrototype.TAG_TITLE;
+import wpm.file.EditJournal;
 import wpm.file.FileManager;
+import wpm.file.TagSchemaWatcher;
+import wpm.perf.StartupTimer;
+import static wpm.file.FileManager.JOURNAL_FILE;
 import static wpm.file.FileManager.PATH_CSS;
 import static wpm.file.FileManager.PATH_IMAGE;
 import static wpm.file.FileManager.PATH_TEMP;
@@ -76,6 +88,22 @@ public class Workspace extends AppWorkspaceComponent {
     static final String EMPTY_TEXT = "";
     static final int BUTTON_TAG_WIDTH = 75;
 
+    // THE KEYS FOR UNDOING AND REDOING EDITS, WHEN THE FOCUSED CONTROL
+    // DOESN'T USE THEM ITSELF
+    static final KeyCombination UNDO_KEYS = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+    static final KeyCombination REDO_KEYS = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+    static final KeyCombination REDO_SHIFT_KEYS = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
+
+    // THE KEYS FOR COPYING, CUTTING AND PASTING THE SELECTED ELEMENT, AND
+    // FOR ADDING ONE COPY OF IT RIGHT AFTER IT
+    static final KeyCombination COPY_KEYS = new KeyCodeCombination(KeyCode.C, KeyCombination.SHORTCUT_DOWN);
+    static final KeyCombination CUT_KEYS = new KeyCodeCombination(KeyCode.X, KeyCombination.SHORTCUT_DOWN);
+    static final KeyCombination PASTE_KEYS = new KeyCodeCombination(KeyCode.V, KeyCombination.SHORTCUT_DOWN);
+    static final KeyCombination DUPLICATE_KEYS = new KeyCodeCombination(KeyCode.D, KeyCombination.SHORTCUT_DOWN);
+
+    // THE KEYS FOR SHOWING AND HIDING THE LATENCY NUMBERS
+    static final KeyCombination LATENCY_OVERLAY_KEYS = new KeyCodeCombination(KeyCode.L, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
+
     // HERE'S THE APP
     AppTemplate app;
 
@@ -85,6 +113,9 @@ public class Workspace extends AppWorkspaceComponent {
     // THIS HANDLES INTERACTIONS WITH PAGE EDITING CONTROLS
     PageEditController pageEditController;
 
+    // THIS KEEPS THE EDITS ON DISK UNTIL THE PAGE IS SAVED
+    EditJournal editJournal;
+
     // WE'LL PUT THE WORKSPACE INSIDE A SPLIT PANE
     SplitPane workspaceSplitPane;
 
@@ -93,30 +124,43 @@ public class Workspace extends AppWorkspaceComponent {
     Pane tagToolbar;
     ScrollPane tagToolbarScrollPane;
     Button removeButton;
+    Button undoButton;
+    Button redoButton;
+    Button copyButton;
+    Button cutButton;
+    Button pasteButton;
+    Button duplicateButton;
     ArrayList<Button> tagButtons;
+    ArrayList<HTMLTagPrototype> tagButtonTags;
     HashMap<String, HTMLTagPrototype> tags;
 
     // THIS IS THE TREE REPRESENTING THE DOM
     TreeView htmlTree;
-    TreeItem<HTMLTagPrototype> htmlRoot;
+    PageTreeAdapter treeAdapter;
     ScrollPane treeScrollPane;
 
     // AND FOR EDITING A TAG
     GridPane tagEditorPane;
     ScrollPane tagEditorScrollPane;
     Label tagEditorLabel;
-    ArrayList<Label> tagPropertyLabels;
-    ArrayList<TextField> tagPropertyTextFields;
+    TagEditor tagEditor;
 
     // THIS WILL CONTAIN BOTH THE TREE AND THE TREE EDITOR
     VBox editVBox;
 
     // THIS IS WHERE WE CAN VIEW THE WEB PAGE OR DIRECTLY EDIT THE CSS
     TabPane rightPane;
+    Tab htmlTab;
+    StackPane htmlPane;
     WebView htmlView;
+    PerformanceOverlay performanceOverlay;
     WebEngine htmlEngine;
+    PreviewSync previewSync;
     TextArea cssEditor;
 
+    // THIS LOADS THE TAGS FILE AGAIN WHENEVER IT CHANGES
+    TagSchemaWatcher tagSchemaWatcher;
+
     // HERE ARE OUR DIALOGS
     AppMessageDialogSingleton messageDialog;
     AppYesNoCancelDialogSingleton yesNoCancelDialog;
@@ -154,6 +198,7 @@ public class Workspace extends AppWorkspaceComponent {
 	tagToolbarScrollPane = new ScrollPane(tagToolbar);
 	tagToolbarScrollPane.setFitToHeight(true);
 	tagButtons = new ArrayList();
+	tagButtonTags = new ArrayList();
 	tags = new HashMap();
 
 	// LOAD ALL THE HTML TAG TYPES
@@ -176,16 +221,19 @@ public class Workspace extends AppWorkspaceComponent {
 	treeScrollPane = new ScrollPane(htmlTree);
 	htmlTree.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
 	htmlTree.getSelectionModel().selectedItemProperty().addListener(e -> {
-	    reloadWorkspace();
+	    reloadTagEditor();
 	});
 
-	// NOW RESET THE TREE
-	HTMLTagPrototype htmlTag = new HTMLTagPrototype(TAG_HTML, true);
-	htmlRoot = new TreeItem(htmlTag);
-	htmlTree.setRoot(htmlRoot);
-	dataManager.setHTMLRoot(htmlRoot);
+	// NOW SHOW THE PAGE IN IT AND RESET THE PAGE
+	treeAdapter = new PageTreeAdapter(htmlTree, dataManager.getPageTree());
 	dataManager.reset();
 
+	// JOURNAL ALL EDITS SO THEY SURVIVE A CRASH, ANY THE LAST SESSION
+	// LEFT BEHIND ARE OFFERED BACK ONCE THE USER OPENS A PAGE
+	editJournal = new EditJournal(dataManager, fileManager, JOURNAL_FILE);
+	fileManager.setEditJournal(editJournal);
+	pageEditController.getEditHistory().setEditJournal(editJournal);
+
         // MAKE THE REMOVE BUTTON
 	removeButton = new Button("X");
 	removeButton.setMaxWidth(BUTTON_TAG_WIDTH);
@@ -197,47 +245,73 @@ public class Workspace extends AppWorkspaceComponent {
         removeButton.setOnAction(e -> {
             pageEditController.handleRemoveElementRequest();
         });
-        
-	// AND NOW USE THE LOADED TAG TYPES TO ADD BUTTONS
-	for (HTMLTagPrototype tag : dataManager.getTags()) {
-	    // MAKE THE BUTTON
-	    Button tagButton = new Button(tag.getTagName());
-	    tagButtons.add(tagButton);
-	    tagButton.setMaxWidth(BUTTON_TAG_WIDTH);
-	    tagButton.setMinWidth(BUTTON_TAG_WIDTH);
-	    tagButton.setPrefWidth(BUTTON_TAG_WIDTH);
-	    tagToolbar.getChildren().add(tagButton);
 
-	    // INIT ITS EVENT HANDLER
-	    tagButton.setOnAction(e -> {
-		String tagName = tagButton.getText();
-		HTMLTagPrototype clickedTag = dataManager.getTag(tagName);
-		pageEditController.handleAddElementRequest(clickedTag);
-	    });
+	// AND THE UNDO AND REDO BUTTONS
+	undoButton = new Button("Undo");
+	redoButton = new Button("Redo");
+	for (Button historyButton : new Button[]{undoButton, redoButton}) {
+	    historyButton.setMaxWidth(BUTTON_TAG_WIDTH);
+	    historyButton.setMinWidth(BUTTON_TAG_WIDTH);
+	    historyButton.setPrefWidth(BUTTON_TAG_WIDTH);
+	    tagToolbar.getChildren().add(historyButton);
 	}
+	undoButton.setOnAction(e -> {
+	    pageEditController.handleUndoRequest();
+	});
+	redoButton.setOnAction(e -> {
+	    pageEditController.handleRedoRequest();
+	});
+
+	// AND THE ONES FOR COPYING ELEMENTS ALONG WITH EVERYTHING IN THEM
+	copyButton = new Button("Copy");
+	cutButton = new Button("Cut");
+	pasteButton = new Button("Paste");
+	duplicateButton = new Button("Duplicate");
+	for (Button clipboardButton : new Button[]{copyButton, cutButton, pasteButton, duplicateButton}) {
+	    clipboardButton.setMaxWidth(BUTTON_TAG_WIDTH);
+	    clipboardButton.setMinWidth(BUTTON_TAG_WIDTH);
+	    clipboardButton.setPrefWidth(BUTTON_TAG_WIDTH);
+	    tagToolbar.getChildren().add(clipboardButton);
+	}
+	copyButton.setOnAction(e -> {
+	    pageEditController.handleCopyRequest();
+	});
+	cutButton.setOnAction(e -> {
+	    pageEditController.handleCutRequest();
+	});
+	pasteButton.setOnAction(e -> {
+	    pageEditController.handlePasteRequest();
+	});
+	duplicateButton.setOnAction(e -> {
+	    requestDuplicates();
+	});
+        
+	// AND NOW USE THE LOADED TAG TYPES TO ADD BUTTONS
+	makeTagButtons();
 
 	// AND NOW THE REGION FOR EDITING TAG PROPERTIES
 	tagEditorPane = new GridPane();
 	tagEditorScrollPane = new ScrollPane(tagEditorPane);
 	tagEditorLabel = new Label("Tag Editor");
-	tagPropertyLabels = new ArrayList();
-	tagPropertyTextFields = new ArrayList();
+	tagEditor = new TagEditor(tagEditorPane, tagEditorLabel, pageEditController);
 
 	// PUT THEM IN THE LEFT
 	leftPane.setLeft(tagToolbarScrollPane);
 	leftPane.setCenter(treeScrollPane);
 	leftPane.setBottom(tagEditorScrollPane);
 
-	// NOW FOR THE RIGHT
+	// NOW FOR THE RIGHT, THE WEB VIEW IS ONLY MADE ONCE THE HTML TAB IS
+	// SHOWN, SINCE STARTING UP ITS ENGINE TAKES A WHILE
 	rightPane = new TabPane();
-	htmlView = new WebView();
-	htmlEngine = htmlView.getEngine();
 	cssEditor = new TextArea();
 
 	// PUT BOTH ITEMS IN THE TAB PANE
-	Tab htmlTab = new Tab();
+	htmlTab = new Tab();
 	htmlTab.setText("HTML");
-	htmlTab.setContent(htmlView);
+	performanceOverlay = new PerformanceOverlay(fileManager.getExportCache());
+	htmlPane = new StackPane(performanceOverlay);
+	StackPane.setAlignment(performanceOverlay, Pos.TOP_RIGHT);
+	htmlTab.setContent(htmlPane);
         htmlTab.setClosable(false);
 
 	// NOW FOR THE CSS
@@ -248,6 +322,15 @@ public class Workspace extends AppWorkspaceComponent {
 	rightPane.getTabs().add(htmlTab);
 	rightPane.getTabs().add(cssTab);
 
+	// THE HTML TAB STARTS OUT SELECTED, BUT ISN'T SHOWN UNTIL THE WORKSPACE
+	// IS, WHICH IS WHEN IT'S FIRST RELOADED, OTHERWISE IT'S WHEN THE USER
+	// SWITCHES BACK TO IT
+	htmlTab.selectedProperty().addListener((observable, wasSelected, isSelected) -> {
+	    if (isSelected) {
+		initPreview();
+	    }
+	});
+
 	// SETUP THE RESPONSE TO CSS EDITING
 	cssEditor.textProperty().addListener(e -> {
 	    pageEditController.handleCSSEditing(cssEditor.getText());
@@ -262,57 +345,157 @@ public class Workspace extends AppWorkspaceComponent {
 	workspace = new Pane();
 	workspace.getChildren().add(workspaceSplitPane);
 
+	// THE TEXT CONTROLS HANDLE THEIR OWN UNDO KEYS, EVERYWHERE ELSE
+	// THEY UNDO AND REDO EDITS TO THE PAGE
+	workspace.addEventHandler(KeyEvent.KEY_PRESSED, e -> {
+	    if (UNDO_KEYS.match(e)) {
+		pageEditController.handleUndoRequest();
+		e.consume();
+	    } else if (REDO_KEYS.match(e) || REDO_SHIFT_KEYS.match(e)) {
+		pageEditController.handleRedoRequest();
+		e.consume();
+	    } else if (COPY_KEYS.match(e)) {
+		pageEditController.handleCopyRequest();
+		e.consume();
+	    } else if (CUT_KEYS.match(e)) {
+		pageEditController.handleCutRequest();
+		e.consume();
+	    } else if (PASTE_KEYS.match(e)) {
+		pageEditController.handlePasteRequest();
+		e.consume();
+	    } else if (DUPLICATE_KEYS.match(e)) {
+		pageEditController.handleDuplicateRequest(1);
+		e.consume();
+	    } else if (LATENCY_OVERLAY_KEYS.match(e)) {
+		performanceOverlay.toggle();
+		e.consume();
+	    }
+	});
+
         // NOTE THAT WE HAVE NOT PUT THE WORKSPACE INTO THE WINDOW,
 	// THAT WILL BE DONE WHEN THE USER EITHER CREATES A NEW
 	// COURSE OR LOADS AN EXISTING ONE FOR EDITING
 	workspaceActivated = false;
 
-	// MAKE SURE THE FILE MANAGER HAS THE ROOT AND THEN
-	// EXPORT THE SITE TO THE temp DIRECTORY. THEN, LOAD
-	// IT INTO THE WEB ENGINE
-	dataManager.setHTMLRoot(htmlRoot);
-	fileManager.exportData(dataManager, TEMP_PAGE);
-	loadTempPage();
+	// AND PICK UP ANY CHANGES TO THE TAGS FILE AS THE APP RUNS
+	tagSchemaWatcher = new TagSchemaWatcher(fileManager, dataManager, DataManager.TAG_TYPES_FILE_PATH,
+		this::reloadTagTypes, e -> {
+	    AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
+	    dialog.show(propsSingleton.getProperty(TAGS_RELOAD_ERROR_TITLE), propsSingleton.getProperty(TAGS_RELOAD_ERROR_MESSAGE));
+	});
+	try {
+	    tagSchemaWatcher.start();
+	} catch (IOException ioe) {
+	    // THE TAGS WILL JUST STAY AS THEY ARE UNTIL THE NEXT RUN
+	}
+    }
+
+    // HELPER METHOD FOR MAKING A BUTTON FOR EACH OF THE DATA MANAGER'S
+    // TAG TYPES AT THE END OF THE TOOLBAR
+    private void makeTagButtons() {
+	DataManager dataManager = (DataManager) app.getDataComponent();
+	for (HTMLTagPrototype tag : dataManager.getTags()) {
+	    // MAKE THE BUTTON
+	    Button tagButton = new Button(tag.getTagName());
+	    tagButtons.add(tagButton);
+	    tagButtonTags.add(tag);
+	    tagButton.setMaxWidth(BUTTON_TAG_WIDTH);
+	    tagButton.setMinWidth(BUTTON_TAG_WIDTH);
+	    tagButton.setPrefWidth(BUTTON_TAG_WIDTH);
+	    tagToolbar.getChildren().add(tagButton);
+
+	    // INIT ITS EVENT HANDLER
+	    tagButton.setOnAction(e -> {
+		String tagName = tagButton.getText();
+		HTMLTagPrototype clickedTag = dataManager.getTag(tagName);
+		pageEditController.handleAddElementRequest(clickedTag);
+	    });
+	}
+    }
+
+    /**
+     * This function brings the workspace up to date with new tag types,
+     * like after the tags file has been changed, making the tag buttons
+     * again and showing the page as the new types have it.
+     */
+    public void reloadTagTypes() {
+	tagToolbar.getChildren().removeAll(tagButtons);
+	tagButtons.clear();
+	tagButtonTags.clear();
+	makeTagButtons();
+	for (Button b : tagButtons) {
+	    b.getStyleClass().add(CLASS_TAG_BUTTON);
+	}
+	reloadWorkspace();
+    }
+
+    // HELPER METHOD FOR MAKING THE WEB VIEW THE FIRST TIME THE PAGE IS TO
+    // BE SHOWN, THEN EXPORTING THE PAGE TO THE temp DIRECTORY AND LOADING
+    // IT INTO THE WEB ENGINE
+    private void initPreview() {
+	if (previewSync != null) {
+	    return;
+	}
+	StartupTimer timer = StartupTimer.getTimer();
+	long startTime = timer.startTime();
+	FileManager fileManager = (FileManager) app.getFileComponent();
+	DataManager dataManager = (DataManager) app.getDataComponent();
+	htmlView = new WebView();
+	htmlEngine = htmlView.getEngine();
+	previewSync = new PreviewSync(htmlEngine, fileManager);
+	previewSync.setPageTree(dataManager.getPageTree());
+	htmlPane.getChildren().add(0, htmlView);
+	try {
+	    fileManager.exportData(dataManager, TEMP_PAGE);
+	    loadTempPage();
+	} catch (IOException ioe) {
+	    PropertiesManager props = PropertiesManager.getPropertiesManager();
+	    AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
+	    dialog.show(props.getProperty(TEMP_PAGE_LOAD_ERROR_TITLE), props.getProperty(TEMP_PAGE_LOAD_ERROR_MESSAGE));
+	}
+	timer.record("web view", startTime);
     }
 
     /**
      * Accessor method for getting the html engine, which is tied to the page
      * display.
      *
-     * @return The html engine for the Web view component.
+     * @return The html engine for the Web view component, or null if the
+     * page hasn't been shown yet.
      */
     public WebEngine getHTMLEngine() {
 	return htmlEngine;
     }
 
     /**
-     * Accessor method for getting the html tree, which contains all the tags
-     * for the page being edited.
+     * Accessor method for getting the preview, which applies edits directly
+     * to the page being displayed.
      *
-     * @return The html tree being edited.
+     * @return The object keeping the displayed page in sync with the tree,
+     * or null if the page hasn't been shown yet.
      */
-    public TreeView getHTMLTree() {
-	return htmlTree;
+    public PreviewSync getPreviewSync() {
+	return previewSync;
     }
 
     /**
-     * Accessor method for getting the root node of the html tree. Through that
-     * node one can access the full DOM.
+     * Accessor method for getting the html tree, which contains all the tags
+     * for the page being edited.
      *
-     * @return The root node of the html tree currently being edited.
+     * @return The html tree being edited.
      */
-    public TreeItem getHTMLRoot() {
-	return htmlRoot;
+    public TreeView getHTMLTree() {
+	return htmlTree;
     }
 
     /**
-     * Mutator method for setting the root node for the html tree.
+     * Accessor method for getting the adapter showing the page tree in
+     * the html tree, which knows the item for every node.
      *
-     * @param initRoot The node to use to set the root.
+     * @return The adapter for the html tree.
      */
-    public void setHTMLRoot(TreeItem initRoot) {
-	htmlTree.setRoot(initRoot);
-	htmlRoot = initRoot;
+    public PageTreeAdapter getTreeAdapter() {
+	return treeAdapter;
     }
 
     /**
@@ -328,6 +511,12 @@ public class Workspace extends AppWorkspaceComponent {
 	// CSS FILE
 	tagToolbar.getStyleClass().add(CLASS_BORDERED_PANE);
         removeButton.getStyleClass().add(CLASS_X_BUTTON);
+	undoButton.getStyleClass().add(CLASS_TAG_BUTTON);
+	redoButton.getStyleClass().add(CLASS_TAG_BUTTON);
+	copyButton.getStyleClass().add(CLASS_TAG_BUTTON);
+	cutButton.getStyleClass().add(CLASS_TAG_BUTTON);
+	pasteButton.getStyleClass().add(CLASS_TAG_BUTTON);
+	duplicateButton.getStyleClass().add(CLASS_TAG_BUTTON);
 	for (Button b : tagButtons) {
 	    b.getStyleClass().add(CLASS_TAG_BUTTON);
 	}
@@ -342,98 +531,44 @@ public class Workspace extends AppWorkspaceComponent {
      */
     @Override
     public void reloadWorkspace() {
+	if (editJournal.hasRecoverableEdits()) {
+	    recoverEdits();
+	}
 	try {
+	    // MAKE SURE TYPING IN THE OLD CONTROLS IS ON THE PAGE FIRST
+	    pageEditController.flushEdits();
+
 	    // WE DON'T WANT TO RESPOND TO EVENTS FORCED BY
 	    // OUR INITIALIZATION SELECTIONS
 	    pageEditController.enable(false);
 
-	    // FIRST CLEAR OUT THE OLD STUFF
-	    tagPropertyLabels.clear();
-	    tagPropertyTextFields.clear();
-	    tagEditorPane.getChildren().clear();
-
-	    // FIRST ADD THE LABEL
-	    tagEditorPane.add(tagEditorLabel, 0, 0, 2, 1);
-
-	    // THEN LOAD IN ALL THE NEW STUFF
-	    TreeItem selectedItem = (TreeItem) htmlTree.getSelectionModel().getSelectedItem();
-	    if (selectedItem != null) {
-		HTMLTagPrototype selectedTag = (HTMLTagPrototype) selectedItem.getValue();
-		HashMap<String, String> attributes = selectedTag.getAttributes();
-		Collection<String> keys = attributes.keySet();
-		int row = 1;
-		for (String attributeName : keys) {
-		    String attributeValue = selectedTag.getAttribute(attributeName);
-		    Label attributeLabel = new Label(attributeName + ": ");
-		    attributeLabel.getStyleClass().add(CLASS_PROMPT_LABEL);
-		    TextField attributeTextField = new TextField(attributeValue);
-		    attributeTextField.getStyleClass().add(CLASS_PROMPT_TEXT_FIELD);
-		    tagEditorPane.add(attributeLabel, 0, row);
-		    tagEditorPane.add(attributeTextField, 1, row);
-		    attributeTextField.textProperty().addListener(e -> {
-			// UPDATE THE TEMP SITE AS WE TYPE ATTRIBUTE VALUES
-			pageEditController.handleAttributeUpdate(selectedTag, attributeName, attributeTextField.getText());
-		    });
-		    row++;
-		}
-                
-                // MAKE THE DISABLE BUTTONS GRAY
-                DataManager dataManager = (DataManager) app.getDataComponent();
-                for (Button b : tagButtons) {
-                    boolean isLegal = false;
-                    // LOAD ALL THE HTML TAG TYPES
-                    String tagName = b.getText();
-                    HTMLTagPrototype bTag = dataManager.getTag(tagName);
-                    ArrayList<String> legalParents = bTag.getLegalParents();
-                    int size = legalParents.size();
-                    for(int i = 0; i < size; i++) {
-                        if(legalParents.get(i).equals(selectedTag.getTagName())) {
-                            isLegal = true;
-                        }
-                    }
-                    b.getStyleClass().removeAll(CLASS_TAG_BUTTON);
-                    b.getStyleClass().removeAll(CLASS_ILLEGAL_TAG_BUTTON);
-                    if(isLegal) {
-                        b.getStyleClass().add(CLASS_TAG_BUTTON);
-                    } else {
-                        b.getStyleClass().add(CLASS_ILLEGAL_TAG_BUTTON);
-                    }
-
-                }
-                
-                // DISABLE THE REMOVE BUTTON IF APPLICABLE
-                String name = selectedTag.getTagName();
-                boolean removeLegal = true;
-                if(name.equals(TAG_HTML)) {
-                    removeLegal = false;
-                } else if(name.equals(TAG_HEAD)) {
-                    removeLegal = false;
-                } else if(name.equals(TAG_TITLE)) {
-                    removeLegal = false;
-                } else if(name.equals(TAG_LINK)) {
-                    removeLegal = false;
-                } else if(name.equals(TAG_BODY)) {
-                    removeLegal = false;
-                }
-                removeButton.getStyleClass().removeAll(CLASS_X_BUTTON);
-                removeButton.getStyleClass().removeAll(CLASS_ILLEGAL_X_BUTTON);
-                if(!removeLegal) {
-                    removeButton.getStyleClass().add(CLASS_ILLEGAL_X_BUTTON);
-                } else {
-                    removeButton.getStyleClass().add(CLASS_X_BUTTON);
-                }
-            }
-            
-	    // LOAD THE CSS
-	    DataManager dataManager = (DataManager) app.getDataComponent();
-	    cssEditor.setText(dataManager.getCSSText());
-
-	    // THEN FORCE THE CHANGES TO THE TEMP HTML PAGE
-	    FileManager fileManager = (FileManager) app.getFileComponent();
-	    fileManager.exportData(dataManager, TEMP_PAGE);
+	    // SHOW THE SELECTED ELEMENT
+	    showSelection();
 
-            // LOAD THE TEMPORARY PAGE
-            loadTempPage();
+	    // LOAD THE CSS, BUT ONLY IF IT'S CHANGED, SINCE SETTING THE TEXT
+	    // OF A LONG STYLESHEET LAYS ALL OF IT OUT AGAIN
+	    DataManager dataManager = (DataManager) app.getDataComponent();
+	    String cssText = dataManager.getCSSText();
+	    if (!cssText.equals(cssEditor.getText())) {
+		cssEditor.setText(cssText);
+	    }
+
+	    // THEN FORCE THE CHANGES TO THE TEMP HTML PAGE, WHICH IS ONLY
+	    // EXPORTED ONCE IT'S BEING SHOWN, AND THE FIRST TIME NOT UNTIL
+	    // THE REST OF THE WORKSPACE IS UP
+	    if (previewSync == null) {
+		if (htmlTab.isSelected()) {
+		    Platform.runLater(this::initPreview);
+		}
+	    } else {
+		FileManager fileManager = (FileManager) app.getFileComponent();
+		fileManager.exportData(dataManager, TEMP_PAGE);
+
+		// AND RELOAD THE TEMPORARY PAGE, BUT ONLY IF THE TREE HAS
+		// CHANGED IN WAYS THE DISPLAYED PAGE HASN'T BEEN PATCHED FOR,
+		// AND NOT AGAIN IF THE SAME PAGE IS ALREADY BEING LOADED
+		previewSync.refresh(fileManager.isLastExportChanged());
+	    }
             
 	    // WE DON'T WANT TO RESPOND TO EVENTS FORCED BY
 	    // OUR INITIALIZATION SELECTIONS
@@ -445,6 +580,95 @@ public class Workspace extends AppWorkspaceComponent {
 	}
     }
 
+    /**
+     * This function shows the selected element in the tag editor and which
+     * tags may be added to it. Unlike reloadWorkspace it doesn't export or
+     * reload the page, since selecting an element doesn't change it.
+     */
+    public void reloadTagEditor() {
+	// MAKE SURE TYPING IN THE OLD CONTROLS IS ON THE PAGE FIRST
+	pageEditController.flushEdits();
+
+	// THE TAG EDITOR'S TEXT FIELDS WILL FIRE AS THEIR VALUES ARE SET
+	pageEditController.enable(false);
+	showSelection();
+	pageEditController.enable(true);
+    }
+
+    // HELPER METHOD FOR SHOWING THE SELECTED ELEMENT IN THE TAG EDITOR AND
+    // GRAYING OUT THE BUTTONS THAT CAN'T BE USED ON IT
+    private void showSelection() {
+	PageTreeItem selectedItem = (PageTreeItem) htmlTree.getSelectionModel().getSelectedItem();
+	if (selectedItem == null) {
+	    tagEditor.unbind();
+	    return;
+	}
+	HTMLTagPrototype selectedTag = selectedItem.getValue();
+	tagEditor.bind(selectedItem.getNode(), selectedTag);
+
+	// MAKE THE DISABLE BUTTONS GRAY
+	DataManager dataManager = (DataManager) app.getDataComponent();
+	for (int i = 0; i < tagButtons.size(); i++) {
+	    boolean isLegal = dataManager.isLegalParent(tagButtonTags.get(i), selectedTag);
+	    if (isLegal) {
+		setStyleClass(tagButtons.get(i), CLASS_TAG_BUTTON, CLASS_ILLEGAL_TAG_BUTTON);
+	    } else {
+		setStyleClass(tagButtons.get(i), CLASS_ILLEGAL_TAG_BUTTON, CLASS_TAG_BUTTON);
+	    }
+	}
+
+	// DISABLE THE REMOVE BUTTON IF APPLICABLE
+	if (dataManager.isRemovable(selectedTag)) {
+	    setStyleClass(removeButton, CLASS_X_BUTTON, CLASS_ILLEGAL_X_BUTTON);
+	} else {
+	    setStyleClass(removeButton, CLASS_ILLEGAL_X_BUTTON, CLASS_X_BUTTON);
+	}
+    }
+
+    // HELPER METHOD FOR ASKING THE USER HOW MANY COPIES OF THE SELECTED
+    // ELEMENT TO ADD, THEN ADDING THEM
+    private void requestDuplicates() {
+	PropertiesManager props = PropertiesManager.getPropertiesManager();
+	TextInputDialog countDialog = new TextInputDialog("1");
+	countDialog.setTitle(props.getProperty(DUPLICATE_COUNT_TITLE));
+	countDialog.setHeaderText(null);
+	countDialog.setContentText(props.getProperty(DUPLICATE_COUNT_MESSAGE));
+	Optional<String> count = countDialog.showAndWait();
+	if (count.isPresent()) {
+	    try {
+		pageEditController.handleDuplicateRequest(Integer.parseInt(count.get().trim()));
+	    } catch (NumberFormatException nfe) {
+		// NOT A NUMBER, SO THERE'S NOTHING TO ADD
+	    }
+	}
+    }
+
+    // HELPER METHOD FOR GIVING THE BUTTON styleClass INSTEAD OF oldStyleClass,
+    // WHICH LEAVES IT ALONE IF IT HAS IT ALREADY SO ITS STYLE ISN'T WORKED
+    // OUT AGAIN
+    private void setStyleClass(Button button, String styleClass, String oldStyleClass) {
+	ObservableList<String> styleClasses = button.getStyleClass();
+	styleClasses.removeAll(oldStyleClass);
+	if (!styleClasses.contains(styleClass)) {
+	    styleClasses.add(styleClass);
+	}
+    }
+
+    // HELPER METHOD FOR ASKING THE USER WHETHER TO RECOVER THE EDITS THE
+    // LAST SESSION DIDN'T SAVE, WHICH THEN REPLACE THE PAGE
+    private void recoverEdits() {
+	PropertiesManager props = PropertiesManager.getPropertiesManager();
+	AppYesNoCancelDialogSingleton yesNoDialog = AppYesNoCancelDialogSingleton.getSingleton();
+	yesNoDialog.show(props.getProperty(RECOVER_EDITS_TITLE), props.getProperty(RECOVER_EDITS_MESSAGE));
+	String selection = yesNoDialog.getSelection();
+	if (AppYesNoCancelDialogSingleton.YES.equals(selection) && editJournal.recover()) {
+	    AppFileController appFileController = new AppFileController(app);
+	    appFileController.markAsEdited(gui);
+	} else {
+	    editJournal.discardRecoverableEdits();
+	}
+    }
+
     /**
      * This function loads the temp page into the web view.
      */
@@ -454,7 +678,7 @@ public class Workspace extends AppWorkspaceComponent {
 	try {
 	    URL pageURL = webPageFile.toURI().toURL();
 	    String pagePath = pageURL.toString();
-	    htmlEngine.load(pagePath);
+	    previewSync.load(pagePath);
 	} catch (MalformedURLException murle) {
 	    PropertiesManager props = PropertiesManager.getPropertiesManager();
 	    AppMessageDialogSingleton dialog = AppMessageDialogSingleton.getSingleton();
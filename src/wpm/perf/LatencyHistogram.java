@@ -0,0 +1,154 @@
+package wpm.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts how long something took, in nanoseconds, in buckets
+ * whose width grows with the values they hold, the way an HDR histogram
+ * does. Values below SUB_BUCKET_COUNT get a bucket each, after that every
+ * doubling of the value is split into SUB_BUCKET_COUNT / 2 buckets, so
+ * any percentile read back is within about 3% of the real value, from
+ * nanoseconds up to hours, in a fixed array of under two thousand counts.
+ * Recording is a few atomic increments and never allocates, so values can
+ * be recorded from any thread, like the writer thread, while the user
+ * interface reads them.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    // EVERY DOUBLING OF THE VALUE IS SPLIT INTO HALF THIS MANY BUCKETS
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // ENOUGH BUCKETS FOR ANY POSITIVE long
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF_COUNT;
+
+    // HOW MANY VALUES FELL IN EACH BUCKET
+    AtomicLongArray counts;
+
+    // TOTALS OVER ALL THE VALUES
+    AtomicLong totalCount;
+    AtomicLong totalValue;
+    AtomicLong maxValue;
+
+    /**
+     * Constructor for an empty histogram.
+     */
+    public LatencyHistogram() {
+	counts = new AtomicLongArray(BUCKET_COUNT);
+	totalCount = new AtomicLong();
+	totalValue = new AtomicLong();
+	maxValue = new AtomicLong();
+    }
+
+    /**
+     * This method counts one value. Negative values, which a clock going
+     * backwards could produce, are counted as 0.
+     *
+     * @param value The value to count, in nanoseconds.
+     */
+    public void record(long value) {
+	if (value < 0) {
+	    value = 0;
+	}
+	counts.incrementAndGet(bucketIndex(value));
+	totalCount.incrementAndGet();
+	totalValue.addAndGet(value);
+	long max = maxValue.get();
+	while (value > max && !maxValue.compareAndSet(max, value)) {
+	    max = maxValue.get();
+	}
+    }
+
+    /**
+     * Accessor method for getting how many values have been counted.
+     *
+     * @return The number of values.
+     */
+    public long getCount() {
+	return totalCount.get();
+    }
+
+    /**
+     * Accessor method for getting the mean of the values counted.
+     *
+     * @return The mean, or 0 if there are no values.
+     */
+    public double getMean() {
+	long count = totalCount.get();
+	return (count == 0) ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * Accessor method for getting the largest value counted, which is
+     * kept exactly.
+     *
+     * @return The largest value, or 0 if there are no values.
+     */
+    public long getMax() {
+	return maxValue.get();
+    }
+
+    /**
+     * Accessor method for getting the value that the percentile argument
+     * of the values are at or below, as the highest value of the bucket it
+     * falls in.
+     *
+     * @param percentile Which percentile, from 0 to 100.
+     *
+     * @return The value at that percentile, or 0 if there are no values.
+     */
+    public long getValueAtPercentile(double percentile) {
+	long count = totalCount.get();
+	if (count == 0) {
+	    return 0;
+	}
+	long wanted = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100) / 100));
+	long seen = 0;
+	for (int i = 0; i < BUCKET_COUNT; i++) {
+	    seen += counts.get(i);
+	    if (seen >= wanted) {
+		return Math.min(bucketHighestValue(i), getMax());
+	    }
+	}
+	return getMax();
+    }
+
+    /**
+     * This method forgets all the values counted so far.
+     */
+    public void reset() {
+	for (int i = 0; i < BUCKET_COUNT; i++) {
+	    counts.set(i, 0);
+	}
+	totalCount.set(0);
+	totalValue.set(0);
+	maxValue.set(0);
+    }
+
+    // HELPER METHOD FOR FINDING THE BUCKET A VALUE FALLS IN, VALUES PAST
+    // THE LINEAR BUCKETS ARE SHIFTED DOWN UNTIL THEY FIT IN THE TOP HALF
+    // OF THE SUB BUCKETS
+    static int bucketIndex(long value) {
+	if (value < SUB_BUCKET_COUNT) {
+	    return (int) value;
+	}
+	int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+	int subBucket = (int) (value >>> shift);
+	return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    // HELPER METHOD FOR FINDING THE HIGHEST VALUE THAT FALLS IN A BUCKET
+    static long bucketHighestValue(int index) {
+	if (index < SUB_BUCKET_COUNT) {
+	    return index;
+	}
+	int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+	long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+	long highest = ((subBucket + 1) << shift) - 1;
+	return (highest < 0) ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,260 @@
+package wpm.perf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/**
+ * This class keeps track of where the time goes between an edit and the
+ * displayed page showing it. The work is split into stages, and for each
+ * one we keep a histogram of how long it took and, where the JVM can tell
+ * us, how many bytes the thread doing it allocated. Code being measured
+ * asks for the time and allocation before it starts and hands both back
+ * when it's done:
+ *
+ * <pre>
+ * LatencyMonitor monitor = LatencyMonitor.getMonitor();
+ * long startTime = monitor.startTime();
+ * long startAllocated = monitor.allocatedBytes();
+ * ...
+ * monitor.record(Stage.SERIALIZATION, startTime, startAllocated);
+ * </pre>
+ *
+ * There is one monitor for the whole application, which may be used from
+ * any thread. What it has gathered can be shown in the workspace or
+ * written out as JSON to compare against later runs.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class LatencyMonitor {
+    // FOR WRITING THE RESULTS AS JSON
+    static final String JSON_ALLOCATION_TRACKED = "allocation_tracked";
+    static final String JSON_STAGES = "stages";
+    static final String JSON_STAGE = "stage";
+    static final String JSON_COUNT = "count";
+    static final String JSON_MEAN = "mean_ns";
+    static final String JSON_P50 = "p50_ns";
+    static final String JSON_P90 = "p90_ns";
+    static final String JSON_P99 = "p99_ns";
+    static final String JSON_P999 = "p999_ns";
+    static final String JSON_MAX = "max_ns";
+    static final String JSON_ALLOCATED_PER_OPERATION = "allocated_bytes_per_op";
+
+    /**
+     * The stages of getting an edit onto the displayed page.
+     */
+    public enum Stage {
+	// CHANGING THE TREE OR THE CSS IN RESPONSE TO THE USER
+	MODEL_UPDATE,
+
+	// TURNING THE PAGE INTO HTML OR TAKING A SNAPSHOT OF IT TO SAVE
+	SERIALIZATION,
+
+	// WRITING A FILE, ON THE WRITER THREAD
+	DISK_WRITE,
+
+	// PATCHING THE DISPLAYED PAGE, OR LOADING IT UNTIL IT HAS SUCCEEDED
+	RENDER
+    }
+
+    // THE ONE MONITOR FOR THE WHOLE APPLICATION
+    static final LatencyMonitor singleton = new LatencyMonitor();
+
+    // HOW LONG EACH STAGE TOOK, INDEXED BY ITS ORDINAL
+    LatencyHistogram[] histograms;
+
+    // THE BYTES ALLOCATED DURING EACH STAGE, AND HOW MANY TIMES THEY
+    // WERE MEASURED, WHICH IS NOT EVERY TIME FOR RENDERING
+    AtomicLong[] allocatedBytes;
+    AtomicLong[] allocationCounts;
+
+    // THIS TELLS US HOW MUCH A THREAD HAS ALLOCATED, OR IS null IF THE
+    // JVM CAN'T
+    com.sun.management.ThreadMXBean allocationBean;
+
+    // FOR WRITING THE RESULTS WITH PRETTY PRINTING
+    JsonGeneratorFactory jsonGeneratorFactory;
+
+    // HELPER CONSTRUCTOR, USE getMonitor INSTEAD
+    private LatencyMonitor() {
+	Stage[] stages = Stage.values();
+	histograms = new LatencyHistogram[stages.length];
+	allocatedBytes = new AtomicLong[stages.length];
+	allocationCounts = new AtomicLong[stages.length];
+	for (int i = 0; i < stages.length; i++) {
+	    histograms[i] = new LatencyHistogram();
+	    allocatedBytes[i] = new AtomicLong();
+	    allocationCounts[i] = new AtomicLong();
+	}
+	ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	if (threadBean instanceof com.sun.management.ThreadMXBean) {
+	    com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+	    try {
+		if (sunThreadBean.isThreadAllocatedMemorySupported()) {
+		    sunThreadBean.setThreadAllocatedMemoryEnabled(true);
+		    allocationBean = sunThreadBean;
+		}
+	    } catch (UnsupportedOperationException | SecurityException e) {
+		// THEN WE JUST WON'T COUNT ALLOCATIONS
+	    }
+	}
+	jsonGeneratorFactory = Json.createGeneratorFactory(
+		Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+    }
+
+    /**
+     * Accessor method for getting the monitor used by the whole
+     * application.
+     *
+     * @return The monitor.
+     */
+    public static LatencyMonitor getMonitor() {
+	return singleton;
+    }
+
+    /**
+     * Accessor method for getting the time to measure a stage from.
+     *
+     * @return The current time, in nanoseconds.
+     */
+    public long startTime() {
+	return System.nanoTime();
+    }
+
+    /**
+     * Accessor method for getting how many bytes the calling thread has
+     * allocated so far, to measure a stage's allocations from.
+     *
+     * @return The bytes allocated, or -1 if the JVM can't tell us.
+     */
+    public long allocatedBytes() {
+	if (allocationBean == null) {
+	    return -1;
+	}
+	return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Accessor method for testing whether or not allocations are being
+     * counted.
+     *
+     * @return true if the JVM can tell us how much a thread allocated.
+     */
+    public boolean isAllocationTracked() {
+	return allocationBean != null;
+    }
+
+    /**
+     * This method records that the stage argument has just finished,
+     * including what the calling thread allocated while doing it.
+     *
+     * @param stage The stage that finished.
+     *
+     * @param startTime What startTime returned when the stage started.
+     *
+     * @param startAllocated What allocatedBytes returned when the stage
+     * started, on this same thread, or -1 to not count allocations.
+     */
+    public void record(Stage stage, long startTime, long startAllocated) {
+	histograms[stage.ordinal()].record(System.nanoTime() - startTime);
+	if (startAllocated >= 0) {
+	    long allocated = allocatedBytes();
+	    if (allocated >= startAllocated) {
+		allocatedBytes[stage.ordinal()].addAndGet(allocated - startAllocated);
+		allocationCounts[stage.ordinal()].incrementAndGet();
+	    }
+	}
+    }
+
+    /**
+     * This method records that the stage argument has just finished, for
+     * stages that didn't run on one thread from start to finish, so their
+     * allocations can't be counted.
+     *
+     * @param stage The stage that finished.
+     *
+     * @param startTime What startTime returned when the stage started.
+     */
+    public void record(Stage stage, long startTime) {
+	record(stage, startTime, -1);
+    }
+
+    /**
+     * Accessor method for getting how long the stage argument has taken.
+     *
+     * @param stage The stage.
+     *
+     * @return The histogram of its times, in nanoseconds.
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+	return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Accessor method for getting the mean number of bytes allocated each
+     * time the stage argument was done.
+     *
+     * @param stage The stage.
+     *
+     * @return The mean bytes allocated, or -1 if they weren't counted.
+     */
+    public long getAllocatedBytesPerOperation(Stage stage) {
+	long count = allocationCounts[stage.ordinal()].get();
+	if (count == 0) {
+	    return -1;
+	}
+	return allocatedBytes[stage.ordinal()].get() / count;
+    }
+
+    /**
+     * This method forgets everything recorded so far, like for measuring
+     * one particular series of edits.
+     */
+    public void reset() {
+	for (int i = 0; i < histograms.length; i++) {
+	    histograms[i].reset();
+	    allocatedBytes[i].set(0);
+	    allocationCounts[i].set(0);
+	}
+    }
+
+    /**
+     * This method writes what has been recorded so far as JSON, with the
+     * count, mean, percentiles and maximum of every stage, for keeping
+     * track of regressions from one version to the next.
+     *
+     * @param out Where to write the JSON, which is left open.
+     *
+     * @throws IOException Thrown should there be an error writing.
+     */
+    public void writeJSON(Writer out) throws IOException {
+	JsonGenerator generator = jsonGeneratorFactory.createGenerator(out);
+	generator.writeStartObject();
+	generator.write(JSON_ALLOCATION_TRACKED, isAllocationTracked());
+	generator.writeStartArray(JSON_STAGES);
+	for (Stage stage : Stage.values()) {
+	    LatencyHistogram histogram = getHistogram(stage);
+	    generator.writeStartObject();
+	    generator.write(JSON_STAGE, stage.name().toLowerCase());
+	    generator.write(JSON_COUNT, histogram.getCount());
+	    generator.write(JSON_MEAN, Math.round(histogram.getMean()));
+	    generator.write(JSON_P50, histogram.getValueAtPercentile(50));
+	    generator.write(JSON_P90, histogram.getValueAtPercentile(90));
+	    generator.write(JSON_P99, histogram.getValueAtPercentile(99));
+	    generator.write(JSON_P999, histogram.getValueAtPercentile(99.9));
+	    generator.write(JSON_MAX, histogram.getMax());
+	    generator.write(JSON_ALLOCATED_PER_OPERATION, getAllocatedBytesPerOperation(stage));
+	    generator.writeEnd();
+	}
+	generator.writeEnd();
+	generator.writeEnd();
+	generator.flush();
+    }
+}
@@ -0,0 +1,93 @@
+package wpm.perf;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class times the phases of starting the application, so that how long
+ * it takes before the user can start working can be tracked from run to
+ * run. Each phase is logged as it ends, with how long it took and how long
+ * it has been since the JVM was launched, and the moment the application
+ * becomes usable is logged once as its time to interactive. Code being
+ * measured asks for the time before it starts and hands it back when it's
+ * done:
+ *
+ * <pre>
+ * StartupTimer timer = StartupTimer.getTimer();
+ * long startTime = timer.startTime();
+ * ...
+ * timer.record("tags", startTime);
+ * </pre>
+ *
+ * Phases may run on any thread, including at the same time as each other.
+ *
+ * @author Zhe Lin
+ * @version 1.0
+ */
+public class StartupTimer {
+    // HOW EACH PHASE IS LOGGED
+    static final String PHASE_FORMAT = "Startup: %-16s %8.1f ms, %8.1f ms since launch";
+    static final String INTERACTIVE_FORMAT = "Startup: interactive after %.1f ms";
+
+    // THE ONE TIMER FOR THE WHOLE APPLICATION
+    static final StartupTimer singleton = new StartupTimer();
+
+    // WHEN THE JVM WAS LAUNCHED, ON THE System.nanoTime CLOCK
+    long launchTime;
+
+    // WHETHER THE TIME TO INTERACTIVE HAS BEEN LOGGED YET
+    boolean interactive;
+
+    // HELPER CONSTRUCTOR, THE JVM ONLY TELLS US HOW LONG IT HAS BEEN UP
+    // IN MILLISECONDS, WHICH IS GOOD ENOUGH FOR STARTUP
+    private StartupTimer() {
+	long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+	launchTime = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(uptime);
+    }
+
+    /**
+     * Accessor method for getting the one timer for the application.
+     *
+     * @return The startup timer.
+     */
+    public static StartupTimer getTimer() {
+	return singleton;
+    }
+
+    /**
+     * This method gets the time to hand back to record once a phase is done.
+     *
+     * @return The current time, in nanoseconds.
+     */
+    public long startTime() {
+	return System.nanoTime();
+    }
+
+    /**
+     * This method logs a phase of starting up that has just ended.
+     *
+     * @param phase The name of the phase.
+     *
+     * @param startTime What startTime returned when the phase began.
+     */
+    public synchronized void record(String phase, long startTime) {
+	long endTime = System.nanoTime();
+	System.out.println(String.format(PHASE_FORMAT, phase, toMillis(endTime - startTime), toMillis(endTime - launchTime)));
+    }
+
+    /**
+     * This method logs how long it took for the application to become
+     * usable, the first time it's called, and does nothing after that.
+     */
+    public synchronized void markInteractive() {
+	if (!interactive) {
+	    interactive = true;
+	    System.out.println(String.format(INTERACTIVE_FORMAT, toMillis(System.nanoTime() - launchTime)));
+	}
+    }
+
+    // HELPER METHOD FOR TURNING NANOSECONDS INTO MILLISECONDS TO LOG
+    private static double toMillis(long nanos) {
+	return nanos / 1e6;
+    }
+}